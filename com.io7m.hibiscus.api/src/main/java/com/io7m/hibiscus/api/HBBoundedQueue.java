@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded, lock-free, multi-producer multi-consumer array queue. Each
+ * slot carries a sequence number that tells producers and consumers whether
+ * the slot is ready for them, so neither operation allocates.</p>
+ *
+ * <p>A producer that has claimed a slot but not yet published it makes the
+ * slot appear empty to consumers (and a consumer that has claimed a slot
+ * but not yet released it makes it appear full to producers). Rather than
+ * report a spurious empty or full queue, the other side waits for the slot,
+ * yielding so that a preempted owner can finish.</p>
+ *
+ * @param <T> The type of elements
+ */
+
+final class HBBoundedQueue<T>
+{
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head;
+  private final AtomicLong tail;
+  private final int mask;
+
+  /**
+   * Create a queue.
+   *
+   * @param capacity The capacity; must be a power of two
+   */
+
+  HBBoundedQueue(
+    final int capacity)
+  {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException(
+        "Capacity must be a power of two: %d"
+          .formatted(Integer.valueOf(capacity))
+      );
+    }
+
+    this.mask = capacity - 1;
+    this.items = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    this.head = new AtomicLong(0L);
+    this.tail = new AtomicLong(0L);
+
+    for (int index = 0; index < capacity; ++index) {
+      this.sequences.set(index, index);
+    }
+  }
+
+  /**
+   * @param item The element
+   *
+   * @return {@code false} if the queue is full
+   */
+
+  boolean offer(
+    final T item)
+  {
+    long position = this.tail.get();
+    while (true) {
+      final var index = (int) (position & (long) this.mask);
+      final var difference = this.sequences.getAcquire(index) - position;
+
+      if (difference == 0L) {
+        if (this.tail.compareAndSet(position, position + 1L)) {
+          this.items.setPlain(index, item);
+          this.sequences.setRelease(index, position + 1L);
+          return true;
+        }
+        position = this.tail.get();
+      } else if (difference < 0L) {
+        if (position - this.head.get() > (long) this.mask) {
+          return false;
+        }
+        Thread.yield();
+        position = this.tail.get();
+      } else {
+        position = this.tail.get();
+      }
+    }
+  }
+
+  /**
+   * @return The oldest element, or {@code null} if the queue is empty
+   */
+
+  T poll()
+  {
+    long position = this.head.get();
+    while (true) {
+      final var index = (int) (position & (long) this.mask);
+      final var difference =
+        this.sequences.getAcquire(index) - (position + 1L);
+
+      if (difference == 0L) {
+        if (this.head.compareAndSet(position, position + 1L)) {
+          final var item = this.items.getPlain(index);
+          this.items.setPlain(index, null);
+          this.sequences.setRelease(index, position + (long) this.mask + 1L);
+          return item;
+        }
+        position = this.head.get();
+      } else if (difference < 0L) {
+        if (this.tail.get() == position) {
+          return null;
+        }
+        Thread.yield();
+        position = this.head.get();
+      } else {
+        position = this.head.get();
+      }
+    }
+  }
+
+  /**
+   * @return The approximate number of elements in the queue
+   */
+
+  int size()
+  {
+    final var size = this.tail.get() - this.head.get();
+    return (int) Math.max(0L, Math.min(size, (long) this.mask + 1L));
+  }
+}
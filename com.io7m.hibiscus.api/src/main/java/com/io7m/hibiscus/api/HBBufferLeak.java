@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The leak-detection state of a single acquisition of a pooled buffer. The
+ * action runs when the buffer becomes unreachable, or when it is released;
+ * only the former is reported.
+ */
+
+final class HBBufferLeak
+  implements Runnable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBBufferLeak.class);
+
+  private final Throwable origin;
+  private final LongAdder leaks;
+  private volatile boolean isReleased;
+
+  HBBufferLeak(
+    final LongAdder inLeaks)
+  {
+    this.leaks = inLeaks;
+    this.origin = new Throwable("Buffer acquired here");
+  }
+
+  void released()
+  {
+    this.isReleased = true;
+  }
+
+  @Override
+  public void run()
+  {
+    if (!this.isReleased) {
+      this.leaks.increment();
+      LOG.error("A pooled buffer was never released.", this.origin);
+    }
+  }
+}
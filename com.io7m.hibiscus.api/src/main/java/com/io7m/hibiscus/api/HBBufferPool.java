@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A pool of reusable byte buffers.</p>
+ *
+ * <p>Requests are rounded up to a power-of-two size class. Each platform
+ * thread keeps a small cache of buffers per size class that it can use
+ * without any synchronization; beneath those caches, each size class has a
+ * shared lock-free free-list. Virtual threads are typically short-lived and
+ * numerous, and so bypass the thread caches and use the shared free-lists
+ * directly. Requests larger than the largest size class are allocated
+ * without pooling and are simply discarded when released.</p>
+ *
+ * <p>When leak detection is enabled, every acquisition records a stack
+ * trace, and a buffer that becomes unreachable without having been released
+ * is logged along with the place where it was acquired. Leak detection is
+ * intended for debugging and allocates on every acquisition.</p>
+ */
+
+public final class HBBufferPool
+{
+  private static final HBBufferPool SHARED =
+    create(HBBufferPoolConfiguration.defaults());
+
+  private final HBBufferPoolConfiguration configuration;
+  private final int smallestShift;
+  private final HBBoundedQueue<HBPooledBuffer>[] shared;
+  private final ThreadLocal<ThreadCache> caches;
+  private final LongAdder allocations;
+  private final LongAdder leaks;
+  private final Cleaner cleaner;
+
+  @SuppressWarnings("unchecked")
+  private HBBufferPool(
+    final HBBufferPoolConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.smallestShift =
+      Integer.numberOfTrailingZeros(inConfiguration.smallestSize());
+
+    final var classes =
+      Integer.numberOfTrailingZeros(inConfiguration.largestSize())
+      - this.smallestShift + 1;
+
+    this.shared = new HBBoundedQueue[classes];
+    for (int index = 0; index < classes; ++index) {
+      this.shared[index] =
+        new HBBoundedQueue<>(inConfiguration.sharedCacheSize());
+    }
+
+    this.caches =
+      ThreadLocal.withInitial(() -> {
+        return new ThreadCache(classes, inConfiguration.threadCacheSize());
+      });
+    this.allocations =
+      new LongAdder();
+    this.leaks =
+      new LongAdder();
+    this.cleaner =
+      inConfiguration.leakDetection() ? Cleaner.create() : null;
+  }
+
+  /**
+   * Create a buffer pool.
+   *
+   * @param configuration The pool configuration
+   *
+   * @return A new pool
+   */
+
+  public static HBBufferPool create(
+    final HBBufferPoolConfiguration configuration)
+  {
+    return new HBBufferPool(configuration);
+  }
+
+  /**
+   * @return A process-wide heap buffer pool with the default configuration
+   */
+
+  public static HBBufferPool shared()
+  {
+    return SHARED;
+  }
+
+  /**
+   * @return The pool configuration
+   */
+
+  public HBBufferPoolConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * @return The number of buffers the pool has allocated
+   */
+
+  public long allocations()
+  {
+    return this.allocations.sum();
+  }
+
+  /**
+   * @return The number of leaked buffers detected, if leak detection is
+   * enabled
+   */
+
+  public long leaksDetected()
+  {
+    return this.leaks.sum();
+  }
+
+  private int sizeClassOf(
+    final int size)
+  {
+    if (size <= this.configuration.smallestSize()) {
+      return 0;
+    }
+    final var shift = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+    final var sizeClass = shift - this.smallestShift;
+    return sizeClass < this.shared.length ? sizeClass : -1;
+  }
+
+  private ByteBuffer allocate(
+    final int capacity)
+  {
+    this.allocations.increment();
+    if (this.configuration.direct()) {
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    return ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * Borrow a buffer with room for at least {@code size} bytes. The buffer's
+   * position is zero and its limit is {@code size}.
+   *
+   * @param size The required size
+   *
+   * @return A pooled buffer
+   */
+
+  public HBPooledBuffer acquire(
+    final int size)
+  {
+    if (size < 0) {
+      throw new IllegalArgumentException(
+        "Size must be non-negative: %d".formatted(Integer.valueOf(size))
+      );
+    }
+
+    final var sizeClass = this.sizeClassOf(size);
+
+    HBPooledBuffer pooled = null;
+    if (sizeClass == -1) {
+      pooled = new HBPooledBuffer(this, -1, this.allocate(size));
+    } else {
+      if (!Thread.currentThread().isVirtual()) {
+        pooled = this.caches.get().poll(sizeClass);
+      }
+      if (pooled == null) {
+        pooled = this.shared[sizeClass].poll();
+      }
+      if (pooled == null) {
+        pooled = new HBPooledBuffer(
+          this,
+          sizeClass,
+          this.allocate(this.configuration.smallestSize() << sizeClass)
+        );
+      }
+    }
+
+    if (this.cleaner != null) {
+      final var leak = new HBBufferLeak(this.leaks);
+      pooled.onAcquire(size, leak, this.cleaner.register(pooled, leak));
+    } else {
+      pooled.onAcquire(size, null, null);
+    }
+    return pooled;
+  }
+
+  void release(
+    final HBPooledBuffer pooled)
+  {
+    final var sizeClass = pooled.sizeClass();
+    if (sizeClass == -1) {
+      return;
+    }
+    if (!Thread.currentThread().isVirtual()) {
+      if (this.caches.get().offer(sizeClass, pooled)) {
+        return;
+      }
+    }
+    this.shared[sizeClass].offer(pooled);
+  }
+
+  /**
+   * The buffers cached by a single platform thread.
+   */
+
+  private static final class ThreadCache
+  {
+    private final HBPooledBuffer[][] buffers;
+    private final int[] counts;
+
+    ThreadCache(
+      final int classes,
+      final int depth)
+    {
+      this.buffers = new HBPooledBuffer[classes][depth];
+      this.counts = new int[classes];
+    }
+
+    HBPooledBuffer poll(
+      final int sizeClass)
+    {
+      final var count = this.counts[sizeClass];
+      if (count == 0) {
+        return null;
+      }
+      final var index = count - 1;
+      final var pooled = this.buffers[sizeClass][index];
+      this.buffers[sizeClass][index] = null;
+      this.counts[sizeClass] = index;
+      return pooled;
+    }
+
+    boolean offer(
+      final int sizeClass,
+      final HBPooledBuffer pooled)
+    {
+      final var count = this.counts[sizeClass];
+      if (count == this.buffers[sizeClass].length) {
+        return false;
+      }
+      this.buffers[sizeClass][count] = pooled;
+      this.counts[sizeClass] = count + 1;
+      return true;
+    }
+  }
+}
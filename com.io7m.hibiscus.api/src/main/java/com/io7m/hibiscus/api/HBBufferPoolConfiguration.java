@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The configuration of a {@link HBBufferPool}.
+ *
+ * @param direct          {@code true} if the pool allocates direct buffers
+ * @param smallestSize    The size of the smallest size class, in bytes
+ * @param largestSize     The size of the largest size class, in bytes;
+ *                        larger requests are allocated without pooling
+ * @param threadCacheSize The number of buffers per size class cached by
+ *                        each platform thread
+ * @param sharedCacheSize The number of buffers per size class held in the
+ *                        shared free-list
+ * @param leakDetection   {@code true} if buffers that become unreachable
+ *                        without being released should be reported
+ */
+
+public record HBBufferPoolConfiguration(
+  boolean direct,
+  int smallestSize,
+  int largestSize,
+  int threadCacheSize,
+  int sharedCacheSize,
+  boolean leakDetection)
+{
+  private static final int DEFAULT_SMALLEST = 256;
+  private static final int DEFAULT_LARGEST = 1 << 20;
+  private static final int DEFAULT_THREAD_CACHE = 8;
+  private static final int DEFAULT_SHARED_CACHE = 256;
+
+  /**
+   * The name of the system property that enables leak detection in the
+   * default configuration.
+   */
+
+  public static final String LEAK_DETECTION_PROPERTY =
+    "com.io7m.hibiscus.buffers.leakDetection";
+
+  /**
+   * The configuration of a {@link HBBufferPool}.
+   *
+   * @param direct          {@code true} if the pool allocates direct buffers
+   * @param smallestSize    The size of the smallest size class, in bytes
+   * @param largestSize     The size of the largest size class, in bytes;
+   *                        larger requests are allocated without pooling
+   * @param threadCacheSize The number of buffers per size class cached by
+   *                        each platform thread
+   * @param sharedCacheSize The number of buffers per size class held in the
+   *                        shared free-list
+   * @param leakDetection   {@code true} if buffers that become unreachable
+   *                        without being released should be reported
+   */
+
+  public HBBufferPoolConfiguration
+  {
+    checkPowerOfTwo(smallestSize, "smallestSize");
+    checkPowerOfTwo(largestSize, "largestSize");
+    checkPowerOfTwo(sharedCacheSize, "sharedCacheSize");
+
+    if (largestSize < smallestSize) {
+      throw new IllegalArgumentException(
+        "largestSize %d must be >= smallestSize %d".formatted(
+          Integer.valueOf(largestSize),
+          Integer.valueOf(smallestSize))
+      );
+    }
+    if (threadCacheSize < 0) {
+      throw new IllegalArgumentException(
+        "threadCacheSize must be non-negative: %d"
+          .formatted(Integer.valueOf(threadCacheSize))
+      );
+    }
+  }
+
+  private static void checkPowerOfTwo(
+    final int value,
+    final String name)
+  {
+    if (value < 1 || Integer.bitCount(value) != 1) {
+      throw new IllegalArgumentException(
+        "%s must be a power of two: %d"
+          .formatted(name, Integer.valueOf(value))
+      );
+    }
+  }
+
+  /**
+   * The default configuration: heap buffers from 256 bytes to 1 MiB, with
+   * leak detection enabled if the {@link #LEAK_DETECTION_PROPERTY} system
+   * property is {@code true}.
+   *
+   * @return The default configuration
+   */
+
+  public static HBBufferPoolConfiguration defaults()
+  {
+    return new HBBufferPoolConfiguration(
+      false,
+      DEFAULT_SMALLEST,
+      DEFAULT_LARGEST,
+      DEFAULT_THREAD_CACHE,
+      DEFAULT_SHARED_CACHE,
+      Boolean.getBoolean(LEAK_DETECTION_PROPERTY)
+    );
+  }
+
+  /**
+   * @param newDirect {@code true} if the pool allocates direct buffers
+   *
+   * @return This configuration with the given buffer kind
+   */
+
+  public HBBufferPoolConfiguration withDirect(
+    final boolean newDirect)
+  {
+    return new HBBufferPoolConfiguration(
+      newDirect,
+      this.smallestSize,
+      this.largestSize,
+      this.threadCacheSize,
+      this.sharedCacheSize,
+      this.leakDetection
+    );
+  }
+
+  /**
+   * @param newLeakDetection {@code true} if leak detection is enabled
+   *
+   * @return This configuration with the given leak detection setting
+   */
+
+  public HBBufferPoolConfiguration withLeakDetection(
+    final boolean newLeakDetection)
+  {
+    return new HBBufferPoolConfiguration(
+      this.direct,
+      this.smallestSize,
+      this.largestSize,
+      this.threadCacheSize,
+      this.sharedCacheSize,
+      newLeakDetection
+    );
+  }
+}
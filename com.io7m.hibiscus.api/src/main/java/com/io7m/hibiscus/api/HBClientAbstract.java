@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Flow;
@@ -57,7 +58,8 @@ public abstract class HBClientAbstract<
   private volatile HBClientHandlerType<M, P, X> handler;
   @GuardedBy("stateLock")
   private HBStateType stateNow;
-  private final SubmissionPublisher<HBStateType> statePublisher;
+  @GuardedBy("stateLock")
+  private SubmissionPublisher<HBStateType> statePublisher;
 
   protected HBClientAbstract(
     final HBClientHandlerType<M, P, X> inHandler)
@@ -67,10 +69,6 @@ public abstract class HBClientAbstract<
     this.disconnectedHandler =
       Objects.requireNonNull(inHandler, "disconnectedHandler");
 
-    this.statePublisher =
-      new SubmissionPublisher<>(
-        new HBDirectExecutor(),
-        Flow.defaultBufferSize());
     this.stateLock =
       new Object();
     this.stateNow =
@@ -94,8 +92,18 @@ public abstract class HBClientAbstract<
   public final HBConnectionResultType<M, P, ?, X> connect(
     final P parameters)
     throws InterruptedException
+  {
+    return this.connect(parameters, List.of());
+  }
+
+  @Override
+  public final HBConnectionResultType<M, P, ?, X> connect(
+    final P parameters,
+    final List<M> initial)
+    throws InterruptedException
   {
     Objects.requireNonNull(parameters, "parameters");
+    Objects.requireNonNull(initial, "initial");
 
     this.checkNotClosingOrClosed();
 
@@ -108,7 +116,7 @@ public abstract class HBClientAbstract<
     this.publishState(new HBStateConnecting(parameters));
 
     try {
-      return switch (this.handler.doConnect(parameters)) {
+      return switch (this.handler.doConnect(parameters, List.copyOf(initial))) {
         case final HBConnectionError<
           M, P, HBClientHandlerType<M, P, X>, X> error -> {
           this.publishState(new HBStateConnectionFailed(
@@ -135,7 +143,11 @@ public abstract class HBClientAbstract<
           this.publishState(new HBStateConnectionSucceeded(succeeded.message()));
           this.publishState(new HBStateConnected());
           LOG.debug("Login succeeded");
-          yield new HBConnectionSucceeded<>(succeeded.message(), Void.class);
+          yield new HBConnectionSucceeded<>(
+            succeeded.message(),
+            Void.class,
+            succeeded.session()
+          );
         }
       };
     } catch (final InterruptedException e) {
@@ -151,7 +163,24 @@ public abstract class HBClientAbstract<
   @Override
   public final Flow.Publisher<HBStateType> state()
   {
-    return this.statePublisher;
+    /*
+     * Most clients are never observed, so the publisher is only created
+     * when something asks for it. State changes that happen before then
+     * would not have reached any subscriber anyway.
+     */
+
+    synchronized (this.stateLock) {
+      if (this.statePublisher == null) {
+        this.statePublisher =
+          new SubmissionPublisher<>(
+            new HBDirectExecutor(),
+            Flow.defaultBufferSize());
+        if (this.stateNow.isClosingOrClosed()) {
+          this.statePublisher.close();
+        }
+      }
+      return this.statePublisher;
+    }
   }
 
   @Override
@@ -171,6 +200,12 @@ public abstract class HBClientAbstract<
     }
   }
 
+  @Override
+  public final Optional<HBStageLatencies> stageLatencies()
+  {
+    return this.handler.transport().stageLatencies();
+  }
+
   @Override
   public final boolean isClosed()
   {
@@ -183,18 +218,22 @@ public abstract class HBClientAbstract<
   {
     LOG.trace("Close requested");
 
+    final SubmissionPublisher<HBStateType> publisher;
     synchronized (this.stateLock) {
       final var state = this.stateNow;
       if (state.isClosingOrClosed()) {
         return;
       }
       this.stateNow = new HBStateClosing();
+      publisher = this.statePublisher;
     }
 
     try {
       LOG.trace("Close starting");
-      this.statePublisher.submit(new HBStateClosed());
-      this.statePublisher.close();
+      if (publisher != null) {
+        publisher.submit(new HBStateClosed());
+        publisher.close();
+      }
     } finally {
       synchronized (this.stateLock) {
         this.stateNow = new HBStateClosed();
@@ -226,6 +265,15 @@ public abstract class HBClientAbstract<
     return this.handler.receive(timeout);
   }
 
+  @Override
+  public final boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<M> receiver)
+    throws X, InterruptedException
+  {
+    return this.handler.receive(timeout, receiver);
+  }
+
   @Override
   public final void send(
     final M message)
@@ -234,6 +282,15 @@ public abstract class HBClientAbstract<
     this.handler.send(message);
   }
 
+  @Override
+  public final void send(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.handler.send(message, priority);
+  }
+
   @Override
   public final void sendAndForget(
     final M message)
@@ -242,6 +299,15 @@ public abstract class HBClientAbstract<
     this.handler.sendAndForget(message);
   }
 
+  @Override
+  public final void sendAndForget(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.handler.sendAndForget(message, priority);
+  }
+
   @Override
   public final M sendAndWait(
     final M message,
@@ -251,6 +317,33 @@ public abstract class HBClientAbstract<
     return this.handler.sendAndWait(message, timeout);
   }
 
+  @Override
+  public final M sendAndWait(
+    final M message,
+    final HBMessagePriority priority,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.handler.sendAndWait(message, priority, timeout);
+  }
+
+  @Override
+  public final Flow.Publisher<M> sendAndStream(
+    final M message,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.handler.sendAndStream(message, timeout);
+  }
+
+  @Override
+  public final void cancel(
+    final M message)
+    throws X, InterruptedException
+  {
+    this.handler.cancel(message);
+  }
+
   private void publishState(
     final HBStateType newState)
   {
@@ -264,10 +357,14 @@ public abstract class HBClientAbstract<
 
     logStateChange(stateThen, newState);
 
+    final SubmissionPublisher<HBStateType> publisher;
     synchronized (this.stateLock) {
       this.stateNow = newState;
+      publisher = this.statePublisher;
+    }
+    if (publisher != null) {
+      publisher.submit(newState);
     }
-    this.statePublisher.submit(newState);
   }
 
   private static void logStateChange(
@@ -16,6 +16,9 @@
 
 package com.io7m.hibiscus.api;
 
+import java.time.Duration;
+import java.util.Collection;
+
 /**
  * A factory of clients.
  *
@@ -46,4 +49,37 @@ public interface HBClientFactoryType<
   T create(
     C configuration)
     throws X;
+
+  /**
+   * <p>Create and connect a client for each of the given endpoints in
+   * parallel.</p>
+   *
+   * <p>Every attempt runs concurrently, so warming up many connections takes
+   * roughly one connection round trip rather than the sum of all of them.
+   * Attempts still in progress when the deadline passes are cancelled. The
+   * caller owns the connected clients in the result; every other client is
+   * closed before this method returns.</p>
+   *
+   * @param configuration The configuration used for every client
+   * @param endpoints     The connection parameters for each endpoint
+   * @param deadline      The time allowed for the whole operation
+   *
+   * @return The per-endpoint outcomes
+   *
+   * @throws InterruptedException On interruption
+   */
+
+  default HBPreconnectResult<M, P, T> createAndConnect(
+    final C configuration,
+    final Collection<? extends P> endpoints,
+    final Duration deadline)
+    throws InterruptedException
+  {
+    return HBPreconnect.createAndConnect(
+      this,
+      configuration,
+      endpoints,
+      deadline
+    );
+  }
 }
@@ -18,6 +18,8 @@
 package com.io7m.hibiscus.api;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
@@ -50,6 +52,16 @@ public interface HBClientHandlerType<
       .receive(timeout);
   }
 
+  @Override
+  default boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<M> handler)
+    throws X, InterruptedException
+  {
+    return this.transport()
+      .receive(timeout, handler);
+  }
+
   @Override
   default void send(
     final M message)
@@ -59,6 +71,16 @@ public interface HBClientHandlerType<
       .send(message);
   }
 
+  @Override
+  default void send(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.transport()
+      .send(message, priority);
+  }
+
   @Override
   default void sendAndForget(
     final M message)
@@ -68,6 +90,16 @@ public interface HBClientHandlerType<
       .sendAndForget(message);
   }
 
+  @Override
+  default void sendAndForget(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.transport()
+      .sendAndForget(message, priority);
+  }
+
   @Override
   default M sendAndWait(
     final M message,
@@ -78,6 +110,36 @@ public interface HBClientHandlerType<
       .sendAndWait(message, timeout);
   }
 
+  @Override
+  default M sendAndWait(
+    final M message,
+    final HBMessagePriority priority,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.transport()
+      .sendAndWait(message, priority, timeout);
+  }
+
+  @Override
+  default Flow.Publisher<M> sendAndStream(
+    final M message,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.transport()
+      .sendAndStream(message, timeout);
+  }
+
+  @Override
+  default void cancel(
+    final M message)
+    throws X, InterruptedException
+  {
+    this.transport()
+      .cancel(message);
+  }
+
   /**
    * Create a new connection to the server.
    *
@@ -90,6 +152,45 @@ public interface HBClientHandlerType<
     P parameters)
     throws InterruptedException;
 
+  /**
+   * Create a new connection to the server, and send the given messages as
+   * soon as possible. Handlers that support pipelining write the messages
+   * behind the login request, so that the server can process them as soon
+   * as the login succeeds. The default implementation sends the messages
+   * once {@link #doConnect(HBConnectionParametersType)} has succeeded.
+   *
+   * @param parameters The connection parameters
+   * @param initial    The messages to send
+   *
+   * @return The connection result
+   */
+
+  default HBConnectionResultType<M, P, HBClientHandlerType<M, P, X>, X>
+  doConnect(
+    final P parameters,
+    final List<M> initial)
+    throws InterruptedException
+  {
+    final var result = this.doConnect(parameters);
+    if (result instanceof final HBConnectionSucceeded<
+      M, P, HBClientHandlerType<M, P, X>, X> succeeded) {
+      final var connected = succeeded.extraData();
+      try {
+        for (final var message : initial) {
+          connected.send(message);
+        }
+      } catch (final Exception e) {
+        try {
+          connected.close();
+        } catch (final Exception ex) {
+          e.addSuppressed(ex);
+        }
+        return new HBConnectionError<>(e);
+      }
+    }
+    return result;
+  }
+
   /**
    * @return The underlying transport
    */
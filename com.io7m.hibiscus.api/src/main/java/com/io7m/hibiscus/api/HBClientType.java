@@ -16,6 +16,8 @@
 
 package com.io7m.hibiscus.api;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Flow;
 
 /**
@@ -44,6 +46,16 @@ public interface HBClientType<
 
   Flow.Publisher<HBStateType> state();
 
+  /**
+   * @return The per-stage latencies of the client's current transport, if
+   * the transport measures them
+   */
+
+  default Optional<HBStageLatencies> stageLatencies()
+  {
+    return Optional.empty();
+  }
+
   /**
    * Attempt to connect to the server.
    *
@@ -59,6 +71,38 @@ public interface HBClientType<
     P parameters)
     throws X, InterruptedException;
 
+  /**
+   * Attempt to connect to the server, sending the given messages behind the
+   * login request. The server processes the messages once the login
+   * succeeds, and responds to them in order; the responses are read with
+   * {@code receive}. Establishing a session and sending the first requests
+   * therefore takes a single round trip. If the login fails, the messages
+   * are not processed. The default implementation sends the messages after
+   * {@link #connect(HBConnectionParametersType)} has succeeded.
+   *
+   * @param parameters The parameters
+   * @param initial    The messages to send behind the login request
+   *
+   * @return The message returned on success
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   */
+
+  default HBConnectionResultType<M, P, ?, X> connect(
+    final P parameters,
+    final List<M> initial)
+    throws X, InterruptedException
+  {
+    final var result = this.connect(parameters);
+    if (result instanceof HBConnectionSucceeded<M, P, ?, X>) {
+      for (final var message : initial) {
+        this.send(message);
+      }
+    }
+    return result;
+  }
+
   /**
    * Disconnect from the server.
    *
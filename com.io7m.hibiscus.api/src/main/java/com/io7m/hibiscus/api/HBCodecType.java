@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A codec that converts messages to and from their wire format.</p>
+ *
+ * <p>Codecs encode into, and decode from, caller-supplied buffers, so that
+ * transports are free to choose between heap and direct buffers, and to
+ * reuse buffers between messages.</p>
+ *
+ * @param <M> The type of messages
+ * @param <X> The type of exceptions
+ */
+
+public interface HBCodecType<M extends HBMessageType, X extends Exception>
+{
+  /**
+   * @param message The message
+   *
+   * @return The exact number of bytes that
+   * {@link #encode(HBMessageType, ByteBuffer)} will write for the given
+   * message
+   *
+   * @throws X On errors
+   */
+
+  int sizeOf(M message)
+    throws X;
+
+  /**
+   * Encode a message into the given buffer, starting at the buffer's
+   * current position. On return, the position of the buffer is advanced
+   * past the encoded message.
+   *
+   * @param message The message
+   * @param buffer  The output buffer
+   *
+   * @throws X On errors, including the buffer having insufficient space
+   */
+
+  void encode(
+    M message,
+    ByteBuffer buffer)
+    throws X;
+
+  /**
+   * Decode a message from the region of the given buffer between its
+   * current position and its limit. On return, the position of the buffer
+   * is advanced past the decoded message.
+   *
+   * @param buffer The input buffer
+   *
+   * @return The decoded message
+   *
+   * @throws X On errors, including malformed or truncated input
+   */
+
+  M decode(ByteBuffer buffer)
+    throws X;
+
+  /**
+   * Encode a message into a freshly allocated array.
+   *
+   * @param message The message
+   *
+   * @return The encoded message
+   *
+   * @throws X On errors
+   */
+
+  default byte[] toBytes(
+    final M message)
+    throws X
+  {
+    final var buffer = ByteBuffer.allocate(this.sizeOf(message));
+    this.encode(message, buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Decode a message from an array.
+   *
+   * @param data The encoded message
+   *
+   * @return The decoded message
+   *
+   * @throws X On errors
+   */
+
+  default M fromBytes(
+    final byte[] data)
+    throws X
+  {
+    return this.decode(ByteBuffer.wrap(data));
+  }
+}
@@ -23,5 +23,12 @@ package com.io7m.hibiscus.api;
 
 public interface HBConfigurationType
 {
+  /**
+   * @return The execution model and queue sizing tunables
+   */
 
+  default HBPerformanceConfiguration performance()
+  {
+    return HBPerformanceConfiguration.defaults();
+  }
 }
@@ -18,12 +18,15 @@
 package com.io7m.hibiscus.api;
 
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * A connection attempt succeeded.
  *
  * @param message   The message returned by the server
  * @param extraData The extra protocol-specific data
+ * @param session   The session token issued by the server, if the server
+ *                  supports session resumption
  * @param <R>       The type of extra result values
  * @param <M>       The type of messages
  * @param <P>       The type of connection parameters
@@ -36,16 +39,37 @@ public record HBConnectionSucceeded<
   R,
   X extends Exception>(
   M message,
-  R extraData)
+  R extraData,
+  Optional<HBSessionToken> session)
   implements HBConnectionResultType<M, P, R, X>
 {
   /**
    * A connection attempt succeeded.
+   *
+   * @param message   The message returned by the server
+   * @param extraData The extra protocol-specific data
+   * @param session   The session token issued by the server, if any
    */
 
   public HBConnectionSucceeded
   {
     Objects.requireNonNull(message, "message");
     Objects.requireNonNull(extraData, "extraData");
+    Objects.requireNonNull(session, "session");
+  }
+
+  /**
+   * A connection attempt succeeded, and the server did not issue a session
+   * token.
+   *
+   * @param inMessage   The message returned by the server
+   * @param inExtraData The extra protocol-specific data
+   */
+
+  public HBConnectionSucceeded(
+    final M inMessage,
+    final R inExtraData)
+  {
+    this(inMessage, inExtraData, Optional.empty());
   }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>The sending half of credit-based flow control.</p>
+ *
+ * <p>A sender holds a number of credits granted by the receiver, and must
+ * acquire one credit for every message it sends. When the credits are
+ * exhausted, the sender waits until the receiver grants more, which the
+ * receiver does only as it consumes messages (see {@link HBCreditWindow}).
+ * The number of messages in flight towards the receiver therefore never
+ * exceeds the credits the receiver has granted, however fast the sender
+ * produces them.</p>
+ *
+ * <p>Closing the gate wakes every waiting sender.</p>
+ */
+
+public final class HBCreditGate
+{
+  private final ReentrantLock lock;
+  private final Condition granted;
+  private long credits;
+  private boolean closed;
+
+  /**
+   * The sending half of credit-based flow control.
+   *
+   * @param initialCredits The credits implicitly granted when the gate is
+   *                       created
+   */
+
+  public HBCreditGate(
+    final int initialCredits)
+  {
+    if (initialCredits < 0) {
+      throw new IllegalArgumentException(
+        "Initial credits must be non-negative: %d"
+          .formatted(Integer.valueOf(initialCredits))
+      );
+    }
+
+    this.lock = new ReentrantLock();
+    this.granted = this.lock.newCondition();
+    this.credits = initialCredits;
+  }
+
+  /**
+   * Acquire a credit if one is available, without waiting.
+   *
+   * @return {@code true} if a credit was acquired
+   */
+
+  public boolean tryAcquire()
+  {
+    this.lock.lock();
+    try {
+      if (this.closed || this.credits == 0L) {
+        return false;
+      }
+      --this.credits;
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Acquire a credit, waiting up to the given timeout for one to be granted.
+   *
+   * @param timeout The timeout
+   *
+   * @return {@code true} if a credit was acquired, {@code false} if the
+   * timeout elapsed or the gate was closed
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  public boolean acquire(
+    final Duration timeout)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    long remaining = timeout.toNanos();
+    this.lock.lockInterruptibly();
+    try {
+      while (!this.closed && this.credits == 0L) {
+        if (remaining <= 0L) {
+          return false;
+        }
+        remaining = this.granted.awaitNanos(remaining);
+      }
+      if (this.closed) {
+        return false;
+      }
+      --this.credits;
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Acquire a credit, waiting as long as necessary for one to be granted.
+   *
+   * @return {@code true} if a credit was acquired, {@code false} if the
+   * gate was closed
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  public boolean acquire()
+    throws InterruptedException
+  {
+    this.lock.lockInterruptibly();
+    try {
+      while (!this.closed && this.credits == 0L) {
+        this.granted.await();
+      }
+      if (this.closed) {
+        return false;
+      }
+      --this.credits;
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Add credits granted by the receiver.
+   *
+   * @param count The number of credits
+   */
+
+  public void grant(
+    final int count)
+  {
+    if (count < 0) {
+      throw new IllegalArgumentException(
+        "Credits must be non-negative: %d".formatted(Integer.valueOf(count))
+      );
+    }
+
+    this.lock.lock();
+    try {
+      this.credits += count;
+      this.granted.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of credits currently available
+   */
+
+  public long available()
+  {
+    this.lock.lock();
+    try {
+      return this.credits;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Close the gate, waking all waiting senders.
+   */
+
+  public void close()
+  {
+    this.lock.lock();
+    try {
+      this.closed = true;
+      this.granted.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return {@code true} if the gate has been closed
+   */
+
+  public boolean isClosed()
+  {
+    this.lock.lock();
+    try {
+      return this.closed;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[HBCreditGate %d]".formatted(Long.valueOf(this.available()));
+  }
+}
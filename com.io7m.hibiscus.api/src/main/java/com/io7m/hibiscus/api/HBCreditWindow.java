@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The receiving half of credit-based flow control.</p>
+ *
+ * <p>A receiver with a window of {@code n} messages allows its peer to have
+ * at most {@code n} messages in flight. The receiver records each message
+ * that it consumes, and returns the consumed credits to the sender in
+ * batches of at least half the window, so that the sender rarely stalls but
+ * a credit grant is not sent for every message.</p>
+ *
+ * @see HBCreditGate
+ */
+
+public final class HBCreditWindow
+{
+  private final int window;
+  private final int threshold;
+  private final AtomicInteger pending;
+
+  /**
+   * The receiving half of credit-based flow control.
+   *
+   * @param inWindow The window size
+   */
+
+  public HBCreditWindow(
+    final int inWindow)
+  {
+    if (inWindow < 1) {
+      throw new IllegalArgumentException(
+        "Window must be positive: %d".formatted(Integer.valueOf(inWindow))
+      );
+    }
+
+    this.window = inWindow;
+    this.threshold = Math.max(1, inWindow / 2);
+    this.pending = new AtomicInteger(0);
+  }
+
+  /**
+   * @return The window size
+   */
+
+  public int window()
+  {
+    return this.window;
+  }
+
+  /**
+   * Record that a message has been consumed.
+   *
+   * @return The number of credits that should now be granted to the sender,
+   * or {@code 0} if no grant is due yet
+   */
+
+  public int consumed()
+  {
+    /*
+     * If another consumer increments the count between the increment and
+     * the exchange, the exchange fails and that consumer grants the
+     * combined count instead.
+     */
+
+    final var now = this.pending.incrementAndGet();
+    if (now >= this.threshold && this.pending.compareAndSet(now, 0)) {
+      return now;
+    }
+    return 0;
+  }
+
+  /**
+   * @return The number of consumed messages not yet granted back
+   */
+
+  public int pending()
+  {
+    return this.pending.get();
+  }
+}
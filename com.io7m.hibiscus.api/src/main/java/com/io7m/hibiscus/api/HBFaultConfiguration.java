@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * <p>The faults injected by a {@link HBFaultInjectingTransport}.</p>
+ *
+ * <p>All random decisions are drawn from a generator initialized with the
+ * given seed, and so a sequence of messages sent in the same order will
+ * always experience the same faults.</p>
+ *
+ * @param seed                    The random seed
+ * @param latency                 The mean one-way latency
+ * @param latencyDistribution     The distribution of latency values
+ * @param jitter                  The maximum additional uniformly distributed
+ *                                delay added to each message
+ * @param lossProbability         The probability that a message is dropped
+ * @param duplicationProbability  The probability that a message is delivered
+ *                                twice
+ * @param reorderProbability      The probability that a message is held back
+ *                                so that later messages overtake it
+ * @param reorderDelay            The time for which a reordered message is
+ *                                held back
+ * @param bandwidthBytesPerSecond The link bandwidth, or {@code 0} for an
+ *                                unlimited link
+ */
+
+public record HBFaultConfiguration(
+  long seed,
+  Duration latency,
+  HBFaultDistribution latencyDistribution,
+  Duration jitter,
+  double lossProbability,
+  double duplicationProbability,
+  double reorderProbability,
+  Duration reorderDelay,
+  long bandwidthBytesPerSecond)
+{
+  /**
+   * <p>The faults injected by a {@link HBFaultInjectingTransport}.</p>
+   *
+   * @param seed                    The random seed
+   * @param latency                 The mean one-way latency
+   * @param latencyDistribution     The distribution of latency values
+   * @param jitter                  The maximum additional uniformly
+   *                                distributed delay added to each message
+   * @param lossProbability         The probability that a message is dropped
+   * @param duplicationProbability  The probability that a message is
+   *                                delivered twice
+   * @param reorderProbability      The probability that a message is held
+   *                                back so that later messages overtake it
+   * @param reorderDelay            The time for which a reordered message is
+   *                                held back
+   * @param bandwidthBytesPerSecond The link bandwidth, or {@code 0} for an
+   *                                unlimited link
+   */
+
+  public HBFaultConfiguration
+  {
+    Objects.requireNonNull(latency, "latency");
+    Objects.requireNonNull(latencyDistribution, "latencyDistribution");
+    Objects.requireNonNull(jitter, "jitter");
+    Objects.requireNonNull(reorderDelay, "reorderDelay");
+
+    checkNonNegative(latency, "latency");
+    checkNonNegative(jitter, "jitter");
+    checkNonNegative(reorderDelay, "reorderDelay");
+    checkProbability(lossProbability, "lossProbability");
+    checkProbability(duplicationProbability, "duplicationProbability");
+    checkProbability(reorderProbability, "reorderProbability");
+
+    if (bandwidthBytesPerSecond < 0L) {
+      throw new IllegalArgumentException(
+        "Bandwidth must be non-negative: %d"
+          .formatted(Long.valueOf(bandwidthBytesPerSecond))
+      );
+    }
+  }
+
+  private static void checkNonNegative(
+    final Duration duration,
+    final String name)
+  {
+    if (duration.isNegative()) {
+      throw new IllegalArgumentException(
+        "%s must be non-negative: %s".formatted(name, duration)
+      );
+    }
+  }
+
+  private static void checkProbability(
+    final double p,
+    final String name)
+  {
+    if (!(p >= 0.0 && p <= 1.0)) {
+      throw new IllegalArgumentException(
+        "%s must be in the range [0, 1]: %s"
+          .formatted(name, Double.valueOf(p))
+      );
+    }
+  }
+
+  /**
+   * @param seed The random seed
+   *
+   * @return A configuration that injects no faults
+   */
+
+  public static HBFaultConfiguration none(
+    final long seed)
+  {
+    return new HBFaultConfiguration(
+      seed,
+      Duration.ZERO,
+      HBFaultDistribution.CONSTANT,
+      Duration.ZERO,
+      0.0,
+      0.0,
+      0.0,
+      Duration.ZERO,
+      0L
+    );
+  }
+
+  /**
+   * @param newLatency      The mean one-way latency
+   * @param newDistribution The distribution of latency values
+   * @param newJitter       The maximum additional delay
+   *
+   * @return This configuration with the given latency
+   */
+
+  public HBFaultConfiguration withLatency(
+    final Duration newLatency,
+    final HBFaultDistribution newDistribution,
+    final Duration newJitter)
+  {
+    return new HBFaultConfiguration(
+      this.seed,
+      newLatency,
+      newDistribution,
+      newJitter,
+      this.lossProbability,
+      this.duplicationProbability,
+      this.reorderProbability,
+      this.reorderDelay,
+      this.bandwidthBytesPerSecond
+    );
+  }
+
+  /**
+   * @param newLoss        The probability that a message is dropped
+   * @param newDuplication The probability that a message is delivered twice
+   *
+   * @return This configuration with the given loss and duplication
+   */
+
+  public HBFaultConfiguration withLoss(
+    final double newLoss,
+    final double newDuplication)
+  {
+    return new HBFaultConfiguration(
+      this.seed,
+      this.latency,
+      this.latencyDistribution,
+      this.jitter,
+      newLoss,
+      newDuplication,
+      this.reorderProbability,
+      this.reorderDelay,
+      this.bandwidthBytesPerSecond
+    );
+  }
+
+  /**
+   * @param newProbability The probability that a message is held back
+   * @param newDelay       The time for which a message is held back
+   *
+   * @return This configuration with the given reordering
+   */
+
+  public HBFaultConfiguration withReordering(
+    final double newProbability,
+    final Duration newDelay)
+  {
+    return new HBFaultConfiguration(
+      this.seed,
+      this.latency,
+      this.latencyDistribution,
+      this.jitter,
+      this.lossProbability,
+      this.duplicationProbability,
+      newProbability,
+      newDelay,
+      this.bandwidthBytesPerSecond
+    );
+  }
+
+  /**
+   * @param newBandwidth The link bandwidth, or {@code 0} for unlimited
+   *
+   * @return This configuration with the given bandwidth
+   */
+
+  public HBFaultConfiguration withBandwidth(
+    final long newBandwidth)
+  {
+    return new HBFaultConfiguration(
+      this.seed,
+      this.latency,
+      this.latencyDistribution,
+      this.jitter,
+      this.lossProbability,
+      this.duplicationProbability,
+      this.reorderProbability,
+      this.reorderDelay,
+      newBandwidth
+    );
+  }
+}
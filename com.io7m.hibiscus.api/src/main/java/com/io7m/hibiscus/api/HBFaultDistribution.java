@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The distribution from which injected latency values are drawn.
+ *
+ * @see HBFaultConfiguration
+ */
+
+public enum HBFaultDistribution
+{
+  /**
+   * Every message is delayed by exactly the mean latency.
+   */
+
+  CONSTANT {
+    @Override
+    long sample(
+      final RandomGenerator random,
+      final long meanNanos)
+    {
+      return meanNanos;
+    }
+  },
+
+  /**
+   * Delays are uniformly distributed between zero and twice the mean
+   * latency.
+   */
+
+  UNIFORM {
+    @Override
+    long sample(
+      final RandomGenerator random,
+      final long meanNanos)
+    {
+      return (long) (random.nextDouble() * 2.0 * (double) meanNanos);
+    }
+  },
+
+  /**
+   * Delays are exponentially distributed around the mean latency, giving
+   * occasional long delays.
+   */
+
+  EXPONENTIAL {
+    @Override
+    long sample(
+      final RandomGenerator random,
+      final long meanNanos)
+    {
+      return (long) (random.nextExponential() * (double) meanNanos);
+    }
+  },
+
+  /**
+   * Delays are normally distributed around the mean latency with a standard
+   * deviation of a quarter of the mean, clamped at zero.
+   */
+
+  NORMAL {
+    @Override
+    long sample(
+      final RandomGenerator random,
+      final long meanNanos)
+    {
+      final var deviation = (double) meanNanos / 4.0;
+      final var value = random.nextGaussian((double) meanNanos, deviation);
+      return Math.max(0L, (long) value);
+    }
+  };
+
+  abstract long sample(
+    RandomGenerator random,
+    long meanNanos);
+}
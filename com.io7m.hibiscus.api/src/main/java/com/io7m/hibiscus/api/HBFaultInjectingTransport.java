@@ -0,0 +1,515 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>A transport decorator that injects network faults into outbound
+ * messages.</p>
+ *
+ * <p>Each message passed to one of the {@code send} methods is subjected to
+ * the faults described by a {@link HBFaultConfiguration}: it may be dropped,
+ * duplicated, held back so that later messages overtake it, and is delayed
+ * by a latency value drawn from the configured distribution plus jitter.
+ * When a bandwidth is configured, messages additionally queue behind each
+ * other for the time that their size would occupy the link. Messages that
+ * survive are handed to the underlying transport from a single delivery
+ * thread once their delay has elapsed.</p>
+ *
+ * <p>The underlying transport is never written to by more than one thread
+ * at a time: sends happen only on the delivery thread, and cancellations
+ * made by callers are serialized with them. A transport whose bookkeeping
+ * for sent messages assumes a single writer can therefore be wrapped
+ * safely.</p>
+ *
+ * <p>Every random decision is made on the calling thread, in call order,
+ * from a generator seeded by the configuration. Faults therefore only
+ * affect the outbound direction; wrap both ends of a connection (such as
+ * the two halves of a {@link HBLoopbackPair}) to disturb both
+ * directions.</p>
+ *
+ * @param <M> The type of messages
+ * @param <X> The type of exceptions
+ */
+
+public final class HBFaultInjectingTransport<
+  M extends HBMessageType,
+  X extends Exception>
+  implements HBTransportType<M, X>
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBFaultInjectingTransport.class);
+
+  private static final long NANOS_PER_SECOND =
+    1_000_000_000L;
+  private static final Duration POLL_SLICE =
+    Duration.ofMillis(10L);
+
+  private final HBTransportType<M, X> delegate;
+  private final HBFaultConfiguration configuration;
+  private final ToIntFunction<M> sizes;
+  private final Function<Throwable, X> exceptions;
+  private final SplittableRandom random;
+  private final DelayQueue<Delivery<M>> deliveries;
+  private final ConcurrentHashMap<M, CompletableFuture<M>> waiting;
+  private final ConcurrentLinkedQueue<HBReadType<M>> stash;
+  private final AtomicReference<Throwable> failure;
+  private final Thread deliveryThread;
+  private final ReentrantLock delegateLock;
+  private long linkFreeAt;
+  private long sequence;
+  private volatile boolean closed;
+
+  private HBFaultInjectingTransport(
+    final HBTransportType<M, X> inDelegate,
+    final HBFaultConfiguration inConfiguration,
+    final ToIntFunction<M> inSizes,
+    final Function<Throwable, X> inExceptions)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.sizes =
+      Objects.requireNonNull(inSizes, "sizes");
+    this.exceptions =
+      Objects.requireNonNull(inExceptions, "exceptions");
+    this.random =
+      new SplittableRandom(inConfiguration.seed());
+    this.deliveries =
+      new DelayQueue<>();
+    this.waiting =
+      new ConcurrentHashMap<>();
+    this.stash =
+      new ConcurrentLinkedQueue<>();
+    this.failure =
+      new AtomicReference<>();
+    this.delegateLock =
+      new ReentrantLock();
+    this.deliveryThread =
+      Thread.ofVirtual()
+        .name("com.io7m.hibiscus.faults")
+        .unstarted(this::deliveryLoop);
+  }
+
+  /**
+   * Wrap a transport.
+   *
+   * @param delegate      The underlying transport
+   * @param configuration The faults to inject
+   * @param sizes         A function that yields the encoded size of a
+   *                      message in bytes, used to apply bandwidth limits
+   * @param exceptions    A function to convert arbitrary exceptions to
+   *                      {@code X}
+   * @param <M>           The type of messages
+   * @param <X>           The type of exceptions
+   *
+   * @return A fault-injecting transport
+   */
+
+  public static <M extends HBMessageType, X extends Exception>
+  HBFaultInjectingTransport<M, X> create(
+    final HBTransportType<M, X> delegate,
+    final HBFaultConfiguration configuration,
+    final ToIntFunction<M> sizes,
+    final Function<Throwable, X> exceptions)
+  {
+    final var transport =
+      new HBFaultInjectingTransport<>(
+        delegate,
+        configuration,
+        sizes,
+        exceptions
+      );
+    transport.deliveryThread.start();
+    return transport;
+  }
+
+  /**
+   * @return The faults injected by this transport
+   */
+
+  public HBFaultConfiguration configuration()
+  {
+    return this.configuration;
+  }
+
+  /**
+   * @return The number of messages currently delayed in transit
+   */
+
+  public int inTransit()
+  {
+    return this.deliveries.size();
+  }
+
+  private void deliveryLoop()
+  {
+    while (!this.closed) {
+      final Delivery<M> delivery;
+      try {
+        delivery = this.deliveries.take();
+      } catch (final InterruptedException e) {
+        return;
+      }
+
+      this.delegateLock.lock();
+      try {
+        if (delivery.tracked()) {
+          this.delegate.send(delivery.message(), delivery.priority());
+        } else {
+          this.delegate.sendAndForget(delivery.message(), delivery.priority());
+        }
+      } catch (final InterruptedException e) {
+        return;
+      } catch (final Exception e) {
+        LOG.debug("Delivery failed: ", e);
+        this.failure.compareAndSet(null, e);
+        final var waiter = this.waiting.remove(delivery.message());
+        if (waiter != null) {
+          waiter.completeExceptionally(e);
+        }
+      } finally {
+        this.delegateLock.unlock();
+      }
+    }
+  }
+
+  private void checkUsable()
+    throws X
+  {
+    if (this.closed) {
+      throw this.exceptions.apply(new ClosedChannelException());
+    }
+    final var error = this.failure.get();
+    if (error != null) {
+      throw this.exceptions.apply(error);
+    }
+  }
+
+  private void schedule(
+    final M message,
+    final HBMessagePriority priority,
+    final boolean tracked)
+    throws X
+  {
+    Objects.requireNonNull(message, "message");
+    Objects.requireNonNull(priority, "priority");
+    this.checkUsable();
+
+    final var size = this.sizes.applyAsInt(message);
+    final var now = System.nanoTime();
+
+    synchronized (this.random) {
+      if (this.random.nextDouble() < this.configuration.lossProbability()) {
+        LOG.trace("Dropped: {}", message);
+        return;
+      }
+
+      final var copies =
+        this.random.nextDouble() < this.configuration.duplicationProbability()
+          ? 2 : 1;
+
+      for (int copy = 0; copy < copies; ++copy) {
+        final var due = this.departure(now, size) + this.delay();
+        final var sequenceNow = this.sequence;
+        this.sequence = sequenceNow + 1L;
+        this.deliveries.add(new Delivery<>(
+          due,
+          sequenceNow,
+          message,
+          priority,
+          tracked && copy == 0
+        ));
+      }
+    }
+  }
+
+  /**
+   * Reserve the link for the transmission of a message of the given size.
+   * Must be called with the random generator lock held.
+   */
+
+  private long departure(
+    final long now,
+    final int size)
+  {
+    final var bandwidth = this.configuration.bandwidthBytesPerSecond();
+    if (bandwidth == 0L) {
+      return now;
+    }
+
+    final var start = Math.max(now, this.linkFreeAt);
+    final var transmit = (size * NANOS_PER_SECOND) / bandwidth;
+    this.linkFreeAt = start + transmit;
+    return this.linkFreeAt;
+  }
+
+  /**
+   * Draw a delay for a single message. Must be called with the random
+   * generator lock held.
+   */
+
+  private long delay()
+  {
+    final var c = this.configuration;
+
+    var time =
+      c.latencyDistribution().sample(this.random, c.latency().toNanos());
+
+    final var jitter = c.jitter().toNanos();
+    if (jitter > 0L) {
+      time += this.random.nextLong(jitter);
+    }
+    if (this.random.nextDouble() < c.reorderProbability()) {
+      time += c.reorderDelay().toNanos();
+    }
+    return time;
+  }
+
+  /**
+   * Pass a read result to a waiting {@code sendAndWait} call, if there is
+   * one.
+   *
+   * @return {@code true} if the result was consumed by a waiter
+   */
+
+  private boolean route(
+    final HBReadType<M> read)
+  {
+    if (read instanceof final HBReadResponse<M> response) {
+      final var waiter = this.waiting.remove(response.message());
+      if (waiter != null) {
+        waiter.complete(response.response());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public HBReadType<M> receive(
+    final Duration timeout)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+    this.checkUsable();
+
+    final var end = System.nanoTime() + timeout.toNanos();
+    while (true) {
+      final var stashed = this.stash.poll();
+      if (stashed != null) {
+        return stashed;
+      }
+
+      final var remaining = Math.max(0L, end - System.nanoTime());
+      final var read = this.delegate.receive(Duration.ofNanos(remaining));
+      if (!this.route(read)) {
+        return read;
+      }
+      if (System.nanoTime() >= end) {
+        return new HBReadNothing<>();
+      }
+    }
+  }
+
+  @Override
+  public void send(
+    final M message)
+    throws X
+  {
+    this.send(message, message.priority());
+  }
+
+  @Override
+  public void send(
+    final M message,
+    final HBMessagePriority priority)
+    throws X
+  {
+    this.schedule(message, priority, true);
+  }
+
+  @Override
+  public void sendAndForget(
+    final M message)
+    throws X
+  {
+    this.sendAndForget(message, message.priority());
+  }
+
+  @Override
+  public void sendAndForget(
+    final M message,
+    final HBMessagePriority priority)
+    throws X
+  {
+    this.schedule(message, priority, false);
+  }
+
+  @Override
+  public M sendAndWait(
+    final M message,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.sendAndWait(message, message.priority(), timeout);
+  }
+
+  @Override
+  public M sendAndWait(
+    final M message,
+    final HBMessagePriority priority,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    final var future = new CompletableFuture<M>();
+    this.waiting.put(message, future);
+
+    try {
+      this.schedule(message, priority, true);
+
+      final var end = System.nanoTime() + timeout.toNanos();
+      while (!future.isDone()) {
+        final var remaining = end - System.nanoTime();
+        if (remaining <= 0L) {
+          this.cancel(message);
+          throw new TimeoutException(
+            "No response received in %s".formatted(timeout));
+        }
+
+        final var slice =
+          Duration.ofNanos(Math.min(remaining, POLL_SLICE.toNanos()));
+        final var read = this.delegate.receive(slice);
+        if (read instanceof HBReadNothing<M>) {
+          continue;
+        }
+        if (!this.route(read)) {
+          this.stash.add(read);
+        }
+      }
+
+      return future.join();
+    } catch (final CompletionException e) {
+      throw this.exceptions.apply(e.getCause());
+    } finally {
+      this.waiting.remove(message);
+    }
+  }
+
+  @Override
+  public void cancel(
+    final M message)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(message, "message");
+
+    this.waiting.remove(message);
+    this.deliveries.removeIf(d -> d.message() == message);
+
+    this.delegateLock.lock();
+    try {
+      this.delegate.cancel(message);
+    } finally {
+      this.delegateLock.unlock();
+    }
+  }
+
+  @Override
+  public Optional<HBFlightRecorder<M>> flightRecorder()
+  {
+    return this.delegate.flightRecorder();
+  }
+
+  @Override
+  public Optional<HBStageLatencies> stageLatencies()
+  {
+    return this.delegate.stageLatencies();
+  }
+
+  @Override
+  public boolean isClosed()
+  {
+    return this.closed || this.delegate.isClosed();
+  }
+
+  @Override
+  public void close()
+    throws X
+  {
+    this.closed = true;
+    this.deliveryThread.interrupt();
+    this.deliveries.clear();
+
+    for (final var waiter : this.waiting.values()) {
+      waiter.completeExceptionally(new ClosedChannelException());
+    }
+    this.waiting.clear();
+    this.delegate.close();
+  }
+
+  private record Delivery<M>(
+    long due,
+    long sequence,
+    M message,
+    HBMessagePriority priority,
+    boolean tracked)
+    implements Delayed
+  {
+    @Override
+    public long getDelay(
+      final TimeUnit unit)
+    {
+      return unit.convert(this.due - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(
+      final Delayed other)
+    {
+      final var o = (Delivery<?>) other;
+      final var c = Long.compare(this.due, o.due);
+      if (c != 0) {
+        return c;
+      }
+      return Long.compare(this.sequence, o.sequence);
+    }
+  }
+}
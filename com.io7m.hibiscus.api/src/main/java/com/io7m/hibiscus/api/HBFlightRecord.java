@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A single message recorded by a {@link HBFlightRecorder}.
+ *
+ * @param sequence      The sequence number of the record
+ * @param time          The time the message was recorded
+ * @param direction     The direction of the message
+ * @param messageClass  The class of the message
+ * @param messageId     The message ID
+ * @param correlationId The ID of the message to which this message is a
+ *                      response, if any
+ * @param size          The encoded size of the message in bytes, or
+ *                      {@code -1} if the message was not encoded
+ */
+
+public record HBFlightRecord(
+  long sequence,
+  Instant time,
+  HBFlightDirection direction,
+  Class<?> messageClass,
+  UUID messageId,
+  Optional<UUID> correlationId,
+  int size)
+{
+  /**
+   * A single message recorded by a {@link HBFlightRecorder}.
+   *
+   * @param sequence      The sequence number of the record
+   * @param time          The time the message was recorded
+   * @param direction     The direction of the message
+   * @param messageClass  The class of the message
+   * @param messageId     The message ID
+   * @param correlationId The ID of the message to which this message is a
+   *                      response, if any
+   * @param size          The encoded size of the message in bytes, or
+   *                      {@code -1} if the message was not encoded
+   */
+
+  public HBFlightRecord
+  {
+    Objects.requireNonNull(time, "time");
+    Objects.requireNonNull(direction, "direction");
+    Objects.requireNonNull(messageClass, "messageClass");
+    Objects.requireNonNull(messageId, "messageId");
+    Objects.requireNonNull(correlationId, "correlationId");
+  }
+
+  @Override
+  public String toString()
+  {
+    return "%d %s %-8s %s %s %s %d".formatted(
+      Long.valueOf(this.sequence),
+      this.time,
+      this.direction,
+      this.messageClass.getSimpleName(),
+      this.messageId,
+      this.correlationId.map(UUID::toString).orElse("-"),
+      Integer.valueOf(this.size)
+    );
+  }
+}
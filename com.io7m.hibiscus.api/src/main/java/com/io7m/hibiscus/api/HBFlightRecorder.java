@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>A fixed-size record of the most recent messages passing through a
+ * transport.</p>
+ *
+ * <p>The recorder is a ring buffer of preallocated slots. Writers claim a
+ * slot with a single atomic increment and fill it in place, so recording a
+ * message takes no locks and allocates nothing. Each slot is guarded by a
+ * sequence stamp; readers that observe a slot being rewritten while they
+ * copy it simply skip that slot. A dump is therefore a best-effort snapshot
+ * that never blocks writers.</p>
+ *
+ * @param <M> The type of messages
+ */
+
+public final class HBFlightRecorder<M extends HBMessageType>
+{
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private final HBMessageIdentityType<M> identity;
+  private final int mask;
+  private final long epochOffsetNanos;
+  private final AtomicLong next;
+  private final AtomicLongArray stamps;
+  private final long[] times;
+  private final HBFlightDirection[] directions;
+  private final Class<?>[] classes;
+  private final UUID[] messageIds;
+  private final UUID[] correlationIds;
+  private final int[] sizes;
+  private final AtomicReference<List<HBFlightRecord>> lastCapture;
+
+  private HBFlightRecorder(
+    final HBMessageIdentityType<M> inIdentity,
+    final int inCapacity)
+  {
+    this.identity =
+      Objects.requireNonNull(inIdentity, "identity");
+
+    this.mask = inCapacity - 1;
+    this.epochOffsetNanos =
+      (System.currentTimeMillis() * NANOS_PER_MILLI) - System.nanoTime();
+    this.next = new AtomicLong(0L);
+    this.stamps = new AtomicLongArray(inCapacity);
+    this.times = new long[inCapacity];
+    this.directions = new HBFlightDirection[inCapacity];
+    this.classes = new Class<?>[inCapacity];
+    this.messageIds = new UUID[inCapacity];
+    this.correlationIds = new UUID[inCapacity];
+    this.sizes = new int[inCapacity];
+    this.lastCapture = new AtomicReference<>(List.of());
+  }
+
+  /**
+   * Create a flight recorder.
+   *
+   * @param identity The functions used to extract message identifiers
+   * @param capacity The minimum number of messages retained; rounded up to
+   *                 the next power of two
+   * @param <M>      The type of messages
+   *
+   * @return A new flight recorder
+   */
+
+  public static <M extends HBMessageType> HBFlightRecorder<M> create(
+    final HBMessageIdentityType<M> identity,
+    final int capacity)
+  {
+    if (capacity < 1 || capacity > MAXIMUM_CAPACITY) {
+      throw new IllegalArgumentException(
+        "Capacity must be in the range [1, 2^30]: %d"
+          .formatted(Integer.valueOf(capacity))
+      );
+    }
+
+    final var rounded =
+      Integer.highestOneBit(capacity) == capacity
+        ? capacity
+        : Integer.highestOneBit(capacity) << 1;
+
+    return new HBFlightRecorder<>(identity, rounded);
+  }
+
+  /**
+   * @return The number of messages retained by the recorder
+   */
+
+  public int capacity()
+  {
+    return this.mask + 1;
+  }
+
+  /**
+   * Record a message.
+   *
+   * @param direction The direction of the message
+   * @param message   The message
+   * @param size      The encoded size of the message in bytes, or
+   *                  {@code -1} if the message was not encoded
+   */
+
+  public void record(
+    final HBFlightDirection direction,
+    final M message,
+    final int size)
+  {
+    final var sequence = this.next.getAndIncrement();
+    final var slot = (int) (sequence & (long) this.mask);
+
+    /*
+     * An odd stamp marks the slot as being written; the final even stamp
+     * encodes the sequence number so that readers can detect both
+     * in-progress and completed rewrites.
+     */
+
+    this.stamps.set(slot, (sequence << 1) | 1L);
+    VarHandle.storeStoreFence();
+    this.times[slot] = System.nanoTime();
+    this.directions[slot] = direction;
+    this.classes[slot] = message.getClass();
+    this.messageIds[slot] = this.identity.messageId(message);
+    this.correlationIds[slot] =
+      this.identity.correlationId(message).orElse(null);
+    this.sizes[slot] = size;
+    this.stamps.setRelease(slot, (sequence + 1L) << 1);
+  }
+
+  /**
+   * @return The number of messages recorded since the recorder was created
+   */
+
+  public long recorded()
+  {
+    return this.next.get();
+  }
+
+  /**
+   * Copy the retained records, oldest first.
+   *
+   * @return A snapshot of the recorder
+   */
+
+  public List<HBFlightRecord> dump()
+  {
+    final var end = this.next.get();
+    final var start = Math.max(0L, end - (long) this.capacity());
+    final var results = new ArrayList<HBFlightRecord>((int) (end - start));
+
+    for (long sequence = start; sequence < end; ++sequence) {
+      final var slot = (int) (sequence & (long) this.mask);
+      final var expected = (sequence + 1L) << 1;
+
+      if (this.stamps.getAcquire(slot) != expected) {
+        continue;
+      }
+
+      final var time = this.times[slot];
+      final var direction = this.directions[slot];
+      final var clazz = this.classes[slot];
+      final var messageId = this.messageIds[slot];
+      final var correlationId = this.correlationIds[slot];
+      final var size = this.sizes[slot];
+
+      VarHandle.loadLoadFence();
+      if (this.stamps.get(slot) != expected) {
+        continue;
+      }
+
+      results.add(new HBFlightRecord(
+        sequence,
+        this.toInstant(time),
+        direction,
+        clazz,
+        messageId,
+        Optional.ofNullable(correlationId),
+        size
+      ));
+    }
+    return results;
+  }
+
+  /**
+   * Take a snapshot of the recorder and retain it as the most recent
+   * capture. Transports call this when a {@code sendAndWait} operation
+   * times out, so that the traffic leading up to the timeout can be
+   * inspected afterwards.
+   *
+   * @return The captured records
+   *
+   * @see #lastCapture()
+   */
+
+  public List<HBFlightRecord> capture()
+  {
+    final var records = List.copyOf(this.dump());
+    this.lastCapture.set(records);
+    return records;
+  }
+
+  /**
+   * @return The records retained by the most recent call to
+   * {@link #capture()}
+   */
+
+  public List<HBFlightRecord> lastCapture()
+  {
+    return this.lastCapture.get();
+  }
+
+  private Instant toInstant(
+    final long nanoTime)
+  {
+    final var epochNanos = nanoTime + this.epochOffsetNanos;
+    return Instant.ofEpochSecond(0L, epochNanos);
+  }
+}
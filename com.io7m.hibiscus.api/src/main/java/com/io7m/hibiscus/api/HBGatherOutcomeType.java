@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+
+/**
+ * The outcome of a scatter/gather operation for a single client.
+ *
+ * @param <C> The type of clients
+ * @param <M> The type of messages
+ *
+ * @see HBScatterGather
+ */
+
+public sealed interface HBGatherOutcomeType<C, M extends HBMessageType>
+{
+  /**
+   * @return The client
+   */
+
+  C client();
+
+  /**
+   * The client returned a response.
+   *
+   * @param client   The client
+   * @param response The response
+   * @param <C>      The type of clients
+   * @param <M>      The type of messages
+   */
+
+  record HBGatherSucceeded<C, M extends HBMessageType>(
+    C client,
+    M response)
+    implements HBGatherOutcomeType<C, M>
+  {
+    /**
+     * The client returned a response.
+     */
+
+    public HBGatherSucceeded
+    {
+      Objects.requireNonNull(client, "client");
+      Objects.requireNonNull(response, "response");
+    }
+  }
+
+  /**
+   * The client failed with an exception, including timing out.
+   *
+   * @param client    The client
+   * @param exception The exception
+   * @param <C>       The type of clients
+   * @param <M>       The type of messages
+   */
+
+  record HBGatherFailed<C, M extends HBMessageType>(
+    C client,
+    Exception exception)
+    implements HBGatherOutcomeType<C, M>
+  {
+    /**
+     * The client failed with an exception, including timing out.
+     */
+
+    public HBGatherFailed
+    {
+      Objects.requireNonNull(client, "client");
+      Objects.requireNonNull(exception, "exception");
+    }
+  }
+
+  /**
+   * The client had not responded when the operation completed, and the
+   * request was cancelled.
+   *
+   * @param client The client
+   * @param <C>    The type of clients
+   * @param <M>    The type of messages
+   */
+
+  record HBGatherCancelled<C, M extends HBMessageType>(
+    C client)
+    implements HBGatherOutcomeType<C, M>
+  {
+    /**
+     * The client had not responded when the operation completed, and the
+     * request was cancelled.
+     */
+
+    public HBGatherCancelled
+    {
+      Objects.requireNonNull(client, "client");
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The policy that decides when a scatter/gather operation is complete.
+ *
+ * @see HBScatterGather
+ */
+
+public sealed interface HBGatherPolicyType
+{
+  /**
+   * @param clients The number of clients taking part in the operation
+   *
+   * @return The number of successful responses required to complete
+   */
+
+  int required(int clients);
+
+  /**
+   * Every client must respond successfully.
+   */
+
+  record HBGatherAll()
+    implements HBGatherPolicyType
+  {
+    @Override
+    public int required(
+      final int clients)
+    {
+      return clients;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "ALL";
+    }
+  }
+
+  /**
+   * The first successful response completes the operation.
+   */
+
+  record HBGatherAny()
+    implements HBGatherPolicyType
+  {
+    @Override
+    public int required(
+      final int clients)
+    {
+      return Math.min(1, clients);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "ANY";
+    }
+  }
+
+  /**
+   * A fixed number of successful responses completes the operation.
+   *
+   * @param count The number of successful responses required
+   */
+
+  record HBGatherQuorum(int count)
+    implements HBGatherPolicyType
+  {
+    /**
+     * A fixed number of successful responses completes the operation.
+     */
+
+    public HBGatherQuorum
+    {
+      if (count < 1) {
+        throw new IllegalArgumentException(
+          "Quorum must be positive: %d".formatted(Integer.valueOf(count))
+        );
+      }
+    }
+
+    /**
+     * @param clients The number of clients
+     *
+     * @return A quorum policy requiring a strict majority of the clients
+     */
+
+    public static HBGatherQuorum majorityOf(
+      final int clients)
+    {
+      return new HBGatherQuorum((clients / 2) + 1);
+    }
+
+    @Override
+    public int required(
+      final int clients)
+    {
+      return Math.min(this.count, clients);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "QUORUM(%d)".formatted(Integer.valueOf(this.count));
+    }
+  }
+}
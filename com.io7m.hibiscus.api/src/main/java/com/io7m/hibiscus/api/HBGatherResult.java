@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherSucceeded;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The result of a scatter/gather operation.
+ *
+ * @param policy    The completion policy
+ * @param satisfied {@code true} if the policy was satisfied
+ * @param outcomes  The per-client outcomes, in the order the clients were
+ *                  given
+ * @param <C>       The type of clients
+ * @param <M>       The type of messages
+ *
+ * @see HBScatterGather
+ */
+
+public record HBGatherResult<C, M extends HBMessageType>(
+  HBGatherPolicyType policy,
+  boolean satisfied,
+  List<HBGatherOutcomeType<C, M>> outcomes)
+{
+  /**
+   * The result of a scatter/gather operation.
+   *
+   * @param policy    The completion policy
+   * @param satisfied {@code true} if the policy was satisfied
+   * @param outcomes  The per-client outcomes, in the order the clients were
+   *                  given
+   */
+
+  public HBGatherResult
+  {
+    Objects.requireNonNull(policy, "policy");
+    outcomes = List.copyOf(outcomes);
+  }
+
+  /**
+   * @return The responses of the clients that responded successfully
+   */
+
+  public List<M> responses()
+  {
+    return this.outcomes.stream()
+      .filter(o -> o instanceof HBGatherSucceeded<C, M>)
+      .map(o -> ((HBGatherSucceeded<C, M>) o).response())
+      .toList();
+  }
+}
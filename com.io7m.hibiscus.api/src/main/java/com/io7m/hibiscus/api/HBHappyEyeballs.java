@@ -0,0 +1,380 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Connection racing across every address of a host, after RFC 8305
+ * ("Happy Eyeballs").</p>
+ *
+ * <p>Attempts are made in order, alternating between address families.
+ * Rather than waiting for each attempt to fail before trying the next
+ * address, a new attempt is started alongside the existing ones whenever
+ * the configured delay passes without a connection, and immediately
+ * whenever an attempt fails. The first socket to connect is returned, and
+ * every other attempt is abandoned and its socket closed. An unreachable or
+ * blackholed address therefore costs one attempt delay rather than a full
+ * operating system connect timeout.</p>
+ *
+ * @see HBHappyEyeballsConfiguration
+ */
+
+public final class HBHappyEyeballs
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBHappyEyeballs.class);
+
+  private HBHappyEyeballs()
+  {
+
+  }
+
+  /**
+   * Resolve every address of the given host, in the order in which
+   * connections to them should be attempted.
+   *
+   * @param host The host name or address literal
+   * @param port The port
+   *
+   * @return The addresses
+   *
+   * @throws UnknownHostException If the host has no addresses
+   * @see #order(List)
+   */
+
+  public static List<InetSocketAddress> resolve(
+    final String host,
+    final int port)
+    throws UnknownHostException
+  {
+    Objects.requireNonNull(host, "host");
+
+    return order(Arrays.asList(InetAddress.getAllByName(host)))
+      .stream()
+      .map(address -> new InetSocketAddress(address, port))
+      .toList();
+  }
+
+  /**
+   * Reorder the given addresses so that address families alternate,
+   * starting with the family of the first address. The relative order of
+   * addresses within each family is preserved.
+   *
+   * @param addresses The addresses, in order of preference
+   *
+   * @return The reordered addresses
+   */
+
+  public static List<InetAddress> order(
+    final List<InetAddress> addresses)
+  {
+    Objects.requireNonNull(addresses, "addresses");
+
+    if (addresses.isEmpty()) {
+      return List.of();
+    }
+
+    final var firstIsV6 =
+      addresses.get(0) instanceof Inet6Address;
+    final var first =
+      new ArrayList<InetAddress>();
+    final var second =
+      new ArrayList<InetAddress>();
+
+    for (final var address : addresses) {
+      if (address instanceof Inet6Address == firstIsV6) {
+        first.add(address);
+      } else {
+        second.add(address);
+      }
+    }
+
+    final var result = new ArrayList<InetAddress>(addresses.size());
+    final var count = Math.max(first.size(), second.size());
+    for (int index = 0; index < count; ++index) {
+      if (index < first.size()) {
+        result.add(first.get(index));
+      }
+      if (index < second.size()) {
+        result.add(second.get(index));
+      }
+    }
+    return List.copyOf(result);
+  }
+
+  /**
+   * Race connection attempts to the given addresses, returning the first
+   * socket to connect.
+   *
+   * @param addresses     The addresses, in the order in which attempts
+   *                      should be started
+   * @param configuration The racing configuration
+   * @param sockets       The source of unconnected sockets
+   * @param timeout       The maximum time to spend connecting
+   *
+   * @return A connected socket
+   *
+   * @throws ConnectException       If every attempt failed
+   * @throws SocketTimeoutException If no attempt succeeded within the
+   *                                timeout
+   * @throws IOException            On other errors
+   * @throws InterruptedException   On interruption
+   */
+
+  public static Socket connect(
+    final List<InetSocketAddress> addresses,
+    final HBHappyEyeballsConfiguration configuration,
+    final HBSocketFactoryType sockets,
+    final Duration timeout)
+    throws IOException, InterruptedException
+  {
+    Objects.requireNonNull(addresses, "addresses");
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(sockets, "sockets");
+    Objects.requireNonNull(timeout, "timeout");
+
+    if (addresses.isEmpty()) {
+      throw new IllegalArgumentException("At least one address is required.");
+    }
+
+    final var race =
+      new Race(List.copyOf(addresses), configuration, sockets, timeout);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Socket winner = null;
+      try {
+        winner = race.run(executor);
+        return winner;
+      } finally {
+        race.finish(winner);
+      }
+    }
+  }
+
+  private record Outcome(
+    InetSocketAddress address,
+    Socket socket,
+    IOException failure)
+  {
+
+  }
+
+  private static final class Race
+  {
+    private final List<InetSocketAddress> targets;
+    private final HBHappyEyeballsConfiguration configuration;
+    private final HBSocketFactoryType sockets;
+    private final Duration timeout;
+    private final long timeEnd;
+    private final LinkedBlockingQueue<Outcome> outcomes;
+    private final List<Socket> open;
+    private boolean finished;
+
+    Race(
+      final List<InetSocketAddress> inTargets,
+      final HBHappyEyeballsConfiguration inConfiguration,
+      final HBSocketFactoryType inSockets,
+      final Duration inTimeout)
+    {
+      this.targets = inTargets;
+      this.configuration = inConfiguration;
+      this.sockets = inSockets;
+      this.timeout = inTimeout;
+      this.timeEnd = deadlineAfter(inTimeout);
+      this.outcomes = new LinkedBlockingQueue<>();
+      this.open = new ArrayList<>();
+    }
+
+    private static long deadlineAfter(
+      final Duration duration)
+    {
+      try {
+        return Math.addExact(System.nanoTime(), duration.toNanos());
+      } catch (final ArithmeticException e) {
+        return Long.MAX_VALUE;
+      }
+    }
+
+    Socket run(
+      final ExecutorService executor)
+      throws IOException, InterruptedException
+    {
+      final var count = this.targets.size();
+      final var delay = this.configuration.attemptDelay().toNanos();
+      final var failures = new ArrayList<IOException>();
+
+      int started = 0;
+      int pending = 0;
+      long timeNextAttempt = System.nanoTime();
+
+      while (true) {
+        final var timeNow = System.nanoTime();
+        if (timeNow - this.timeEnd >= 0L) {
+          throw withSuppressed(
+            new SocketTimeoutException(
+              "No connection to any of %d addresses within %s"
+                .formatted(Integer.valueOf(count), this.timeout)),
+            failures
+          );
+        }
+
+        if (started < count && timeNow - timeNextAttempt >= 0L) {
+          final var target = this.targets.get(started);
+          LOG.debug("Attempting connection to {}", target);
+          executor.execute(() -> this.attempt(target));
+          ++started;
+          ++pending;
+          timeNextAttempt = timeNow + delay;
+          continue;
+        }
+
+        if (pending == 0) {
+          throw withSuppressed(
+            new ConnectException(
+              "Could not connect to any of %d addresses"
+                .formatted(Integer.valueOf(count))),
+            failures
+          );
+        }
+
+        var wait = this.timeEnd - timeNow;
+        if (started < count) {
+          wait = Math.min(wait, timeNextAttempt - timeNow);
+        }
+
+        final var outcome =
+          this.outcomes.poll(wait, TimeUnit.NANOSECONDS);
+        if (outcome == null) {
+          continue;
+        }
+
+        --pending;
+        if (outcome.socket() != null) {
+          LOG.debug("Connected to {}", outcome.address());
+          return outcome.socket();
+        }
+
+        LOG.debug(
+          "Connection to {} failed: ",
+          outcome.address(),
+          outcome.failure()
+        );
+        failures.add(outcome.failure());
+        timeNextAttempt = System.nanoTime();
+      }
+    }
+
+    private static <E extends IOException> E withSuppressed(
+      final E exception,
+      final List<IOException> failures)
+    {
+      for (final var failure : failures) {
+        exception.addSuppressed(failure);
+      }
+      return exception;
+    }
+
+    private void attempt(
+      final InetSocketAddress target)
+    {
+      Socket socket = null;
+      try {
+        socket = this.sockets.createSocket();
+        if (!this.register(socket)) {
+          socket.close();
+          return;
+        }
+
+        final var remaining =
+          Math.min(
+            this.configuration.attemptTimeout().toMillis(),
+            TimeUnit.NANOSECONDS.toMillis(this.timeEnd - System.nanoTime())
+          );
+
+        socket.connect(
+          target,
+          (int) Math.clamp(remaining, 1L, (long) Integer.MAX_VALUE)
+        );
+        this.outcomes.add(new Outcome(target, socket, null));
+      } catch (final IOException e) {
+        closeQuietly(socket);
+        this.outcomes.add(new Outcome(target, null, e));
+      }
+    }
+
+    private synchronized boolean register(
+      final Socket socket)
+    {
+      if (this.finished) {
+        return false;
+      }
+      this.open.add(socket);
+      return true;
+    }
+
+    /**
+     * End the race, closing every socket other than the winner. Closing a
+     * socket aborts an attempt that is still connecting.
+     */
+
+    synchronized void finish(
+      final Socket winner)
+    {
+      this.finished = true;
+      for (final var socket : this.open) {
+        if (socket != winner) {
+          closeQuietly(socket);
+        }
+      }
+      this.open.clear();
+    }
+
+    private static void closeQuietly(
+      final Socket socket)
+    {
+      if (socket == null) {
+        return;
+      }
+      try {
+        socket.close();
+      } catch (final IOException e) {
+        LOG.debug("Failed to close socket: ", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The configuration of connection racing.
+ *
+ * @param attemptDelay   The time to wait for a connection attempt to
+ *                       succeed before starting an attempt to the next
+ *                       address alongside it
+ * @param attemptTimeout The maximum time a single connection attempt may
+ *                       take
+ *
+ * @see HBHappyEyeballs
+ */
+
+public record HBHappyEyeballsConfiguration(
+  Duration attemptDelay,
+  Duration attemptTimeout)
+{
+  private static final Duration DEFAULT_ATTEMPT_DELAY =
+    Duration.ofMillis(250L);
+  private static final Duration DEFAULT_ATTEMPT_TIMEOUT =
+    Duration.ofSeconds(5L);
+
+  /**
+   * The configuration of connection racing.
+   *
+   * @param attemptDelay   The time to wait for a connection attempt to
+   *                       succeed before starting an attempt to the next
+   *                       address alongside it
+   * @param attemptTimeout The maximum time a single connection attempt may
+   *                       take
+   */
+
+  public HBHappyEyeballsConfiguration
+  {
+    Objects.requireNonNull(attemptDelay, "attemptDelay");
+    Objects.requireNonNull(attemptTimeout, "attemptTimeout");
+
+    if (attemptDelay.isNegative()) {
+      throw new IllegalArgumentException(
+        "attemptDelay must be non-negative: %s".formatted(attemptDelay)
+      );
+    }
+    if (attemptTimeout.isNegative() || attemptTimeout.isZero()) {
+      throw new IllegalArgumentException(
+        "attemptTimeout must be positive: %s".formatted(attemptTimeout)
+      );
+    }
+  }
+
+  /**
+   * The default configuration: the 250 millisecond attempt delay
+   * recommended by RFC 8305, and a five second limit on each attempt.
+   *
+   * @return The default configuration
+   */
+
+  public static HBHappyEyeballsConfiguration defaults()
+  {
+    return new HBHappyEyeballsConfiguration(
+      DEFAULT_ATTEMPT_DELAY,
+      DEFAULT_ATTEMPT_TIMEOUT
+    );
+  }
+}
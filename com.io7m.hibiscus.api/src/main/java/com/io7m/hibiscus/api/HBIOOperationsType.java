@@ -18,6 +18,8 @@
 package com.io7m.hibiscus.api;
 
 import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -46,6 +48,45 @@ public interface HBIOOperationsType<
     Duration timeout)
     throws X, InterruptedException;
 
+  /**
+   * Take a message from the transport, if one is available, and pass it to
+   * the given handler. Unlike {@link #receive(Duration)}, this method does
+   * not wrap the message in an {@link HBReadType} value; transports that
+   * override it allocate nothing per call, and so a receive loop using a
+   * single handler instance produces no garbage however many messages it
+   * reads. The default implementation calls {@link #receive(Duration)} and
+   * unwraps the result.
+   *
+   * @param timeout The timeout value
+   * @param handler The handler
+   *
+   * @return {@code true} if a message was passed to the handler, or
+   * {@code false} if no message arrived within the timeout
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   */
+
+  default boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<M> handler)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(handler, "handler");
+
+    return switch (this.receive(timeout)) {
+      case final HBReadNothing<M> r -> false;
+      case final HBReadReceived<M> r -> {
+        handler.onReceived(r.message());
+        yield true;
+      }
+      case final HBReadResponse<M> r -> {
+        handler.onResponse(r.message(), r.response());
+        yield true;
+      }
+    };
+  }
+
   /**
    * Place a message on the transport. The caller is expected to manually
    * read back a response later.
@@ -59,6 +100,27 @@ public interface HBIOOperationsType<
   void send(M message)
     throws X, InterruptedException;
 
+  /**
+   * Place a message on the transport using the given priority class rather
+   * than the priority class declared by the message. The caller is expected
+   * to manually read back a response later. The default implementation
+   * ignores the priority and calls {@link #send(HBMessageType)}.
+   *
+   * @param message  The message
+   * @param priority The priority class
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   */
+
+  default void send(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.send(message);
+  }
+
   /**
    * Place a message on the transport. The transport is not required to track
    * the message for later response resolution; any response to this message
@@ -73,6 +135,28 @@ public interface HBIOOperationsType<
   void sendAndForget(M message)
     throws X, InterruptedException;
 
+  /**
+   * Place a message on the transport using the given priority class rather
+   * than the priority class declared by the message. The transport is not
+   * required to track the message for later response resolution. The
+   * default implementation ignores the priority and calls
+   * {@link #sendAndForget(HBMessageType)}.
+   *
+   * @param message  The message
+   * @param priority The priority class
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   */
+
+  default void sendAndForget(
+    final M message,
+    final HBMessagePriority priority)
+    throws X, InterruptedException
+  {
+    this.sendAndForget(message);
+  }
+
   /**
    * Place a message on the transport and wait for a response.
    *
@@ -90,4 +174,84 @@ public interface HBIOOperationsType<
     M message,
     Duration timeout)
     throws X, InterruptedException, TimeoutException;
+
+  /**
+   * Place a message on the transport using the given priority class rather
+   * than the priority class declared by the message, and wait for a
+   * response. The default implementation ignores the priority and calls
+   * {@link #sendAndWait(HBMessageType, Duration)}.
+   *
+   * @param message  The message
+   * @param priority The priority class
+   * @param timeout  The timeout
+   *
+   * @return The response
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   * @throws TimeoutException     If no response is returned within the given timeout
+   */
+
+  default M sendAndWait(
+    final M message,
+    final HBMessagePriority priority,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return this.sendAndWait(message, timeout);
+  }
+
+  /**
+   * Place a message on the transport and return the stream of responses to
+   * it. A peer that answers a message in several parts sends them as the
+   * subscriber requests them, and marks the end of the stream once it has
+   * sent them all. Cancelling the subscription cancels the message as
+   * {@link #cancel(HBMessageType)} does. The default implementation, for
+   * transports that cannot stream, waits for a single response with
+   * {@link #sendAndWait(HBMessageType, Duration)} and returns a stream
+   * holding only that response.
+   *
+   * @param message The message
+   * @param timeout The timeout for sending the message or, for transports
+   *                that cannot stream, for receiving the response
+   *
+   * @return The stream of responses
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   * @throws TimeoutException     If the message could not be sent, or no
+   *                              response was returned, within the given
+   *                              timeout
+   */
+
+  default Flow.Publisher<M> sendAndStream(
+    final M message,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    return HBResponseStream.of(this.sendAndWait(message, timeout));
+  }
+
+  /**
+   * Cancel a message previously placed on the transport with
+   * {@link #send(HBMessageType)} or
+   * {@link #sendAndWait(HBMessageType, Duration)}. The transport stops
+   * tracking the message and, if it is able to, asks the peer to abandon
+   * any work in progress for the message and to suppress the response. A
+   * response that was already in flight when the cancellation was sent
+   * might still be delivered. Transports that cannot cancel messages
+   * ignore the request, which is what the default implementation does.
+   *
+   * @param message The message
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   */
+
+  default void cancel(
+    final M message)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(message, "message");
+  }
 }
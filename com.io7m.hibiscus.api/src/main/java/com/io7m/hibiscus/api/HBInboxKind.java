@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * <p>The data structure used for plain transport inboxes.</p>
+ *
+ * <p>Transports that receive into an {@link HBMailbox}, such as TCP and
+ * UDP, ignore this; it applies only to transports that receive into an
+ * {@link HBInboxType}, such as HTTP.</p>
+ *
+ * @see HBPerformanceConfiguration
+ */
+
+public enum HBInboxKind
+{
+  /**
+   * Inboxes are linked blocking queues. Every message allocates a node and
+   * every hand-off takes a lock, but an inbox costs nothing until messages
+   * arrive, and so this is the right choice for unbounded inboxes and for
+   * large numbers of mostly idle connections.
+   */
+
+  LINKED,
+
+  /**
+   * Inboxes are array-backed ring buffers ({@link HBRingBuffer}). Hand-offs
+   * neither allocate nor take locks, and waiting consumers and producers
+   * follow the configured {@link HBWaitStrategy}. The whole array is
+   * allocated up front, and so the inbox capacity must be bounded.
+   */
+
+  RING
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A bounded queue of received messages, filled by a transport's reader
+ * and drained by callers of {@code receive} and {@code sendAndWait}.</p>
+ *
+ * @param <T> The type of elements
+ *
+ * @see HBPerformanceConfiguration#createInbox()
+ */
+
+public interface HBInboxType<T>
+{
+  /**
+   * Add an element, waiting for space if the inbox is full.
+   *
+   * @param item The element
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+
+  void put(T item)
+    throws InterruptedException;
+
+  /**
+   * Add an element if there is space.
+   *
+   * @param item The element
+   *
+   * @return {@code false} if the inbox is full
+   */
+
+  boolean offer(T item);
+
+  /**
+   * Take the oldest element, waiting up to the given timeout for one to
+   * arrive.
+   *
+   * @param timeout The timeout
+   * @param unit    The timeout unit
+   *
+   * @return The element, or {@code null} if the timeout elapsed
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+
+  T poll(
+    long timeout,
+    TimeUnit unit)
+    throws InterruptedException;
+
+  /**
+   * @return The approximate number of elements in the inbox
+   */
+
+  int size();
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A concurrent histogram of durations.</p>
+ *
+ * <p>Values are counted in power-of-two buckets: bucket {@code 0} counts
+ * values of zero, and bucket {@code i} counts values in the range
+ * {@code [2^(i-1), 2^i)} nanoseconds. Recording a value is a handful of
+ * uncontended atomic increments.</p>
+ */
+
+public final class HBLatencyHistogram
+{
+  private static final double MEDIAN = 0.5;
+  private static final double TAIL = 0.99;
+
+  private final AtomicLongArray buckets;
+  private final LongAdder count;
+  private final LongAdder total;
+  private final AtomicLong maximum;
+
+  /**
+   * A concurrent histogram of durations.
+   */
+
+  public HBLatencyHistogram()
+  {
+    this.buckets = new AtomicLongArray(Long.SIZE);
+    this.count = new LongAdder();
+    this.total = new LongAdder();
+    this.maximum = new AtomicLong(0L);
+  }
+
+  private static int bucketOf(
+    final long nanos)
+  {
+    return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+  }
+
+  /**
+   * Record a duration. Negative durations are recorded as zero.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+
+  public void record(
+    final long nanos)
+  {
+    final var value = Math.max(0L, nanos);
+    this.buckets.incrementAndGet(bucketOf(value));
+    this.count.increment();
+    this.total.add(value);
+    if (value > this.maximum.get()) {
+      this.maximum.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * @return The number of recorded durations
+   */
+
+  public long count()
+  {
+    return this.count.sum();
+  }
+
+  /**
+   * @return The sum of all recorded durations in nanoseconds
+   */
+
+  public long totalNanos()
+  {
+    return this.total.sum();
+  }
+
+  /**
+   * @return The largest recorded duration in nanoseconds
+   */
+
+  public long maximumNanos()
+  {
+    return this.maximum.get();
+  }
+
+  /**
+   * @return The mean recorded duration in nanoseconds
+   */
+
+  public double meanNanos()
+  {
+    final var n = this.count();
+    if (n == 0L) {
+      return 0.0;
+    }
+    return (double) this.totalNanos() / (double) n;
+  }
+
+  /**
+   * Estimate a percentile. The result is the exclusive upper bound of the
+   * bucket containing the requested percentile, capped at the maximum
+   * recorded duration, and so is accurate to within a factor of two.
+   *
+   * @param percentile The percentile in the range {@code [0, 1]}
+   *
+   * @return The estimated duration in nanoseconds
+   */
+
+  public long percentileNanos(
+    final double percentile)
+  {
+    if (!(percentile >= 0.0 && percentile <= 1.0)) {
+      throw new IllegalArgumentException(
+        "Percentile must be in the range [0, 1]: %s"
+          .formatted(Double.valueOf(percentile))
+      );
+    }
+
+    final var counts = this.buckets();
+    long n = 0L;
+    for (final var c : counts) {
+      n += c;
+    }
+    if (n == 0L) {
+      return 0L;
+    }
+
+    final var rank = Math.max(1L, (long) Math.ceil(percentile * (double) n));
+    long seen = 0L;
+    for (int index = 0; index < counts.length; ++index) {
+      seen += counts[index];
+      if (seen >= rank) {
+        final var upper = index == 0 ? 0L : (1L << index) - 1L;
+        return Math.min(upper, this.maximumNanos());
+      }
+    }
+    return this.maximumNanos();
+  }
+
+  /**
+   * @return A copy of the bucket counts
+   */
+
+  public long[] buckets()
+  {
+    final var results = new long[this.buckets.length()];
+    for (int index = 0; index < results.length; ++index) {
+      results[index] = this.buckets.get(index);
+    }
+    return results;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[count=%d mean=%.0fns p50=%dns p99=%dns max=%dns]".formatted(
+      Long.valueOf(this.count()),
+      Double.valueOf(this.meanNanos()),
+      Long.valueOf(this.percentileNanos(MEDIAN)),
+      Long.valueOf(this.percentileNanos(TAIL)),
+      Long.valueOf(this.maximumNanos())
+    );
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The stages through which a request and its response pass on the client.
+ *
+ * @see HBStageLatencies
+ */
+
+public enum HBLatencyStage
+{
+  /**
+   * Serializing the outbound message.
+   */
+
+  ENCODE,
+
+  /**
+   * Waiting in the outbound queue for a writer.
+   */
+
+  QUEUE,
+
+  /**
+   * Writing and flushing the encoded message.
+   */
+
+  WRITE,
+
+  /**
+   * The time between the request being written and the response being
+   * read, including the time spent on the server.
+   */
+
+  NETWORK,
+
+  /**
+   * Deserializing the inbound message.
+   */
+
+  DECODE,
+
+  /**
+   * Waiting in the inbox for a consumer after being decoded.
+   */
+
+  INBOX
+}
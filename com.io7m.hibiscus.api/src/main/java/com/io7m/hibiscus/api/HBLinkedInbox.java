@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An inbox backed by a linked blocking queue.
+ *
+ * @param <T> The type of elements
+ */
+
+final class HBLinkedInbox<T> implements HBInboxType<T>
+{
+  private final LinkedBlockingQueue<T> queue;
+
+  HBLinkedInbox(
+    final int capacity)
+  {
+    this.queue = new LinkedBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public void put(
+    final T item)
+    throws InterruptedException
+  {
+    this.queue.put(Objects.requireNonNull(item, "item"));
+  }
+
+  @Override
+  public boolean offer(
+    final T item)
+  {
+    return this.queue.offer(Objects.requireNonNull(item, "item"));
+  }
+
+  @Override
+  public T poll(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    return this.queue.poll(timeout, unit);
+  }
+
+  @Override
+  public int size()
+  {
+    return this.queue.size();
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * <p>One end of an in-process transport pair.</p>
+ *
+ * <p>Messages written to one end are placed directly into the lock-free
+ * inbox of the other end, without serialization and without any network
+ * or kernel involvement. Responses to {@code sendAndWait} calls are handed
+ * straight to the waiting caller rather than passing through the inbox.
+ * Closing either end closes both ends.</p>
+ *
+ * <p>A pair created with a codec encodes every message into a buffer and
+ * delivers the decoded copy, which allows codecs to be exercised and
+ * measured without a network.</p>
+ *
+ * @param <M> The type of messages
+ * @param <X> The type of exceptions
+ *
+ * @see #createPair(HBMessageIdentityType, Function)
+ * @see #createPair(HBMessageIdentityType, HBCodecType, Function)
+ */
+
+public final class HBLoopbackTransport<
+  M extends HBMessageType,
+  X extends Exception>
+  implements HBTransportType<M, X>
+{
+  private static final int FLIGHT_RECORDER_CAPACITY = 1024;
+
+  private final HBMessageIdentityType<M> identity;
+  private final Function<Throwable, X> exceptions;
+  private final Optional<HBCodecType<M, X>> codec;
+  private final LinkedTransferQueue<M> inbox;
+  private final ConcurrentHashMap<UUID, M> sent;
+  private final ConcurrentHashMap<UUID, CompletableFuture<M>> waiting;
+  private final AtomicBoolean closed;
+  private final HBFlightRecorder<M> recorder;
+  private volatile HBLoopbackTransport<M, X> peer;
+
+  private HBLoopbackTransport(
+    final HBMessageIdentityType<M> inIdentity,
+    final Optional<HBCodecType<M, X>> inCodec,
+    final Function<Throwable, X> inExceptions)
+  {
+    this.identity =
+      Objects.requireNonNull(inIdentity, "identity");
+    this.codec =
+      Objects.requireNonNull(inCodec, "codec");
+    this.exceptions =
+      Objects.requireNonNull(inExceptions, "exceptions");
+    this.inbox =
+      new LinkedTransferQueue<>();
+    this.sent =
+      new ConcurrentHashMap<>();
+    this.waiting =
+      new ConcurrentHashMap<>();
+    this.closed =
+      new AtomicBoolean(false);
+    this.recorder =
+      HBFlightRecorder.create(inIdentity, FLIGHT_RECORDER_CAPACITY);
+  }
+
+  /**
+   * Create a connected pair of transports.
+   *
+   * @param identity   The functions used to match responses to requests
+   * @param exceptions A function to convert arbitrary exceptions to {@code X}
+   * @param <M>        The type of messages
+   * @param <X>        The type of exceptions
+   *
+   * @return A pair of transports
+   */
+
+  public static <M extends HBMessageType, X extends Exception>
+  HBLoopbackPair<M, X> createPair(
+    final HBMessageIdentityType<M> identity,
+    final Function<Throwable, X> exceptions)
+  {
+    return createPairWith(identity, Optional.empty(), exceptions);
+  }
+
+  /**
+   * Create a connected pair of transports that pass every message through
+   * the given codec.
+   *
+   * @param identity   The functions used to match responses to requests
+   * @param codec      The codec
+   * @param exceptions A function to convert arbitrary exceptions to {@code X}
+   * @param <M>        The type of messages
+   * @param <X>        The type of exceptions
+   *
+   * @return A pair of transports
+   */
+
+  public static <M extends HBMessageType, X extends Exception>
+  HBLoopbackPair<M, X> createPair(
+    final HBMessageIdentityType<M> identity,
+    final HBCodecType<M, X> codec,
+    final Function<Throwable, X> exceptions)
+  {
+    return createPairWith(identity, Optional.of(codec), exceptions);
+  }
+
+  private static <M extends HBMessageType, X extends Exception>
+  HBLoopbackPair<M, X> createPairWith(
+    final HBMessageIdentityType<M> identity,
+    final Optional<HBCodecType<M, X>> codec,
+    final Function<Throwable, X> exceptions)
+  {
+    final var client =
+      new HBLoopbackTransport<>(identity, codec, exceptions);
+    final var server =
+      new HBLoopbackTransport<>(identity, codec, exceptions);
+
+    client.peer = server;
+    server.peer = client;
+    return new HBLoopbackPair<>(client, server);
+  }
+
+  private void deliver(
+    final M message,
+    final int size)
+  {
+    this.recorder.record(HBFlightDirection.RECEIVED, message, size);
+
+    final var correlation = this.identity.correlationId(message);
+    if (correlation.isPresent()) {
+      final var waiter = this.waiting.remove(correlation.get());
+      if (waiter != null) {
+        waiter.complete(message);
+        return;
+      }
+    }
+    this.inbox.add(message);
+  }
+
+  private void checkOpen()
+    throws X
+  {
+    if (this.closed.get()) {
+      throw this.exceptions.apply(new ClosedChannelException());
+    }
+  }
+
+  @Override
+  public HBReadType<M> receive(
+    final Duration timeout)
+    throws X, InterruptedException
+  {
+    final var m = this.poll(timeout);
+    if (m == null) {
+      return new HBReadNothing<>();
+    }
+
+    final var original = this.originalOf(m);
+    if (original != null) {
+      return new HBReadResponse<>(original, m);
+    }
+    return new HBReadReceived<>(m);
+  }
+
+  @Override
+  public boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<M> handler)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(handler, "handler");
+
+    final var m = this.poll(timeout);
+    if (m == null) {
+      return false;
+    }
+
+    final var original = this.originalOf(m);
+    if (original != null) {
+      handler.onResponse(original, m);
+    } else {
+      handler.onReceived(m);
+    }
+    return true;
+  }
+
+  private M poll(
+    final Duration timeout)
+    throws X, InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+    this.checkOpen();
+    return this.inbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private M originalOf(
+    final M m)
+  {
+    final var correlation = this.identity.correlationId(m);
+    if (correlation.isPresent()) {
+      return this.sent.remove(correlation.get());
+    }
+    return null;
+  }
+
+  @Override
+  public void send(
+    final M message)
+    throws X
+  {
+    final var id = this.identity.messageId(message);
+    this.sent.put(id, message);
+
+    try {
+      this.sendAndForget(message);
+    } catch (final Exception e) {
+      this.sent.remove(id);
+      throw e;
+    }
+  }
+
+  @Override
+  public void sendAndForget(
+    final M message)
+    throws X
+  {
+    Objects.requireNonNull(message, "message");
+    this.checkOpen();
+
+    if (this.codec.isPresent()) {
+      final var c = this.codec.get();
+      final var size = c.sizeOf(message);
+      final var buffer = ByteBuffer.allocate(size);
+      c.encode(message, buffer);
+      this.recorder.record(HBFlightDirection.SENT, message, size);
+      this.peer.deliver(c.decode(buffer.flip()), size);
+    } else {
+      this.recorder.record(HBFlightDirection.SENT, message, -1);
+      this.peer.deliver(message, -1);
+    }
+  }
+
+  @Override
+  public M sendAndWait(
+    final M message,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    final var id = this.identity.messageId(message);
+    final var future = new CompletableFuture<M>();
+    this.waiting.put(id, future);
+
+    try {
+      this.sendAndForget(message);
+      return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (final TimeoutException e) {
+      this.recorder.capture();
+      this.cancel(message);
+      throw new TimeoutException(
+        "No response received in %s".formatted(timeout));
+    } catch (final ExecutionException e) {
+      throw this.exceptions.apply(e.getCause());
+    } finally {
+      this.waiting.remove(id);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>A message that the peer has not yet received is withdrawn from the
+   * peer's inbox.</p>
+   */
+
+  @Override
+  public void cancel(
+    final M message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var id = this.identity.messageId(message);
+    this.sent.remove(id);
+    this.waiting.remove(id);
+    this.peer.inbox.removeIf(m -> this.identity.messageId(m).equals(id));
+  }
+
+  @Override
+  public Optional<HBFlightRecorder<M>> flightRecorder()
+  {
+    return Optional.of(this.recorder);
+  }
+
+  @Override
+  public boolean isClosed()
+  {
+    return this.closed.get();
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      for (final var waiter : this.waiting.values()) {
+        waiter.completeExceptionally(new ClosedChannelException());
+      }
+      this.waiting.clear();
+      this.peer.close();
+    }
+  }
+
+  /**
+   * @return The number of messages waiting in the inbox
+   */
+
+  public int inboxSize()
+  {
+    return this.inbox.size();
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>The messages that a transport has received and that are waiting for a
+ * call to {@code receive}, split into two paths.</p>
+ *
+ * <p>Responses to requests sent with {@code send} are always accepted, as
+ * their number is bounded by the consumer's own outstanding requests, and
+ * are handed out ahead of unsolicited messages. Unsolicited messages are
+ * held in a bounded queue governed by a {@link HBUnsolicitedConfiguration}:
+ * when the queue is full the configured {@link HBOverflowPolicy} applies,
+ * and messages older than the configured time to live are discarded rather
+ * than handed out. A consumer that never calls {@code receive} therefore
+ * costs at most the capacity of the queue.</p>
+ *
+ * <p>A thread that must never wait for a consumer, such as a connection's
+ * only reader, offers unsolicited messages with
+ * {@link #offerUnsolicited(Object)} instead. Under
+ * {@link HBOverflowPolicy#BLOCK} a message that does not fit is held in a
+ * side list, in order, until the consumer makes space, rather than blocking
+ * the caller; the caller must bound the number of held messages by other
+ * means, such as flow control.</p>
+ *
+ * <p>Responses to {@code sendAndWait} calls should not pass through a
+ * mailbox at all; transports hand them directly to the waiting caller.</p>
+ *
+ * @param <T> The type of elements
+ */
+
+public final class HBMailbox<T>
+{
+  private final HBUnsolicitedConfiguration configuration;
+  private final Consumer<T> onDiscard;
+  private final long timeToLive;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final ArrayDeque<T> responses;
+  private final ArrayDeque<Unsolicited<T>> unsolicited;
+  private final ArrayDeque<Unsolicited<T>> held;
+  private final LongAdder dropped;
+  private final LongAdder expired;
+
+  /**
+   * Create a mailbox.
+   *
+   * @param inConfiguration The configuration of the unsolicited path
+   * @param inOnDiscard     A function called with each unsolicited message
+   *                        that is dropped or expires without being handed
+   *                        out; it is called with the mailbox's lock held,
+   *                        and so must not block
+   */
+
+  public HBMailbox(
+    final HBUnsolicitedConfiguration inConfiguration,
+    final Consumer<T> inOnDiscard)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.onDiscard =
+      Objects.requireNonNull(inOnDiscard, "onDiscard");
+    this.timeToLive =
+      inConfiguration.timeToLive()
+        .map(ttl -> Long.valueOf(ttl.toNanos()))
+        .orElse(Long.valueOf(Long.MAX_VALUE))
+        .longValue();
+    this.lock =
+      new ReentrantLock();
+    this.notEmpty =
+      this.lock.newCondition();
+    this.notFull =
+      this.lock.newCondition();
+    this.responses =
+      new ArrayDeque<>();
+    this.unsolicited =
+      new ArrayDeque<>();
+    this.held =
+      new ArrayDeque<>();
+    this.dropped =
+      new LongAdder();
+    this.expired =
+      new LongAdder();
+  }
+
+  /**
+   * Add a response.
+   *
+   * @param item The response
+   */
+
+  public void putResponse(
+    final T item)
+  {
+    Objects.requireNonNull(item, "item");
+
+    this.lock.lock();
+    try {
+      this.responses.addLast(item);
+      this.notEmpty.signal();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Add an unsolicited message, applying the overflow policy if the
+   * unsolicited queue is full.
+   *
+   * @param item The message
+   *
+   * @return {@code false} if the message was refused under
+   * {@link HBOverflowPolicy#DISCONNECT}, and the caller should close the
+   * transport
+   *
+   * @throws InterruptedException If interrupted while waiting for space
+   */
+
+  public boolean putUnsolicited(
+    final T item)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(item, "item");
+
+    this.lock.lockInterruptibly();
+    try {
+      this.expireStale();
+
+      while (this.unsolicited.size() >= this.configuration.capacity()) {
+        switch (this.configuration.overflowPolicy()) {
+          case BLOCK -> {
+            this.awaitSpace();
+          }
+          case DROP_OLDEST -> {
+            this.dropped.increment();
+            this.onDiscard.accept(this.unsolicited.removeFirst().item());
+          }
+          case DROP_NEWEST -> {
+            this.dropped.increment();
+            this.onDiscard.accept(item);
+            return true;
+          }
+          case DISCONNECT -> {
+            this.dropped.increment();
+            this.onDiscard.accept(item);
+            return false;
+          }
+        }
+      }
+
+      this.unsolicited.addLast(new Unsolicited<>(item, System.nanoTime()));
+      this.notEmpty.signal();
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Add an unsolicited message without ever waiting for the consumer. This
+   * behaves as {@link #putUnsolicited(Object)}, except that under
+   * {@link HBOverflowPolicy#BLOCK} a message that does not fit is held
+   * until there is space for it, and is handed out after every message
+   * that arrived before it.
+   *
+   * @param item The message
+   *
+   * @return {@code false} if the message was refused under
+   * {@link HBOverflowPolicy#DISCONNECT}, and the caller should close the
+   * transport
+   */
+
+  public boolean offerUnsolicited(
+    final T item)
+  {
+    Objects.requireNonNull(item, "item");
+
+    this.lock.lock();
+    try {
+      this.expireStale();
+
+      if (this.configuration.overflowPolicy() == HBOverflowPolicy.BLOCK) {
+        this.held.addLast(new Unsolicited<>(item, System.nanoTime()));
+        this.admitHeld();
+        this.notEmpty.signal();
+        return true;
+      }
+
+      while (this.unsolicited.size() >= this.configuration.capacity()) {
+        this.dropped.increment();
+        switch (this.configuration.overflowPolicy()) {
+          case DROP_OLDEST -> {
+            this.onDiscard.accept(this.unsolicited.removeFirst().item());
+          }
+          case DROP_NEWEST, BLOCK -> {
+            this.onDiscard.accept(item);
+            return true;
+          }
+          case DISCONNECT -> {
+            this.onDiscard.accept(item);
+            return false;
+          }
+        }
+      }
+
+      this.unsolicited.addLast(new Unsolicited<>(item, System.nanoTime()));
+      this.notEmpty.signal();
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Move held messages into the unsolicited queue while there is space.
+   */
+
+  private void admitHeld()
+  {
+    while (!this.held.isEmpty()
+           && this.unsolicited.size() < this.configuration.capacity()) {
+      this.unsolicited.addLast(this.held.removeFirst());
+    }
+  }
+
+  /**
+   * Wait for space in the unsolicited queue. If messages expire, the wait
+   * ends when the oldest message expires, as that also makes space.
+   */
+
+  private void awaitSpace()
+    throws InterruptedException
+  {
+    if (this.timeToLive == Long.MAX_VALUE) {
+      this.notFull.await();
+      return;
+    }
+
+    final var oldest = this.unsolicited.peekFirst();
+    final var age = System.nanoTime() - oldest.arrivedAt();
+    this.notFull.awaitNanos(this.timeToLive - age);
+    this.expireStale();
+  }
+
+  private void expireStale()
+  {
+    if (this.timeToLive == Long.MAX_VALUE) {
+      return;
+    }
+
+    final var timeNow = System.nanoTime();
+    while (true) {
+      this.admitHeld();
+      final var oldest = this.unsolicited.peekFirst();
+      if (oldest == null || timeNow - oldest.arrivedAt() < this.timeToLive) {
+        return;
+      }
+      this.unsolicited.removeFirst();
+      this.expired.increment();
+      this.onDiscard.accept(oldest.item());
+    }
+  }
+
+  /**
+   * Take the next message, waiting up to the given timeout for one to
+   * arrive. Responses are taken before unsolicited messages.
+   *
+   * @param timeout The timeout
+   * @param unit    The timeout unit
+   *
+   * @return The message, or {@code null} if the timeout elapsed
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+
+  public T poll(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    var remaining = unit.toNanos(timeout);
+
+    this.lock.lockInterruptibly();
+    try {
+      while (true) {
+        final var response = this.responses.pollFirst();
+        if (response != null) {
+          return response;
+        }
+
+        this.expireStale();
+        final var next = this.unsolicited.pollFirst();
+        if (next != null) {
+          this.admitHeld();
+          this.notFull.signal();
+          return next.item();
+        }
+
+        if (remaining <= 0L) {
+          return null;
+        }
+        remaining = this.notEmpty.awaitNanos(remaining);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of waiting messages
+   */
+
+  public int size()
+  {
+    this.lock.lock();
+    try {
+      return this.responses.size()
+             + this.unsolicited.size()
+             + this.held.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of unsolicited messages discarded under the overflow
+   * policy
+   */
+
+  public long dropped()
+  {
+    return this.dropped.sum();
+  }
+
+  /**
+   * @return The number of unsolicited messages discarded because they
+   * outlived their time to live
+   */
+
+  public long expired()
+  {
+    return this.expired.sum();
+  }
+
+  private record Unsolicited<T>(
+    T item,
+    long arrivedAt)
+  {
+
+  }
+}
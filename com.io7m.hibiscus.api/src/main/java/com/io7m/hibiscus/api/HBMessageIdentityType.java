@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Functions to extract identifiers from messages. The API does not require
+ * messages to have any particular structure; protocol-independent
+ * components such as generic transports use an implementation of this
+ * interface to match responses to the requests that caused them.
+ *
+ * @param <M> The type of messages
+ */
+
+public interface HBMessageIdentityType<M extends HBMessageType>
+{
+  /**
+   * @param message The message
+   *
+   * @return The unique identifier of the message
+   */
+
+  UUID messageId(M message);
+
+  /**
+   * @param message The message
+   *
+   * @return The identifier of the message to which this message is a
+   * response, if the message is a response
+   */
+
+  Optional<UUID> correlationId(M message);
+}
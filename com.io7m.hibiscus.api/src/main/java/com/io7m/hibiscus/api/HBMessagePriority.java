@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The priority class of an outbound message. Transports that queue outbound
+ * messages write messages of higher priority classes first.
+ */
+
+public enum HBMessagePriority
+{
+  /**
+   * Small, latency-critical control traffic such as logins, heartbeats,
+   * and cancellations.
+   */
+
+  CONTROL,
+
+  /**
+   * Ordinary requests and responses.
+   */
+
+  NORMAL,
+
+  /**
+   * Large transfers that can tolerate being delayed behind other traffic.
+   */
+
+  BULK;
+
+  /**
+   * @return The lane index of this priority class, where {@code 0} is the
+   * highest priority
+   */
+
+  public int lane()
+  {
+    return this.ordinal();
+  }
+}
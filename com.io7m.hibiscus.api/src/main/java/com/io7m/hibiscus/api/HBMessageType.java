@@ -22,5 +22,16 @@ package com.io7m.hibiscus.api;
 
 public interface HBMessageType
 {
+  /**
+   * The priority class of the message. Transports that queue outbound
+   * messages use this value when the caller does not specify a priority
+   * explicitly.
+   *
+   * @return The priority class of the message
+   */
 
+  default HBMessagePriority priority()
+  {
+    return HBMessagePriority.NORMAL;
+  }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * What a transport does with an unsolicited message that arrives when its
+ * queue of unsolicited messages is full.
+ *
+ * @see HBUnsolicitedConfiguration
+ */
+
+public enum HBOverflowPolicy
+{
+  /**
+   * No message is discarded while the consumer catches up. A transport with
+   * flow control holds messages that do not fit until the consumer makes
+   * space, and the peer stops sending once its credit runs out. A transport
+   * without flow control, such as UDP, cannot hold messages without bound,
+   * and so drops those that do not fit, as with {@link #DROP_NEWEST}.
+   */
+
+  BLOCK,
+
+  /**
+   * The oldest waiting unsolicited message is discarded to make space.
+   */
+
+  DROP_OLDEST,
+
+  /**
+   * The arriving message is discarded.
+   */
+
+  DROP_NEWEST,
+
+  /**
+   * The arriving message is discarded and the transport is closed, on the
+   * basis that a consumer that has fallen this far behind is broken.
+   */
+
+  DISCONNECT
+}
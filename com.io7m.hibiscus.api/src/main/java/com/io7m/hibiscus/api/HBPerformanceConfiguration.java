@@ -0,0 +1,686 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * <p>The execution model and queue sizing tunables that transports honour.</p>
+ *
+ * <p>The defaults match the behaviour of transports that predate this
+ * configuration: virtual reader threads, unbounded inboxes, operating
+ * system socket buffer sizes, linked inbox queues, and one flush per batch
+ * of queued frames.
+ * The exceptions are the outbox and the queue of unsolicited messages,
+ * which are bounded by default so that neither a peer that stops reading
+ * nor a consumer that stops receiving can exhaust memory.
+ * The {@link #forLatency()} and {@link #forThroughput()} presets are
+ * reasonable starting points for tuning in either direction.</p>
+ *
+ * <p>The {@link #forFootprint()} preset is intended for deployments that
+ * hold very large numbers of mostly idle connections. In low footprint
+ * mode, transports start writer threads only while there is something to
+ * write, return read buffers to the shared pool between frames rather than
+ * holding one per connection, and keep much smaller flight recorders.</p>
+ *
+ * <p>The TCP and UDP transports receive into an {@link HBMailbox}, which
+ * hands responses out ahead of unsolicited messages and applies an overflow
+ * policy to the latter. A mailbox is a lock-based queue, and so
+ * {@code inboxKind} and {@code inboxWaitStrategy} have no effect on those
+ * transports: ring buffer inboxes and their wait strategies are used only
+ * by transports that receive into a plain {@link HBInboxType}, which at
+ * present means HTTP.</p>
+ *
+ * @param readerThreads           The kind of thread used for readers
+ * @param readerThreadPriority    The priority of platform reader threads;
+ *                                virtual threads always have normal
+ *                                priority
+ * @param inboxCapacity           The maximum number of received messages
+ *                                held in an inbox; a reader blocks (and so
+ *                                applies backpressure to the peer) when the
+ *                                inbox is full. Transports that receive
+ *                                into a mailbox (TCP and UDP) instead apply
+ *                                it as an upper bound on the capacity of
+ *                                the unsolicited queue, subject to its
+ *                                overflow policy
+ * @param inboxKind               The data structure used for inboxes;
+ *                                mailboxes are always lock-based queues,
+ *                                so only transports that use plain inboxes
+ *                                (HTTP) honour this
+ * @param inboxWaitStrategy       The way in which threads wait on ring
+ *                                buffer inboxes; as with the kind, only
+ *                                plain inboxes honour this
+ * @param unsolicited             The bound, overflow policy, and expiry of
+ *                                queued unsolicited messages
+ * @param outboxCapacity          The maximum number of messages waiting to
+ *                                be written; a sender blocks when the
+ *                                outbox is full
+ * @param flightRecorderCapacity  The number of messages retained by each
+ *                                transport's flight recorder
+ * @param lowFootprint            {@code true} if transports should trade
+ *                                a little per-message work for a smaller
+ *                                per-connection memory footprint
+ * @param socketReceiveBufferSize The socket receive buffer size, if the
+ *                                operating system default should be
+ *                                overridden
+ * @param socketSendBufferSize    The socket send buffer size, if the
+ *                                operating system default should be
+ *                                overridden
+ * @param batchMaxMessages        The maximum number of frames written before
+ *                                the output is flushed
+ * @param batchMaxBytes           The maximum number of bytes buffered before
+ *                                the output is flushed
+ * @param executor                The executor used for asynchronous work,
+ *                                if the transport's default should be
+ *                                overridden; only transports that perform
+ *                                asynchronous work, such as HTTP, use it,
+ *                                while the readers and writers of the TCP
+ *                                and UDP transports always run on their
+ *                                own threads of the configured kind
+ */
+
+public record HBPerformanceConfiguration(
+  HBThreadKind readerThreads,
+  int readerThreadPriority,
+  int inboxCapacity,
+  HBInboxKind inboxKind,
+  HBWaitStrategy inboxWaitStrategy,
+  HBUnsolicitedConfiguration unsolicited,
+  int outboxCapacity,
+  int flightRecorderCapacity,
+  boolean lowFootprint,
+  OptionalInt socketReceiveBufferSize,
+  OptionalInt socketSendBufferSize,
+  int batchMaxMessages,
+  int batchMaxBytes,
+  Optional<Executor> executor)
+{
+  private static final int DEFAULT_OUTBOX_CAPACITY = 4096;
+  private static final int DEFAULT_FLIGHT_RECORDER_CAPACITY = 1024;
+  private static final int FOOTPRINT_FLIGHT_RECORDER_CAPACITY = 16;
+  private static final int DEFAULT_BATCH_MESSAGES = 64;
+  private static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+  private static final int THROUGHPUT_BATCH_MESSAGES = 1024;
+  private static final int THROUGHPUT_BATCH_BYTES = 256 * 1024;
+  private static final int THROUGHPUT_SOCKET_BUFFER = 1024 * 1024;
+  private static final int LATENCY_BATCH_BYTES = 8 * 1024;
+
+  /**
+   * <p>The execution model and queue sizing tunables that transports
+   * honour.</p>
+   *
+   * @param readerThreads           The kind of thread used for readers
+   * @param readerThreadPriority    The priority of platform reader threads
+   * @param inboxCapacity           The maximum number of received messages
+   *                                held in an inbox, or in a mailbox's
+   *                                unsolicited queue
+   * @param inboxKind               The data structure used for plain
+   *                                inboxes
+   * @param inboxWaitStrategy       The way in which threads wait on ring
+   *                                buffer inboxes
+   * @param unsolicited             The bound, overflow policy, and expiry
+   *                                of queued unsolicited messages
+   * @param outboxCapacity          The maximum number of messages waiting
+   *                                to be written
+   * @param flightRecorderCapacity  The number of messages retained by each
+   *                                transport's flight recorder
+   * @param lowFootprint            {@code true} if transports should trade
+   *                                per-message work for a smaller
+   *                                per-connection memory footprint
+   * @param socketReceiveBufferSize The socket receive buffer size
+   * @param socketSendBufferSize    The socket send buffer size
+   * @param batchMaxMessages        The maximum number of frames written
+   *                                before the output is flushed
+   * @param batchMaxBytes           The maximum number of bytes buffered
+   *                                before the output is flushed
+   * @param executor                The executor used for asynchronous work
+   *                                by transports that perform any
+   */
+
+  public HBPerformanceConfiguration
+  {
+    Objects.requireNonNull(readerThreads, "readerThreads");
+    Objects.requireNonNull(inboxKind, "inboxKind");
+    Objects.requireNonNull(inboxWaitStrategy, "inboxWaitStrategy");
+    Objects.requireNonNull(unsolicited, "unsolicited");
+    Objects.requireNonNull(socketReceiveBufferSize, "socketReceiveBufferSize");
+    Objects.requireNonNull(socketSendBufferSize, "socketSendBufferSize");
+    Objects.requireNonNull(executor, "executor");
+
+    if (readerThreadPriority < Thread.MIN_PRIORITY
+        || readerThreadPriority > Thread.MAX_PRIORITY) {
+      throw new IllegalArgumentException(
+        "Thread priority must be in [%d, %d]: %d".formatted(
+          Integer.valueOf(Thread.MIN_PRIORITY),
+          Integer.valueOf(Thread.MAX_PRIORITY),
+          Integer.valueOf(readerThreadPriority)
+        )
+      );
+    }
+
+    checkPositive(inboxCapacity, "inboxCapacity");
+    if (inboxKind == HBInboxKind.RING
+        && inboxCapacity > HBRingBuffer.MAXIMUM_CAPACITY) {
+      throw new IllegalArgumentException(
+        "Ring buffer inboxes must have a capacity of at most %d: %d"
+          .formatted(
+            Integer.valueOf(HBRingBuffer.MAXIMUM_CAPACITY),
+            Integer.valueOf(inboxCapacity)
+          )
+      );
+    }
+    checkPositive(outboxCapacity, "outboxCapacity");
+    checkPositive(flightRecorderCapacity, "flightRecorderCapacity");
+    checkPositive(batchMaxMessages, "batchMaxMessages");
+    checkPositive(batchMaxBytes, "batchMaxBytes");
+    socketReceiveBufferSize.ifPresent(size -> {
+      checkPositive(size, "socketReceiveBufferSize");
+    });
+    socketSendBufferSize.ifPresent(size -> {
+      checkPositive(size, "socketSendBufferSize");
+    });
+  }
+
+  private static void checkPositive(
+    final int value,
+    final String name)
+  {
+    if (value < 1) {
+      throw new IllegalArgumentException(
+        "%s must be positive: %d".formatted(name, Integer.valueOf(value))
+      );
+    }
+  }
+
+  /**
+   * @return The default configuration
+   */
+
+  public static HBPerformanceConfiguration defaults()
+  {
+    return new HBPerformanceConfiguration(
+      HBThreadKind.VIRTUAL,
+      Thread.NORM_PRIORITY,
+      Integer.MAX_VALUE,
+      HBInboxKind.LINKED,
+      HBWaitStrategy.BLOCKING,
+      HBUnsolicitedConfiguration.defaults(),
+      DEFAULT_OUTBOX_CAPACITY,
+      DEFAULT_FLIGHT_RECORDER_CAPACITY,
+      false,
+      OptionalInt.empty(),
+      OptionalInt.empty(),
+      DEFAULT_BATCH_MESSAGES,
+      DEFAULT_BATCH_BYTES,
+      Optional.empty()
+    );
+  }
+
+  /**
+   * A configuration tuned for latency: dedicated high-priority readers, and
+   * a flush after every frame.
+   *
+   * @return A latency-oriented configuration
+   */
+
+  public static HBPerformanceConfiguration forLatency()
+  {
+    return defaults()
+      .withReaderThreads(HBThreadKind.PLATFORM, Thread.MAX_PRIORITY)
+      .withBatching(1, LATENCY_BATCH_BYTES);
+  }
+
+  /**
+   * A configuration tuned for throughput: virtual readers, large socket
+   * buffers, and large write batches.
+   *
+   * @return A throughput-oriented configuration
+   */
+
+  public static HBPerformanceConfiguration forThroughput()
+  {
+    return defaults()
+      .withSocketBuffers(
+        OptionalInt.of(THROUGHPUT_SOCKET_BUFFER),
+        OptionalInt.of(THROUGHPUT_SOCKET_BUFFER))
+      .withBatching(THROUGHPUT_BATCH_MESSAGES, THROUGHPUT_BATCH_BYTES);
+  }
+
+  /**
+   * A configuration tuned for memory footprint: small flight recorders,
+   * writer threads that exist only while there is something to write, and
+   * read buffers that are held only while a frame is being read.
+   *
+   * @return A footprint-oriented configuration
+   */
+
+  public static HBPerformanceConfiguration forFootprint()
+  {
+    return defaults()
+      .withFlightRecorderCapacity(FOOTPRINT_FLIGHT_RECORDER_CAPACITY)
+      .withLowFootprint(true);
+  }
+
+  /**
+   * @param kind     The kind of thread used for readers
+   * @param priority The priority of platform reader threads
+   *
+   * @return This configuration with the given reader threads
+   */
+
+  public HBPerformanceConfiguration withReaderThreads(
+    final HBThreadKind kind,
+    final int priority)
+  {
+    return new HBPerformanceConfiguration(
+      kind,
+      priority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * Set the inbox capacity. For transports that receive into a mailbox,
+   * this also bounds the mailbox's unsolicited queue.
+   *
+   * @param capacity The maximum number of received messages held in an inbox
+   *
+   * @return This configuration with the given inbox capacity
+   */
+
+  public HBPerformanceConfiguration withInboxCapacity(
+    final int capacity)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      capacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * Set the kind of plain inboxes. Mailboxes, used by the TCP and UDP
+   * transports, are not affected.
+   *
+   * @param kind         The data structure used for inboxes
+   * @param waitStrategy The way in which threads wait on ring buffer inboxes
+   *
+   * @return This configuration with the given inbox kind
+   */
+
+  public HBPerformanceConfiguration withInbox(
+    final HBInboxKind kind,
+    final HBWaitStrategy waitStrategy)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      kind,
+      waitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param newUnsolicited The configuration of unsolicited messages
+   *
+   * @return This configuration with the given unsolicited configuration
+   */
+
+  public HBPerformanceConfiguration withUnsolicited(
+    final HBUnsolicitedConfiguration newUnsolicited)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      newUnsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param capacity The maximum number of messages waiting to be written
+   *
+   * @return This configuration with the given outbox capacity
+   */
+
+  public HBPerformanceConfiguration withOutboxCapacity(
+    final int capacity)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      capacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param capacity The number of messages retained by each transport's
+   *                 flight recorder
+   *
+   * @return This configuration with the given flight recorder capacity
+   */
+
+  public HBPerformanceConfiguration withFlightRecorderCapacity(
+    final int capacity)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      capacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param enabled {@code true} if transports should minimize their
+   *                per-connection memory footprint
+   *
+   * @return This configuration with the given footprint mode
+   */
+
+  public HBPerformanceConfiguration withLowFootprint(
+    final boolean enabled)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      enabled,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param receive The socket receive buffer size
+   * @param send    The socket send buffer size
+   *
+   * @return This configuration with the given socket buffer sizes
+   */
+
+  public HBPerformanceConfiguration withSocketBuffers(
+    final OptionalInt receive,
+    final OptionalInt send)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      receive,
+      send,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      this.executor
+    );
+  }
+
+  /**
+   * @param messages The maximum number of frames written before a flush
+   * @param bytes    The maximum number of bytes buffered before a flush
+   *
+   * @return This configuration with the given batching thresholds
+   */
+
+  public HBPerformanceConfiguration withBatching(
+    final int messages,
+    final int bytes)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      messages,
+      bytes,
+      this.executor
+    );
+  }
+
+  /**
+   * Set the executor used for asynchronous work. The TCP and UDP
+   * transports' readers and writers are long-lived blocking loops that
+   * always run on their own threads of the configured kind, and so do not
+   * use the executor.
+   *
+   * @param newExecutor The executor used for asynchronous work
+   *
+   * @return This configuration with the given executor
+   */
+
+  public HBPerformanceConfiguration withExecutor(
+    final Executor newExecutor)
+  {
+    return new HBPerformanceConfiguration(
+      this.readerThreads,
+      this.readerThreadPriority,
+      this.inboxCapacity,
+      this.inboxKind,
+      this.inboxWaitStrategy,
+      this.unsolicited,
+      this.outboxCapacity,
+      this.flightRecorderCapacity,
+      this.lowFootprint,
+      this.socketReceiveBufferSize,
+      this.socketSendBufferSize,
+      this.batchMaxMessages,
+      this.batchMaxBytes,
+      Optional.of(newExecutor)
+    );
+  }
+
+  /**
+   * Start a reader thread of the configured kind.
+   *
+   * @param name The thread name
+   * @param task The reader
+   *
+   * @return The started thread
+   */
+
+  public Thread startReader(
+    final String name,
+    final Runnable task)
+  {
+    return this.startThread(name, task);
+  }
+
+  /**
+   * Start a writer thread. Writers use the same kind and priority of thread
+   * as readers.
+   *
+   * @param name The thread name
+   * @param task The writer
+   *
+   * @return The started thread
+   */
+
+  public Thread startWriter(
+    final String name,
+    final Runnable task)
+  {
+    return this.startThread(name, task);
+  }
+
+  /**
+   * Create an inbox of the configured kind and capacity.
+   *
+   * @param <T> The type of elements
+   *
+   * @return A new inbox
+   */
+
+  public <T> HBInboxType<T> createInbox()
+  {
+    return switch (this.inboxKind) {
+      case LINKED -> {
+        yield new HBLinkedInbox<>(this.inboxCapacity);
+      }
+      case RING -> {
+        yield new HBRingBuffer<>(this.inboxCapacity, this.inboxWaitStrategy);
+      }
+    };
+  }
+
+  /**
+   * Create a mailbox for received messages, with the configured handling
+   * of unsolicited messages. The unsolicited queue holds no more than the
+   * configured inbox capacity, even if its own configuration allows more.
+   *
+   * @param onDiscard A function called with each unsolicited message that
+   *                  is discarded without being handed out
+   * @param <T>       The type of elements
+   *
+   * @return A new mailbox
+   */
+
+  public <T> HBMailbox<T> createMailbox(
+    final Consumer<T> onDiscard)
+  {
+    return new HBMailbox<>(
+      this.unsolicited.withCapacity(
+        Math.min(this.unsolicited.capacity(), this.inboxCapacity)),
+      onDiscard
+    );
+  }
+
+  /**
+   * Create a flight recorder of the configured capacity.
+   *
+   * @param identity The functions used to extract message identifiers
+   * @param <M>      The type of messages
+   *
+   * @return A new flight recorder
+   */
+
+  public <M extends HBMessageType> HBFlightRecorder<M> createFlightRecorder(
+    final HBMessageIdentityType<M> identity)
+  {
+    return HBFlightRecorder.create(identity, this.flightRecorderCapacity);
+  }
+
+  private Thread startThread(
+    final String name,
+    final Runnable task)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(task, "task");
+
+    return switch (this.readerThreads) {
+      case VIRTUAL -> {
+        yield Thread.ofVirtual()
+          .name(name)
+          .start(task);
+      }
+      case PLATFORM -> {
+        yield Thread.ofPlatform()
+          .name(name)
+          .daemon(true)
+          .priority(this.readerThreadPriority)
+          .start(task);
+      }
+    };
+  }
+}
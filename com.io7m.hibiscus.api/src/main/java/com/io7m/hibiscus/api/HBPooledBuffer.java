@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * <p>A buffer borrowed from a {@link HBBufferPool}.</p>
+ *
+ * <p>A pooled buffer has a single owner at any given time. The owner must
+ * call {@link #close()} exactly once when it has finished with the buffer,
+ * after which neither this object nor the underlying {@link ByteBuffer} may
+ * be used. The same object is handed out again by later calls to
+ * {@link HBBufferPool#acquire(int)}.</p>
+ */
+
+public final class HBPooledBuffer
+  implements AutoCloseable
+{
+  private final HBBufferPool pool;
+  private final int sizeClass;
+  private final ByteBuffer buffer;
+  private boolean acquired;
+  private HBBufferLeak leak;
+  private Cleaner.Cleanable cleanable;
+
+  HBPooledBuffer(
+    final HBBufferPool inPool,
+    final int inSizeClass,
+    final ByteBuffer inBuffer)
+  {
+    this.pool =
+      Objects.requireNonNull(inPool, "pool");
+    this.sizeClass =
+      inSizeClass;
+    this.buffer =
+      Objects.requireNonNull(inBuffer, "buffer");
+  }
+
+  int sizeClass()
+  {
+    return this.sizeClass;
+  }
+
+  void onAcquire(
+    final int size,
+    final HBBufferLeak inLeak,
+    final Cleaner.Cleanable inCleanable)
+  {
+    this.acquired = true;
+    this.leak = inLeak;
+    this.cleanable = inCleanable;
+    this.buffer.clear();
+    this.buffer.limit(size);
+  }
+
+  /**
+   * @return The underlying buffer, with its position at zero and its limit
+   * at the requested size
+   */
+
+  public ByteBuffer buffer()
+  {
+    return this.buffer;
+  }
+
+  /**
+   * @return The capacity of the underlying buffer, which may exceed the
+   * requested size
+   */
+
+  public int capacity()
+  {
+    return this.buffer.capacity();
+  }
+
+  /**
+   * Return the buffer to its pool.
+   *
+   * @throws IllegalStateException If the buffer has already been returned
+   */
+
+  @Override
+  public void close()
+  {
+    if (!this.acquired) {
+      throw new IllegalStateException("Buffer has already been released.");
+    }
+
+    this.acquired = false;
+    if (this.leak != null) {
+      this.leak.released();
+      this.cleanable.clean();
+      this.leak = null;
+      this.cleanable = null;
+    }
+    this.pool.release(this);
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectConnected;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectFailed;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectRejected;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectTimedOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>The implementation of parallel pre-connection.</p>
+ *
+ * <p>Each endpoint is created and connected on its own virtual thread, so
+ * the whole operation takes roughly as long as the slowest single connect
+ * rather than the sum of all of them. The threads are owned by a scope that
+ * does not outlive the call: when the deadline passes, the remaining
+ * attempts are cancelled by interruption and the scope waits for their
+ * threads to finish. Every client that did not connect is closed before
+ * returning.</p>
+ *
+ * @see HBClientFactoryType#createAndConnect(HBConfigurationType, Collection,
+ * Duration)
+ */
+
+final class HBPreconnect
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBPreconnect.class);
+
+  private HBPreconnect()
+  {
+
+  }
+
+  static <
+    C extends HBConfigurationType,
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T extends HBClientType<M, P, X>,
+    X extends Exception>
+  HBPreconnectResult<M, P, T> createAndConnect(
+    final HBClientFactoryType<C, M, P, T, X> factory,
+    final C configuration,
+    final Collection<? extends P> endpoints,
+    final Duration deadline)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(factory, "factory");
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(endpoints, "endpoints");
+    Objects.requireNonNull(deadline, "deadline");
+
+    final List<P> targets = List.copyOf(endpoints);
+    final var count = targets.size();
+    final var timeStart = System.nanoTime();
+    final var timeEnd = timeStart + deadline.toNanos();
+    final var results =
+      new AtomicReferenceArray<HBPreconnectOutcomeType<M, P, T>>(count);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<?>>(count);
+      for (int index = 0; index < count; ++index) {
+        final var taskIndex = index;
+        futures.add(executor.submit(() -> {
+          runOne(factory, configuration, targets.get(taskIndex), results, taskIndex);
+        }));
+      }
+
+      try {
+        awaitAll(futures, timeEnd);
+      } finally {
+        for (final var future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+
+    final var outcomes =
+      new ArrayList<HBPreconnectOutcomeType<M, P, T>>(count);
+    int connected = 0;
+    for (int index = 0; index < count; ++index) {
+      final var outcome = results.get(index);
+      if (outcome == null) {
+        outcomes.add(new HBPreconnectTimedOut<>(targets.get(index)));
+      } else {
+        if (outcome instanceof HBPreconnectConnected<M, P, T>) {
+          ++connected;
+        }
+        outcomes.add(outcome);
+      }
+    }
+
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+    LOG.debug(
+      "Pre-connect: {}/{} connected in {}",
+      Integer.valueOf(connected),
+      Integer.valueOf(count),
+      elapsed
+    );
+    return new HBPreconnectResult<>(outcomes, elapsed);
+  }
+
+  private static void awaitAll(
+    final List<Future<?>> futures,
+    final long timeEnd)
+    throws InterruptedException
+  {
+    for (final var future : futures) {
+      final var remaining = timeEnd - System.nanoTime();
+      if (remaining <= 0L) {
+        return;
+      }
+
+      try {
+        future.get(remaining, TimeUnit.NANOSECONDS);
+      } catch (final TimeoutException e) {
+        return;
+      } catch (final ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  private static <
+    C extends HBConfigurationType,
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T extends HBClientType<M, P, X>,
+    X extends Exception>
+  void runOne(
+    final HBClientFactoryType<C, M, P, T, X> factory,
+    final C configuration,
+    final P parameters,
+    final AtomicReferenceArray<HBPreconnectOutcomeType<M, P, T>> results,
+    final int index)
+  {
+    T client = null;
+    HBPreconnectOutcomeType<M, P, T> outcome;
+
+    try {
+      client = factory.create(configuration);
+      outcome = switch (client.connect(parameters)) {
+        case final HBConnectionSucceeded<M, P, ?, X> s -> {
+          yield new HBPreconnectConnected<>(parameters, client, s.message());
+        }
+        case final HBConnectionFailed<M, P, ?, X> f -> {
+          yield new HBPreconnectRejected<>(parameters, f.message());
+        }
+        case final HBConnectionError<M, P, ?, X> e -> {
+          yield new HBPreconnectFailed<>(parameters, e.exception());
+        }
+      };
+    } catch (final InterruptedException e) {
+      outcome = new HBPreconnectTimedOut<>(parameters);
+    } catch (final Exception e) {
+      outcome = new HBPreconnectFailed<>(parameters, e);
+    }
+
+    if (client != null && !(outcome instanceof HBPreconnectConnected<M, P, T>)) {
+      closeQuietly(client);
+    }
+    results.set(index, outcome);
+  }
+
+  private static void closeQuietly(
+    final HBClientCloseableType<?> client)
+  {
+    try {
+      client.close();
+    } catch (final Exception e) {
+      LOG.debug("Failed to close client: ", e);
+    }
+  }
+}
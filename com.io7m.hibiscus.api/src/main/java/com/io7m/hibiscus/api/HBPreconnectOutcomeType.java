@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+
+/**
+ * The outcome of a parallel pre-connection for a single endpoint.
+ *
+ * @param <M> The type of messages
+ * @param <P> The type of connection parameters
+ * @param <T> The type of clients
+ *
+ * @see HBClientFactoryType#createAndConnect(HBConfigurationType,
+ * java.util.Collection, java.time.Duration)
+ */
+
+public sealed interface HBPreconnectOutcomeType<
+  M extends HBMessageType,
+  P extends HBConnectionParametersType,
+  T>
+{
+  /**
+   * @return The connection parameters for the endpoint
+   */
+
+  P parameters();
+
+  /**
+   * The client connected, and is now owned by the caller.
+   *
+   * @param parameters The connection parameters
+   * @param client     The connected client
+   * @param message    The message returned by the server
+   * @param <M>        The type of messages
+   * @param <P>        The type of connection parameters
+   * @param <T>        The type of clients
+   */
+
+  record HBPreconnectConnected<
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T>(
+    P parameters,
+    T client,
+    M message)
+    implements HBPreconnectOutcomeType<M, P, T>
+  {
+    /**
+     * The client connected, and is now owned by the caller.
+     */
+
+    public HBPreconnectConnected
+    {
+      Objects.requireNonNull(parameters, "parameters");
+      Objects.requireNonNull(client, "client");
+      Objects.requireNonNull(message, "message");
+    }
+  }
+
+  /**
+   * The server refused the connection. The client has been closed.
+   *
+   * @param parameters The connection parameters
+   * @param message    The message returned by the server
+   * @param <M>        The type of messages
+   * @param <P>        The type of connection parameters
+   * @param <T>        The type of clients
+   */
+
+  record HBPreconnectRejected<
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T>(
+    P parameters,
+    M message)
+    implements HBPreconnectOutcomeType<M, P, T>
+  {
+    /**
+     * The server refused the connection. The client has been closed.
+     */
+
+    public HBPreconnectRejected
+    {
+      Objects.requireNonNull(parameters, "parameters");
+      Objects.requireNonNull(message, "message");
+    }
+  }
+
+  /**
+   * Creating or connecting the client failed with an exception. The client,
+   * if one was created, has been closed.
+   *
+   * @param parameters The connection parameters
+   * @param exception  The exception
+   * @param <M>        The type of messages
+   * @param <P>        The type of connection parameters
+   * @param <T>        The type of clients
+   */
+
+  record HBPreconnectFailed<
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T>(
+    P parameters,
+    Exception exception)
+    implements HBPreconnectOutcomeType<M, P, T>
+  {
+    /**
+     * Creating or connecting the client failed with an exception.
+     */
+
+    public HBPreconnectFailed
+    {
+      Objects.requireNonNull(parameters, "parameters");
+      Objects.requireNonNull(exception, "exception");
+    }
+  }
+
+  /**
+   * The endpoint had not connected when the deadline passed, and the
+   * attempt was cancelled. The client, if one was created, has been closed.
+   *
+   * @param parameters The connection parameters
+   * @param <M>        The type of messages
+   * @param <P>        The type of connection parameters
+   * @param <T>        The type of clients
+   */
+
+  record HBPreconnectTimedOut<
+    M extends HBMessageType,
+    P extends HBConnectionParametersType,
+    T>(
+    P parameters)
+    implements HBPreconnectOutcomeType<M, P, T>
+  {
+    /**
+     * The endpoint had not connected when the deadline passed.
+     */
+
+    public HBPreconnectTimedOut
+    {
+      Objects.requireNonNull(parameters, "parameters");
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectConnected;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The result of a parallel pre-connection.
+ *
+ * @param outcomes The per-endpoint outcomes, in the order the endpoints were
+ *                 given
+ * @param elapsed  The time taken by the whole operation
+ * @param <M>      The type of messages
+ * @param <P>      The type of connection parameters
+ * @param <T>      The type of clients
+ *
+ * @see HBClientFactoryType#createAndConnect(HBConfigurationType,
+ * java.util.Collection, Duration)
+ */
+
+public record HBPreconnectResult<
+  M extends HBMessageType,
+  P extends HBConnectionParametersType,
+  T>(
+  List<HBPreconnectOutcomeType<M, P, T>> outcomes,
+  Duration elapsed)
+{
+  /**
+   * The result of a parallel pre-connection.
+   *
+   * @param outcomes The per-endpoint outcomes, in the order the endpoints
+   *                 were given
+   * @param elapsed  The time taken by the whole operation
+   */
+
+  public HBPreconnectResult
+  {
+    outcomes = List.copyOf(outcomes);
+    Objects.requireNonNull(elapsed, "elapsed");
+  }
+
+  /**
+   * @return The connected clients, in the order the endpoints were given
+   */
+
+  public List<T> clients()
+  {
+    return this.outcomes.stream()
+      .filter(o -> o instanceof HBPreconnectConnected<M, P, T>)
+      .map(o -> ((HBPreconnectConnected<M, P, T>) o).client())
+      .toList();
+  }
+
+  /**
+   * @return {@code true} if every endpoint connected
+   */
+
+  public boolean allConnected()
+  {
+    return this.outcomes.stream()
+      .allMatch(o -> o instanceof HBPreconnectConnected<M, P, T>);
+  }
+}
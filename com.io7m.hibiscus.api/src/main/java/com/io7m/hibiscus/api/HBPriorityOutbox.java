@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>An outbound queue with one lane per {@link HBMessagePriority}.</p>
+ *
+ * <p>Items are taken from the highest priority non-empty lane first. To
+ * prevent starvation, a non-empty lane that has been passed over more than
+ * a configured number of times in a row is served ahead of the higher
+ * priority lanes.</p>
+ *
+ * <p>Any number of threads may call {@link #offer(HBMessagePriority, Object)}
+ * concurrently, but at most one thread may call {@link #poll()} at any given
+ * time.</p>
+ *
+ * @param <T> The type of queued items
+ */
+
+public final class HBPriorityOutbox<T>
+{
+  private final List<ConcurrentLinkedQueue<T>> lanes;
+  private final int[] passedOver;
+  private final int starvationLimit;
+
+  /**
+   * An outbound queue with one lane per {@link HBMessagePriority}.
+   *
+   * @param inStarvationLimit The number of times a non-empty lane may be
+   *                          passed over before it is served regardless of
+   *                          the contents of higher priority lanes
+   */
+
+  public HBPriorityOutbox(
+    final int inStarvationLimit)
+  {
+    if (inStarvationLimit < 1) {
+      throw new IllegalArgumentException(
+        "Starvation limit must be positive: %d"
+          .formatted(Integer.valueOf(inStarvationLimit))
+      );
+    }
+
+    final var priorities = HBMessagePriority.values();
+    this.starvationLimit = inStarvationLimit;
+    this.lanes = new ArrayList<>(priorities.length);
+    for (int index = 0; index < priorities.length; ++index) {
+      this.lanes.add(new ConcurrentLinkedQueue<>());
+    }
+    this.passedOver = new int[priorities.length];
+  }
+
+  /**
+   * Add an item to the lane for the given priority.
+   *
+   * @param priority The priority
+   * @param item     The item
+   */
+
+  public void offer(
+    final HBMessagePriority priority,
+    final T item)
+  {
+    Objects.requireNonNull(priority, "priority");
+    Objects.requireNonNull(item, "item");
+
+    this.lanes.get(priority.lane()).add(item);
+  }
+
+  /**
+   * Take the next item that should be written.
+   *
+   * @return The next item, or {@code null} if all lanes are empty
+   */
+
+  public T poll()
+  {
+    int served = -1;
+    int starved = -1;
+
+    for (int lane = 0; lane < this.passedOver.length; ++lane) {
+      if (this.lanes.get(lane).isEmpty()) {
+        continue;
+      }
+      if (served == -1) {
+        served = lane;
+        continue;
+      }
+
+      this.passedOver[lane] += 1;
+      if (starved == -1 && this.passedOver[lane] > this.starvationLimit) {
+        starved = lane;
+      }
+    }
+
+    if (served == -1) {
+      return null;
+    }
+
+    final int chosen;
+    if (starved != -1) {
+      chosen = starved;
+    } else {
+      chosen = served;
+    }
+
+    this.passedOver[chosen] = 0;
+    return this.lanes.get(chosen).poll();
+  }
+
+  /**
+   * @return {@code true} if all lanes are empty
+   */
+
+  public boolean isEmpty()
+  {
+    for (final var lane : this.lanes) {
+      if (!lane.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Discard all queued items.
+   */
+
+  public void clear()
+  {
+    for (final var lane : this.lanes) {
+      lane.clear();
+    }
+  }
+}
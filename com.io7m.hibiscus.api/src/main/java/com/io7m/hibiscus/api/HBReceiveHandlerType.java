@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * <p>A handler for messages taken from a transport by
+ * {@link HBIOOperationsType#receive(java.time.Duration,
+ * HBReceiveHandlerType)}.</p>
+ *
+ * <p>The handler is called directly with the message rather than being
+ * handed an {@link HBReadType} value, so a single handler instance can be
+ * reused across any number of reads without allocating anything per
+ * message.</p>
+ *
+ * @param <M> The type of messages
+ */
+
+public interface HBReceiveHandlerType<M extends HBMessageType>
+{
+  /**
+   * A message was received that wasn't a direct response to any message that
+   * was previously written.
+   *
+   * @param message The message
+   *
+   * @see HBReadReceived
+   */
+
+  void onReceived(M message);
+
+  /**
+   * A message was received that was a direct response to a message that was
+   * previously written.
+   *
+   * @param message  The original message
+   * @param response The response received
+   *
+   * @see HBReadResponse
+   */
+
+  void onResponse(
+    M message,
+    M response);
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>A stream of responses to a single message, published with
+ * backpressure.</p>
+ *
+ * <p>A transport creates a stream when it sends a message whose response
+ * arrives in several parts. It offers each part to the stream as the part
+ * arrives, and completes the stream when the peer marks the end. Demand
+ * signalled by the subscriber is passed to the transport, which passes it
+ * on to the peer, so the peer never sends more parts than the subscriber
+ * has asked for and the stream never buffers more than the outstanding
+ * demand.</p>
+ *
+ * <p>A stream accepts a single subscriber. Items are delivered on whichever
+ * thread offers them or requests more, which is often a transport's reader
+ * thread, so subscribers should not block in
+ * {@link Flow.Subscriber#onNext(Object)}.</p>
+ *
+ * @param <M> The type of messages
+ */
+
+public final class HBResponseStream<M extends HBMessageType>
+  implements Flow.Publisher<M>
+{
+  private final LongConsumer onDemand;
+  private final Runnable onCancel;
+  private final ConcurrentLinkedQueue<M> items;
+  private final AtomicReference<Flow.Subscriber<? super M>> subscriber;
+  private final AtomicInteger draining;
+  private final AtomicLong requested;
+  private final AtomicBoolean cancelled;
+  private volatile boolean done;
+  private volatile Throwable failure;
+  private volatile Throwable violation;
+  private boolean terminated;
+
+  private HBResponseStream(
+    final LongConsumer inOnDemand,
+    final Runnable inOnCancel)
+  {
+    this.onDemand =
+      Objects.requireNonNull(inOnDemand, "onDemand");
+    this.onCancel =
+      Objects.requireNonNull(inOnCancel, "onCancel");
+    this.items =
+      new ConcurrentLinkedQueue<>();
+    this.subscriber =
+      new AtomicReference<>();
+    this.draining =
+      new AtomicInteger(0);
+    this.requested =
+      new AtomicLong(0L);
+    this.cancelled =
+      new AtomicBoolean(false);
+  }
+
+  /**
+   * Create an open stream.
+   *
+   * @param onDemand A function that passes the subscriber's demand to the
+   *                 peer
+   * @param onCancel A function that tells the peer to stop sending, called
+   *                 at most once
+   * @param <M>      The type of messages
+   *
+   * @return A stream
+   */
+
+  public static <M extends HBMessageType> HBResponseStream<M> create(
+    final LongConsumer onDemand,
+    final Runnable onCancel)
+  {
+    return new HBResponseStream<>(onDemand, onCancel);
+  }
+
+  /**
+   * Create a completed stream holding a single response, for transports
+   * that cannot stream.
+   *
+   * @param response The response
+   * @param <M>      The type of messages
+   *
+   * @return A stream
+   */
+
+  public static <M extends HBMessageType> HBResponseStream<M> of(
+    final M response)
+  {
+    Objects.requireNonNull(response, "response");
+
+    final var stream = new HBResponseStream<M>(n -> { }, () -> { });
+    stream.offer(response);
+    stream.complete();
+    return stream;
+  }
+
+  /**
+   * Add a part of the response. Parts arriving after the stream has been
+   * cancelled are discarded.
+   *
+   * @param item The part
+   */
+
+  public void offer(
+    final M item)
+  {
+    Objects.requireNonNull(item, "item");
+
+    if (!this.cancelled.get()) {
+      this.items.add(item);
+      this.drain();
+    }
+  }
+
+  /**
+   * Mark the end of the stream. The subscriber is completed once it has
+   * received every part offered before this call.
+   */
+
+  public void complete()
+  {
+    this.done = true;
+    this.drain();
+  }
+
+  /**
+   * Fail the stream. The subscriber receives the error once it has received
+   * every part offered before this call.
+   *
+   * @param error The error
+   */
+
+  public void fail(
+    final Throwable error)
+  {
+    Objects.requireNonNull(error, "error");
+
+    if (!this.done) {
+      this.failure = error;
+      this.done = true;
+    }
+    this.drain();
+  }
+
+  /**
+   * @return {@code true} if the stream has ended, failed, or been cancelled
+   */
+
+  public boolean isDone()
+  {
+    return this.done || this.cancelled.get();
+  }
+
+  @Override
+  public void subscribe(
+    final Flow.Subscriber<? super M> newSubscriber)
+  {
+    Objects.requireNonNull(newSubscriber, "subscriber");
+
+    if (!this.subscriber.compareAndSet(null, newSubscriber)) {
+      newSubscriber.onSubscribe(new Flow.Subscription()
+      {
+        @Override
+        public void request(
+          final long n)
+        {
+
+        }
+
+        @Override
+        public void cancel()
+        {
+
+        }
+      });
+      newSubscriber.onError(
+        new IllegalStateException("A response stream has one subscriber."));
+      return;
+    }
+
+    newSubscriber.onSubscribe(new Subscription());
+    this.drain();
+  }
+
+  /**
+   * Deliver as many buffered parts as the subscriber has requested, and the
+   * end of the stream if it has been reached. Only one thread drains at a
+   * time; a call made whilst another thread is draining makes that thread
+   * go around again instead.
+   */
+
+  private void drain()
+  {
+    if (this.draining.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    while (true) {
+      final var target = this.subscriber.get();
+      if (target != null && !this.terminated) {
+        this.deliver(target);
+      }
+
+      missed = this.draining.addAndGet(-missed);
+      if (missed == 0) {
+        return;
+      }
+    }
+  }
+
+  private void deliver(
+    final Flow.Subscriber<? super M> target)
+  {
+    while (this.requested.get() > 0L && !this.cancelled.get()) {
+      final var item = this.items.poll();
+      if (item == null) {
+        break;
+      }
+      this.requested.decrementAndGet();
+      target.onNext(item);
+    }
+
+    if (this.cancelled.get()) {
+      this.items.clear();
+      this.terminated = true;
+      final var error = this.violation;
+      if (error != null) {
+        target.onError(error);
+      }
+      return;
+    }
+
+    if (this.done && this.items.isEmpty()) {
+      this.terminated = true;
+      final var error = this.failure;
+      if (error != null) {
+        target.onError(error);
+      } else {
+        target.onComplete();
+      }
+    }
+  }
+
+  private final class Subscription
+    implements Flow.Subscription
+  {
+    Subscription()
+    {
+
+    }
+
+    @Override
+    public void request(
+      final long n)
+    {
+      final var stream = HBResponseStream.this;
+
+      /*
+       * A non-positive request is signalled to the subscriber at once,
+       * ahead of any buffered parts, and cancels the stream (rule 3.9).
+       */
+
+      if (n <= 0L) {
+        stream.violation = new IllegalArgumentException(
+          "Demand must be positive: %d".formatted(Long.valueOf(n)));
+        this.cancel();
+        return;
+      }
+
+      stream.requested.accumulateAndGet(n, (x, y) -> {
+        final var sum = x + y;
+        return sum < 0L ? Long.MAX_VALUE : sum;
+      });
+
+      if (!stream.isDone()) {
+        stream.onDemand.accept(n);
+      }
+      stream.drain();
+    }
+
+    @Override
+    public void cancel()
+    {
+      final var stream = HBResponseStream.this;
+      if (stream.cancelled.compareAndSet(false, true)) {
+        if (!stream.done) {
+          stream.onCancel.run();
+        }
+        stream.drain();
+      }
+    }
+  }
+}
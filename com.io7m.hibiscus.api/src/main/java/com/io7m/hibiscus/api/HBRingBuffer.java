@@ -0,0 +1,282 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A bounded, array-backed ring buffer inbox. Producers and consumers
+ * claim slots with a single compare-and-set, so hand-offs neither allocate
+ * nor take locks. The buffer is designed for the many-producers,
+ * one-consumer pattern of a transport inbox, but remains correct with any
+ * number of consumers.</p>
+ *
+ * <p>A thread that finds the buffer empty (or full) waits according to the
+ * buffer's {@link HBWaitStrategy}. Only {@link HBWaitStrategy#BLOCKING}
+ * takes a lock, and then only when a thread actually has to wait; the
+ * other side checks an atomic count of waiting threads and signals only if
+ * it is non-zero.</p>
+ *
+ * <p>The capacity is rounded up to the next power of two, and is at least
+ * two.</p>
+ *
+ * @param <T> The type of elements
+ */
+
+public final class HBRingBuffer<T> implements HBInboxType<T>
+{
+  /**
+   * The largest supported capacity.
+   */
+
+  public static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private static final int SPIN_TRIES = 100;
+
+  private final HBBoundedQueue<T> queue;
+  private final HBWaitStrategy waitStrategy;
+  private final int capacity;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final AtomicInteger consumersWaiting;
+  private final AtomicInteger producersWaiting;
+
+  /**
+   * Create a ring buffer.
+   *
+   * @param inCapacity     The minimum capacity
+   * @param inWaitStrategy The wait strategy
+   */
+
+  public HBRingBuffer(
+    final int inCapacity,
+    final HBWaitStrategy inWaitStrategy)
+  {
+    if (inCapacity < 1 || inCapacity > MAXIMUM_CAPACITY) {
+      throw new IllegalArgumentException(
+        "Capacity must be in [1, %d]: %d".formatted(
+          Integer.valueOf(MAXIMUM_CAPACITY),
+          Integer.valueOf(inCapacity)
+        )
+      );
+    }
+
+    this.waitStrategy =
+      Objects.requireNonNull(inWaitStrategy, "waitStrategy");
+    this.capacity =
+      Math.max(2, Integer.highestOneBit(inCapacity - 1) << 1);
+    this.queue =
+      new HBBoundedQueue<>(this.capacity);
+    this.lock =
+      new ReentrantLock();
+    this.notEmpty =
+      this.lock.newCondition();
+    this.notFull =
+      this.lock.newCondition();
+    this.consumersWaiting =
+      new AtomicInteger(0);
+    this.producersWaiting =
+      new AtomicInteger(0);
+  }
+
+  /**
+   * @return The capacity
+   */
+
+  public int capacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * @return The wait strategy
+   */
+
+  public HBWaitStrategy waitStrategy()
+  {
+    return this.waitStrategy;
+  }
+
+  @Override
+  public void put(
+    final T item)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(item, "item");
+
+    for (int attempt = 0; true; ++attempt) {
+      if (this.queue.offer(item)) {
+        this.signal(this.notEmpty, this.consumersWaiting);
+        return;
+      }
+      this.idle(
+        this.notFull,
+        this.producersWaiting,
+        false,
+        Long.MAX_VALUE,
+        attempt
+      );
+    }
+  }
+
+  @Override
+  public boolean offer(
+    final T item)
+  {
+    Objects.requireNonNull(item, "item");
+
+    if (this.queue.offer(item)) {
+      this.signal(this.notEmpty, this.consumersWaiting);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public T poll(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    final var timeoutNanos = unit.toNanos(timeout);
+    final var timeStart = System.nanoTime();
+
+    for (int attempt = 0; true; ++attempt) {
+      final var item = this.queue.poll();
+      if (item != null) {
+        this.signal(this.notFull, this.producersWaiting);
+        return item;
+      }
+
+      final var remaining = timeoutNanos - (System.nanoTime() - timeStart);
+      if (remaining <= 0L) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        return null;
+      }
+      this.idle(
+        this.notEmpty,
+        this.consumersWaiting,
+        true,
+        remaining,
+        attempt
+      );
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return this.queue.size();
+  }
+
+  /**
+   * Wake one waiting thread, if there are any. The waiting count is
+   * incremented before a waiter checks the buffer for the last time, and
+   * the buffer is changed before the count is read here, so a waiter that
+   * missed the change is always counted.
+   */
+
+  private void signal(
+    final Condition condition,
+    final AtomicInteger waiting)
+  {
+    if (waiting.get() > 0) {
+      this.lock.lock();
+      try {
+        condition.signal();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  private void idle(
+    final Condition condition,
+    final AtomicInteger waiting,
+    final boolean forItems,
+    final long remainingNanos,
+    final int attempt)
+    throws InterruptedException
+  {
+    switch (this.waitStrategy) {
+      case BUSY_SPIN, YIELDING -> {
+        final var spin =
+          attempt < SPIN_TRIES
+          || (forItems && this.waitStrategy == HBWaitStrategy.BUSY_SPIN);
+
+        if (spin) {
+          Thread.onSpinWait();
+        } else {
+          Thread.yield();
+        }
+        checkInterrupted();
+      }
+      case BLOCKING -> {
+        this.lock.lockInterruptibly();
+        try {
+          waiting.incrementAndGet();
+          try {
+            if (!this.isReady(forItems)) {
+              condition.awaitNanos(remainingNanos);
+            }
+          } finally {
+            waiting.decrementAndGet();
+          }
+        } finally {
+          this.lock.unlock();
+        }
+      }
+    }
+  }
+
+  private boolean isReady(
+    final boolean forItems)
+  {
+    final var size = this.queue.size();
+    if (forItems) {
+      return size > 0;
+    }
+    return size < this.capacity;
+  }
+
+  private static void checkInterrupted()
+    throws InterruptedException
+  {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[HBRingBuffer %d/%d %s]".formatted(
+      Integer.valueOf(this.size()),
+      Integer.valueOf(this.capacity),
+      this.waitStrategy
+    );
+  }
+}
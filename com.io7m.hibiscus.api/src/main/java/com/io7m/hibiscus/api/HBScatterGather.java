@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherCancelled;
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherFailed;
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherSucceeded;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * <p>Functions to send a message to many clients at once and gather the
+ * responses.</p>
+ *
+ * <p>Each client's {@code sendAndWait} call runs on its own virtual thread,
+ * with a timeout that ends at the operation's deadline. When the completion
+ * policy is satisfied, becomes impossible to satisfy, or the deadline
+ * passes, the requests still in flight are withdrawn with
+ * {@link HBIOOperationsType#cancel(HBMessageType)}. The threads are never
+ * interrupted: interrupting a thread blocked in socket I/O closes the
+ * socket, and the clients remain the caller's to use. The call waits for
+ * the threads to finish, which they do as soon as their transports abandon
+ * the cancelled requests, and in any case by the deadline.</p>
+ */
+
+public final class HBScatterGather
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBScatterGather.class);
+
+  private HBScatterGather()
+  {
+
+  }
+
+  /**
+   * Send a message to every client in parallel and wait for responses.
+   *
+   * @param clients  The clients
+   * @param messages A function that produces the message to send to each
+   *                 client
+   * @param policy   The completion policy
+   * @param deadline The time allowed for the whole operation
+   * @param <C>      The type of clients
+   * @param <M>      The type of messages
+   *
+   * @return The result of the operation
+   *
+   * @throws InterruptedException On interruption
+   */
+
+  public static <C extends HBClientType<M, ?, ?>, M extends HBMessageType>
+  HBGatherResult<C, M> sendAndWait(
+    final Collection<? extends C> clients,
+    final Function<? super C, ? extends M> messages,
+    final HBGatherPolicyType policy,
+    final Duration deadline)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(clients, "clients");
+    Objects.requireNonNull(messages, "messages");
+    Objects.requireNonNull(policy, "policy");
+    Objects.requireNonNull(deadline, "deadline");
+
+    final List<C> targets = List.copyOf(clients);
+    final var count = targets.size();
+    final var required = policy.required(count);
+    final var timeEnd = System.nanoTime() + deadline.toNanos();
+    final var results =
+      new AtomicReferenceArray<HBGatherOutcomeType<C, M>>(count);
+    final var sent =
+      new AtomicReferenceArray<M>(count);
+    final var finished =
+      new AtomicBoolean(false);
+    final var completions =
+      new LinkedBlockingQueue<Integer>();
+    final var threads =
+      new ArrayList<Thread>(count);
+
+    for (int index = 0; index < count; ++index) {
+      final var taskIndex = index;
+      threads.add(Thread.ofVirtual().start(() -> {
+        runOne(
+          targets.get(taskIndex),
+          messages,
+          timeEnd,
+          finished,
+          sent,
+          results,
+          taskIndex
+        );
+        completions.add(Integer.valueOf(taskIndex));
+      }));
+    }
+
+    final var outcomes = new ArrayList<HBGatherOutcomeType<C, M>>(count);
+    int succeeded = 0;
+
+    try {
+      awaitPolicy(completions, results, count, required, timeEnd);
+    } finally {
+
+      /*
+       * The outcomes are fixed at this point: a response that arrives while
+       * the stragglers are being cancelled does not count.
+       */
+
+      finished.set(true);
+      for (int index = 0; index < count; ++index) {
+        final var outcome = results.get(index);
+        if (outcome == null) {
+          outcomes.add(new HBGatherCancelled<>(targets.get(index)));
+          cancelOne(targets.get(index), sent.get(index));
+        } else {
+          if (outcome instanceof HBGatherSucceeded<C, M>) {
+            ++succeeded;
+          }
+          outcomes.add(outcome);
+        }
+      }
+    }
+
+    for (final var thread : threads) {
+      final var remaining = Math.max(0L, timeEnd - System.nanoTime());
+      if (!thread.join(Duration.ofNanos(remaining))) {
+        LOG.debug("Scatter/gather: request outlived its deadline");
+      }
+    }
+
+    final var satisfied = succeeded >= required;
+    LOG.debug(
+      "Scatter/gather {}: {}/{} succeeded",
+      policy,
+      Integer.valueOf(succeeded),
+      Integer.valueOf(count)
+    );
+    return new HBGatherResult<>(policy, satisfied, outcomes);
+  }
+
+  private static <C extends HBClientType<M, ?, ?>, M extends HBMessageType>
+  void cancelOne(
+    final C client,
+    final M message)
+  {
+    if (message == null) {
+      return;
+    }
+
+    try {
+      client.cancel(message);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final Exception e) {
+      LOG.debug("Scatter/gather: cancel failed: ", e);
+    }
+  }
+
+  private static <C extends HBClientType<M, ?, ?>, M extends HBMessageType>
+  void awaitPolicy(
+    final LinkedBlockingQueue<Integer> completions,
+    final AtomicReferenceArray<HBGatherOutcomeType<C, M>> results,
+    final int count,
+    final int required,
+    final long timeEnd)
+    throws InterruptedException
+  {
+    int succeeded = 0;
+    int failed = 0;
+
+    while (succeeded < required && failed <= count - required) {
+      final var remaining = timeEnd - System.nanoTime();
+      if (remaining <= 0L) {
+        return;
+      }
+
+      final var done = completions.poll(remaining, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        return;
+      }
+
+      if (results.get(done.intValue()) instanceof HBGatherSucceeded<C, M>) {
+        ++succeeded;
+      } else {
+        ++failed;
+      }
+    }
+  }
+
+  private static <C extends HBClientType<M, ?, ?>, M extends HBMessageType>
+  void runOne(
+    final C client,
+    final Function<? super C, ? extends M> messages,
+    final long timeEnd,
+    final AtomicBoolean finished,
+    final AtomicReferenceArray<M> sent,
+    final AtomicReferenceArray<HBGatherOutcomeType<C, M>> results,
+    final int index)
+  {
+    try {
+      final M message =
+        messages.apply(client);
+
+      /*
+       * The message is published before the check, so that either this
+       * thread sees the operation has finished and does not send, or the
+       * gathering thread sees the message and cancels it.
+       */
+
+      sent.set(index, message);
+      if (finished.get()) {
+        return;
+      }
+
+      final var remaining =
+        Duration.ofNanos(Math.max(0L, timeEnd - System.nanoTime()));
+      final M response =
+        client.sendAndWait(message, remaining);
+
+      results.set(index, new HBGatherSucceeded<>(client, response));
+    } catch (final InterruptedException e) {
+      results.set(index, new HBGatherCancelled<>(client));
+    } catch (final Exception e) {
+      results.set(index, new HBGatherFailed<>(client, e));
+    }
+  }
+}
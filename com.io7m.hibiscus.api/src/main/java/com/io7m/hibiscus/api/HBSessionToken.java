@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * <p>An opaque token issued by a server after a successful login, which a
+ * client can present on a later connection to resume its session without
+ * repeating the full login.</p>
+ *
+ * <p>The token value is a bearer credential, and so it is omitted from the
+ * string form of this record to keep it out of logs.</p>
+ *
+ * @param value     The token value
+ * @param expiresAt The time after which the server will no longer accept
+ *                  the token
+ */
+
+public record HBSessionToken(
+  String value,
+  Instant expiresAt)
+{
+  /**
+   * <p>An opaque token issued by a server after a successful login.</p>
+   *
+   * @param value     The token value
+   * @param expiresAt The time after which the server will no longer accept
+   *                  the token
+   */
+
+  public HBSessionToken
+  {
+    Objects.requireNonNull(value, "value");
+    Objects.requireNonNull(expiresAt, "expiresAt");
+
+    if (value.isBlank()) {
+      throw new IllegalArgumentException("Session token must be non-blank.");
+    }
+  }
+
+  /**
+   * @param time The current time
+   *
+   * @return {@code true} if the token has expired at the given time
+   */
+
+  public boolean isExpiredAt(
+    final Instant time)
+  {
+    return !time.isBefore(this.expiresAt);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[HBSessionToken expiresAt=%s]".formatted(this.expiresAt);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.OptionalLong;
+
+/**
+ * A completed span.
+ *
+ * @param context      The span's trace context
+ * @param parentSpanId The ID of the parent span, if the span is not the root
+ *                     of its trace
+ * @param name         The span name
+ * @param start        The time the span started
+ * @param duration     The duration of the span
+ */
+
+public record HBSpan(
+  HBTraceContext context,
+  OptionalLong parentSpanId,
+  String name,
+  Instant start,
+  Duration duration)
+{
+  /**
+   * A completed span.
+   *
+   * @param context      The span's trace context
+   * @param parentSpanId The ID of the parent span, if the span is not the
+   *                     root of its trace
+   * @param name         The span name
+   * @param start        The time the span started
+   * @param duration     The duration of the span
+   */
+
+  public HBSpan
+  {
+    Objects.requireNonNull(context, "context");
+    Objects.requireNonNull(parentSpanId, "parentSpanId");
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(start, "start");
+    Objects.requireNonNull(duration, "duration");
+  }
+}
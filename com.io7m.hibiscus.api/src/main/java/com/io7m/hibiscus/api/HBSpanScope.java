@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.OptionalLong;
+
+/**
+ * <p>A span in progress. The span's context is the current context of the
+ * thread that started it until the scope is closed, at which point the
+ * previous context is restored and, if the span is sampled, the span is
+ * passed to the tracer's sink.</p>
+ *
+ * <p>A scope must be closed on the thread that opened it.</p>
+ *
+ * @see HBTracer#startSpan(String)
+ */
+
+public final class HBSpanScope
+  implements AutoCloseable
+{
+  private final HBSpanSinkType sink;
+  private final HBTraceContext context;
+  private final HBTraceContext previous;
+  private final OptionalLong parentSpanId;
+  private final String name;
+  private final Instant start;
+  private final long startNanos;
+  private boolean closed;
+
+  HBSpanScope(
+    final HBSpanSinkType inSink,
+    final HBTraceContext inContext,
+    final OptionalLong inParentSpanId,
+    final String inName)
+  {
+    this.sink =
+      Objects.requireNonNull(inSink, "sink");
+    this.context =
+      Objects.requireNonNull(inContext, "context");
+    this.parentSpanId =
+      Objects.requireNonNull(inParentSpanId, "parentSpanId");
+    this.name =
+      Objects.requireNonNull(inName, "name");
+
+    if (inContext.sampled()) {
+      this.start = Instant.now();
+      this.startNanos = System.nanoTime();
+    } else {
+      this.start = Instant.EPOCH;
+      this.startNanos = 0L;
+    }
+
+    this.previous = HBTraceContext.swapCurrent(inContext);
+  }
+
+  /**
+   * @return The context of this span
+   */
+
+  public HBTraceContext context()
+  {
+    return this.context;
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    HBTraceContext.swapCurrent(this.previous);
+
+    if (this.context.sampled()) {
+      this.sink.record(
+        new HBSpan(
+          this.context,
+          this.parentSpanId,
+          this.name,
+          this.start,
+          Duration.ofNanos(System.nanoTime() - this.startNanos)
+        )
+      );
+    }
+  }
+}
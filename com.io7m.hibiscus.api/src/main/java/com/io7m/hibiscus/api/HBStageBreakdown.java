@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The time spent by a single request in each {@link HBLatencyStage}.
+ *
+ * @param encodeNanos  The time spent encoding the request
+ * @param queueNanos   The time spent queued for writing
+ * @param writeNanos   The time spent writing the request
+ * @param networkNanos The time between the request being written and the
+ *                     response being read
+ * @param decodeNanos  The time spent decoding the response
+ * @param inboxNanos   The time the response spent in the inbox
+ */
+
+public record HBStageBreakdown(
+  long encodeNanos,
+  long queueNanos,
+  long writeNanos,
+  long networkNanos,
+  long decodeNanos,
+  long inboxNanos)
+{
+  /**
+   * @param stage The stage
+   *
+   * @return The time spent in the given stage
+   */
+
+  public long nanos(
+    final HBLatencyStage stage)
+  {
+    return switch (stage) {
+      case ENCODE -> this.encodeNanos;
+      case QUEUE -> this.queueNanos;
+      case WRITE -> this.writeNanos;
+      case NETWORK -> this.networkNanos;
+      case DECODE -> this.decodeNanos;
+      case INBOX -> this.inboxNanos;
+    };
+  }
+
+  /**
+   * @return The sum of the time spent in all stages
+   */
+
+  public long totalNanos()
+  {
+    return this.encodeNanos
+           + this.queueNanos
+           + this.writeNanos
+           + this.networkNanos
+           + this.decodeNanos
+           + this.inboxNanos;
+  }
+
+  /**
+   * @return The breakdown as a map
+   */
+
+  public Map<HBLatencyStage, Long> toMap()
+  {
+    final var results = new EnumMap<HBLatencyStage, Long>(HBLatencyStage.class);
+    for (final var stage : HBLatencyStage.values()) {
+      results.put(stage, Long.valueOf(this.nanos(stage)));
+    }
+    return results;
+  }
+
+  @Override
+  public String toString()
+  {
+    final var text = new StringBuilder();
+    text.append("total=");
+    text.append(this.totalNanos());
+    text.append("ns");
+    for (final var stage : HBLatencyStage.values()) {
+      text.append(' ');
+      text.append(stage.name().toLowerCase(Locale.ROOT));
+      text.append('=');
+      text.append(this.nanos(stage));
+      text.append("ns");
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Per-stage latency histograms for a single transport.</p>
+ *
+ * <p>Transports record the time spent in each {@link HBLatencyStage} as the
+ * stage completes, so the stage histograms include messages that are not
+ * part of a request/response exchange. When a {@code sendAndWait} call
+ * completes, the transport additionally records the full
+ * {@link HBStageBreakdown} of the request; requests whose total exceeds the
+ * slow request threshold are logged along with their breakdown.</p>
+ *
+ * <p>The histogram for a stage is allocated when the stage is first
+ * recorded (or first inspected), so a transport that never exercises a
+ * stage does not pay for its histogram.</p>
+ */
+
+public final class HBStageLatencies
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBStageLatencies.class);
+
+  private static final HBLatencyStage[] STAGES = HBLatencyStage.values();
+
+  private final AtomicReferenceArray<HBLatencyHistogram> stages;
+  private final HBLatencyHistogram requests;
+  private final Duration slowThreshold;
+  private final long slowThresholdNanos;
+
+  /**
+   * Per-stage latency histograms for a single transport.
+   *
+   * @param inSlowThreshold The total latency above which requests are logged
+   */
+
+  public HBStageLatencies(
+    final Duration inSlowThreshold)
+  {
+    this.slowThreshold =
+      Objects.requireNonNull(inSlowThreshold, "slowThreshold");
+    this.slowThresholdNanos =
+      inSlowThreshold.toNanos();
+    this.requests =
+      new HBLatencyHistogram();
+    this.stages =
+      new AtomicReferenceArray<>(STAGES.length);
+  }
+
+  /**
+   * @return The total latency above which requests are logged
+   */
+
+  public Duration slowThreshold()
+  {
+    return this.slowThreshold;
+  }
+
+  /**
+   * Record the time spent in a stage.
+   *
+   * @param stage The stage
+   * @param nanos The time in nanoseconds
+   */
+
+  public void record(
+    final HBLatencyStage stage,
+    final long nanos)
+  {
+    this.histogram(stage).record(nanos);
+  }
+
+  /**
+   * Record the completion of a request. The individual stages are
+   * expected to have already been recorded with
+   * {@link #record(HBLatencyStage, long)}.
+   *
+   * @param request   The request
+   * @param breakdown The time the request spent in each stage
+   */
+
+  public void recordRequest(
+    final Object request,
+    final HBStageBreakdown breakdown)
+  {
+    final var total = breakdown.totalNanos();
+    this.requests.record(total);
+
+    if (total > this.slowThresholdNanos) {
+      LOG.warn("Slow request {}: {}", request, breakdown);
+    }
+  }
+
+  /**
+   * @param stage The stage
+   *
+   * @return The histogram for the given stage
+   */
+
+  public HBLatencyHistogram histogram(
+    final HBLatencyStage stage)
+  {
+    final var index = stage.ordinal();
+    final var existing = this.stages.get(index);
+    if (existing != null) {
+      return existing;
+    }
+
+    final var created = new HBLatencyHistogram();
+    final var witness = this.stages.compareAndExchange(index, null, created);
+    if (witness != null) {
+      return witness;
+    }
+    return created;
+  }
+
+  /**
+   * @return The histogram of total request latencies
+   */
+
+  public HBLatencyHistogram requests()
+  {
+    return this.requests;
+  }
+
+  @Override
+  public String toString()
+  {
+    final var recorded = new EnumMap<HBLatencyStage, HBLatencyHistogram>(
+      HBLatencyStage.class
+    );
+    for (final var stage : STAGES) {
+      final var histogram = this.stages.get(stage.ordinal());
+      if (histogram != null) {
+        recorded.put(stage, histogram);
+      }
+    }
+
+    return "[HBStageLatencies requests=%s stages=%s]"
+      .formatted(this.requests, recorded);
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The kind of thread on which a transport runs its blocking readers.
+ *
+ * @see HBPerformanceConfiguration
+ */
+
+public enum HBThreadKind
+{
+  /**
+   * Readers run on virtual threads. Idle readers cost very little, and so
+   * this is the right choice for large numbers of mostly idle connections.
+   */
+
+  VIRTUAL,
+
+  /**
+   * Each reader runs on a dedicated platform daemon thread. A dedicated
+   * thread is never descheduled to run unrelated virtual threads and may be
+   * given a raised priority, which reduces latency at the cost of memory and
+   * a kernel thread per connection.
+   */
+
+  PLATFORM
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>The identity of a span within a trace, propagated from caller to callee
+ * so that work on either side of a connection can be attributed to the same
+ * request.</p>
+ *
+ * <p>The sampling decision is made once, when the root span of a trace is
+ * started, and is carried along with the context: every span in a trace is
+ * either recorded or not. The context of the span currently executing on a
+ * thread is available from {@link #current()}.</p>
+ *
+ * @param traceIdHigh The high 64 bits of the trace ID
+ * @param traceIdLow  The low 64 bits of the trace ID
+ * @param spanId      The span ID
+ * @param sampled     {@code true} if spans in this trace are recorded
+ *
+ * @see HBTracer
+ */
+
+public record HBTraceContext(
+  long traceIdHigh,
+  long traceIdLow,
+  long spanId,
+  boolean sampled)
+{
+  private static final ThreadLocal<HBTraceContext> CURRENT =
+    new ThreadLocal<>();
+
+  private static final HexFormat HEX =
+    HexFormat.of();
+
+  private static final String TRACE_PARENT_VERSION = "00";
+  private static final String TRACE_PARENT_SAMPLED = "01";
+  private static final String TRACE_PARENT_UNSAMPLED = "00";
+  private static final int TRACE_PARENT_PARTS = 4;
+  private static final int TRACE_ID_DIGITS = 32;
+  private static final int SPAN_ID_DIGITS = 16;
+  private static final int FLAG_SAMPLED = 1;
+  private static final int FLAGS_INDEX = 3;
+
+  /**
+   * @return The context of the span currently executing on this thread
+   */
+
+  public static Optional<HBTraceContext> current()
+  {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  static HBTraceContext swapCurrent(
+    final HBTraceContext context)
+  {
+    final var previous = CURRENT.get();
+    if (context == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(context);
+    }
+    return previous;
+  }
+
+  /**
+   * @return The trace ID as 32 lowercase hexadecimal digits
+   */
+
+  public String traceId()
+  {
+    return HEX.toHexDigits(this.traceIdHigh) + HEX.toHexDigits(this.traceIdLow);
+  }
+
+  /**
+   * @return This context as a W3C {@code traceparent} header value
+   */
+
+  public String toTraceParent()
+  {
+    final String flags;
+    if (this.sampled) {
+      flags = TRACE_PARENT_SAMPLED;
+    } else {
+      flags = TRACE_PARENT_UNSAMPLED;
+    }
+
+    return String.join(
+      "-",
+      TRACE_PARENT_VERSION,
+      this.traceId(),
+      HEX.toHexDigits(this.spanId),
+      flags
+    );
+  }
+
+  /**
+   * Parse a W3C {@code traceparent} header value.
+   *
+   * @param text The header value
+   *
+   * @return The context, or nothing if the value is malformed
+   */
+
+  public static Optional<HBTraceContext> ofTraceParent(
+    final String text)
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var parts = text.trim().split("-");
+    if (parts.length != TRACE_PARENT_PARTS) {
+      return Optional.empty();
+    }
+
+    final var traceId = parts[1];
+    final var spanId = parts[2];
+    final var flags = parts[FLAGS_INDEX];
+    if (traceId.length() != TRACE_ID_DIGITS
+        || spanId.length() != SPAN_ID_DIGITS
+        || flags.length() != 2) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(
+        new HBTraceContext(
+          HexFormat.fromHexDigitsToLong(traceId, 0, SPAN_ID_DIGITS),
+          HexFormat.fromHexDigitsToLong(traceId, SPAN_ID_DIGITS, TRACE_ID_DIGITS),
+          HexFormat.fromHexDigitsToLong(spanId),
+          (HexFormat.fromHexDigits(flags) & FLAG_SAMPLED) != 0
+        )
+      );
+    } catch (final IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.toTraceParent();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.api;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>A tracer that starts spans and passes sampled spans to a sink.</p>
+ *
+ * <p>Sampling is head-based: whether a trace is recorded is decided when its
+ * root span is started, according to the tracer's sampling rate, and every
+ * later span in the trace (including spans started on the far side of a
+ * connection) follows that decision. Unsampled spans still carry a context,
+ * so that the decision propagates, but are never passed to the sink.</p>
+ */
+
+public final class HBTracer
+{
+  private static final HBTracer DISABLED =
+    new HBTracer(0.0, span -> { });
+
+  private final double samplingRate;
+  private final HBSpanSinkType sink;
+
+  private HBTracer(
+    final double inSamplingRate,
+    final HBSpanSinkType inSink)
+  {
+    if (!(inSamplingRate >= 0.0 && inSamplingRate <= 1.0)) {
+      throw new IllegalArgumentException(
+        "Sampling rate must be in the range [0, 1]: %s"
+          .formatted(Double.valueOf(inSamplingRate))
+      );
+    }
+
+    this.samplingRate = inSamplingRate;
+    this.sink = Objects.requireNonNull(inSink, "sink");
+  }
+
+  /**
+   * Create a tracer.
+   *
+   * @param samplingRate The fraction of new traces that are recorded
+   * @param sink         The sink that receives sampled spans
+   *
+   * @return A tracer
+   */
+
+  public static HBTracer create(
+    final double samplingRate,
+    final HBSpanSinkType sink)
+  {
+    return new HBTracer(samplingRate, sink);
+  }
+
+  /**
+   * @return A tracer that samples no new traces and discards all spans
+   */
+
+  public static HBTracer disabled()
+  {
+    return DISABLED;
+  }
+
+  /**
+   * @return The fraction of new traces that are recorded
+   */
+
+  public double samplingRate()
+  {
+    return this.samplingRate;
+  }
+
+  /**
+   * Start a span as a child of the thread's current span or, if there is no
+   * current span, as the root of a new trace.
+   *
+   * @param name The span name
+   *
+   * @return The span
+   */
+
+  public HBSpanScope startSpan(
+    final String name)
+  {
+    return this.startSpan(name, HBTraceContext.current());
+  }
+
+  /**
+   * Start a span as a child of the given context or, if there is no
+   * context, as the root of a new trace. This is typically used by servers,
+   * with a context received from a client.
+   *
+   * @param name   The span name
+   * @param parent The parent context
+   *
+   * @return The span
+   */
+
+  public HBSpanScope startSpan(
+    final String name,
+    final Optional<HBTraceContext> parent)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(parent, "parent");
+
+    final var random = ThreadLocalRandom.current();
+    if (parent.isPresent()) {
+      final var p = parent.get();
+      return new HBSpanScope(
+        this.sink,
+        new HBTraceContext(
+          p.traceIdHigh(),
+          p.traceIdLow(),
+          random.nextLong(),
+          p.sampled()
+        ),
+        OptionalLong.of(p.spanId()),
+        name
+      );
+    }
+
+    final var sampled =
+      this.samplingRate > 0.0 && random.nextDouble() < this.samplingRate;
+
+    return new HBSpanScope(
+      this.sink,
+      new HBTraceContext(
+        random.nextLong(),
+        random.nextLong(),
+        random.nextLong(),
+        sampled
+      ),
+      OptionalLong.empty(),
+      name
+    );
+  }
+}
@@ -70,6 +70,15 @@ public final class HBTransportClosed<
     throw this.exceptions.apply(new ClosedChannelException());
   }
 
+  @Override
+  public boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<M> handler)
+    throws X
+  {
+    throw this.exceptions.apply(new ClosedChannelException());
+  }
+
   @Override
   public void send(
     final M message)
@@ -17,6 +17,12 @@
 
 package com.io7m.hibiscus.api;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
 /**
  * The type of transports for reading and writing messages.
  *
@@ -29,5 +35,60 @@ public interface HBTransportType<
   X extends Exception>
   extends HBClientCloseableType<X>, HBIOOperationsType<M, X>
 {
+  /**
+   * @return The flight recorder holding the most recent traffic on this
+   * transport, if the transport records traffic
+   */
+
+  default Optional<HBFlightRecorder<M>> flightRecorder()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * @return The per-stage latency histograms for this transport, if the
+   * transport measures latency
+   */
+
+  default Optional<HBStageLatencies> stageLatencies()
+  {
+    return Optional.empty();
+  }
+
+  /**
+   * <p>Send a message and wait for the response, writing the
+   * {@code following} messages immediately behind it rather than waiting
+   * for the response first. The following messages are sent as if by
+   * {@link #send(HBMessageType)}, and so their responses are taken with
+   * {@code receive}.</p>
+   *
+   * <p>The default implementation waits for the response before sending
+   * the following messages. Transports that can write the messages
+   * together override it.</p>
+   *
+   * @param message   The message
+   * @param following The messages to send behind the message
+   * @param timeout   The timeout for the response
+   *
+   * @return The response
+   *
+   * @throws X                    On errors
+   * @throws InterruptedException On interruption
+   * @throws TimeoutException     If no response arrives in time
+   */
+
+  default M sendAndWaitPipelined(
+    final M message,
+    final List<M> following,
+    final Duration timeout)
+    throws X, InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(following, "following");
 
+    final var response = this.sendAndWait(message, timeout);
+    for (final var next : following) {
+      this.send(next);
+    }
+    return response;
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The configuration of the queue of unsolicited messages: messages that a
+ * peer sends on its own initiative rather than in response to a request.
+ *
+ * @param capacity       The maximum number of unsolicited messages held
+ *                       waiting for a consumer
+ * @param overflowPolicy What to do when an unsolicited message arrives and
+ *                       the queue is full
+ * @param timeToLive     The time after which an unconsumed unsolicited
+ *                       message is discarded, if any
+ *
+ * @see HBMailbox
+ */
+
+public record HBUnsolicitedConfiguration(
+  int capacity,
+  HBOverflowPolicy overflowPolicy,
+  Optional<Duration> timeToLive)
+{
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The configuration of the queue of unsolicited messages.
+   *
+   * @param capacity       The maximum number of unsolicited messages held
+   *                       waiting for a consumer
+   * @param overflowPolicy What to do when an unsolicited message arrives
+   *                       and the queue is full
+   * @param timeToLive     The time after which an unconsumed unsolicited
+   *                       message is discarded, if any
+   */
+
+  public HBUnsolicitedConfiguration
+  {
+    Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+    Objects.requireNonNull(timeToLive, "timeToLive");
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+        "capacity must be positive: %d".formatted(Integer.valueOf(capacity))
+      );
+    }
+    timeToLive.ifPresent(ttl -> {
+      if (ttl.isNegative() || ttl.isZero()) {
+        throw new IllegalArgumentException(
+          "timeToLive must be positive: %s".formatted(ttl)
+        );
+      }
+    });
+  }
+
+  /**
+   * The default configuration: up to 1024 waiting messages, a reader that
+   * blocks when the queue is full, and no expiry.
+   *
+   * @return The default configuration
+   */
+
+  public static HBUnsolicitedConfiguration defaults()
+  {
+    return new HBUnsolicitedConfiguration(
+      DEFAULT_CAPACITY,
+      HBOverflowPolicy.BLOCK,
+      Optional.empty()
+    );
+  }
+
+  /**
+   * @param newCapacity The maximum number of waiting unsolicited messages
+   *
+   * @return This configuration with the given capacity
+   */
+
+  public HBUnsolicitedConfiguration withCapacity(
+    final int newCapacity)
+  {
+    return new HBUnsolicitedConfiguration(
+      newCapacity,
+      this.overflowPolicy,
+      this.timeToLive
+    );
+  }
+
+  /**
+   * @param newPolicy The overflow policy
+   *
+   * @return This configuration with the given overflow policy
+   */
+
+  public HBUnsolicitedConfiguration withOverflowPolicy(
+    final HBOverflowPolicy newPolicy)
+  {
+    return new HBUnsolicitedConfiguration(
+      this.capacity,
+      newPolicy,
+      this.timeToLive
+    );
+  }
+
+  /**
+   * @param newTimeToLive The time after which an unconsumed message is
+   *                      discarded
+   *
+   * @return This configuration with the given time to live
+   */
+
+  public HBUnsolicitedConfiguration withTimeToLive(
+    final Duration newTimeToLive)
+  {
+    return new HBUnsolicitedConfiguration(
+      this.capacity,
+      this.overflowPolicy,
+      Optional.of(newTimeToLive)
+    );
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+
+package com.io7m.hibiscus.api;
+
+/**
+ * The way in which a thread waits for a {@link HBRingBuffer} to become
+ * non-empty (or non-full).
+ *
+ * @see HBPerformanceConfiguration
+ */
+
+public enum HBWaitStrategy
+{
+  /**
+   * Waiting threads park until they are signalled. This uses no CPU while
+   * idle, at the cost of a wake-up on each hand-off to a waiting thread.
+   */
+
+  BLOCKING,
+
+  /**
+   * Waiting threads spin briefly and then repeatedly yield the processor.
+   * This gives lower hand-off latency than {@link #BLOCKING} while leaving
+   * the processor available to other runnable threads.
+   */
+
+  YIELDING,
+
+  /**
+   * Waiting consumers spin continuously. This gives the lowest hand-off
+   * latency, but each waiting consumer occupies a whole processor, and so
+   * it is only suitable when there are spare cores for every consumer.
+   * Producers waiting for space behave as with {@link #YIELDING}, so that
+   * they cannot starve the consumer that would make space for them.
+   */
+
+  BUSY_SPIN
+}
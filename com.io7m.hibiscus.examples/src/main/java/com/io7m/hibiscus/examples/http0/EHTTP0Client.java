@@ -23,14 +23,15 @@ public final class EHTTP0Client
   extends HBClientAbstract<EHTTP0MessageType, EHTTP0ConnectionParameters, EHTTP0Exception>
   implements EHTTP0ClientType
 {
-  private EHTTP0Client()
+  private EHTTP0Client(
+    final EHTTP0Configuration configuration)
   {
-    super(new EHTTP0ClientHandlerDisconnected());
+    super(new EHTTP0ClientHandlerDisconnected(configuration));
   }
 
   public static EHTTP0ClientType create(
     final EHTTP0Configuration configuration)
   {
-    return new EHTTP0Client();
+    return new EHTTP0Client(configuration);
   }
 }
@@ -26,11 +26,15 @@ import java.util.Objects;
 public final class EHTTP0ClientHandlerConnected
   extends EHTTP0ClientHandlerAbstract
 {
+  private final EHTTP0Configuration configuration;
   private final HBTransportType<EHTTP0MessageType, EHTTP0Exception> transport;
 
   EHTTP0ClientHandlerConnected(
+    final EHTTP0Configuration inConfiguration,
     final HBTransportType<EHTTP0MessageType, EHTTP0Exception> inConnection)
   {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
     this.transport =
       Objects.requireNonNull(inConnection, "connection");
   }
@@ -45,7 +49,8 @@ public final class EHTTP0ClientHandlerConnected
     final EHTTP0ConnectionParameters parameters)
     throws InterruptedException
   {
-    return new EHTTP0ClientHandlerDisconnected().doConnect(parameters);
+    return new EHTTP0ClientHandlerDisconnected(this.configuration)
+      .doConnect(parameters);
   }
 
   @Override
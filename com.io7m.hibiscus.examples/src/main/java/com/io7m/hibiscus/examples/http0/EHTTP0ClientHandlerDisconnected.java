@@ -41,10 +41,14 @@ public final class EHTTP0ClientHandlerDisconnected
   private static final Logger LOG =
     LoggerFactory.getLogger(EHTTP0ClientHandlerDisconnected.class);
 
+  private final EHTTP0Configuration configuration;
   private final HBTransportType<EHTTP0MessageType, EHTTP0Exception> closedTransport;
 
-  EHTTP0ClientHandlerDisconnected()
+  EHTTP0ClientHandlerDisconnected(
+    final EHTTP0Configuration inConfiguration)
   {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
     this.closedTransport =
       new HBTransportClosed<>(EHTTP0Exception::new);
   }
@@ -62,9 +66,13 @@ public final class EHTTP0ClientHandlerDisconnected
     Objects.requireNonNull(parameters, "credentials");
 
     try {
+      final var performance =
+        this.configuration.performance();
       final var http =
         HttpClient.newBuilder()
-          .executor(Executors.newVirtualThreadPerTaskExecutor())
+          .executor(
+            performance.executor()
+              .orElseGet(Executors::newVirtualThreadPerTaskExecutor))
           .build();
 
       final var uri =
@@ -79,7 +87,13 @@ public final class EHTTP0ClientHandlerDisconnected
         );
 
       final var transport =
-        new EHTTP0Transport(http, uri);
+        new EHTTP0Transport(
+          http,
+          uri,
+          this.configuration.codec(),
+          this.configuration.bufferPool(),
+          performance
+        );
 
       boolean keepTransport = false;
 
@@ -111,7 +125,10 @@ public final class EHTTP0ClientHandlerDisconnected
                 keepTransport = true;
                 yield new HBConnectionSucceeded<>(
                   ok,
-                  new EHTTP0ClientHandlerConnected(transport)
+                  new EHTTP0ClientHandlerConnected(
+                    this.configuration,
+                    transport
+                  )
                 );
               }
             };
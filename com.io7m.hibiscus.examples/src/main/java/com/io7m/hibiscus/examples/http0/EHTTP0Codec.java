@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.http0;
+
+import com.io7m.hibiscus.api.HBCodecType;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class EHTTP0Codec
+  implements HBCodecType<EHTTP0MessageType, EHTTP0Exception>
+{
+  private static final int MESSAGE_ID_LOGIN = 0x0;
+  private static final int MESSAGE_ID_HELLO = 0x1;
+  private static final int MESSAGE_ID_RESPONSE_FAILURE = 0x3;
+  private static final int MESSAGE_ID_RESPONSE_OK = 0x2;
+
+  private static final int UUID_SIZE = 16;
+
+  private static final EHTTP0Codec INSTANCE =
+    new EHTTP0Codec();
+
+  private EHTTP0Codec()
+  {
+
+  }
+
+  public static EHTTP0Codec get()
+  {
+    return INSTANCE;
+  }
+
+  @Override
+  public int sizeOf(
+    final EHTTP0MessageType message)
+  {
+    return 1 + switch (message) {
+      case final EHTTP0CommandLogin m -> {
+        yield UUID_SIZE + sizeOfString(m.user()) + sizeOfString(m.password());
+      }
+      case final EHTTP0CommandHello m -> {
+        yield UUID_SIZE + sizeOfString(m.message());
+      }
+      case final EHTTP0ResponseOK m -> {
+        yield UUID_SIZE + UUID_SIZE;
+      }
+      case final EHTTP0ResponseFailure m -> {
+        yield UUID_SIZE + UUID_SIZE + sizeOfString(m.message());
+      }
+    };
+  }
+
+  @Override
+  public void encode(
+    final EHTTP0MessageType message,
+    final ByteBuffer buffer)
+    throws EHTTP0Exception
+  {
+    try {
+      switch (message) {
+        case final EHTTP0CommandLogin m -> {
+          buffer.put((byte) MESSAGE_ID_LOGIN);
+          putUUID(buffer, m.messageId());
+          putString(buffer, m.user());
+          putString(buffer, m.password());
+        }
+        case final EHTTP0CommandHello m -> {
+          buffer.put((byte) MESSAGE_ID_HELLO);
+          putUUID(buffer, m.messageId());
+          putString(buffer, m.message());
+        }
+        case final EHTTP0ResponseOK m -> {
+          buffer.put((byte) MESSAGE_ID_RESPONSE_OK);
+          putUUID(buffer, m.messageId());
+          putUUID(buffer, m.correlationId());
+        }
+        case final EHTTP0ResponseFailure m -> {
+          buffer.put((byte) MESSAGE_ID_RESPONSE_FAILURE);
+          putUUID(buffer, m.messageId());
+          putUUID(buffer, m.correlationId());
+          putString(buffer, m.message());
+        }
+      }
+    } catch (final BufferOverflowException | ReadOnlyBufferException e) {
+      throw new EHTTP0Exception(e);
+    }
+  }
+
+  @Override
+  public EHTTP0MessageType decode(
+    final ByteBuffer buffer)
+    throws EHTTP0Exception
+  {
+    try {
+      final var kind = buffer.get();
+      return switch (kind) {
+        case MESSAGE_ID_LOGIN -> {
+          final var messageId = getUUID(buffer);
+          final var user = getString(buffer);
+          final var pass = getString(buffer);
+          yield new EHTTP0CommandLogin(messageId, user, pass);
+        }
+        case MESSAGE_ID_HELLO -> {
+          final var messageId = getUUID(buffer);
+          final var msg = getString(buffer);
+          yield new EHTTP0CommandHello(messageId, msg);
+        }
+        case MESSAGE_ID_RESPONSE_FAILURE -> {
+          final var messageId = getUUID(buffer);
+          final var correlationId = getUUID(buffer);
+          final var msg = getString(buffer);
+          yield new EHTTP0ResponseFailure(messageId, correlationId, msg);
+        }
+        case MESSAGE_ID_RESPONSE_OK -> {
+          final var messageId = getUUID(buffer);
+          final var correlationId = getUUID(buffer);
+          yield new EHTTP0ResponseOK(messageId, correlationId);
+        }
+        default -> {
+          throw new EHTTP0Exception("Unrecognized message ID: " + kind);
+        }
+      };
+    } catch (final BufferUnderflowException e) {
+      throw new EHTTP0Exception(e);
+    }
+  }
+
+  private static void putUUID(
+    final ByteBuffer buffer,
+    final UUID id)
+  {
+    buffer.putLong(id.getMostSignificantBits());
+    buffer.putLong(id.getLeastSignificantBits());
+  }
+
+  private static UUID getUUID(
+    final ByteBuffer buffer)
+  {
+    final var msb = buffer.getLong();
+    final var lsb = buffer.getLong();
+    return new UUID(msb, lsb);
+  }
+
+  private static void putString(
+    final ByteBuffer buffer,
+    final String text)
+  {
+    final var bytes = text.getBytes(UTF_8);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  private static String getString(
+    final ByteBuffer buffer)
+    throws EHTTP0Exception
+  {
+    final var length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new EHTTP0Exception("Invalid string length: " + length);
+    }
+
+    final var position = buffer.position();
+    final String text;
+    if (buffer.hasArray()) {
+      text = new String(
+        buffer.array(),
+        buffer.arrayOffset() + position,
+        length,
+        UTF_8
+      );
+    } else {
+      final var bytes = new byte[length];
+      buffer.get(position, bytes);
+      text = new String(bytes, UTF_8);
+    }
+    buffer.position(position + length);
+    return text;
+  }
+
+  private static int sizeOfString(
+    final String text)
+  {
+    return Integer.BYTES + utf8Length(text);
+  }
+
+  /**
+   * Calculate the UTF-8 encoded length of a string without encoding it. This
+   * must agree with {@link String#getBytes(java.nio.charset.Charset)}, which
+   * replaces unpaired surrogates with a single-byte '?'.
+   */
+
+  private static int utf8Length(
+    final String text)
+  {
+    final var length = text.length();
+    int size = 0;
+    for (int index = 0; index < length; ++index) {
+      final var c = text.charAt(index);
+      if (c < 0x80) {
+        size += 1;
+      } else if (c < 0x800) {
+        size += 2;
+      } else if (Character.isSurrogate(c)) {
+        final var paired =
+          Character.isHighSurrogate(c)
+          && index + 1 < length
+          && Character.isLowSurrogate(text.charAt(index + 1));
+        if (paired) {
+          size += 4;
+          ++index;
+        } else {
+          size += 1;
+        }
+      } else {
+        size += 3;
+      }
+    }
+    return size;
+  }
+}
@@ -17,10 +17,32 @@
 
 package com.io7m.hibiscus.examples.http0;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
 import com.io7m.hibiscus.api.HBConfigurationType;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 
-public record EHTTP0Configuration()
+import java.util.Objects;
+
+public record EHTTP0Configuration(
+  HBCodecType<EHTTP0MessageType, EHTTP0Exception> codec,
+  HBBufferPool bufferPool,
+  HBPerformanceConfiguration performance)
   implements HBConfigurationType
 {
+  public EHTTP0Configuration
+  {
+    Objects.requireNonNull(codec, "codec");
+    Objects.requireNonNull(bufferPool, "bufferPool");
+    Objects.requireNonNull(performance, "performance");
+  }
 
+  public EHTTP0Configuration()
+  {
+    this(
+      EHTTP0Codec.get(),
+      HBBufferPool.shared(),
+      HBPerformanceConfiguration.defaults()
+    );
+  }
 }
@@ -17,6 +17,7 @@
 
 package com.io7m.hibiscus.examples.http0;
 
+import com.io7m.hibiscus.api.HBTracer;
 import io.helidon.webserver.WebServer;
 import io.helidon.webserver.WebServerConfig;
 import io.helidon.webserver.http.HttpRouting;
@@ -38,18 +39,27 @@ public final class EHTTP0Server implements Closeable
     LoggerFactory.getLogger(EHTTP0Server.class);
 
   private final InetSocketAddress address;
+  private final EHTTP0ServerHandler handler;
   private WebServer webServer;
 
   public EHTTP0Server(
     final InetSocketAddress inAddress)
+  {
+    this(inAddress, HBTracer.disabled());
+  }
+
+  public EHTTP0Server(
+    final InetSocketAddress inAddress,
+    final HBTracer tracer)
   {
     this.address =
       Objects.requireNonNull(inAddress, "address");
 
-    final var handler = new EHTTP0ServerHandler();
+    this.handler = new EHTTP0ServerHandler(tracer);
+
     final var routing = HttpRouting.builder();
-    routing.post("/", handler);
-    routing.post("/*", handler);
+    routing.post("/", this.handler);
+    routing.post("/*", this.handler);
 
     this.webServer =
       WebServerConfig.builder()
@@ -73,6 +83,26 @@ public final class EHTTP0Server implements Closeable
     }
   }
 
+  /**
+   * @return The number of requests answered without being processed because
+   * their deadline had passed
+   */
+
+  public long expired()
+  {
+    return this.handler.expired();
+  }
+
+  /**
+   * @return The number of requests abandoned because the client cancelled
+   * them
+   */
+
+  public long cancelled()
+  {
+    return this.handler.cancelled();
+  }
+
   @Override
   public void close()
     throws IOException
@@ -17,18 +17,56 @@
 
 package com.io7m.hibiscus.examples.http0;
 
+import com.io7m.hibiscus.api.HBTraceContext;
+import com.io7m.hibiscus.api.HBTracer;
+import io.helidon.http.HeaderName;
+import io.helidon.http.HeaderNames;
 import io.helidon.webserver.http.Handler;
 import io.helidon.webserver.http.ServerRequest;
 import io.helidon.webserver.http.ServerResponse;
 
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class EHTTP0ServerHandler implements Handler
 {
-  EHTTP0ServerHandler()
+  private static final HeaderName TRACE_PARENT =
+    HeaderNames.create(EHTTP0Transport.TRACE_PARENT);
+  private static final HeaderName DEADLINE =
+    HeaderNames.create(EHTTP0Transport.DEADLINE);
+  private static final HeaderName CANCEL =
+    HeaderNames.create(EHTTP0Transport.CANCEL);
+  private static final Duration SLOW_WORK =
+    Duration.ofSeconds(1L);
+  private static final Duration SLOW_STEP =
+    Duration.ofMillis(10L);
+
+  private final HBTracer tracer;
+  private final LongAdder expired;
+  private final LongAdder cancelled;
+  private final ConcurrentHashMap<UUID, Boolean> pending;
+
+  EHTTP0ServerHandler(
+    final HBTracer inTracer)
+  {
+    this.tracer = Objects.requireNonNull(inTracer, "tracer");
+    this.expired = new LongAdder();
+    this.cancelled = new LongAdder();
+    this.pending = new ConcurrentHashMap<>();
+  }
+
+  long expired()
   {
+    return this.expired.sum();
+  }
 
+  long cancelled()
+  {
+    return this.cancelled.sum();
   }
 
   @Override
@@ -36,6 +74,63 @@ public final class EHTTP0ServerHandler implements Handler
     final ServerRequest req,
     final ServerResponse res)
     throws Exception
+  {
+    final var cancel = req.headers().first(CANCEL);
+    if (cancel.isPresent()) {
+      this.handleCancel(res, cancel.get());
+      return;
+    }
+
+    final var trace =
+      req.headers()
+        .first(TRACE_PARENT)
+        .flatMap(HBTraceContext::ofTraceParent);
+
+    final var deadline =
+      req.headers()
+        .first(DEADLINE)
+        .flatMap(EHTTP0ServerHandler::parseDeadline);
+
+    try (var span = this.tracer.startSpan("http0.request", trace)) {
+      this.handleRequest(req, res, deadline);
+    }
+  }
+
+  /**
+   * Mark a request in progress as cancelled. The request's own exchange
+   * abandons the work and answers without a message.
+   */
+
+  private void handleCancel(
+    final ServerResponse res,
+    final String messageId)
+  {
+    try {
+      this.pending.replace(UUID.fromString(messageId), Boolean.TRUE);
+      res.status(204);
+      res.send();
+    } catch (final IllegalArgumentException e) {
+      res.status(400);
+      res.send();
+    }
+  }
+
+  private static Optional<Long> parseDeadline(
+    final String budget)
+  {
+    try {
+      return Optional.of(
+        Long.valueOf(System.nanoTime() + Long.parseLong(budget)));
+    } catch (final NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private void handleRequest(
+    final ServerRequest req,
+    final ServerResponse res,
+    final Optional<Long> deadline)
+    throws Exception
   {
     try (var stream = req.content().inputStream()) {
       final var data =
@@ -43,10 +138,35 @@ public final class EHTTP0ServerHandler implements Handler
       final var message =
         EHTTP0Messages.fromBytes(data);
 
+      /*
+       * The client stops waiting at its deadline, so a request that is
+       * still unprocessed by then is answered without doing the work.
+       */
+
+      if (deadline.isPresent()
+          && System.nanoTime() - deadline.get().longValue() >= 0L) {
+        this.expired.increment();
+        res.status(504);
+        res.send(
+          EHTTP0Messages.toBytes(new EHTTP0ResponseFailure(
+            UUID.randomUUID(),
+            message.messageId(),
+            "Deadline expired."
+          ))
+        );
+        return;
+      }
+
       switch (message) {
         case final EHTTP0CommandType c -> {
           switch (c) {
             case final EHTTP0CommandHello cc -> {
+              if (Objects.equals(cc.message(), "Slow")
+                  && !this.doSlowWork(cc)) {
+                res.status(204);
+                res.send();
+                return;
+              }
               res.status(200);
               res.send(
                 EHTTP0Messages.toBytes(new EHTTP0ResponseOK(
@@ -91,4 +211,33 @@ public final class EHTTP0ServerHandler implements Handler
       }
     }
   }
+
+  /**
+   * Simulate a long-running request, checking for cancellation as it
+   * goes.
+   *
+   * @return {@code false} if the request was cancelled
+   */
+
+  private boolean doSlowWork(
+    final EHTTP0CommandHello cc)
+    throws InterruptedException
+  {
+    final var id = cc.messageId();
+    this.pending.put(id, Boolean.FALSE);
+
+    try {
+      final var end = System.nanoTime() + SLOW_WORK.toNanos();
+      while (System.nanoTime() - end < 0L) {
+        if (Boolean.TRUE.equals(this.pending.get(id))) {
+          this.cancelled.increment();
+          return false;
+        }
+        Thread.sleep(SLOW_STEP);
+      }
+      return true;
+    } finally {
+      this.pending.remove(id);
+    }
+  }
 }
@@ -17,29 +17,72 @@
 
 package com.io7m.hibiscus.examples.http0;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
+import com.io7m.hibiscus.api.HBInboxType;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 import com.io7m.hibiscus.api.HBReadNothing;
 import com.io7m.hibiscus.api.HBReadType;
+import com.io7m.hibiscus.api.HBReceiveHandlerType;
 import com.io7m.hibiscus.api.HBReadResponse;
+import com.io7m.hibiscus.api.HBTraceContext;
 import com.io7m.hibiscus.api.HBTransportType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.Objects;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public final class EHTTP0Transport
   implements HBTransportType<EHTTP0MessageType, EHTTP0Exception>
 {
-  private final LinkedBlockingQueue<MessageAndResponse> inbox;
+  private static final Logger LOG =
+    LoggerFactory.getLogger(EHTTP0Transport.class);
+
+  /**
+   * The time allowed for a cancellation request. Cancellation is advisory,
+   * so a server that does not acknowledge one in time is not waited for.
+   */
+
+  private static final Duration CANCEL_TIMEOUT =
+    Duration.ofSeconds(1L);
+
+  /**
+   * The W3C header used to propagate the caller's trace context.
+   */
+
+  static final String TRACE_PARENT = "traceparent";
+
+  /**
+   * The header carrying the time, in nanoseconds, that the caller will wait
+   * for a response. The budget is relative so that the client's and server's
+   * clocks need not agree.
+   */
+
+  static final String DEADLINE = "hibiscus-deadline";
+
+  /**
+   * The header carrying the ID of a message that the caller has cancelled.
+   * A request with this header has no body.
+   */
+
+  static final String CANCEL = "hibiscus-cancel";
+
+  private final HBInboxType<MessageAndResponse> inbox;
   private final HttpClient http;
   private final URI target;
+  private final HBCodecType<EHTTP0MessageType, EHTTP0Exception> codec;
+  private final HBBufferPool bufferPool;
 
   private record MessageAndResponse(
     EHTTP0MessageType message,
@@ -50,20 +93,54 @@ public final class EHTTP0Transport
 
   EHTTP0Transport(
     final HttpClient inHttp,
-    final URI inTarget)
+    final URI inTarget,
+    final HBCodecType<EHTTP0MessageType, EHTTP0Exception> inCodec,
+    final HBBufferPool inBufferPool,
+    final HBPerformanceConfiguration inPerformance)
   {
     this.http =
       Objects.requireNonNull(inHttp, "http");
     this.target =
       Objects.requireNonNull(inTarget, "target");
+    this.codec =
+      Objects.requireNonNull(inCodec, "codec");
+    this.bufferPool =
+      Objects.requireNonNull(inBufferPool, "bufferPool");
     this.inbox =
-      new LinkedBlockingQueue<>();
+      inPerformance.createInbox();
   }
 
   @Override
   public HBReadType<EHTTP0MessageType> receive(
     final Duration timeout)
     throws EHTTP0Exception, InterruptedException
+  {
+    final var r = this.poll(timeout);
+    if (r == null) {
+      return new HBReadNothing<>();
+    }
+    return new HBReadResponse<>(r.message(), r.response());
+  }
+
+  @Override
+  public boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<EHTTP0MessageType> handler)
+    throws EHTTP0Exception, InterruptedException
+  {
+    Objects.requireNonNull(handler, "handler");
+
+    final var r = this.poll(timeout);
+    if (r == null) {
+      return false;
+    }
+    handler.onResponse(r.message(), r.response());
+    return true;
+  }
+
+  private MessageAndResponse poll(
+    final Duration timeout)
+    throws EHTTP0Exception, InterruptedException
   {
     Objects.requireNonNull(timeout, "timeout");
 
@@ -71,13 +148,7 @@ public final class EHTTP0Transport
       throw new EHTTP0Exception(new ClosedChannelException());
     }
 
-    final var r =
-      this.inbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
-
-    if (r == null) {
-      return new HBReadNothing<>();
-    }
-    return new HBReadResponse<>(r.message(), r.response());
+    return this.inbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
   }
 
   @Override
@@ -85,26 +156,17 @@ public final class EHTTP0Transport
     final EHTTP0MessageType message)
     throws EHTTP0Exception, InterruptedException
   {
-    final var data =
-      EHTTP0Messages.toBytes(message);
-
-    final HttpResponse<byte[]> httpResponse;
-    try {
-      httpResponse = this.http.send(
-        HttpRequest.newBuilder()
-          .uri(this.target)
-          .POST(HttpRequest.BodyPublishers.ofByteArray(data))
-          .build(),
+    final var httpResponse =
+      this.post(
+        message,
+        Optional.empty(),
         HttpResponse.BodyHandlers.ofByteArray()
       );
-    } catch (final IOException e) {
-      throw new EHTTP0Exception(e);
-    }
 
-    this.inbox.add(
+    this.inbox.put(
       new MessageAndResponse(
         message,
-        EHTTP0Messages.fromBytes(httpResponse.body())
+        this.codec.fromBytes(httpResponse.body())
       )
     );
   }
@@ -114,20 +176,11 @@ public final class EHTTP0Transport
     final EHTTP0MessageType message)
     throws EHTTP0Exception, InterruptedException
   {
-    final var data =
-      EHTTP0Messages.toBytes(message);
-
-    try {
-      this.http.send(
-        HttpRequest.newBuilder()
-          .uri(this.target)
-          .POST(HttpRequest.BodyPublishers.ofByteArray(data))
-          .build(),
-        HttpResponse.BodyHandlers.discarding()
-      );
-    } catch (final IOException e) {
-      throw new EHTTP0Exception(e);
-    }
+    this.post(
+      message,
+      Optional.empty(),
+      HttpResponse.BodyHandlers.discarding()
+    );
   }
 
   @Override
@@ -136,24 +189,99 @@ public final class EHTTP0Transport
     final Duration timeout)
     throws EHTTP0Exception, InterruptedException, TimeoutException
   {
-    final var data =
-      EHTTP0Messages.toBytes(message);
-
     final HttpResponse<byte[]> httpResponse;
     try {
-      httpResponse = this.http.send(
-        HttpRequest.newBuilder()
-          .uri(this.target)
-          .POST(HttpRequest.BodyPublishers.ofByteArray(data))
-          .timeout(timeout)
-          .build(),
-        HttpResponse.BodyHandlers.ofByteArray()
-      );
+      httpResponse =
+        this.post(
+          message,
+          Optional.of(timeout),
+          HttpResponse.BodyHandlers.ofByteArray()
+        );
+    } catch (final EHTTP0Exception e) {
+      if (e.getCause() instanceof HttpTimeoutException) {
+        this.cancel(message);
+        throw new TimeoutException(
+          "No response received in %s".formatted(timeout));
+      }
+      throw e;
+    }
+
+    return this.codec.fromBytes(httpResponse.body());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Each request is answered on its own exchange, so there is no pending
+   * state to discard here. The cancellation is a separate request that
+   * tells the server to abandon the message. It is sent without waiting for
+   * the server's acknowledgement, and is itself abandoned if the server
+   * does not acknowledge it within a short time, so cancelling never blocks
+   * the caller, even when the server has stalled.</p>
+   */
+
+  @Override
+  public void cancel(
+    final EHTTP0MessageType message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var request =
+      HttpRequest.newBuilder()
+        .uri(this.target)
+        .timeout(CANCEL_TIMEOUT)
+        .header(CANCEL, message.messageId().toString())
+        .POST(HttpRequest.BodyPublishers.noBody())
+        .build();
+
+    this.http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+      .exceptionally(e -> {
+        LOG.debug("Cancel {}: ", message.messageId(), e);
+        return null;
+      });
+  }
+
+  /**
+   * Encode a message into a pooled buffer and post a copy of it. The client
+   * may still be streaming the request body after {@code send} returns or
+   * throws (on a timeout, for example), so the body must not refer to the
+   * pooled buffer; the encoded bytes are copied into an array owned by the
+   * request, and the buffer is returned to the pool before the request is
+   * sent.
+   */
+
+  private <T> HttpResponse<T> post(
+    final EHTTP0MessageType message,
+    final Optional<Duration> timeout,
+    final HttpResponse.BodyHandler<T> handler)
+    throws EHTTP0Exception, InterruptedException
+  {
+    final var size = this.codec.sizeOf(message);
+    final var bytes = new byte[size];
+    try (var pooled = this.bufferPool.acquire(size)) {
+      final var buffer = pooled.buffer();
+      this.codec.encode(message, buffer);
+      buffer.flip();
+      buffer.get(bytes);
+    }
+
+    final var request =
+      HttpRequest.newBuilder()
+        .uri(this.target)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(bytes));
+
+    timeout.ifPresent(t -> {
+      request.timeout(t);
+      request.header(DEADLINE, Long.toString(t.toNanos()));
+    });
+    HBTraceContext.current()
+      .ifPresent(t -> request.header(TRACE_PARENT, t.toTraceParent()));
+
+    try {
+      return this.http.send(request.build(), handler);
     } catch (final IOException e) {
       throw new EHTTP0Exception(e);
     }
-
-    return EHTTP0Messages.fromBytes(httpResponse.body());
   }
 
   @Override
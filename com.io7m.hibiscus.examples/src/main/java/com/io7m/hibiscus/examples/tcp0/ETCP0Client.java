@@ -25,16 +25,35 @@ public final class ETCP0Client
   extends HBClientAbstract<ETCP0MessageType, ETCP0ConnectionParameters, ETCP0Exception>
   implements ETCP0ClientType
 {
-  private ETCP0Client()
+  private ETCP0Client(
+    final ETCP0Configuration configuration,
+    final Clock clock,
+    final ETCP0ConnectorType connector)
   {
     super(new ETCP0ClientHandlerDisconnected(
-      Clock.systemUTC()
+      configuration,
+      clock,
+      new ETCP0SessionCache(),
+      connector
     ));
   }
 
   public static ETCP0ClientType create(
     final ETCP0Configuration configuration)
   {
-    return new ETCP0Client();
+    final var clock = Clock.systemUTC();
+    return new ETCP0Client(
+      configuration,
+      clock,
+      new ETCP0ConnectorDirect(configuration)
+    );
+  }
+
+  static ETCP0ClientType createWith(
+    final ETCP0Configuration configuration,
+    final Clock clock,
+    final ETCP0ConnectorType connector)
+  {
+    return new ETCP0Client(configuration, clock, connector);
   }
 }
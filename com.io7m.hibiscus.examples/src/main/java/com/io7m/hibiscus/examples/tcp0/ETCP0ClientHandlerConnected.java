@@ -22,20 +22,33 @@ import com.io7m.hibiscus.api.HBTransportType;
 import com.io7m.hibiscus.api.HBClientHandlerType;
 
 import java.time.Clock;
+import java.util.List;
 import java.util.Objects;
 
 public final class ETCP0ClientHandlerConnected
   extends ETCP0ClientHandlerAbstract
 {
   private final HBTransportType<ETCP0MessageType, ETCP0Exception> transport;
+  private final ETCP0Configuration configuration;
   private final Clock clock;
+  private final ETCP0SessionCache sessions;
+  private final ETCP0ConnectorType connector;
 
   ETCP0ClientHandlerConnected(
+    final ETCP0Configuration inConfiguration,
     final Clock inClock,
+    final ETCP0SessionCache inSessions,
+    final ETCP0ConnectorType inConnector,
     final HBTransportType<ETCP0MessageType, ETCP0Exception> inConnection)
   {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "inConfiguration");
     this.clock =
       Objects.requireNonNull(inClock, "inClock");
+    this.sessions =
+      Objects.requireNonNull(inSessions, "inSessions");
+    this.connector =
+      Objects.requireNonNull(inConnector, "inConnector");
     this.transport =
       Objects.requireNonNull(inConnection, "transport");
   }
@@ -50,8 +63,26 @@ public final class ETCP0ClientHandlerConnected
     final ETCP0ConnectionParameters parameters)
     throws InterruptedException
   {
-    return new ETCP0ClientHandlerDisconnected(this.clock)
-      .doConnect(parameters);
+    return this.doConnect(parameters, List.of());
+  }
+
+  @Override
+  public HBConnectionResultType<
+    ETCP0MessageType,
+    ETCP0ConnectionParameters,
+    HBClientHandlerType<ETCP0MessageType, ETCP0ConnectionParameters, ETCP0Exception>,
+    ETCP0Exception>
+  doConnect(
+    final ETCP0ConnectionParameters parameters,
+    final List<ETCP0MessageType> initial)
+    throws InterruptedException
+  {
+    return new ETCP0ClientHandlerDisconnected(
+      this.configuration,
+      this.clock,
+      this.sessions,
+      this.connector
+    ).doConnect(parameters, initial);
   }
 
   @Override
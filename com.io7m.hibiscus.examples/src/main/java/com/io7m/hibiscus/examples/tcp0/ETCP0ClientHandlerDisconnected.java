@@ -21,6 +21,8 @@ import com.io7m.hibiscus.api.HBConnectionError;
 import com.io7m.hibiscus.api.HBConnectionFailed;
 import com.io7m.hibiscus.api.HBConnectionResultType;
 import com.io7m.hibiscus.api.HBConnectionSucceeded;
+import com.io7m.hibiscus.api.HBFaultInjectingTransport;
+import com.io7m.hibiscus.api.HBSessionToken;
 import com.io7m.hibiscus.api.HBTransportClosed;
 import com.io7m.hibiscus.api.HBTransportType;
 import com.io7m.hibiscus.api.HBClientHandlerType;
@@ -28,9 +30,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.Socket;
 import java.time.Clock;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeoutException;
 
@@ -40,14 +43,26 @@ public final class ETCP0ClientHandlerDisconnected
   private static final Logger LOG =
     LoggerFactory.getLogger(ETCP0ClientHandlerDisconnected.class);
 
+  private final ETCP0Configuration configuration;
   private final Clock clock;
+  private final ETCP0SessionCache sessions;
+  private final ETCP0ConnectorType connector;
   private final HBTransportType<ETCP0MessageType, ETCP0Exception> transportClosed;
 
   ETCP0ClientHandlerDisconnected(
-    final Clock inClock)
+    final ETCP0Configuration inConfiguration,
+    final Clock inClock,
+    final ETCP0SessionCache inSessions,
+    final ETCP0ConnectorType inConnector)
   {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "inConfiguration");
     this.clock =
       Objects.requireNonNull(inClock, "inClock");
+    this.sessions =
+      Objects.requireNonNull(inSessions, "inSessions");
+    this.connector =
+      Objects.requireNonNull(inConnector, "inConnector");
     this.transportClosed =
       new HBTransportClosed<>(ETCP0Exception::new);
   }
@@ -61,33 +76,42 @@ public final class ETCP0ClientHandlerDisconnected
   doConnect(
     final ETCP0ConnectionParameters parameters)
     throws InterruptedException
+  {
+    return this.doConnect(parameters, List.of());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The initial messages are written behind the login (or session
+   * resumption) request in the same batch. If the server refuses to resume
+   * the session, it discards the initial messages, and they are written
+   * again behind the full login that follows.</p>
+   */
+
+  @Override
+  public HBConnectionResultType<
+    ETCP0MessageType,
+    ETCP0ConnectionParameters,
+    HBClientHandlerType<ETCP0MessageType, ETCP0ConnectionParameters, ETCP0Exception>,
+    ETCP0Exception>
+  doConnect(
+    final ETCP0ConnectionParameters parameters,
+    final List<ETCP0MessageType> initial)
+    throws InterruptedException
   {
     Objects.requireNonNull(parameters, "credentials");
+    Objects.requireNonNull(initial, "initial");
 
     try {
-      final var socket = new Socket();
-      socket.connect(parameters.address());
-
       final var transport =
-        new ETCP0Transport(
-          this.clock,
-          socket,
-          socket.getInputStream(),
-          socket.getOutputStream()
-        );
+        this.withFaults(this.connector.connect(parameters));
 
       boolean keepTransport = false;
 
       try {
         final var response =
-          transport.sendAndWait(
-            new ETCP0CommandLogin(
-              UUID.randomUUID(),
-              parameters.user(),
-              parameters.password()
-            ),
-            parameters.connectTimeout()
-          );
+          this.authenticate(transport, parameters, initial);
 
         LOG.debug("Response: {}", response);
 
@@ -104,10 +128,15 @@ public final class ETCP0ClientHandlerDisconnected
 
               case final ETCP0ResponseOK ok -> {
                 keepTransport = true;
-                yield new HBConnectionSucceeded<>(
-                  ok,
-                  new ETCP0ClientHandlerConnected(this.clock, transport)
-                );
+                yield this.connected(transport, ok, Optional.empty());
+              }
+
+              case final ETCP0ResponseSession s -> {
+                final var token =
+                  new HBSessionToken(s.token(), s.expiresAt());
+                this.sessions.store(parameters, token);
+                keepTransport = true;
+                yield this.connected(transport, s, Optional.of(token));
               }
             };
           }
@@ -123,11 +152,101 @@ public final class ETCP0ClientHandlerDisconnected
           }
         }
       }
-    } catch (final IOException e) {
+    } catch (final IOException | ETCP0Exception e) {
       return new HBConnectionError<>(e);
     }
   }
 
+  private HBConnectionResultType<
+    ETCP0MessageType,
+    ETCP0ConnectionParameters,
+    HBClientHandlerType<ETCP0MessageType, ETCP0ConnectionParameters, ETCP0Exception>,
+    ETCP0Exception>
+  connected(
+    final HBTransportType<ETCP0MessageType, ETCP0Exception> transport,
+    final ETCP0ResponseType response,
+    final Optional<HBSessionToken> session)
+  {
+    return new HBConnectionSucceeded<>(
+      response,
+      new ETCP0ClientHandlerConnected(
+        this.configuration,
+        this.clock,
+        this.sessions,
+        this.connector,
+        transport
+      ),
+      session
+    );
+  }
+
+  /**
+   * Resume the cached session if there is one, falling back to a full login
+   * on the same connection if the server no longer recognizes the token.
+   */
+
+  private ETCP0MessageType authenticate(
+    final HBTransportType<ETCP0MessageType, ETCP0Exception> transport,
+    final ETCP0ConnectionParameters parameters,
+    final List<ETCP0MessageType> initial)
+    throws ETCP0Exception, InterruptedException, TimeoutException
+  {
+    final var cached =
+      this.sessions.find(parameters, this.clock.instant());
+
+    if (cached.isPresent()) {
+      final var token = cached.get();
+      final var response =
+        transport.sendAndWaitPipelined(
+          new ETCP0CommandResume(UUID.randomUUID(), token.value()),
+          initial,
+          parameters.connectTimeout()
+        );
+
+      if (response instanceof ETCP0ResponseSession) {
+        LOG.debug("Resumed session.");
+        return response;
+      }
+
+      LOG.debug("Session resumption refused: {}", response);
+      this.sessions.invalidate(token);
+    }
+
+    return transport.sendAndWaitPipelined(
+      new ETCP0CommandLogin(
+        UUID.randomUUID(),
+        parameters.user(),
+        parameters.password()
+      ),
+      initial,
+      parameters.connectTimeout()
+    );
+  }
+
+  private HBTransportType<ETCP0MessageType, ETCP0Exception> withFaults(
+    final HBTransportType<ETCP0MessageType, ETCP0Exception> transport)
+  {
+    return this.configuration.faults()
+      .<HBTransportType<ETCP0MessageType, ETCP0Exception>>map(
+        faults -> HBFaultInjectingTransport.create(
+          transport,
+          faults,
+          this::encodedSize,
+          ETCP0Exception::new
+        ))
+      .orElse(transport);
+  }
+
+  private int encodedSize(
+    final ETCP0MessageType message)
+  {
+    try {
+      return this.configuration.codec().sizeOf(message);
+    } catch (final ETCP0Exception e) {
+      return 0;
+    }
+  }
+
   @Override
   public HBTransportType<ETCP0MessageType, ETCP0Exception> transport()
   {
@@ -17,6 +17,8 @@
 
 package com.io7m.hibiscus.examples.tcp0;
 
+import com.io7m.hibiscus.api.HBMessagePriority;
+
 import java.util.UUID;
 
 public record ETCP0CommandLogin(
@@ -25,5 +27,9 @@ public record ETCP0CommandLogin(
   String password)
   implements ETCP0CommandType
 {
-
+  @Override
+  public HBMessagePriority priority()
+  {
+    return HBMessagePriority.CONTROL;
+  }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import com.io7m.hibiscus.api.HBMessagePriority;
+
+import java.util.UUID;
+
+/**
+ * A request to resume a previous session using a token issued by the
+ * server, in place of a full login.
+ */
+
+public record ETCP0CommandResume(
+  UUID messageId,
+  String token)
+  implements ETCP0CommandType
+{
+  @Override
+  public HBMessagePriority priority()
+  {
+    return HBMessagePriority.CONTROL;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[ETCP0CommandResume %s]".formatted(this.messageId);
+  }
+}
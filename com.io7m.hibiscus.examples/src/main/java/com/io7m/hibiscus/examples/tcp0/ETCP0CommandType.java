@@ -20,7 +20,8 @@ package com.io7m.hibiscus.examples.tcp0;
 public sealed interface ETCP0CommandType
   extends ETCP0MessageType
   permits ETCP0CommandHello,
-  ETCP0CommandLogin
+  ETCP0CommandLogin,
+  ETCP0CommandResume
 {
 
 }
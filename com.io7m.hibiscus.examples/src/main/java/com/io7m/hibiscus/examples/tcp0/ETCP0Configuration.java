@@ -17,10 +17,84 @@
 
 package com.io7m.hibiscus.examples.tcp0;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
 import com.io7m.hibiscus.api.HBConfigurationType;
+import com.io7m.hibiscus.api.HBFaultConfiguration;
+import com.io7m.hibiscus.api.HBHappyEyeballsConfiguration;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 
-public record ETCP0Configuration()
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+public record ETCP0Configuration(
+  Optional<HBFaultConfiguration> faults,
+  Duration slowRequestThreshold,
+  HBCodecType<ETCP0MessageType, ETCP0Exception> codec,
+  HBBufferPool bufferPool,
+  HBPerformanceConfiguration performance,
+  HBHappyEyeballsConfiguration happyEyeballs,
+  int maximumMessageSize)
   implements HBConfigurationType
 {
+  /**
+   * The default largest encoded message that a client sends or accepts.
+   * Messages up to this size are written in chunks, and larger messages are
+   * refused before they are sent.
+   */
+
+  public static final int DEFAULT_MAXIMUM_MESSAGE_SIZE = 256 * 1024 * 1024;
+
+  public ETCP0Configuration
+  {
+    Objects.requireNonNull(faults, "faults");
+    Objects.requireNonNull(slowRequestThreshold, "slowRequestThreshold");
+    Objects.requireNonNull(codec, "codec");
+    Objects.requireNonNull(bufferPool, "bufferPool");
+    Objects.requireNonNull(performance, "performance");
+    Objects.requireNonNull(happyEyeballs, "happyEyeballs");
+
+    if (maximumMessageSize < ETCP0Connection.CHUNK_SIZE) {
+      throw new IllegalArgumentException(
+        "Maximum message size %d must be at least %d"
+          .formatted(
+            Integer.valueOf(maximumMessageSize),
+            Integer.valueOf(ETCP0Connection.CHUNK_SIZE))
+      );
+    }
+  }
+
+  public ETCP0Configuration()
+  {
+    this(
+      Optional.empty(),
+      Duration.ofSeconds(1L),
+      ETCP0Codec.get(),
+      HBBufferPool.shared(),
+      HBPerformanceConfiguration.defaults(),
+      HBHappyEyeballsConfiguration.defaults(),
+      DEFAULT_MAXIMUM_MESSAGE_SIZE
+    );
+  }
+
+  /**
+   * @param size The largest encoded message that a client sends or accepts
+   *
+   * @return This configuration with the given maximum message size
+   */
 
+  public ETCP0Configuration withMaximumMessageSize(
+    final int size)
+  {
+    return new ETCP0Configuration(
+      this.faults,
+      this.slowRequestThreshold,
+      this.codec,
+      this.bufferPool,
+      this.performance,
+      this.happyEyeballs,
+      size
+    );
+  }
 }
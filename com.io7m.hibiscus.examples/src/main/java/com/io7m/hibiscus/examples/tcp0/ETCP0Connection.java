@@ -0,0 +1,1653 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
+import com.io7m.hibiscus.api.HBCreditGate;
+import com.io7m.hibiscus.api.HBFlightDirection;
+import com.io7m.hibiscus.api.HBLatencyStage;
+import com.io7m.hibiscus.api.HBMessagePriority;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBPooledBuffer;
+import com.io7m.hibiscus.api.HBPriorityOutbox;
+import com.io7m.hibiscus.api.HBTraceContext;
+import com.io7m.jmulticlose.core.CloseableCollection;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A physical connection to a server, carrying any number of logical
+ * channels.</p>
+ *
+ * <p>Every frame on the wire is prefixed with its length, a frame kind,
+ * flags, and the ID of the channel to which it belongs. Message frames sent
+ * from within a span carry the span's trace context. A single reader thread
+ * reads frames and hands each decoded message to the transport of its
+ * channel.</p>
+ *
+ * <p>All channels share one bounded outbox and a single writer thread.
+ * Senders encode their frames and place them in the outbox without
+ * touching the socket, and block only when the outbox is full. The writer
+ * takes every frame queued since its last write and writes them together
+ * with one gathering write (group commit), so the number of system calls
+ * falls as the number of concurrent senders rises. Control frames bypass
+ * the bound, so the reader thread can always grant credit to the peer.</p>
+ *
+ * <p>A frame larger than {@link #CHUNK_SIZE} is written as a sequence of
+ * chunk frames. After each chunk the writer returns the frame to the back of
+ * its lane, so a large message neither blocks the messages queued behind it
+ * nor needs to be read by the peer in one piece. The reader reassembles
+ * chunks into a buffer borrowed for the duration of the transfer, and
+ * handles the reassembled frame as if it had arrived whole.</p>
+ *
+ * <p>The reader trusts neither the lengths nor the number of transfers that
+ * the peer declares. A frame longer than {@link #MAXIMUM_FRAME_SIZE}, a
+ * transfer longer than the configured maximum message size, or more than
+ * {@link #MAXIMUM_TRANSFERS} transfers in progress at once closes the
+ * connection, and a transfer's buffer grows only as its chunks arrive. The
+ * writer holds back new transfers so as to stay within the same limit, and
+ * a message too large for the peer is refused before anything is queued,
+ * rather than closing the connection and every channel on it.</p>
+ *
+ * <p>In low footprint mode, an idle connection holds neither a writer
+ * thread nor a read buffer. A writer thread is started when a frame is
+ * queued and no writer is running, and exits once the outbox is empty.
+ * The reader borrows a buffer from the shared pool for each frame and
+ * returns it before waiting for the next, so the buffers are shared by
+ * every connection rather than retained by each one.</p>
+ */
+
+final class ETCP0Connection
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ETCP0Connection.class);
+
+  /**
+   * The size of the frame header that follows the length: the kind, the
+   * flags, and the channel ID.
+   */
+
+  static final int FRAME_HEADER_SIZE = Byte.BYTES + Byte.BYTES + Short.BYTES;
+
+  /**
+   * A flag indicating that a sampled trace context (a 128-bit trace ID and a
+   * 64-bit span ID) follows the frame header.
+   */
+
+  static final int FLAG_TRACED = 0x1;
+
+  /**
+   * A flag indicating that the sender's trace is not sampled. No context
+   * follows the header; the flag alone carries the sampling decision.
+   */
+
+  static final int FLAG_UNSAMPLED = 0x2;
+
+  /**
+   * The size of a trace context following a frame header.
+   */
+
+  static final int TRACE_SIZE = Long.BYTES * 3;
+
+  /**
+   * A flag indicating that the time remaining before the sender gives up on
+   * the message, in nanoseconds, follows the trace context. The budget is
+   * relative rather than an absolute time so that the peers' clocks need
+   * not agree; the receiver adds it to the time it read the frame.
+   */
+
+  static final int FLAG_DEADLINE = 0x4;
+
+  /**
+   * The size of a deadline budget following a frame header.
+   */
+
+  static final int DEADLINE_SIZE = Long.BYTES;
+
+  /**
+   * A flag indicating that the sender of a message accepts the response as
+   * a stream of parts. The receiver sends parts only as the sender grants
+   * demand for them with {@link #FRAME_DEMAND} frames, and follows the last
+   * part with a {@link #FRAME_END_OF_STREAM} frame.
+   */
+
+  static final int FLAG_STREAM = 0x8;
+
+  /**
+   * The deadline value used for messages that have none.
+   */
+
+  static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  /**
+   * A frame carrying an encoded message.
+   */
+
+  static final int FRAME_MESSAGE = 0x0;
+
+  /**
+   * A frame, with no payload, indicating that the sender has closed the
+   * channel.
+   */
+
+  static final int FRAME_CLOSE = 0x1;
+
+  /**
+   * A frame granting the receiver credit to send the given number of further
+   * messages on the channel.
+   */
+
+  static final int FRAME_CREDIT = 0x2;
+
+  /**
+   * A frame asking the receiver to abandon any work in progress for the
+   * message with the given ID (a 128-bit UUID), and to suppress its
+   * response.
+   */
+
+  static final int FRAME_CANCEL = 0x3;
+
+  /**
+   * The size of the payload of a cancel frame.
+   */
+
+  static final int CANCEL_SIZE = Long.BYTES * 2;
+
+  /**
+   * A frame marking the end of the stream of responses to the message with
+   * the given ID (a 128-bit UUID).
+   */
+
+  static final int FRAME_END_OF_STREAM = 0x4;
+
+  /**
+   * A frame granting the receiver permission to send the given number of
+   * further parts of the stream of responses to the message with the given
+   * ID (a 128-bit UUID followed by a 32-bit count).
+   */
+
+  static final int FRAME_DEMAND = 0x5;
+
+  /**
+   * The size of the payload of a demand frame.
+   */
+
+  static final int DEMAND_SIZE = CANCEL_SIZE + Integer.BYTES;
+
+  /**
+   * A frame carrying part of a larger frame: a 32-bit transfer ID, the
+   * 32-bit length of the whole frame (excluding its own length prefix), and
+   * the next bytes of the whole frame. The chunks of a transfer are sent in
+   * order, and chunks of different transfers may be interleaved with each
+   * other and with other frames.
+   */
+
+  static final int FRAME_CHUNK = 0x6;
+
+  /**
+   * The size of the header of a chunk frame, including the frame header.
+   */
+
+  static final int CHUNK_HEADER_SIZE = FRAME_HEADER_SIZE + Integer.BYTES * 2;
+
+  /**
+   * The largest number of bytes of a frame carried by a single chunk. Frames
+   * no larger than this are written whole.
+   */
+
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The largest frame, excluding its length prefix, that a reader accepts.
+   * Writers split anything larger into chunks, so a longer frame can only
+   * come from a broken or hostile peer.
+   */
+
+  static final int MAXIMUM_FRAME_SIZE = CHUNK_HEADER_SIZE + CHUNK_SIZE;
+
+  /**
+   * The largest number of transfers that a peer may have partly written on
+   * a connection at any one time.
+   */
+
+  static final int MAXIMUM_TRANSFERS = 16;
+
+  /**
+   * The credit that each side implicitly holds on a new channel: the number
+   * of messages, other than responses, that it may send before the peer
+   * grants more.
+   */
+
+  static final int INITIAL_CREDITS = 64;
+
+  /**
+   * The number of distinct channel IDs.
+   */
+
+  static final int CHANNEL_LIMIT = 0x10000;
+
+  /**
+   * The size of the largest frame header, carrying both a trace context
+   * and a deadline.
+   */
+
+  static final int HEADER_SIZE_MAXIMUM =
+    headerSize(FLAG_TRACED | FLAG_DEADLINE);
+
+  private static final int STARVATION_LIMIT = 8;
+  private static final int INITIAL_READ_BUFFER_SIZE = 1024;
+  private static final int TRANSFER_SIZE = 8192;
+  private static final Duration CLOSE_LINGER = Duration.ofSeconds(1L);
+
+  private final CloseableCollectionType<ETCP0Exception> resources;
+  private final Socket socket;
+  private final DataInputStream input;
+  private final SocketChannel gathering;
+  private final DataOutputStream output;
+  private final ConcurrentHashMap<Integer, ETCP0Transport> channels;
+  private final HBPriorityOutbox<ETCP0Outbound> outbox;
+  private final HBCreditGate outboxSpace;
+  private final Semaphore outboxReady;
+  private final ReentrantLock writeLock;
+  private final ArrayList<ETCP0Outbound> writing;
+  private final ConcurrentHashMap<UUID, ETCP0Outbound> chunking;
+  private final HashMap<Integer, Transfer> reassembling;
+  private final ArrayDeque<ETCP0Outbound> transfersWaiting;
+  private int transfersActive;
+  private final AtomicInteger transferNext;
+  private final Thread readerThread;
+  private final AtomicBoolean writerActive;
+  private volatile Thread writerThread;
+  private final Duration slowRequestThreshold;
+  private final HBCodecType<ETCP0MessageType, ETCP0Exception> codec;
+  private final HBBufferPool bufferPool;
+  private final HBPerformanceConfiguration performance;
+  private final AtomicBoolean closed;
+  private final boolean lowFootprint;
+  private final byte[] readTransfer;
+  private final byte[] writeTransfer;
+  private final int batchMaxMessages;
+  private final int batchMaxBytes;
+  private final int maximumMessageSize;
+  private HBPooledBuffer readBuffer;
+  private ByteBuffer[] gather;
+  private int channelNext;
+
+  ETCP0Connection(
+    final Socket inSocket,
+    final ETCP0Configuration inConfiguration)
+    throws IOException
+  {
+    Objects.requireNonNull(inConfiguration, "inConfiguration");
+
+    this.slowRequestThreshold =
+      inConfiguration.slowRequestThreshold();
+    this.codec =
+      inConfiguration.codec();
+    this.bufferPool =
+      inConfiguration.bufferPool();
+    this.performance =
+      inConfiguration.performance();
+    this.lowFootprint =
+      this.performance.lowFootprint();
+    this.batchMaxMessages =
+      this.performance.batchMaxMessages();
+    this.batchMaxBytes =
+      this.performance.batchMaxBytes();
+    this.maximumMessageSize =
+      inConfiguration.maximumMessageSize();
+
+    /*
+     * A socket created from a channel is written with gathering writes
+     * straight from the frame buffers. Any other socket is written through
+     * a buffered stream.
+     */
+
+    this.gathering = inSocket.getChannel();
+
+    /*
+     * Streams can only transfer bytes to and from arrays, so direct buffers
+     * are staged through a small array owned by each side.
+     */
+
+    if (this.bufferPool.configuration().direct()) {
+      this.readTransfer = new byte[TRANSFER_SIZE];
+      if (this.gathering == null) {
+        this.writeTransfer = new byte[TRANSFER_SIZE];
+      } else {
+        this.writeTransfer = null;
+      }
+    } else {
+      this.readTransfer = null;
+      this.writeTransfer = null;
+    }
+
+    this.resources =
+      CloseableCollection.create(() -> {
+        return new ETCP0Exception("Failed to close resources.");
+      });
+
+    this.socket =
+      this.resources.add(Objects.requireNonNull(inSocket, "inSocket"));
+    this.input =
+      this.resources.add(new DataInputStream(inSocket.getInputStream()));
+    if (this.gathering == null) {
+      this.output =
+        this.resources.add(
+          new DataOutputStream(
+            new BufferedOutputStream(
+              inSocket.getOutputStream(),
+              this.batchMaxBytes
+            )));
+    } else {
+      this.output = null;
+    }
+
+    this.channels =
+      new ConcurrentHashMap<>();
+    this.outbox =
+      new HBPriorityOutbox<>(STARVATION_LIMIT);
+    this.outboxSpace =
+      new HBCreditGate(this.performance.outboxCapacity());
+    this.outboxReady =
+      new Semaphore(0);
+    this.writeLock =
+      new ReentrantLock();
+    this.writing =
+      new ArrayList<>();
+    this.chunking =
+      new ConcurrentHashMap<>();
+    this.reassembling =
+      new HashMap<>();
+    this.transfersWaiting =
+      new ArrayDeque<>();
+    this.transferNext =
+      new AtomicInteger(0);
+    this.gather =
+      new ByteBuffer[0];
+    this.closed =
+      new AtomicBoolean(false);
+    this.writerActive =
+      new AtomicBoolean(false);
+
+    if (!this.lowFootprint) {
+      this.readBuffer =
+        this.bufferPool.acquire(INITIAL_READ_BUFFER_SIZE);
+    }
+
+    this.readerThread =
+      this.performance.startReader(
+        "com.io7m.hibiscus.tcp0.reader",
+        this::readLoop
+      );
+
+    if (!this.lowFootprint) {
+      this.writerThread =
+        this.performance.startWriter(
+          "com.io7m.hibiscus.tcp0.writer",
+          this::writeLoop
+        );
+    }
+  }
+
+  /**
+   * @return The frame flags describing the given trace context
+   */
+
+  static int traceFlags(
+    final Optional<HBTraceContext> trace)
+  {
+    if (trace.isEmpty()) {
+      return 0;
+    }
+    if (trace.get().sampled()) {
+      return FLAG_TRACED;
+    }
+    return FLAG_UNSAMPLED;
+  }
+
+  /**
+   * @return The size of the trace context written for the given flags
+   */
+
+  static int traceSize(
+    final int flags)
+  {
+    if ((flags & FLAG_TRACED) != 0) {
+      return TRACE_SIZE;
+    }
+    return 0;
+  }
+
+  /**
+   * @return The size of the frame header, including any trace context and
+   * deadline, written for the given flags
+   */
+
+  static int headerSize(
+    final int flags)
+  {
+    var size = FRAME_HEADER_SIZE + traceSize(flags);
+    if ((flags & FLAG_DEADLINE) != 0) {
+      size += DEADLINE_SIZE;
+    }
+    return size;
+  }
+
+  /**
+   * Write a frame header, and the trace context and deadline budget if the
+   * flags call for them.
+   */
+
+  static void putHeader(
+    final ByteBuffer buffer,
+    final int kind,
+    final int flags,
+    final int channel,
+    final Optional<HBTraceContext> trace,
+    final long budgetNanos)
+  {
+    buffer.put((byte) kind);
+    buffer.put((byte) flags);
+    buffer.putShort((short) channel);
+
+    if ((flags & FLAG_TRACED) != 0) {
+      final var context = trace.orElseThrow();
+      buffer.putLong(context.traceIdHigh());
+      buffer.putLong(context.traceIdLow());
+      buffer.putLong(context.spanId());
+    }
+    if ((flags & FLAG_DEADLINE) != 0) {
+      buffer.putLong(budgetNanos);
+    }
+  }
+
+  /**
+   * @return The {@link System#nanoTime()} deadline that falls after the
+   * given timeout, or {@link #NO_DEADLINE} if the timeout is too large to
+   * represent
+   */
+
+  static long deadlineAfter(
+    final Duration timeout)
+  {
+    try {
+      return Math.addExact(System.nanoTime(), timeout.toNanos());
+    } catch (final ArithmeticException e) {
+      return NO_DEADLINE;
+    }
+  }
+
+  /**
+   * @return The time left before the given deadline, which is never
+   * negative, and is unbounded for {@link #NO_DEADLINE}
+   */
+
+  static Duration remainingUntil(
+    final long deadline)
+  {
+    if (deadline == NO_DEADLINE) {
+      return Duration.ofNanos(Long.MAX_VALUE);
+    }
+    return Duration.ofNanos(Math.max(0L, deadline - System.nanoTime()));
+  }
+
+  /**
+   * Read the deadline budget that follows the trace context, if any, and
+   * convert it to a deadline on the local {@link System#nanoTime()} clock.
+   *
+   * @return The deadline, or {@link #NO_DEADLINE}
+   */
+
+  static long getDeadline(
+    final int flags,
+    final ByteBuffer buffer,
+    final long timeRead)
+  {
+    if ((flags & FLAG_DEADLINE) != 0) {
+      return timeRead + buffer.getLong();
+    }
+    return NO_DEADLINE;
+  }
+
+  /**
+   * Read the trace context that follows a frame header, if any. An
+   * unsampled context has no IDs of its own; it exists to carry the
+   * decision not to sample.
+   */
+
+  static Optional<HBTraceContext> getTrace(
+    final int flags,
+    final ByteBuffer buffer)
+  {
+    if ((flags & FLAG_TRACED) != 0) {
+      return Optional.of(
+        new HBTraceContext(
+          buffer.getLong(),
+          buffer.getLong(),
+          buffer.getLong(),
+          true
+        )
+      );
+    }
+    if ((flags & FLAG_UNSAMPLED) != 0) {
+      return Optional.of(new HBTraceContext(0L, 0L, 0L, false));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Open a new logical channel on this connection.
+   *
+   * @param ownsConnection {@code true} if closing the channel should also
+   *                       close this connection
+   *
+   * @return The channel's transport
+   *
+   * @throws ETCP0Exception If the connection is closed, or every channel ID
+   *                        is in use
+   */
+
+  synchronized ETCP0Transport openChannel(
+    final boolean ownsConnection)
+    throws ETCP0Exception
+  {
+    if (this.isClosed()) {
+      throw new ETCP0Exception(new ClosedChannelException());
+    }
+
+    for (int attempt = 0; attempt < CHANNEL_LIMIT; ++attempt) {
+      final var id = this.channelNext;
+      this.channelNext = (this.channelNext + 1) % CHANNEL_LIMIT;
+
+      final var key = Integer.valueOf(id);
+      if (!this.channels.containsKey(key)) {
+        final var transport =
+          new ETCP0Transport(
+            this,
+            id,
+            ownsConnection,
+            this.slowRequestThreshold,
+            this.performance
+          );
+        this.channels.put(key, transport);
+        return transport;
+      }
+    }
+
+    throw new ETCP0Exception(
+      "All %d channels are in use.".formatted(Integer.valueOf(CHANNEL_LIMIT))
+    );
+  }
+
+  /**
+   * @return The number of open channels
+   */
+
+  int channelCount()
+  {
+    return this.channels.size();
+  }
+
+  private void readLoop()
+  {
+    while (true) {
+      try {
+        final var frameLength =
+          checkFrameLength(this.input.readInt());
+        final var kind =
+          this.input.readUnsignedByte();
+        final var flags =
+          this.input.readUnsignedByte();
+        final var channel =
+          this.input.readUnsignedShort();
+        final var msgLength =
+          frameLength - FRAME_HEADER_SIZE;
+        final var msgData =
+          this.readFrame(msgLength);
+        final var timeRead =
+          System.nanoTime();
+
+        if (kind == FRAME_CHUNK) {
+          final var whole = this.reassemble(msgData);
+          if (whole != null) {
+            try {
+              this.dispatchWhole(whole.buffer(), timeRead);
+            } finally {
+              whole.close();
+            }
+          }
+        } else {
+          this.dispatch(kind, flags, channel, msgData, msgLength, timeRead);
+        }
+
+        if (this.lowFootprint) {
+          this.releaseReadBuffer();
+        }
+      } catch (final Throwable e) {
+        try {
+          this.releaseReadBuffer();
+          this.releaseReassembling();
+          this.close();
+          return;
+        } catch (final Throwable ex) {
+          throw new RuntimeException(ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add a chunk to the transfer it belongs to. The transfer's buffer grows
+   * as chunks arrive, rather than being allocated at the length the first
+   * chunk declares, so a peer cannot make the reader hold memory that it
+   * has not sent.
+   *
+   * @return The reassembled frame, if the chunk was the last of its transfer
+   */
+
+  private HBPooledBuffer reassemble(
+    final ByteBuffer chunk)
+    throws IOException
+  {
+    final var transferId = Integer.valueOf(chunk.getInt());
+    final var total = chunk.getInt();
+
+    var transfer = this.reassembling.get(transferId);
+    if (transfer == null) {
+      checkTransfer(total, this.maximumMessageSize, this.reassembling.size());
+      transfer = new Transfer(total);
+      transfer.pooled = this.bufferPool.acquire(Math.min(total, CHUNK_SIZE));
+      transfer.pooled.buffer().clear();
+      this.reassembling.put(transferId, transfer);
+    } else if (total != transfer.total) {
+      throw new IOException(
+        "Chunk changes the length of transfer %s".formatted(transferId));
+    }
+
+    var buffer = transfer.pooled.buffer();
+    final var size = buffer.position() + chunk.remaining();
+    if (size > transfer.total) {
+      throw new IOException(
+        "Chunk overflows transfer %s".formatted(transferId));
+    }
+    if (size > buffer.capacity()) {
+      final var grown =
+        this.bufferPool.acquire(
+          Math.min(transfer.total, Math.max(size, buffer.capacity() * 2)));
+      grown.buffer().clear().put(buffer.flip());
+      transfer.pooled.close();
+      transfer.pooled = grown;
+      buffer = grown.buffer();
+    }
+    buffer.put(chunk);
+
+    if (buffer.position() < transfer.total) {
+      return null;
+    }
+    this.reassembling.remove(transferId);
+    buffer.flip();
+    return transfer.pooled;
+  }
+
+  /**
+   * Check the length of a frame read from the peer.
+   *
+   * @return The length
+   */
+
+  static int checkFrameLength(
+    final int length)
+    throws IOException
+  {
+    if (length < FRAME_HEADER_SIZE || length > MAXIMUM_FRAME_SIZE) {
+      throw new IOException("Invalid frame length: " + length);
+    }
+    return length;
+  }
+
+  /**
+   * Check the first chunk of a new transfer, given the largest frame that
+   * may be reassembled and the number of transfers already in progress.
+   */
+
+  static void checkTransfer(
+    final int total,
+    final int maximum,
+    final int transfers)
+    throws IOException
+  {
+    if (total < FRAME_HEADER_SIZE || total > maximum) {
+      throw new IOException("Invalid transfer length: " + total);
+    }
+    if (transfers >= MAXIMUM_TRANSFERS) {
+      throw new IOException("Too many transfers in progress.");
+    }
+  }
+
+  private void releaseReassembling()
+  {
+    for (final var transfer : this.reassembling.values()) {
+      transfer.pooled.close();
+    }
+    this.reassembling.clear();
+  }
+
+  /**
+   * Handle a reassembled frame, which begins with the frame header.
+   */
+
+  private void dispatchWhole(
+    final ByteBuffer frame,
+    final long timeRead)
+    throws Exception
+  {
+    final var kind = Byte.toUnsignedInt(frame.get());
+    final var flags = Byte.toUnsignedInt(frame.get());
+    final var channel = Short.toUnsignedInt(frame.getShort());
+
+    if (kind == FRAME_CHUNK) {
+      throw new IOException("Chunk frames cannot be nested.");
+    }
+    this.dispatch(
+      kind, flags, channel, frame, frame.remaining(), timeRead);
+  }
+
+  private void dispatch(
+    final int kind,
+    final int flags,
+    final int channel,
+    final ByteBuffer msgData,
+    final int msgLength,
+    final long timeRead)
+    throws Exception
+  {
+    /*
+     * The server's context is carried on its responses, but clients do
+     * not start spans of their own for received messages, so the
+     * context is skipped.
+     */
+
+    msgData.position(
+      msgData.position() + headerSize(flags) - FRAME_HEADER_SIZE);
+
+    final var transport =
+      this.channels.get(Integer.valueOf(channel));
+
+    switch (kind) {
+      case FRAME_MESSAGE -> {
+        final var message = this.codec.decode(msgData);
+        if (transport != null) {
+          transport.deliver(message, msgLength, timeRead);
+        } else {
+          LOG.debug("Dropped message for closed channel {}", channel);
+        }
+      }
+      case FRAME_CREDIT -> {
+        final var credits = msgData.getInt();
+        if (transport != null) {
+          transport.creditsGranted(credits);
+        }
+      }
+      case FRAME_END_OF_STREAM -> {
+        final var id = new UUID(msgData.getLong(), msgData.getLong());
+        if (transport != null) {
+          transport.endOfStream(id);
+        }
+      }
+      case FRAME_CLOSE -> {
+        if (transport != null) {
+          this.channels.remove(Integer.valueOf(channel), transport);
+          transport.closeRemotely();
+        }
+      }
+      default -> {
+        throw new IOException("Unrecognized frame kind: " + kind);
+      }
+    }
+  }
+
+  private void releaseReadBuffer()
+  {
+    if (this.readBuffer != null) {
+      this.readBuffer.close();
+      this.readBuffer = null;
+    }
+  }
+
+  /**
+   * Read a frame into the reader's buffer, exchanging the buffer for a
+   * larger pooled buffer if necessary. The buffer is reused for every frame,
+   * as decoded messages never refer to the buffer's contents. In low
+   * footprint mode, the reader has no buffer between frames and borrows
+   * one of exactly the required size class.
+   */
+
+  private ByteBuffer readFrame(
+    final int length)
+    throws IOException
+  {
+    if (length < 0) {
+      throw new IOException("Invalid frame length: " + length);
+    }
+    if (this.readBuffer == null) {
+      this.readBuffer = this.bufferPool.acquire(length);
+    } else if (this.readBuffer.capacity() < length) {
+      this.readBuffer.close();
+      this.readBuffer = this.bufferPool.acquire(length);
+    }
+
+    final var buffer = this.readBuffer.buffer();
+    buffer.clear().limit(length);
+
+    if (buffer.hasArray()) {
+      this.input.readFully(buffer.array(), buffer.arrayOffset(), length);
+      return buffer;
+    }
+
+    while (buffer.hasRemaining()) {
+      final var count = Math.min(buffer.remaining(), TRANSFER_SIZE);
+      this.input.readFully(this.readTransfer, 0, count);
+      buffer.put(this.readTransfer, 0, count);
+    }
+    return buffer.flip();
+  }
+
+  private void writeFrame(
+    final ByteBuffer data)
+    throws IOException
+  {
+    if (data.hasArray()) {
+      this.output.write(
+        data.array(),
+        data.arrayOffset() + data.position(),
+        data.remaining()
+      );
+      return;
+    }
+
+    while (data.hasRemaining()) {
+      final var count = Math.min(data.remaining(), TRANSFER_SIZE);
+      data.get(this.writeTransfer, 0, count);
+      this.output.write(this.writeTransfer, 0, count);
+    }
+  }
+
+  /**
+   * Check that a message, with the largest header it could be sent with,
+   * is no larger than the configured maximum message size. Transports
+   * check each message before taking credit or outbox space for it, so a
+   * refused message fails only its sender, where the peer would otherwise
+   * close the whole connection on receiving it.
+   *
+   * @throws ETCP0Exception If the message is too large
+   */
+
+  void checkMessageSize(
+    final ETCP0MessageType message)
+    throws ETCP0Exception
+  {
+    final var size =
+      (long) this.codec.sizeOf(message) + (long) HEADER_SIZE_MAXIMUM;
+
+    if (size > (long) this.maximumMessageSize) {
+      throw new ETCP0Exception(
+        "Message %s of %d bytes exceeds the maximum message size of %d bytes."
+          .formatted(
+            message.messageId(),
+            Long.valueOf(size),
+            Integer.valueOf(this.maximumMessageSize))
+      );
+    }
+  }
+
+  /**
+   * Encode and write a message on the given channel.
+   *
+   * @param deadline The {@link System#nanoTime()} after which the sender no
+   *                 longer wants the message processed, or
+   *                 {@link #NO_DEADLINE}
+   *
+   * @return The written frame
+   */
+
+  ETCP0Outbound sendMessage(
+    final ETCP0Transport transport,
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final long deadline)
+    throws ETCP0Exception
+  {
+    try {
+      if (!this.outboxSpace.acquire()) {
+        throw new ETCP0Exception(new ClosedChannelException());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ETCP0Exception(e);
+    }
+
+    return this.queueMessage(transport, message, priority, deadline, 0);
+  }
+
+  /**
+   * Encode and write a message on the given channel, asking the server to
+   * stream the response to it.
+   *
+   * @return The written frame
+   */
+
+  ETCP0Outbound sendStreamRequest(
+    final ETCP0Transport transport,
+    final ETCP0MessageType message,
+    final HBMessagePriority priority)
+    throws ETCP0Exception
+  {
+    try {
+      if (!this.outboxSpace.acquire()) {
+        throw new ETCP0Exception(new ClosedChannelException());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ETCP0Exception(e);
+    }
+
+    return this.queueMessage(
+      transport, message, priority, NO_DEADLINE, FLAG_STREAM);
+  }
+
+  /**
+   * Encode and write a message on the given channel if the outbox has room
+   * for it without waiting.
+   *
+   * @return The written frame, or {@code null} if the outbox is full
+   */
+
+  ETCP0Outbound trySendMessage(
+    final ETCP0Transport transport,
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final long deadline)
+    throws ETCP0Exception
+  {
+    if (!this.outboxSpace.tryAcquire()) {
+      return null;
+    }
+    return this.queueMessage(transport, message, priority, deadline, 0);
+  }
+
+  /**
+   * Keep the writer from taking frames from the outbox until
+   * {@link #releaseWriter()} is called, so that every frame queued in the
+   * meantime is written in the same batch. The caller must not wait for
+   * outbox space or credit while holding the writer, as neither can be
+   * freed until the writer runs.
+   */
+
+  void holdWriter()
+  {
+    this.writeLock.lock();
+  }
+
+  void releaseWriter()
+  {
+    this.writeLock.unlock();
+  }
+
+  private ETCP0Outbound queueMessage(
+    final ETCP0Transport transport,
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final long deadline,
+    final int extraFlags)
+    throws ETCP0Exception
+  {
+    final var latencies = transport.latencies();
+
+    try {
+      final var timeStarted = System.nanoTime();
+      final var trace = HBTraceContext.current();
+
+      var flags = traceFlags(trace) | extraFlags;
+      if (deadline != NO_DEADLINE) {
+        flags |= FLAG_DEADLINE;
+      }
+
+      final var size = this.codec.sizeOf(message);
+      final var frameSize = headerSize(flags) + size;
+      final var pooled =
+        this.bufferPool.acquire(Integer.BYTES + frameSize);
+
+      /*
+       * The budget is measured when the frame is encoded, so time the frame
+       * then spends in the outbox is counted against the server rather than
+       * the client. The server may therefore occasionally process a message
+       * that the client has only just given up on.
+       */
+
+      try {
+        final var buffer = pooled.buffer();
+        buffer.putInt(frameSize);
+        putHeader(
+          buffer,
+          FRAME_MESSAGE,
+          flags,
+          transport.channel(),
+          trace,
+          deadline - timeStarted
+        );
+        this.codec.encode(message, buffer);
+        buffer.flip();
+      } catch (final Exception e) {
+        pooled.close();
+        throw e;
+      }
+
+      final var timeEncoded = System.nanoTime();
+      latencies.record(HBLatencyStage.ENCODE, timeEncoded - timeStarted);
+      transport.recorder().record(HBFlightDirection.SENT, message, size);
+
+      if (frameSize <= CHUNK_SIZE) {
+        final var frame =
+          new ETCP0Outbound(pooled, latencies, timeStarted, timeEncoded, true);
+        this.enqueue(priority, frame);
+        return frame;
+      }
+
+      final var frame =
+        new ETCP0Outbound(
+          pooled,
+          latencies,
+          timeStarted,
+          timeEncoded,
+          priority,
+          message.messageId(),
+          transport.channel(),
+          this.transferNext.getAndIncrement()
+        );
+      this.chunking.put(message.messageId(), frame);
+      this.enqueue(priority, frame);
+      return frame;
+    } catch (final Exception e) {
+      this.close();
+      throw new ETCP0Exception(e);
+    }
+  }
+
+  /**
+   * Tell the server that the given channel has been closed, and forget the
+   * channel.
+   */
+
+  void closeChannel(
+    final ETCP0Transport transport)
+  {
+    final var channel = transport.channel();
+    this.channels.remove(Integer.valueOf(channel), transport);
+
+    if (this.isClosed()) {
+      return;
+    }
+
+    this.queueControl(transport, FRAME_CLOSE);
+  }
+
+  /**
+   * Grant the server credit to send more messages on the given channel.
+   */
+
+  void grantCredits(
+    final ETCP0Transport transport,
+    final int credits)
+  {
+    if (this.isClosed()) {
+      return;
+    }
+
+    this.queueControl(transport, FRAME_CREDIT, credits);
+  }
+
+  /**
+   * Ask the server to abandon the message with the given ID on the given
+   * channel. The cancel frame is queued in the lane of the given priority,
+   * behind the message itself if that has not yet been written, so that the
+   * server never sees a cancellation before the message it refers to.
+   */
+
+  void cancelMessage(
+    final ETCP0Transport transport,
+    final UUID messageId,
+    final HBMessagePriority priority)
+  {
+    if (this.isClosed()) {
+      return;
+    }
+
+    final var pooled = this.controlFrame(transport, FRAME_CANCEL, CANCEL_SIZE);
+    final var buffer = pooled.buffer();
+    buffer.putLong(messageId.getMostSignificantBits());
+    buffer.putLong(messageId.getLeastSignificantBits());
+    this.enqueueFollowing(transport, messageId, priority, pooled);
+  }
+
+  /**
+   * Grant the server permission to send the given number of further parts
+   * of the stream of responses to the message with the given ID. Like a
+   * cancel frame, the demand frame travels in the lane of the given
+   * priority so that it cannot overtake the message.
+   */
+
+  void grantDemand(
+    final ETCP0Transport transport,
+    final UUID messageId,
+    final int count,
+    final HBMessagePriority priority)
+  {
+    if (this.isClosed()) {
+      return;
+    }
+
+    final var pooled = this.controlFrame(transport, FRAME_DEMAND, DEMAND_SIZE);
+    final var buffer = pooled.buffer();
+    buffer.putLong(messageId.getMostSignificantBits());
+    buffer.putLong(messageId.getLeastSignificantBits());
+    buffer.putInt(count);
+    this.enqueueFollowing(transport, messageId, priority, pooled);
+  }
+
+  /**
+   * Queue a control frame, with a payload consisting of the given integers,
+   * at the highest priority.
+   */
+
+  private void queueControl(
+    final ETCP0Transport transport,
+    final int kind,
+    final int... values)
+  {
+    final var pooled =
+      this.controlFrame(transport, kind, values.length * Integer.BYTES);
+    final var buffer = pooled.buffer();
+    for (final var value : values) {
+      buffer.putInt(value);
+    }
+    this.enqueueControl(transport, HBMessagePriority.CONTROL, pooled);
+  }
+
+  /**
+   * Acquire a buffer for a control frame with a payload of the given size,
+   * and write the frame length and header into it.
+   */
+
+  private HBPooledBuffer controlFrame(
+    final ETCP0Transport transport,
+    final int kind,
+    final int payloadSize)
+  {
+    final var pooled =
+      this.bufferPool.acquire(Integer.BYTES + FRAME_HEADER_SIZE + payloadSize);
+    final var buffer = pooled.buffer();
+    buffer.putInt(FRAME_HEADER_SIZE + payloadSize);
+    putHeader(buffer, kind, 0, transport.channel(), Optional.empty(), 0L);
+    return pooled;
+  }
+
+  private void enqueueControl(
+    final ETCP0Transport transport,
+    final HBMessagePriority priority,
+    final HBPooledBuffer pooled)
+  {
+    this.enqueue(priority, controlOutbound(transport, pooled));
+  }
+
+  private static ETCP0Outbound controlOutbound(
+    final ETCP0Transport transport,
+    final HBPooledBuffer pooled)
+  {
+    final var timeNow = System.nanoTime();
+    pooled.buffer().flip();
+    return new ETCP0Outbound(
+      pooled, transport.latencies(), timeNow, timeNow, false);
+  }
+
+  /**
+   * Queue a control frame that refers to the given message. If the message
+   * is still being written in chunks, the control frame is held until the
+   * final chunk has been written, as it would otherwise overtake the
+   * message.
+   */
+
+  private void enqueueFollowing(
+    final ETCP0Transport transport,
+    final UUID messageId,
+    final HBMessagePriority priority,
+    final HBPooledBuffer pooled)
+  {
+    final var frame = controlOutbound(transport, pooled);
+    final var chunked = this.chunking.get(messageId);
+    if (chunked != null && chunked.follow(frame)) {
+      return;
+    }
+    this.enqueue(priority, frame);
+  }
+
+  private void enqueue(
+    final HBMessagePriority priority,
+    final ETCP0Outbound frame)
+  {
+    this.outbox.offer(priority, frame);
+    if (this.lowFootprint) {
+      this.startWriterIfIdle();
+    } else {
+      this.outboxReady.release();
+    }
+
+    /*
+     * The writer discards whatever remains in the outbox when the
+     * connection closes, but a frame queued after that must be discarded
+     * here.
+     */
+
+    if (this.closed.get()) {
+      this.discardQueued();
+    }
+  }
+
+  private void writeLoop()
+  {
+    try {
+      while (true) {
+        this.outboxReady.acquire();
+        this.outboxReady.drainPermits();
+        this.writeQueued();
+
+        if (this.closed.get()) {
+          return;
+        }
+      }
+    } catch (final InterruptedException e) {
+      // Closed.
+    } catch (final IOException e) {
+      LOG.debug("Write failed: ", e);
+      try {
+        this.close();
+      } catch (final ETCP0Exception ex) {
+        LOG.debug("Close failed: ", ex);
+      }
+    } finally {
+      this.discardQueued();
+    }
+  }
+
+  private void startWriterIfIdle()
+  {
+    if (this.writerActive.compareAndSet(false, true)) {
+      this.performance.startWriter(
+        "com.io7m.hibiscus.tcp0.writer",
+        this::writeUntilIdle
+      );
+    }
+  }
+
+  /**
+   * Write queued frames until the outbox is empty, and then exit. A frame
+   * queued after the final check of the outbox starts a new writer.
+   */
+
+  private void writeUntilIdle()
+  {
+    this.writerThread = Thread.currentThread();
+
+    try {
+      do {
+        this.writeQueued();
+        this.writerActive.set(false);
+      } while (!this.outbox.isEmpty()
+               && this.writerActive.compareAndSet(false, true));
+    } catch (final IOException e) {
+      LOG.debug("Write failed: ", e);
+      try {
+        this.close();
+      } catch (final ETCP0Exception ex) {
+        LOG.debug("Close failed: ", ex);
+      }
+    } finally {
+      if (this.closed.get()) {
+        this.discardQueued();
+      }
+    }
+  }
+
+  private void discardQueued()
+  {
+    this.writeLock.lock();
+    try {
+      while (!this.transfersWaiting.isEmpty()) {
+        final var frame = this.transfersWaiting.poll();
+        this.outbox.offer(frame.priority(), frame);
+      }
+
+      while (true) {
+        final var frame = this.outbox.poll();
+        if (frame == null) {
+          return;
+        }
+        if (frame.isChunked()) {
+          this.chunking.remove(frame.messageId(), frame);
+          for (final var follower : frame.finish()) {
+            follower.data().close();
+          }
+        }
+        frame.data().close();
+      }
+    } finally {
+      this.writeLock.unlock();
+    }
+  }
+
+  /**
+   * Write every queued frame, highest priority lanes first. Frames are taken
+   * from the outbox in batches bounded by the configured message and byte
+   * thresholds, and each batch is written with a single gathering write (or
+   * a single flush of the buffered stream). A control message queued behind
+   * a bulk batch is therefore written in the next batch.
+   */
+
+  private void writeQueued()
+    throws IOException
+  {
+    this.writeLock.lock();
+    try {
+      while (true) {
+        var batchBytes = 0L;
+
+        while (this.writing.size() < this.batchMaxMessages
+               && batchBytes < (long) this.batchMaxBytes) {
+          final var frame = this.outbox.poll();
+          if (frame == null) {
+            break;
+          }
+          if (frame.isChunked()
+              && frame.isFirstChunk()
+              && !this.startTransfer(frame)) {
+            continue;
+          }
+
+          if (!frame.isChunked() || frame.isFirstChunk()) {
+            final var timeDequeued = System.nanoTime();
+            frame.setDequeuedAt(timeDequeued);
+            frame.latencies().record(
+              HBLatencyStage.QUEUE,
+              timeDequeued - frame.encodedAt()
+            );
+          }
+
+          if (frame.isChunked()) {
+            batchBytes += (long) frame.prepareChunk(CHUNK_SIZE);
+          } else {
+            batchBytes += (long) frame.data().buffer().remaining();
+          }
+          this.writing.add(frame);
+        }
+
+        if (this.writing.isEmpty()) {
+          return;
+        }
+        this.writeBatch(batchBytes);
+      }
+    } finally {
+      this.releaseBatch();
+      this.writeLock.unlock();
+    }
+  }
+
+  private void writeBatch(
+    final long batchBytes)
+    throws IOException
+  {
+    /*
+     * Frames are stamped as written when their bytes are handed to the
+     * socket, rather than once the write returns, as the reader may
+     * otherwise read the response, and the request be recorded, first.
+     */
+
+    final var timeWritten = System.nanoTime();
+    for (final var frame : this.writing) {
+      if (!frame.isChunked() || !frame.hasMoreChunks()) {
+        frame.setWrittenAt(timeWritten);
+      }
+    }
+
+    try {
+      if (this.gathering != null) {
+        final var limit = this.writing.size() * 2;
+        if (this.gather.length < limit) {
+          this.gather = new ByteBuffer[limit];
+        }
+
+        var count = 0;
+        for (final var frame : this.writing) {
+          if (frame.isChunked()) {
+            this.gather[count++] = frame.chunkHeader();
+            this.gather[count++] = frame.chunkBody();
+          } else {
+            this.gather[count++] = frame.data().buffer();
+          }
+        }
+
+        var remaining = batchBytes;
+        while (remaining > 0L) {
+          remaining -= this.gathering.write(this.gather, 0, count);
+        }
+        Arrays.fill(this.gather, 0, count, null);
+      } else {
+        for (final var frame : this.writing) {
+          if (frame.isChunked()) {
+            this.writeFrame(frame.chunkHeader());
+            this.writeFrame(frame.chunkBody());
+          } else {
+            this.writeFrame(frame.data().buffer());
+          }
+        }
+        this.output.flush();
+      }
+
+      final var iterator = this.writing.iterator();
+      while (iterator.hasNext()) {
+        final var frame = iterator.next();
+        if (frame.isChunked()) {
+          if (frame.hasMoreChunks()) {
+            iterator.remove();
+            this.outbox.offer(frame.priority(), frame);
+            continue;
+          }
+          this.finishChunked(frame);
+        }
+
+        frame.latencies().record(
+          HBLatencyStage.WRITE,
+          timeWritten - frame.dequeuedAt()
+        );
+      }
+    } finally {
+      this.releaseBatch();
+    }
+  }
+
+  /**
+   * Queue the control frames held by a chunked frame whose final chunk has
+   * been written, in the frame's lane.
+   */
+
+  private void finishChunked(
+    final ETCP0Outbound frame)
+  {
+    this.chunking.remove(frame.messageId(), frame);
+    for (final var follower : frame.finish()) {
+      this.enqueue(frame.priority(), follower);
+    }
+
+    --this.transfersActive;
+    final var waiting = this.transfersWaiting.poll();
+    if (waiting != null) {
+      this.enqueue(waiting.priority(), waiting);
+    }
+  }
+
+  /**
+   * Start writing a chunked frame, unless the peer already holds as many
+   * partly written transfers as it accepts. The frame then waits, outside
+   * the outbox, until one of those transfers has been written in full.
+   *
+   * @return {@code true} if the frame's first chunk may be written
+   */
+
+  private boolean startTransfer(
+    final ETCP0Outbound frame)
+  {
+    if (this.transfersActive >= MAXIMUM_TRANSFERS) {
+      this.transfersWaiting.add(frame);
+      return false;
+    }
+    ++this.transfersActive;
+    return true;
+  }
+
+  /**
+   * Return the buffers of the current batch to the pool, and make room in
+   * the outbox for the batch's bounded frames.
+   */
+
+  private void releaseBatch()
+  {
+    var bounded = 0;
+    for (final var frame : this.writing) {
+      frame.data().close();
+      if (frame.bounded()) {
+        ++bounded;
+      }
+    }
+    this.writing.clear();
+
+    if (bounded > 0) {
+      this.outboxSpace.grant(bounded);
+    }
+  }
+
+  /**
+   * Close the connection and every channel on it.
+   *
+   * @throws ETCP0Exception On errors
+   */
+
+  void close()
+    throws ETCP0Exception
+  {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    /*
+     * Wake any sender waiting for outbox space, and give the writer a
+     * moment to write frames that were queued before the close.
+     */
+
+    this.outboxSpace.close();
+    this.outboxReady.release();
+
+    final var writer = this.writerThread;
+    if (writer != null && Thread.currentThread() != writer) {
+      try {
+        writer.join(CLOSE_LINGER);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    try {
+      this.resources.close();
+    } finally {
+
+      /*
+       * A reader blocked on a full inbox would otherwise never notice that
+       * the connection has closed.
+       */
+
+      this.readerThread.interrupt();
+      if (writer != null) {
+        writer.interrupt();
+      }
+
+      for (final var transport : this.channels.values()) {
+        transport.closeRemotely();
+      }
+      this.channels.clear();
+    }
+  }
+
+  boolean isClosed()
+  {
+    if (this.closed.get()) {
+      return true;
+    }
+    if (!this.socket.isClosed()) {
+      return !this.socket.isConnected();
+    }
+    return true;
+  }
+
+  /**
+   * A frame being reassembled from chunks.
+   */
+
+  private static final class Transfer
+  {
+    private final int total;
+    private HBPooledBuffer pooled;
+
+    Transfer(
+      final int inTotal)
+    {
+      this.total = inTotal;
+    }
+  }
+}
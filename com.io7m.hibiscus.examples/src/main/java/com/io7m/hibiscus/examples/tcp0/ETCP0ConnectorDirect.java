@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import com.io7m.hibiscus.api.HBHappyEyeballs;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * A connector that opens a new physical connection for every transport.
+ */
+
+final class ETCP0ConnectorDirect
+  implements ETCP0ConnectorType
+{
+  private final ETCP0Configuration configuration;
+
+  ETCP0ConnectorDirect(
+    final ETCP0Configuration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "inConfiguration");
+  }
+
+  /**
+   * Open a socket with the configured buffer sizes. Every address of the
+   * target host is resolved, and connection attempts to them are raced so
+   * that an unreachable address does not stall the connection.
+   *
+   * @param configuration The configuration
+   * @param parameters    The connection parameters
+   *
+   * @return A connected socket
+   *
+   * @throws IOException          On errors
+   * @throws InterruptedException On interruption
+   */
+
+  static Socket openSocket(
+    final ETCP0Configuration configuration,
+    final ETCP0ConnectionParameters parameters)
+    throws IOException, InterruptedException
+  {
+    final var address = parameters.address();
+
+    return HBHappyEyeballs.connect(
+      HBHappyEyeballs.resolve(address.getHostString(), address.getPort()),
+      configuration.happyEyeballs(),
+      () -> createSocket(configuration),
+      parameters.connectTimeout()
+    );
+  }
+
+  private static Socket createSocket(
+    final ETCP0Configuration configuration)
+    throws IOException
+  {
+    final var performance = configuration.performance();
+
+    /*
+     * A socket backed by a channel allows the connection to write frames
+     * with gathering writes.
+     */
+
+    final var socket = SocketChannel.open().socket();
+
+    try {
+
+      /*
+       * The receive buffer size must be set before connecting, as it
+       * determines the TCP window scale negotiated during the handshake.
+       */
+
+      final var receiveSize = performance.socketReceiveBufferSize();
+      if (receiveSize.isPresent()) {
+        socket.setReceiveBufferSize(receiveSize.getAsInt());
+      }
+      final var sendSize = performance.socketSendBufferSize();
+      if (sendSize.isPresent()) {
+        socket.setSendBufferSize(sendSize.getAsInt());
+      }
+      return socket;
+    } catch (final IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public ETCP0Transport connect(
+    final ETCP0ConnectionParameters parameters)
+    throws IOException, ETCP0Exception, InterruptedException
+  {
+    final var connection =
+      new ETCP0Connection(
+        openSocket(this.configuration, parameters),
+        this.configuration
+      );
+    return connection.openChannel(true);
+  }
+}
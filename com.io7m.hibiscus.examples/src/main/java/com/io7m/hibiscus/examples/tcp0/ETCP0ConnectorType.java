@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import java.io.IOException;
+
+/**
+ * A source of transports for clients.
+ */
+
+interface ETCP0ConnectorType
+{
+  /**
+   * Open a transport to the server named in the given parameters.
+   *
+   * @param parameters The connection parameters
+   *
+   * @return A transport
+   *
+   * @throws IOException          On I/O errors
+   * @throws ETCP0Exception       On errors
+   * @throws InterruptedException On interruption
+   */
+
+  ETCP0Transport connect(
+    ETCP0ConnectionParameters parameters)
+    throws IOException, ETCP0Exception, InterruptedException;
+}
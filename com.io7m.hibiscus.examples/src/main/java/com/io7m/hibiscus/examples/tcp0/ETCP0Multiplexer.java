@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A multiplexer that carries any number of clients over a single TCP
+ * connection.</p>
+ *
+ * <p>Each client created by the multiplexer is an ordinary
+ * {@link ETCP0ClientType} with its own login, session, state, and inbox,
+ * but connecting it opens a logical channel on the multiplexer's shared
+ * connection rather than a new socket. The shared connection is opened
+ * when the first client connects, and is reopened by the next client to
+ * connect if it is lost. Closing a client closes only its channel; closing
+ * the multiplexer closes the connection and every channel on it.</p>
+ *
+ * <p>All channels share one reader thread. Channels are individually flow
+ * controlled, so a client that does not consume its messages stops the
+ * server from sending to that client rather than holding up delivery to
+ * every other channel.</p>
+ *
+ * <p>The shared connection is opened outside the multiplexer's lock, so a
+ * slow connect never holds up {@link #channels()} or {@link #close()}.
+ * Clients that connect while the connection is being opened wait for that
+ * attempt rather than opening connections of their own.</p>
+ */
+
+public final class ETCP0Multiplexer
+  implements AutoCloseable
+{
+  private final ETCP0Configuration configuration;
+  private final InetSocketAddress address;
+  private final Clock clock;
+  private final LongAdder connections;
+  private final ReentrantLock lock;
+  private ETCP0Connection connection;
+  private CompletableFuture<ETCP0Connection> connecting;
+  private boolean closed;
+
+  private ETCP0Multiplexer(
+    final ETCP0Configuration inConfiguration,
+    final InetSocketAddress inAddress)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.address =
+      Objects.requireNonNull(inAddress, "address");
+    this.clock =
+      Clock.systemUTC();
+    this.connections =
+      new LongAdder();
+    this.lock =
+      new ReentrantLock();
+  }
+
+  /**
+   * Create a multiplexer for the given server. No connection is opened
+   * until a client connects.
+   *
+   * @param configuration The configuration used for the shared connection
+   *                      and for every client
+   * @param address       The server address
+   *
+   * @return A multiplexer
+   */
+
+  public static ETCP0Multiplexer create(
+    final ETCP0Configuration configuration,
+    final InetSocketAddress address)
+  {
+    return new ETCP0Multiplexer(configuration, address);
+  }
+
+  /**
+   * Create a new client whose connections are channels of this
+   * multiplexer's connection. The client must be connected with parameters
+   * naming the multiplexer's address.
+   *
+   * @return A new client
+   */
+
+  public ETCP0ClientType createClient()
+  {
+    return ETCP0Client.createWith(
+      this.configuration,
+      this.clock,
+      this::openChannel
+    );
+  }
+
+  private ETCP0Transport openChannel(
+    final ETCP0ConnectionParameters parameters)
+    throws IOException, ETCP0Exception, InterruptedException
+  {
+    if (!Objects.equals(parameters.address(), this.address)) {
+      throw new ETCP0Exception(
+        "This multiplexer is connected to %s, not %s."
+          .formatted(this.address, parameters.address())
+      );
+    }
+
+    final CompletableFuture<ETCP0Connection> pending;
+    final boolean connector;
+
+    this.lock.lock();
+    try {
+      this.checkNotClosed();
+      if (this.connection != null && !this.connection.isClosed()) {
+        return this.connection.openChannel(false);
+      }
+
+      connector = this.connecting == null;
+      if (connector) {
+        this.connecting = new CompletableFuture<>();
+      }
+      pending = this.connecting;
+    } finally {
+      this.lock.unlock();
+    }
+
+    if (connector) {
+      return this.connect(parameters, pending).openChannel(false);
+    }
+    return awaitConnection(pending).openChannel(false);
+  }
+
+  /**
+   * Open the shared connection without holding the lock, and then publish
+   * it. A multiplexer closed in the meantime closes the new connection
+   * instead.
+   */
+
+  private ETCP0Connection connect(
+    final ETCP0ConnectionParameters parameters,
+    final CompletableFuture<ETCP0Connection> pending)
+    throws IOException, ETCP0Exception, InterruptedException
+  {
+    final ETCP0Connection opened;
+    try {
+      opened =
+        new ETCP0Connection(
+          ETCP0ConnectorDirect.openSocket(this.configuration, parameters),
+          this.configuration
+        );
+    } catch (final Throwable e) {
+      this.lock.lock();
+      try {
+        this.connecting = null;
+      } finally {
+        this.lock.unlock();
+      }
+      pending.completeExceptionally(e);
+      throw e;
+    }
+
+    this.lock.lock();
+    try {
+      this.connecting = null;
+      if (!this.closed) {
+        this.connection = opened;
+        this.connections.increment();
+        pending.complete(opened);
+        return opened;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+
+    opened.close();
+    final var e = new ETCP0Exception("The multiplexer is closed.");
+    pending.completeExceptionally(e);
+    throw e;
+  }
+
+  private static ETCP0Connection awaitConnection(
+    final CompletableFuture<ETCP0Connection> pending)
+    throws IOException, ETCP0Exception, InterruptedException
+  {
+    try {
+      return pending.get();
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof final IOException x) {
+        throw new IOException(x);
+      }
+      throw new ETCP0Exception(e.getCause());
+    }
+  }
+
+  private void checkNotClosed()
+    throws ETCP0Exception
+  {
+    if (this.closed) {
+      throw new ETCP0Exception("The multiplexer is closed.");
+    }
+  }
+
+  /**
+   * @return The number of physical connections the multiplexer has opened
+   */
+
+  public long connections()
+  {
+    return this.connections.sum();
+  }
+
+  /**
+   * @return The number of channels open on the current connection
+   */
+
+  public int channels()
+  {
+    this.lock.lock();
+    try {
+      if (this.connection == null || this.connection.isClosed()) {
+        return 0;
+      }
+      return this.connection.channelCount();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+    throws ETCP0Exception
+  {
+    final ETCP0Connection existing;
+    this.lock.lock();
+    try {
+      this.closed = true;
+      existing = this.connection;
+    } finally {
+      this.lock.unlock();
+    }
+
+    if (existing != null) {
+      existing.close();
+    }
+  }
+}
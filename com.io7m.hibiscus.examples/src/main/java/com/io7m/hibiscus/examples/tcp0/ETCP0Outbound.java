@@ -0,0 +1,299 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import com.io7m.hibiscus.api.HBMessagePriority;
+import com.io7m.hibiscus.api.HBPooledBuffer;
+import com.io7m.hibiscus.api.HBStageLatencies;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * An encoded, length-prefixed frame waiting to be written, along with the
+ * times at which it passed through each outbound stage. The frame's buffer is
+ * borrowed from the transport's buffer pool and is returned as soon as the
+ * frame has been written. Stage times are recorded into the latencies of the
+ * channel that sent the frame. Frames other than control frames occupy space
+ * in the bounded outbox until they are written.
+ *
+ * <p>A frame too large to write in one piece is written as a sequence of
+ * chunk frames. The writer takes one chunk at a time and then returns the
+ * frame to the back of its lane, so other frames are written between the
+ * chunks. Its queue time ends when the first chunk is taken, and its write
+ * time spans every chunk. Control frames that must not overtake the message
+ * are held by the frame until its final chunk has been written.</p>
+ */
+
+final class ETCP0Outbound
+{
+  private final HBPooledBuffer data;
+  private final HBStageLatencies latencies;
+  private final long startedAt;
+  private final long encodedAt;
+  private final boolean bounded;
+  private final HBMessagePriority priority;
+  private final UUID messageId;
+  private final int channel;
+  private final int transferId;
+  private final ByteBuffer chunkHeader;
+  private final ByteBuffer chunkBody;
+  private int chunkEnd;
+  private List<ETCP0Outbound> followers;
+  private boolean finished;
+  private volatile long dequeuedAt;
+  private volatile long writtenAt;
+
+  ETCP0Outbound(
+    final HBPooledBuffer inData,
+    final HBStageLatencies inLatencies,
+    final long inStartedAt,
+    final long inEncodedAt,
+    final boolean inBounded)
+  {
+    this.data =
+      Objects.requireNonNull(inData, "data");
+    this.latencies =
+      Objects.requireNonNull(inLatencies, "latencies");
+    this.startedAt =
+      inStartedAt;
+    this.encodedAt =
+      inEncodedAt;
+    this.bounded =
+      inBounded;
+    this.priority =
+      null;
+    this.messageId =
+      null;
+    this.channel =
+      0;
+    this.transferId =
+      0;
+    this.chunkHeader =
+      null;
+    this.chunkBody =
+      null;
+    this.followers =
+      List.of();
+  }
+
+  /**
+   * A frame that is written in chunks. The frame's buffer holds the complete
+   * length-prefixed frame; the length prefix is replaced by the chunk
+   * headers.
+   */
+
+  ETCP0Outbound(
+    final HBPooledBuffer inData,
+    final HBStageLatencies inLatencies,
+    final long inStartedAt,
+    final long inEncodedAt,
+    final HBMessagePriority inPriority,
+    final UUID inMessageId,
+    final int inChannel,
+    final int inTransferId)
+  {
+    this.data =
+      Objects.requireNonNull(inData, "data");
+    this.latencies =
+      Objects.requireNonNull(inLatencies, "latencies");
+    this.startedAt =
+      inStartedAt;
+    this.encodedAt =
+      inEncodedAt;
+    this.bounded =
+      true;
+    this.priority =
+      Objects.requireNonNull(inPriority, "priority");
+    this.messageId =
+      Objects.requireNonNull(inMessageId, "messageId");
+    this.channel =
+      inChannel;
+    this.transferId =
+      inTransferId;
+    this.chunkHeader =
+      ByteBuffer.allocate(Integer.BYTES + ETCP0Connection.CHUNK_HEADER_SIZE);
+    this.chunkBody =
+      inData.buffer().duplicate();
+    this.followers =
+      new ArrayList<>();
+  }
+
+  HBPooledBuffer data()
+  {
+    return this.data;
+  }
+
+  HBStageLatencies latencies()
+  {
+    return this.latencies;
+  }
+
+  boolean bounded()
+  {
+    return this.bounded;
+  }
+
+  /**
+   * @return {@code true} if the frame is written in chunks
+   */
+
+  boolean isChunked()
+  {
+    return this.chunkHeader != null;
+  }
+
+  /**
+   * @return {@code true} if no chunk of the frame has yet been taken
+   */
+
+  boolean isFirstChunk()
+  {
+    return this.chunkEnd == 0;
+  }
+
+  HBMessagePriority priority()
+  {
+    return this.priority;
+  }
+
+  UUID messageId()
+  {
+    return this.messageId;
+  }
+
+  /**
+   * Prepare the next chunk of at most the given number of bytes of the
+   * frame.
+   *
+   * @return The number of bytes the chunk occupies on the wire
+   */
+
+  int prepareChunk(
+    final int chunkSize)
+  {
+    final var frame = this.data.buffer();
+    final var start = Math.max(Integer.BYTES, this.chunkEnd);
+    final var end = Math.min(frame.limit(), start + chunkSize);
+
+    this.chunkEnd = end;
+    this.chunkBody.limit(end).position(start);
+    this.chunkHeader.clear();
+    this.chunkHeader.putInt(
+      ETCP0Connection.CHUNK_HEADER_SIZE + (end - start));
+    ETCP0Connection.putHeader(
+      this.chunkHeader,
+      ETCP0Connection.FRAME_CHUNK,
+      0,
+      this.channel,
+      Optional.empty(),
+      0L
+    );
+    this.chunkHeader.putInt(this.transferId);
+    this.chunkHeader.putInt(frame.limit() - Integer.BYTES);
+    this.chunkHeader.flip();
+    return this.chunkHeader.remaining() + this.chunkBody.remaining();
+  }
+
+  /**
+   * @return {@code true} if bytes of the frame remain after the current
+   * chunk
+   */
+
+  boolean hasMoreChunks()
+  {
+    return this.chunkEnd < this.data.buffer().limit();
+  }
+
+  ByteBuffer chunkHeader()
+  {
+    return this.chunkHeader;
+  }
+
+  ByteBuffer chunkBody()
+  {
+    return this.chunkBody;
+  }
+
+  /**
+   * Hold the given frame until the final chunk of this frame has been
+   * written.
+   *
+   * @return {@code false} if the final chunk has already been written
+   */
+
+  synchronized boolean follow(
+    final ETCP0Outbound frame)
+  {
+    if (this.finished) {
+      return false;
+    }
+    this.followers.add(frame);
+    return true;
+  }
+
+  /**
+   * Mark the frame as finished.
+   *
+   * @return The frames held until now
+   */
+
+  synchronized List<ETCP0Outbound> finish()
+  {
+    this.finished = true;
+    final var held = this.followers;
+    this.followers = List.of();
+    return held;
+  }
+
+  long startedAt()
+  {
+    return this.startedAt;
+  }
+
+  long encodedAt()
+  {
+    return this.encodedAt;
+  }
+
+  long dequeuedAt()
+  {
+    return this.dequeuedAt;
+  }
+
+  void setDequeuedAt(
+    final long time)
+  {
+    this.dequeuedAt = time;
+  }
+
+  long writtenAt()
+  {
+    return this.writtenAt;
+  }
+
+  void setWrittenAt(
+    final long time)
+  {
+    this.writtenAt = time;
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A successful response to a login or resume, carrying the token with which
+ * the session can later be resumed.
+ */
+
+public record ETCP0ResponseSession(
+  UUID messageId,
+  UUID correlationId,
+  String token,
+  Instant expiresAt)
+  implements ETCP0ResponseType
+{
+  @Override
+  public String toString()
+  {
+    return "[ETCP0ResponseSession %s %s expiresAt=%s]".formatted(
+      this.messageId,
+      this.correlationId,
+      this.expiresAt
+    );
+  }
+}
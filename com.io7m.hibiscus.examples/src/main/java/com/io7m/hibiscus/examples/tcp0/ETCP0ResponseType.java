@@ -22,7 +22,8 @@ import java.util.UUID;
 public sealed interface ETCP0ResponseType
   extends ETCP0MessageType
   permits ETCP0ResponseFailure,
-  ETCP0ResponseOK
+  ETCP0ResponseOK,
+  ETCP0ResponseSession
 {
   UUID correlationId();
 }
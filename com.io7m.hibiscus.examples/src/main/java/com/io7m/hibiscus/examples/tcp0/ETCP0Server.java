@@ -17,6 +17,10 @@
 
 package com.io7m.hibiscus.examples.tcp0;
 
+import com.io7m.hibiscus.api.HBCreditGate;
+import com.io7m.hibiscus.api.HBCreditWindow;
+import com.io7m.hibiscus.api.HBTraceContext;
+import com.io7m.hibiscus.api.HBTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,14 +28,23 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 public final class ETCP0Server implements Closeable
@@ -40,17 +53,93 @@ public final class ETCP0Server implements Closeable
     LoggerFactory.getLogger(ETCP0Server.class);
 
   private final InetSocketAddress address;
+  private static final Duration SESSION_TTL =
+    Duration.ofMinutes(5L);
+  private static final Duration CHAT_INTERVAL =
+    Duration.ofMillis(500L);
+  private static final Duration SLOW_WORK =
+    Duration.ofSeconds(1L);
+  private static final Duration SLOW_STEP =
+    Duration.ofMillis(10L);
+  private static final long NO_DEADLINE_MAX_WAIT =
+    Duration.ofMillis(250L).toNanos();
+  private static final int MESSAGE_SIZE_MAXIMUM =
+    ETCP0Configuration.DEFAULT_MAXIMUM_MESSAGE_SIZE
+    - ETCP0Connection.HEADER_SIZE_MAXIMUM;
+  private static final String STREAM_PREFIX =
+    "Stream ";
+  private static final String ECHO_PREFIX =
+    "Echo ";
+
   private final ConcurrentHashMap.KeySetView<Socket, Boolean> sockets;
+  private final ConcurrentHashMap<String, Session> sessions;
+  private final LongAdder logins;
+  private final LongAdder resumptions;
+  private final LongAdder withheld;
+  private final LongAdder expired;
+  private final LongAdder cancelled;
+  private final Duration chatInterval;
+  private final HBTracer tracer;
   private ServerSocket socket;
 
+  /**
+   * The state of a logged-in session, which outlives the connection on
+   * which it was created so that a reconnecting client can resume it.
+   */
+
+  private static final class Session
+  {
+    private volatile boolean chatting;
+    private volatile Instant expiresAt;
+
+    Session(
+      final Instant inExpiresAt)
+    {
+      this.expiresAt = inExpiresAt;
+    }
+  }
+
   public ETCP0Server(
     final InetSocketAddress inAddress)
     throws IOException
+  {
+    this(inAddress, CHAT_INTERVAL);
+  }
+
+  public ETCP0Server(
+    final InetSocketAddress inAddress,
+    final Duration inChatInterval)
+    throws IOException
+  {
+    this(inAddress, inChatInterval, HBTracer.disabled());
+  }
+
+  public ETCP0Server(
+    final InetSocketAddress inAddress,
+    final Duration inChatInterval,
+    final HBTracer inTracer)
+    throws IOException
   {
     this.address =
       Objects.requireNonNull(inAddress, "address");
+    this.chatInterval =
+      Objects.requireNonNull(inChatInterval, "chatInterval");
+    this.tracer =
+      Objects.requireNonNull(inTracer, "tracer");
     this.sockets =
       ConcurrentHashMap.newKeySet();
+    this.sessions =
+      new ConcurrentHashMap<>();
+    this.logins =
+      new LongAdder();
+    this.resumptions =
+      new LongAdder();
+    this.withheld =
+      new LongAdder();
+    this.expired =
+      new LongAdder();
+    this.cancelled =
+      new LongAdder();
     this.socket =
       new ServerSocket();
   }
@@ -73,11 +162,71 @@ public final class ETCP0Server implements Closeable
             .run();
         });
       } catch (final IOException e) {
-        // Not a problem.
+        if (this.socket.isClosed()) {
+          return;
+        }
       }
     }
   }
 
+  /**
+   * @return The number of full logins the server has accepted
+   */
+
+  public long logins()
+  {
+    return this.logins.sum();
+  }
+
+  /**
+   * @return The number of sessions the server has resumed
+   */
+
+  public long resumptions()
+  {
+    return this.resumptions.sum();
+  }
+
+  /**
+   * @return The number of chat messages not sent because the client had not
+   * granted enough credit
+   */
+
+  public long withheld()
+  {
+    return this.withheld.sum();
+  }
+
+  /**
+   * @return The number of messages discarded unprocessed because their
+   * deadline had passed
+   */
+
+  public long expired()
+  {
+    return this.expired.sum();
+  }
+
+  /**
+   * @return The number of messages abandoned, or whose responses were
+   * suppressed, because the client cancelled them
+   */
+
+  public long cancelled()
+  {
+    return this.cancelled.sum();
+  }
+
+  /**
+   * Forget every session, as a restarted server would, so that clients
+   * holding session tokens must log in again.
+   */
+
+  public void forgetSessions()
+  {
+    this.sessions.clear();
+  }
+
   @Override
   public void close()
     throws IOException
@@ -99,15 +248,86 @@ public final class ETCP0Server implements Closeable
     }
   }
 
+  /**
+   * A message waiting to be processed. Work is ordered earliest due time
+   * first, and ties are broken by arrival order. A message with a deadline
+   * is due at its deadline. A message without one is due a short, fixed
+   * time after it arrived, so that a steady stream of messages with
+   * deadlines can delay it by at most that long, and messages without
+   * deadlines keep their arrival order among themselves. The due time only
+   * orders work; only a real deadline can expire.
+   */
+
+  private record Work(
+    ServerChannel channel,
+    ETCP0MessageType message,
+    Optional<HBTraceContext> trace,
+    long deadline,
+    long due,
+    boolean stream,
+    long sequence)
+    implements Comparable<Work>
+  {
+    static long dueOf(
+      final long deadline,
+      final long timeRead)
+    {
+      if (deadline == ETCP0Connection.NO_DEADLINE) {
+        return timeRead + NO_DEADLINE_MAX_WAIT;
+      }
+      return deadline;
+    }
+
+    @Override
+    public int compareTo(
+      final Work other)
+    {
+      final var byDue = Long.compare(this.due - other.due, 0L);
+      if (byDue != 0) {
+        return byDue;
+      }
+      return Long.compare(this.sequence, other.sequence);
+    }
+
+    boolean isExpired()
+    {
+      return this.deadline != ETCP0Connection.NO_DEADLINE
+             && System.nanoTime() - this.deadline >= 0L;
+    }
+  }
+
+  /**
+   * A client connection, carrying one or more logical channels. Each channel
+   * logs in separately and has its own session.
+   *
+   * <p>Frames are read on one thread and messages are processed on another,
+   * taken from a queue in earliest-deadline-first order. Under overload the
+   * queue grows, and a message whose sender has already given up on it is
+   * discarded rather than processed, so that the server spends its capacity
+   * on requests that can still succeed.</p>
+   *
+   * <p>A request for a stream of responses is taken from the queue in the
+   * same order, but is then processed on a virtual thread of its own, as
+   * its parts wait for demand from a subscriber that may never ask for
+   * them. A stalled subscriber therefore holds up only its own stream,
+   * rather than every channel on the connection.</p>
+   */
+
   private static final class ServerClient
     implements Runnable
   {
     private final ETCP0Server server;
     private final Socket socket;
     private final ReentrantLock socketLock;
+    private final ConcurrentHashMap<Integer, ServerChannel> channels;
+    private final PriorityBlockingQueue<Work> work;
+    private final HashMap<Integer, Transfer> reassembling;
+    private final AtomicInteger transferNext;
+    private final Semaphore transfers;
+    private long workSequence;
     private DataInputStream input;
     private DataOutputStream output;
-    private volatile boolean chatting;
+    private Thread worker;
 
     private ServerClient(
       final ETCP0Server inServer,
@@ -119,6 +339,16 @@ public final class ETCP0Server implements Closeable
         Objects.requireNonNull(inSocket, "socket");
       this.socketLock =
         new ReentrantLock();
+      this.channels =
+        new ConcurrentHashMap<>();
+      this.work =
+        new PriorityBlockingQueue<>();
+      this.reassembling =
+        new HashMap<>();
+      this.transferNext =
+        new AtomicInteger(0);
+      this.transfers =
+        new Semaphore(ETCP0Connection.MAXIMUM_TRANSFERS);
     }
 
     @Override
@@ -136,13 +366,35 @@ public final class ETCP0Server implements Closeable
       }
     }
 
-    private void writeMessage(
+    private void writeFrame(
+      final int kind,
+      final int channel,
       final byte[] data)
       throws IOException
     {
+      final Optional<HBTraceContext> trace;
+      if (kind == ETCP0Connection.FRAME_MESSAGE) {
+        trace = HBTraceContext.current();
+      } else {
+        trace = Optional.empty();
+      }
+
+      final var flags =
+        ETCP0Connection.traceFlags(trace);
+      final var header =
+        ByteBuffer.allocate(ETCP0Connection.headerSize(flags));
+
+      ETCP0Connection.putHeader(header, kind, flags, channel, trace, 0L);
+
+      if (header.capacity() + data.length > ETCP0Connection.CHUNK_SIZE) {
+        this.writeChunked(channel, header.array(), data);
+        return;
+      }
+
       this.socketLock.lock();
       try {
-        this.output.writeInt(data.length);
+        this.output.writeInt(header.capacity() + data.length);
+        this.output.write(header.array());
         this.output.write(data);
         this.output.flush();
       } finally {
@@ -150,6 +402,82 @@ public final class ETCP0Server implements Closeable
       }
     }
 
+    /**
+     * Write a large frame as a sequence of chunks. The socket is released
+     * between chunks, so frames written by other threads are interleaved
+     * with the chunks rather than waiting for the whole frame. Each chunk is
+     * written straight from the header and data arrays, and no more than
+     * {@link ETCP0Connection#MAXIMUM_TRANSFERS} frames are written in chunks
+     * at once, as the client would close the connection otherwise.
+     */
+
+    private void writeChunked(
+      final int channel,
+      final byte[] header,
+      final byte[] data)
+      throws IOException
+    {
+      try {
+        this.transfers.acquire();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+
+      try {
+        this.writeChunks(channel, header, data);
+      } finally {
+        this.transfers.release();
+      }
+    }
+
+    private void writeChunks(
+      final int channel,
+      final byte[] header,
+      final byte[] data)
+      throws IOException
+    {
+      final var total = header.length + data.length;
+      final var chunkHeader =
+        ByteBuffer.allocate(ETCP0Connection.CHUNK_HEADER_SIZE);
+
+      ETCP0Connection.putHeader(
+        chunkHeader,
+        ETCP0Connection.FRAME_CHUNK,
+        0,
+        channel,
+        Optional.empty(),
+        0L
+      );
+      chunkHeader.putInt(this.transferNext.getAndIncrement());
+      chunkHeader.putInt(total);
+
+      for (int offset = 0; offset < total;) {
+        final var count =
+          Math.min(ETCP0Connection.CHUNK_SIZE, total - offset);
+        final var end =
+          offset + count;
+
+        this.socketLock.lock();
+        try {
+          this.output.writeInt(ETCP0Connection.CHUNK_HEADER_SIZE + count);
+          this.output.write(chunkHeader.array());
+          if (offset < header.length) {
+            final var headerEnd = Math.min(end, header.length);
+            this.output.write(header, offset, headerEnd - offset);
+          }
+          if (end > header.length) {
+            final var dataStart = Math.max(0, offset - header.length);
+            this.output.write(data, dataStart, end - header.length - dataStart);
+          }
+          this.output.flush();
+        } finally {
+          this.socketLock.unlock();
+        }
+        offset = end;
+      }
+    }
+
     private void runMain()
       throws Exception
     {
@@ -159,145 +487,816 @@ public final class ETCP0Server implements Closeable
         this.output =
           new DataOutputStream(this.socket.getOutputStream());
 
-        this.doLogin();
         Thread.startVirtualThread(this::doChatTask);
+        this.worker = Thread.startVirtualThread(this::doWorkTask);
 
         while (true) {
-          this.doMessage();
+          this.doFrame();
         }
       } finally {
         this.close();
       }
     }
 
+    /**
+     * Send a greeting on every chatting channel. A single task serves every
+     * channel on the connection.
+     */
+
     private void doChatTask()
     {
-      var timeNext =
-        Instant.now()
-          .plusMillis(500L);
-
       while (!this.socket.isClosed()) {
-        final var timeNow = Instant.now();
-        if (timeNow.isAfter(timeNext)) {
-          timeNext = timeNow.plusMillis(500L);
-          if (this.chatting) {
-            try {
-              this.sendHello();
-            } catch (final Exception e) {
-              // Ignored
+        try {
+          Thread.sleep(this.server.chatInterval);
+        } catch (final InterruptedException e) {
+          return;
+        }
+
+        for (final var channel : this.channels.values()) {
+          final var s = channel.session;
+          if (s == null || !s.chatting) {
+            continue;
+          }
+
+          /*
+           * Chat is best-effort: a client that has not consumed earlier
+           * messages simply misses out, rather than blocking the task that
+           * serves every other channel.
+           */
+
+          if (!channel.credits.tryAcquire()) {
+            this.server.withheld.increment();
+            continue;
+          }
+
+          try {
+            channel.sendHello();
+          } catch (final Exception e) {
+            // Ignored
+          }
+        }
+      }
+    }
+
+    private void doWorkTask()
+    {
+      try {
+        while (true) {
+          final var item = this.work.take();
+          if (item.stream) {
+            Thread.ofVirtual()
+              .name("com.io7m.hibiscus.tcp0.server.stream")
+              .start(() -> this.doStreamTask(item));
+          } else {
+            this.process(item);
+          }
+        }
+      } catch (final InterruptedException e) {
+        // Closed.
+      } catch (final Exception e) {
+        this.fail(e);
+      }
+    }
+
+    private void doStreamTask(
+      final Work item)
+    {
+      try {
+        this.process(item);
+      } catch (final InterruptedException e) {
+        // Closed.
+      } catch (final Exception e) {
+        this.fail(e);
+      }
+    }
+
+    private void fail(
+      final Exception e)
+    {
+      LOG.debug("Client: ", e);
+      try {
+        this.close();
+      } catch (final IOException ex) {
+        LOG.error("Close: ", ex);
+      }
+    }
+
+    private void process(
+      final Work item)
+      throws Exception
+    {
+      final var channel = item.channel;
+      final var msg = item.message;
+      final var open =
+        this.channels.get(Integer.valueOf(channel.channel)) == channel;
+
+      if (item.isExpired()) {
+        LOG.debug("Expired: {} (channel {})", msg, channel.channel);
+        this.server.expired.increment();
+      } else if (channel.isCancelled(msg.messageId())) {
+        LOG.debug("Cancelled: {} (channel {})", msg, channel.channel);
+        this.server.cancelled.increment();
+      } else if (open) {
+
+        /*
+         * Handle the message within a span that continues the client's
+         * trace. Responses written within the span carry its context, as
+         * would any downstream requests the server made.
+         */
+
+        final var name = "tcp0." + msg.getClass().getSimpleName();
+        try (var span = this.server.tracer.startSpan(name, item.trace)) {
+          if (channel.session == null) {
+            channel.doLogin(msg);
+          } else {
+            channel.doMessage(msg);
+          }
+        }
+      }
+
+      if (item.stream) {
+        channel.endStream(msg.messageId());
+      }
+      channel.pending.remove(msg.messageId());
+
+      if (!(msg instanceof ETCP0ResponseType)) {
+        channel.consumed();
+      }
+    }
+
+    private void doFrame()
+      throws Exception
+    {
+      final var frameLen =
+        ETCP0Connection.checkFrameLength(this.input.readInt());
+      final var kind =
+        this.input.readUnsignedByte();
+      final var flags =
+        this.input.readUnsignedByte();
+      final var channelId =
+        Integer.valueOf(this.input.readUnsignedShort());
+      final var body =
+        ByteBuffer.wrap(
+          this.input.readNBytes(frameLen - ETCP0Connection.FRAME_HEADER_SIZE));
+      final var timeRead =
+        System.nanoTime();
+
+      if (kind != ETCP0Connection.FRAME_CHUNK) {
+        this.handleFrame(kind, flags, channelId, body, timeRead);
+        return;
+      }
+
+      final var whole = this.reassemble(body);
+      if (whole != null) {
+        final var wholeKind = Byte.toUnsignedInt(whole.get());
+        final var wholeFlags = Byte.toUnsignedInt(whole.get());
+        final var wholeChannel = Short.toUnsignedInt(whole.getShort());
+        if (wholeKind == ETCP0Connection.FRAME_CHUNK) {
+          throw new IOException("Chunk frames cannot be nested.");
+        }
+        this.handleFrame(
+          wholeKind,
+          wholeFlags,
+          Integer.valueOf(wholeChannel),
+          whole,
+          timeRead
+        );
+      }
+    }
+
+    /**
+     * Add a chunk to the transfer it belongs to. The transfer's buffer
+     * grows as chunks arrive, rather than being allocated at the length
+     * that the first chunk declares.
+     *
+     * @return The reassembled frame, if the chunk was the last of its
+     * transfer
+     */
+
+    private ByteBuffer reassemble(
+      final ByteBuffer chunk)
+      throws IOException
+    {
+      final var transferId = Integer.valueOf(chunk.getInt());
+      final var total = chunk.getInt();
+
+      var transfer = this.reassembling.get(transferId);
+      if (transfer == null) {
+        ETCP0Connection.checkTransfer(
+          total,
+          ETCP0Configuration.DEFAULT_MAXIMUM_MESSAGE_SIZE,
+          this.reassembling.size()
+        );
+        transfer = new Transfer(
+          total,
+          ByteBuffer.allocate(
+            Math.min(total, ETCP0Connection.CHUNK_SIZE))
+        );
+        this.reassembling.put(transferId, transfer);
+      } else if (total != transfer.total) {
+        throw new IOException(
+          "Chunk changes the length of transfer %s".formatted(transferId));
+      }
+
+      final var size = transfer.buffer.position() + chunk.remaining();
+      if (size > transfer.total) {
+        throw new IOException(
+          "Chunk overflows transfer %s".formatted(transferId));
+      }
+      if (size > transfer.buffer.capacity()) {
+        transfer.buffer =
+          ByteBuffer.allocate(
+            Math.min(
+              transfer.total,
+              Math.max(size, transfer.buffer.capacity() * 2)))
+            .put(transfer.buffer.flip());
+      }
+      transfer.buffer.put(chunk);
+
+      if (transfer.buffer.position() < transfer.total) {
+        return null;
+      }
+      this.reassembling.remove(transferId);
+      return transfer.buffer.flip();
+    }
+
+    private void handleFrame(
+      final int kind,
+      final int flags,
+      final Integer channelId,
+      final ByteBuffer body,
+      final long timeRead)
+      throws Exception
+    {
+      final var trace =
+        ETCP0Connection.getTrace(flags, body);
+      final var deadline =
+        ETCP0Connection.getDeadline(flags, body, timeRead);
+
+      switch (kind) {
+        case ETCP0Connection.FRAME_MESSAGE -> {
+          final var msg = ETCP0Codec.get().decode(body);
+          LOG.debug("Received: {} (channel {})", msg, channelId);
+
+          final var channel =
+            this.channels.computeIfAbsent(
+              channelId,
+              id -> new ServerChannel(this, id.intValue())
+            );
+
+          final var stream =
+            (flags & ETCP0Connection.FLAG_STREAM) != 0
+            && channel.session != null;
+
+          final var item =
+            new Work(
+              channel,
+              msg,
+              trace,
+              deadline,
+              Work.dueOf(deadline, timeRead),
+              stream,
+              this.workSequence++
+            );
+
+          /*
+           * A channel without a session is logging in, and the login must
+           * take effect before any later frame on the channel is read, so
+           * it is processed here rather than queued.
+           */
+
+          if (channel.session == null) {
+            this.process(item);
+          } else {
+            channel.pending.put(msg.messageId(), Boolean.FALSE);
+            if (stream) {
+              channel.streams.put(msg.messageId(), new HBCreditGate(0));
             }
+            this.work.put(item);
           }
         }
+        case ETCP0Connection.FRAME_DEMAND -> {
+          final var id = new UUID(body.getLong(), body.getLong());
+          final var count = body.getInt();
+
+          final var channel = this.channels.get(channelId);
+          if (channel != null) {
+            final var demand = channel.streams.get(id);
+            if (demand != null) {
+              demand.grant(count);
+            }
+          }
+        }
+        case ETCP0Connection.FRAME_CANCEL -> {
+          final var id = new UUID(body.getLong(), body.getLong());
+          LOG.debug("Cancel: {} (channel {})", id, channelId);
+
+          final var channel = this.channels.get(channelId);
+          if (channel != null) {
+            channel.pending.replace(id, Boolean.TRUE);
+          }
+        }
+        case ETCP0Connection.FRAME_CREDIT -> {
+          final var channel = this.channels.get(channelId);
+          if (channel != null) {
+            channel.credits.grant(body.getInt());
+          }
+        }
+        case ETCP0Connection.FRAME_CLOSE -> {
+          LOG.debug("Channel {} closed.", channelId);
+          this.channels.remove(channelId);
+        }
+        default -> {
+          throw new IOException("Unrecognized frame kind: " + kind);
+        }
       }
     }
 
-    private void sendHello()
+    private void close()
+      throws IOException
+    {
+      this.server.sockets.remove(this.socket);
+      this.socket.close();
+
+      if (this.worker != null) {
+        this.worker.interrupt();
+      }
+    }
+  }
+
+  /**
+   * A frame being reassembled from chunks.
+   */
+
+  private static final class Transfer
+  {
+    private final int total;
+    private ByteBuffer buffer;
+
+    private Transfer(
+      final int inTotal,
+      final ByteBuffer inBuffer)
+    {
+      this.total = inTotal;
+      this.buffer = inBuffer;
+    }
+  }
+
+  /**
+   * A logical channel of a client connection.
+   */
+
+  private static final class ServerChannel
+  {
+    private final ServerClient client;
+    private final ETCP0Server server;
+    private final int channel;
+    private final HBCreditGate credits;
+    private final HBCreditWindow window;
+    private final ConcurrentHashMap<UUID, Boolean> pending;
+    private final ConcurrentHashMap<UUID, HBCreditGate> streams;
+    private volatile Session session;
+    private boolean resumeRefused;
+
+    private ServerChannel(
+      final ServerClient inClient,
+      final int inChannel)
+    {
+      this.client =
+        Objects.requireNonNull(inClient, "client");
+      this.server =
+        inClient.server;
+      this.channel =
+        inChannel;
+      this.credits =
+        new HBCreditGate(ETCP0Connection.INITIAL_CREDITS);
+      this.window =
+        new HBCreditWindow(ETCP0Connection.INITIAL_CREDITS);
+      this.pending =
+        new ConcurrentHashMap<>();
+      this.streams =
+        new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Wait until the client has granted demand for another part of the
+     * stream of responses to the given message.
+     *
+     * @return {@code false} if the client cancelled the message or the
+     * connection closed first
+     */
+
+    private boolean awaitDemand(
+      final UUID messageId,
+      final HBCreditGate demand)
+      throws InterruptedException
+    {
+      while (!demand.acquire(SLOW_STEP)) {
+        if (this.isCancelled(messageId)
+            || this.client.socket.isClosed()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Finish the stream of responses to the given message, telling the
+     * client that no more parts will follow unless it has cancelled the
+     * message.
+     */
+
+    private void endStream(
+      final UUID messageId)
+      throws IOException
+    {
+      final var demand = this.streams.remove(messageId);
+      if (demand == null) {
+        return;
+      }
+
+      demand.close();
+      if (this.isCancelled(messageId)
+          || this.client.channels.get(this.channel) != this) {
+        return;
+      }
+
+      this.client.writeFrame(
+        ETCP0Connection.FRAME_END_OF_STREAM,
+        this.channel,
+        ByteBuffer.allocate(ETCP0Connection.CANCEL_SIZE)
+          .putLong(messageId.getMostSignificantBits())
+          .putLong(messageId.getLeastSignificantBits())
+          .array()
+      );
+    }
+
+    /**
+     * @return {@code true} if the client has cancelled the queued or
+     * running message with the given ID
+     */
+
+    private boolean isCancelled(
+      final UUID messageId)
+    {
+      return Boolean.TRUE.equals(this.pending.get(messageId));
+    }
+
+    /**
+     * Grant the client credit for a processed or discarded message when a
+     * grant is due. Credit is granted only once a message has left the
+     * work queue, so the queue holds at most one window of messages per
+     * channel, and the client is held back by the server's processing rate.
+     */
+
+    private void consumed()
+      throws IOException
+    {
+      final var granted = this.window.consumed();
+      if (granted > 0 && this.client.channels.get(this.channel) == this) {
+        this.client.writeFrame(
+          ETCP0Connection.FRAME_CREDIT,
+          this.channel,
+          ByteBuffer.allocate(Integer.BYTES).putInt(granted).array()
+        );
+      }
+    }
+
+    private void writeMessage(
+      final ETCP0MessageType message)
       throws IOException, ETCP0Exception
     {
-      LOG.debug("sendHello");
+      /*
+       * Writing a response retires the request that it answers, unless the
+       * client has already cancelled the request, in which case the
+       * response is suppressed.
+       */
+
+      if (message instanceof final ETCP0ResponseType response) {
+        final var id = response.correlationId();
+        final var demand = this.streams.get(id);
+        if (demand != null) {
+          try {
+            this.awaitDemand(id, demand);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+        }
+        if (Boolean.TRUE.equals(this.pending.remove(id))) {
+          LOG.debug("Suppressed response to cancelled {}", id);
+          this.server.cancelled.increment();
+          return;
+        }
+      }
 
-      final var res =
-        new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+      /*
+       * A message too large for the client would make it close the
+       * connection. A response is replaced by a failure, so the request
+       * still completes, and anything else is dropped.
+       */
+
+      var data = ETCP0Messages.toBytes(message);
+      if (data.length > MESSAGE_SIZE_MAXIMUM) {
+        if (!(message instanceof final ETCP0ResponseType response)) {
+          LOG.debug("Dropped oversized {}", message.messageId());
+          return;
+        }
+        data = ETCP0Messages.toBytes(
+          new ETCP0ResponseFailure(
+            UUID.randomUUID(),
+            response.correlationId(),
+            "Response too large."
+          )
+        );
+      }
 
-      this.writeMessage(ETCP0Messages.toBytes(res));
+      this.client.writeFrame(
+        ETCP0Connection.FRAME_MESSAGE,
+        this.channel,
+        data
+      );
     }
 
-    private void doMessage()
-      throws Exception
+    private void sendHello()
+      throws IOException, ETCP0Exception
     {
-      final var msgLen =
-        this.input.readInt();
-      final var msgBytes =
-        this.input.readNBytes(msgLen);
-      final var msg =
-        ETCP0Messages.fromBytes(msgBytes);
+      LOG.debug("sendHello");
 
-      LOG.debug("Received: {}", msg);
+      this.writeMessage(new ETCP0CommandHello(UUID.randomUUID(), "Hello!"));
+    }
 
+    private void doMessage(
+      final ETCP0MessageType msg)
+      throws Exception
+    {
       switch (msg) {
         case final ETCP0CommandType c -> {
           switch (c) {
             case final ETCP0CommandHello cc -> {
               if (Objects.equals(cc.message(), "Chatting")) {
-                 this.chatting = !this.chatting;
-                 LOG.debug("Chatting: {}", Boolean.valueOf(this.chatting));
+                final var s = this.session;
+                s.chatting = !s.chatting;
+                LOG.debug("Chatting: {}", Boolean.valueOf(s.chatting));
+              }
+              if (Objects.equals(cc.message(), "Slow")) {
+                if (!this.doSlowWork(cc)) {
+                  return;
+                }
+              }
+              if (cc.message().startsWith(STREAM_PREFIX)
+                  && this.streams.containsKey(cc.messageId())) {
+                this.doStream(cc);
+                return;
               }
               this.sendResponseOK(msg);
+              if (cc.message().startsWith(ECHO_PREFIX)) {
+                this.doEcho(cc);
+              }
             }
             case final ETCP0CommandLogin cc -> {
-              throw this.sendFail(msg, "Can't use a Login message here!");
+              this.sendFail(msg, "Can't use a Login message here!");
+            }
+            case final ETCP0CommandResume cc -> {
+              this.sendFail(msg, "Can't use a Resume message here!");
             }
           }
         }
         case final ETCP0ResponseType r -> {
-          throw this.sendFail(msg, "Can't use a Response message here!");
+          this.sendFail(msg, "Can't use a Response message here!");
+        }
+      }
+    }
+
+    /**
+     * Simulate a long-running request, checking for cancellation as it
+     * goes.
+     *
+     * @return {@code false} if the request was cancelled
+     */
+
+    private boolean doSlowWork(
+      final ETCP0MessageType msg)
+      throws InterruptedException
+    {
+      final var end = System.nanoTime() + SLOW_WORK.toNanos();
+      while (System.nanoTime() - end < 0L) {
+        if (this.isCancelled(msg.messageId())) {
+          LOG.debug("Abandoned: {} (channel {})", msg, this.channel);
+          this.server.cancelled.increment();
+          return false;
         }
+        Thread.sleep(SLOW_STEP);
+      }
+      return true;
+    }
+
+    /**
+     * Answer a "Stream N" message with N parts, each sent only once the
+     * client has asked for it. A message whose N is not a non-negative
+     * number is answered with a single failure.
+     */
+
+    private void doStream(
+      final ETCP0CommandHello msg)
+      throws Exception
+    {
+      final var id = msg.messageId();
+      final var demand = this.streams.get(id);
+      final var count = parseStreamLength(msg.message());
+      if (count < 0) {
+        LOG.debug("Malformed: {} (channel {})", msg, this.channel);
+        this.writeMessage(
+          new ETCP0ResponseFailure(
+            UUID.randomUUID(),
+            id,
+            "Malformed stream length."
+          )
+        );
+        return;
+      }
+
+      for (int index = 0; index < count; ++index) {
+        if (!this.awaitDemand(id, demand) || this.isCancelled(id)) {
+          LOG.debug("Abandoned: {} (channel {})", msg, this.channel);
+          this.server.cancelled.increment();
+          return;
+        }
+
+        this.client.writeFrame(
+          ETCP0Connection.FRAME_MESSAGE,
+          this.channel,
+          ETCP0Messages.toBytes(new ETCP0ResponseOK(UUID.randomUUID(), id))
+        );
+      }
+    }
+
+    /**
+     * @return The N of a "Stream N" message, or {@code -1} if N is not a
+     * non-negative number
+     */
+
+    private static int parseStreamLength(
+      final String message)
+    {
+      try {
+        return Math.max(
+          -1,
+          Integer.parseInt(message.substring(STREAM_PREFIX.length()))
+        );
+      } catch (final NumberFormatException e) {
+        return -1;
       }
     }
 
+    /**
+     * Send the text of an "Echo" message back to the client, if the client
+     * has granted credit for it.
+     */
+
+    private void doEcho(
+      final ETCP0CommandHello msg)
+      throws IOException, ETCP0Exception
+    {
+      if (!this.credits.tryAcquire()) {
+        this.server.withheld.increment();
+        return;
+      }
+      this.writeMessage(
+        new ETCP0CommandHello(UUID.randomUUID(), msg.message()));
+    }
+
     private void sendResponseOK(
       final ETCP0MessageType msg)
       throws IOException, ETCP0Exception
     {
-      final var res =
+      this.writeMessage(
         new ETCP0ResponseOK(
           UUID.randomUUID(),
           msg.messageId()
-        );
-
-      this.writeMessage(ETCP0Messages.toBytes(res));
+        )
+      );
     }
 
-    private Exception sendFail(
+    /**
+     * Send a failure response and close the channel. The connection, and any
+     * other channels on it, remain open.
+     */
+
+    private void sendFail(
       final ETCP0MessageType msg,
       final String errorMessage)
-      throws Exception
+      throws IOException, ETCP0Exception
     {
-      final var res =
+      LOG.debug("Failed: {} (channel {})", errorMessage, this.channel);
+
+      this.writeMessage(
         new ETCP0ResponseFailure(
           UUID.randomUUID(),
           msg.messageId(),
           errorMessage
-        );
+        )
+      );
 
-      this.writeMessage(ETCP0Messages.toBytes(res));
-      this.close();
-      return new Exception(errorMessage);
+      this.client.channels.remove(Integer.valueOf(this.channel));
+      this.client.writeFrame(
+        ETCP0Connection.FRAME_CLOSE,
+        this.channel,
+        new byte[0]
+      );
     }
 
-    private void close()
-      throws IOException
+    private void doLogin(
+      final ETCP0MessageType msg)
+      throws IOException, ETCP0Exception
     {
-      this.server.sockets.remove(this.socket);
-      this.socket.close();
-    }
+      switch (msg) {
+        case final ETCP0CommandLogin login -> {
+          if (Objects.equals(login.user(), "someone")
+              && Objects.equals(login.password(), "password")) {
+            LOG.debug("Logged in!");
+            this.server.logins.increment();
+            this.server.expireSessions();
 
-    private void doLogin()
-      throws Exception
-    {
-      LOG.debug("Awaiting login...");
+            final var token = UUID.randomUUID().toString();
+            final var created = new Session(Instant.now().plus(SESSION_TTL));
+            this.server.sessions.put(token, created);
+            this.session = created;
+            this.sendSession(msg, token);
+            return;
+          }
+          this.sendFail(msg, "Login failed!");
+        }
+
+        case final ETCP0CommandResume resume -> {
+          final var existing =
+            this.server.sessions.get(resume.token());
+          final var timeNow =
+            Instant.now();
 
-      final var msgLen =
-        this.input.readInt();
-      final var msgBytes =
-        this.input.readNBytes(msgLen);
-      final var msg =
-        ETCP0Messages.fromBytes(msgBytes);
+          if (existing != null && timeNow.isBefore(existing.expiresAt)) {
+            LOG.debug("Resumed session.");
+            this.server.resumptions.increment();
+            existing.expiresAt = timeNow.plus(SESSION_TTL);
+            this.session = existing;
+            this.sendSession(msg, resume.token());
+            return;
+          }
 
-      if (msg instanceof final ETCP0CommandLogin login) {
-        if (Objects.equals(login.user(), "someone")
-            && Objects.equals(login.password(), "password")) {
-          LOG.debug("Logged in!");
+          /*
+           * Refuse the token but keep the channel open, so that the
+           * client can fall back to a full login without reconnecting.
+           */
 
-          final var res =
-            new ETCP0ResponseOK(UUID.randomUUID(), msg.messageId());
+          this.server.sessions.remove(resume.token());
+          this.resumeRefused = true;
+          this.writeMessage(
+            new ETCP0ResponseFailure(
+              UUID.randomUUID(),
+              msg.messageId(),
+              "Unknown or expired session."
+            )
+          );
+        }
 
-          this.writeMessage(ETCP0Messages.toBytes(res));
-          return;
+        default -> {
+
+          /*
+           * A client may pipeline its first requests behind a resumption.
+           * If the resumption was refused, the client sends them again
+           * behind its full login, so these copies are discarded rather
+           * than failing the channel.
+           */
+
+          if (this.resumeRefused) {
+            LOG.debug("Discarded: {} (channel {})", msg, this.channel);
+            return;
+          }
+          this.sendFail(msg, "Login failed!");
         }
       }
+    }
 
-      throw this.sendFail(msg, "Login failed!");
+    private void sendSession(
+      final ETCP0MessageType msg,
+      final String token)
+      throws IOException, ETCP0Exception
+    {
+      this.writeMessage(
+        new ETCP0ResponseSession(
+          UUID.randomUUID(),
+          msg.messageId(),
+          token,
+          this.session.expiresAt
+        )
+      );
     }
   }
+
+  private void expireSessions()
+  {
+    final var timeNow = Instant.now();
+    this.sessions.values()
+      .removeIf(s -> !timeNow.isBefore(s.expiresAt));
+  }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.tcp0;
+
+import com.io7m.hibiscus.api.HBSessionToken;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The session most recently issued to a client, kept across reconnects so
+ * that the client can resume rather than log in again.
+ */
+
+final class ETCP0SessionCache
+{
+  private final AtomicReference<Entry> entry;
+
+  private record Entry(
+    InetSocketAddress address,
+    String user,
+    HBSessionToken token)
+  {
+
+  }
+
+  ETCP0SessionCache()
+  {
+    this.entry = new AtomicReference<>();
+  }
+
+  /**
+   * @return The unexpired token issued for the given server and user, if any
+   */
+
+  Optional<HBSessionToken> find(
+    final ETCP0ConnectionParameters parameters,
+    final Instant timeNow)
+  {
+    final var e = this.entry.get();
+    if (e == null) {
+      return Optional.empty();
+    }
+    if (!Objects.equals(e.address(), parameters.address())) {
+      return Optional.empty();
+    }
+    if (!Objects.equals(e.user(), parameters.user())) {
+      return Optional.empty();
+    }
+    if (e.token().isExpiredAt(timeNow)) {
+      return Optional.empty();
+    }
+    return Optional.of(e.token());
+  }
+
+  void store(
+    final ETCP0ConnectionParameters parameters,
+    final HBSessionToken token)
+  {
+    this.entry.set(new Entry(parameters.address(), parameters.user(), token));
+  }
+
+  void invalidate(
+    final HBSessionToken token)
+  {
+    this.entry.updateAndGet(e -> {
+      if (e != null && Objects.equals(e.token(), token)) {
+        return null;
+      }
+      return e;
+    });
+  }
+}
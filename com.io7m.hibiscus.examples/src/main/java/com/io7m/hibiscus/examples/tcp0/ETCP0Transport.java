@@ -17,127 +17,351 @@
 
 package com.io7m.hibiscus.examples.tcp0;
 
+import com.io7m.hibiscus.api.HBCreditGate;
+import com.io7m.hibiscus.api.HBCreditWindow;
+import com.io7m.hibiscus.api.HBFlightDirection;
+import com.io7m.hibiscus.api.HBFlightRecorder;
+import com.io7m.hibiscus.api.HBLatencyStage;
+import com.io7m.hibiscus.api.HBMailbox;
+import com.io7m.hibiscus.api.HBMessagePriority;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 import com.io7m.hibiscus.api.HBReadNothing;
 import com.io7m.hibiscus.api.HBReadReceived;
 import com.io7m.hibiscus.api.HBReadResponse;
 import com.io7m.hibiscus.api.HBReadType;
+import com.io7m.hibiscus.api.HBReceiveHandlerType;
+import com.io7m.hibiscus.api.HBResponseStream;
+import com.io7m.hibiscus.api.HBStageBreakdown;
+import com.io7m.hibiscus.api.HBStageLatencies;
 import com.io7m.hibiscus.api.HBTransportType;
-import com.io7m.jmulticlose.core.CloseableCollection;
-import com.io7m.jmulticlose.core.CloseableCollectionType;
-
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.nio.channels.ClosedChannelException;
-import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A transport for a single logical channel of a physical connection. A
+ * client that owns its connection uses the connection's only channel, and
+ * closing the transport closes the connection. Clients created by a
+ * {@link ETCP0Multiplexer} share a connection, and closing the transport
+ * closes only the channel.</p>
+ *
+ * <p>Each channel is flow controlled in both directions. Sending a message
+ * other than a response consumes a credit, and a sender without credit waits
+ * until the peer grants more. A channel grants credit back to its peer only
+ * as messages are taken from its inbox, so a slow consumer slows its
+ * producer rather than accumulating messages.</p>
+ *
+ * <p>Inbound messages take one of two paths. A response to a
+ * {@code sendAndWait} call is handed directly to the waiting caller. Every
+ * other message waits in a mailbox for {@code receive}, where unsolicited
+ * messages are subject to the configured bound, overflow policy, and
+ * expiry. A discarded unsolicited message still returns its credit to the
+ * peer.</p>
+ *
+ * <p>Cancelling a message, explicitly or by timing out in
+ * {@code sendAndWait}, sends a cancel frame carrying the message ID. The
+ * server abandons the message if it has not yet finished with it, and
+ * sends no response.</p>
+ *
+ * <p>A message sent with {@code sendAndStream} asks the server for a
+ * stream of responses. The server sends each part only once the subscriber
+ * has requested it, and marks the end of the stream with an end-of-stream
+ * frame. Parts bypass both the waiting callers and the mailbox.</p>
+ */
 
 public final class ETCP0Transport
   implements HBTransportType<ETCP0MessageType, ETCP0Exception>
 {
-  private final CloseableCollectionType<ETCP0Exception> resources;
-  private final Socket socket;
-  private final DataInputStream input;
-  private final DataOutputStream output;
-  private final LinkedBlockingQueue<ETCP0MessageType> inbox;
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ETCP0Transport.class);
+
+  private final ETCP0Connection connection;
+  private final int channel;
+  private final boolean ownsConnection;
+  private final HBMailbox<ETCP0Inbound> mailbox;
   private final Map<UUID, ETCP0MessageType> sent;
-  private final Thread readerThread;
-  private final Clock clock;
+  private final Map<UUID, CompletableFuture<ETCP0Inbound>> waiting;
+  private final Map<UUID, HBResponseStream<ETCP0MessageType>> streams;
+  private final HBFlightRecorder<ETCP0MessageType> recorder;
+  private final HBStageLatencies latencies;
+  private final AtomicBoolean closed;
+  private final HBCreditGate sendCredits;
+  private final HBCreditWindow receiveWindow;
 
   ETCP0Transport(
-    final Clock inClock,
-    final Socket inSocket,
-    final InputStream inInputStream,
-    final OutputStream inOutputStream)
-  {
-    this.clock =
-      Objects.requireNonNull(inClock, "inClock");
-
-    this.resources =
-      CloseableCollection.create(() -> {
-        return new ETCP0Exception("Failed to close resources.");
-      });
-
-    this.socket =
-      this.resources.add(
-        Objects.requireNonNull(inSocket, "inCloseable"));
-    this.input =
-      this.resources.add(
-        new DataInputStream(
-          Objects.requireNonNull(inInputStream, "inInput")));
-    this.output =
-      this.resources.add(
-        new DataOutputStream(
-          Objects.requireNonNull(inOutputStream, "inOutput")));
-
-    this.inbox =
-      new LinkedBlockingQueue<>();
+    final ETCP0Connection inConnection,
+    final int inChannel,
+    final boolean inOwnsConnection,
+    final Duration inSlowRequestThreshold,
+    final HBPerformanceConfiguration inPerformance)
+  {
+    this.connection =
+      Objects.requireNonNull(inConnection, "inConnection");
+    this.channel =
+      inChannel;
+    this.ownsConnection =
+      inOwnsConnection;
+    this.mailbox =
+      inPerformance.createMailbox(this::discarded);
     this.sent =
-      new HashMap<>();
+      new ConcurrentHashMap<>();
+    this.waiting =
+      new ConcurrentHashMap<>();
+    this.streams =
+      new ConcurrentHashMap<>();
+    this.closed =
+      new AtomicBoolean(false);
+    this.sendCredits =
+      new HBCreditGate(ETCP0Connection.INITIAL_CREDITS);
+    this.receiveWindow =
+      new HBCreditWindow(ETCP0Connection.INITIAL_CREDITS);
 
-    this.readerThread =
-      Thread.startVirtualThread(this::readLoop);
+    this.recorder =
+      inPerformance.createFlightRecorder(ETCP0MessageIdentity.get());
+    this.latencies =
+      new HBStageLatencies(inSlowRequestThreshold);
   }
 
-  private void readLoop()
+  /**
+   * @return The ID of this transport's channel
+   */
+
+  public int channel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * Hand a message read by the connection to a waiting caller, or place it
+   * in the mailbox. This never waits for the consumer: the reader is shared
+   * by every caller on the connection, including any caller waiting in
+   * {@code sendAndWait} for a response that the reader has yet to read.
+   * Under the blocking overflow policy an unsolicited message that does not
+   * fit is held by the mailbox until the consumer makes space, and the
+   * peer's credit for it is withheld until then, so a peer that respects
+   * flow control can never have more than a window of unsolicited messages
+   * waiting here.
+   */
+
+  void deliver(
+    final ETCP0MessageType message,
+    final int size,
+    final long timeRead)
   {
-    while (true) {
+    final var timeDecoded = System.nanoTime();
+    this.latencies.record(HBLatencyStage.DECODE, timeDecoded - timeRead);
+    this.recorder.record(HBFlightDirection.RECEIVED, message, size);
+
+    final var inbound = new ETCP0Inbound(message, timeRead, timeDecoded);
+    if (message instanceof final ETCP0ResponseType response) {
+      final var stream = this.streams.get(response.correlationId());
+      if (stream != null) {
+        stream.offer(message);
+        return;
+      }
+
+      final var waiter = this.waiting.remove(response.correlationId());
+      if (waiter != null) {
+        waiter.complete(inbound);
+      } else {
+        this.mailbox.putResponse(inbound);
+      }
+      return;
+    }
+
+    if (!this.mailbox.offerUnsolicited(inbound)) {
+      LOG.debug("Unsolicited queue overflowed; closing channel.");
       try {
-        final var msgLength =
-          this.input.readInt();
-        final var msgData =
-          this.input.readNBytes(msgLength);
-
-        this.inbox.add(ETCP0Messages.fromBytes(msgData));
-      } catch (final Throwable e) {
-        try {
-          this.close();
-          return;
-        } catch (final Throwable ex) {
-          throw new RuntimeException(ex);
-        }
+        this.close();
+      } catch (final ETCP0Exception e) {
+        LOG.debug("Close: ", e);
+      }
+    }
+  }
+
+  /**
+   * The server has sent every part of the stream of responses to the given
+   * message.
+   */
+
+  void endOfStream(
+    final UUID messageId)
+  {
+    final var stream = this.streams.remove(messageId);
+    if (stream != null) {
+      stream.complete();
+    }
+  }
+
+  /**
+   * An unsolicited message was discarded without being consumed, but it
+   * has left the mailbox, and so its credit is returned to the peer.
+   */
+
+  private void discarded(
+    final ETCP0Inbound inbound)
+  {
+    this.consumed();
+  }
+
+  /**
+   * @return The number of unsolicited messages discarded under the overflow
+   * policy or because they expired
+   */
+
+  public long unsolicitedDiscarded()
+  {
+    return this.mailbox.dropped() + this.mailbox.expired();
+  }
+
+  /**
+   * Mark the channel as closed without telling the peer, either because the
+   * peer closed it or because the connection has closed.
+   */
+
+  void closeRemotely()
+  {
+    this.sendCredits.close();
+    this.failWaiting();
+
+    if (this.closed.compareAndSet(false, true) && this.ownsConnection) {
+      try {
+        this.connection.close();
+      } catch (final ETCP0Exception e) {
+        LOG.debug("Close: ", e);
       }
     }
   }
 
+  /**
+   * Grant the peer credit for consumed messages when a grant is due.
+   */
+
+  private void consumed()
+  {
+    final var credits = this.receiveWindow.consumed();
+    if (credits > 0) {
+      this.connection.grantCredits(this, credits);
+    }
+  }
+
+  /**
+   * Add credits granted by the peer.
+   */
+
+  void creditsGranted(
+    final int credits)
+  {
+    this.sendCredits.grant(credits);
+  }
+
+  /**
+   * @return The credits currently available for sending
+   */
+
+  public long sendCredits()
+  {
+    return this.sendCredits.available();
+  }
+
+  HBStageLatencies latencies()
+  {
+    return this.latencies;
+  }
+
+  HBFlightRecorder<ETCP0MessageType> recorder()
+  {
+    return this.recorder;
+  }
+
   @Override
   public HBReadType<ETCP0MessageType> receive(
     final Duration timeout)
     throws ETCP0Exception, InterruptedException
   {
-    Objects.requireNonNull(timeout, "timeout");
+    final var m = this.poll(timeout);
+    if (m == null) {
+      return new HBReadNothing<>();
+    }
 
-    if (this.isClosed()) {
-      throw new ETCP0Exception(new ClosedChannelException());
+    final var original = this.originalOf(m);
+    if (original != null) {
+      return new HBReadResponse<>(original, m);
     }
+    return new HBReadReceived<>(m);
+  }
 
-    final var m =
-      this.inbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  @Override
+  public boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<ETCP0MessageType> handler)
+    throws ETCP0Exception, InterruptedException
+  {
+    Objects.requireNonNull(handler, "handler");
 
+    final var m = this.poll(timeout);
     if (m == null) {
-      return new HBReadNothing<>();
+      return false;
     }
 
-    if (m instanceof final ETCP0ResponseType rr) {
-      final var original =
-        this.sent.remove(rr.correlationId());
+    final var original = this.originalOf(m);
+    if (original != null) {
+      handler.onResponse(original, m);
+    } else {
+      handler.onReceived(m);
+    }
+    return true;
+  }
 
-      if (original != null) {
-        return new HBReadResponse<>(original, rr);
-      }
+  private ETCP0MessageType poll(
+    final Duration timeout)
+    throws ETCP0Exception, InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    this.checkOpen();
+
+    final var inbound =
+      this.mailbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+
+    if (inbound == null) {
+      return null;
     }
 
-    return new HBReadReceived<>(m);
+    this.latencies.record(
+      HBLatencyStage.INBOX,
+      System.nanoTime() - inbound.decodedAt()
+    );
+
+    final var m = inbound.message();
+    if (!(m instanceof ETCP0ResponseType)) {
+      this.consumed();
+    }
+    return m;
+  }
+
+  private ETCP0MessageType originalOf(
+    final ETCP0MessageType m)
+  {
+    if (m instanceof final ETCP0ResponseType rr) {
+      return this.sent.remove(rr.correlationId());
+    }
+    return null;
   }
 
   @Override
@@ -145,7 +369,18 @@ public final class ETCP0Transport
     final ETCP0MessageType message)
     throws ETCP0Exception
   {
-    this.sendAndForget(message);
+    this.send(message, message.priority());
+  }
+
+  @Override
+  public void send(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority)
+    throws ETCP0Exception
+  {
+    this.connection.checkMessageSize(message);
+    this.acquireCredit(message);
+    this.sendFrame(message, priority, ETCP0Connection.NO_DEADLINE);
     this.sent.put(message.messageId(), message);
   }
 
@@ -154,72 +389,410 @@ public final class ETCP0Transport
     final ETCP0MessageType message)
     throws ETCP0Exception
   {
+    this.sendAndForget(message, message.priority());
+  }
+
+  @Override
+  public void sendAndForget(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority)
+    throws ETCP0Exception
+  {
+    this.connection.checkMessageSize(message);
+    this.acquireCredit(message);
+    this.sendFrame(message, priority, ETCP0Connection.NO_DEADLINE);
+  }
+
+  /**
+   * Acquire a credit for a message, waiting as long as necessary. Responses
+   * do not require credit, as a peer only receives responses to requests
+   * that it sent itself.
+   */
+
+  private void acquireCredit(
+    final ETCP0MessageType message)
+    throws ETCP0Exception
+  {
+    if (message instanceof ETCP0ResponseType) {
+      return;
+    }
+
     try {
-      final var msgBytes = ETCP0Messages.toBytes(message);
-      this.output.writeInt(msgBytes.length);
-      this.output.write(msgBytes);
-      this.output.flush();
-    } catch (final Exception e) {
-      this.close();
+      if (!this.sendCredits.acquire()) {
+        throw new ETCP0Exception(new ClosedChannelException());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new ETCP0Exception(e);
     }
   }
 
+  private ETCP0Outbound sendFrame(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final long deadline)
+    throws ETCP0Exception
+  {
+    this.checkOpen();
+    return this.connection.sendMessage(this, message, priority, deadline);
+  }
+
+  private void checkOpen()
+    throws ETCP0Exception
+  {
+    if (this.isClosed()) {
+      throw new ETCP0Exception(new ClosedChannelException());
+    }
+  }
+
+  @Override
+  public ETCP0MessageType sendAndWait(
+    final ETCP0MessageType message,
+    final Duration timeout)
+    throws ETCP0Exception, InterruptedException, TimeoutException
+  {
+    return this.sendAndWait(message, message.priority(), timeout);
+  }
+
   @Override
   public ETCP0MessageType sendAndWait(
     final ETCP0MessageType message,
+    final HBMessagePriority priority,
     final Duration timeout)
     throws ETCP0Exception, InterruptedException, TimeoutException
   {
-    this.send(message);
+    return this.sendAndWaitWith(message, priority, List.of(), timeout);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The message and as many of the following messages as there is
+   * credit and outbox space for are queued while the connection's writer
+   * is held, and so are written together with one gathering write. Any
+   * remaining messages are sent as soon as there is room for them.</p>
+   */
 
-    final var slices =
-      Math.max(1L, (long) this.inbox.size() * 2L);
-    final var timeSlice =
-      timeout.dividedBy(slices);
+  @Override
+  public ETCP0MessageType sendAndWaitPipelined(
+    final ETCP0MessageType message,
+    final List<ETCP0MessageType> following,
+    final Duration timeout)
+    throws ETCP0Exception, InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(following, "following");
+    return this.sendAndWaitWith(message, message.priority(), following, timeout);
+  }
+
+  private ETCP0MessageType sendAndWaitWith(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final List<ETCP0MessageType> following,
+    final Duration timeout)
+    throws ETCP0Exception, InterruptedException, TimeoutException
+  {
+    /*
+     * The timeout covers both the wait for credit and the wait for the
+     * response, so the response is only waited for as long as remains of
+     * it once credit has been granted.
+     */
 
-    final var timeLater =
-      Instant.now(this.clock)
-        .plus(timeout);
+    final var deadline =
+      ETCP0Connection.deadlineAfter(timeout);
 
-    while (true) {
-      final var timeNow = Instant.now(this.clock);
-      if (timeNow.isAfter(timeLater)) {
+    this.connection.checkMessageSize(message);
+    for (final var next : following) {
+      this.connection.checkMessageSize(next);
+    }
+
+    if (!(message instanceof ETCP0ResponseType)) {
+      final var creditTimeout = ETCP0Connection.remainingUntil(deadline);
+      if (!this.sendCredits.acquire(creditTimeout)) {
+        this.checkOpen();
         throw new TimeoutException(
-          "No response received in %s".formatted(timeout));
+          "No send credit granted in %s".formatted(timeout));
       }
+    }
 
-      final var r =
-        this.inbox.poll(timeSlice.toNanos(), TimeUnit.NANOSECONDS);
+    /*
+     * The waiter is registered before the message is sent so that a fast
+     * response cannot slip past it into the mailbox. A timeout cancels the
+     * message, so the server suppresses the response rather than leaving
+     * it to arrive in the mailbox later.
+     */
 
-      if (r == null) {
-        continue;
+    final var id = message.messageId();
+    final var waiter = new CompletableFuture<ETCP0Inbound>();
+    this.waiting.put(id, waiter);
+
+    try {
+      final var frame =
+        this.sendPipelined(message, priority, deadline, following);
+
+      final ETCP0Inbound inbound;
+      try {
+        inbound = waiter.get(
+          ETCP0Connection.remainingUntil(deadline).toNanos(),
+          TimeUnit.NANOSECONDS
+        );
+      } catch (final TimeoutException e) {
+        this.captureTraffic(message);
+        this.cancelWith(message, priority);
+        throw new TimeoutException(
+          "No response received in %s".formatted(timeout));
+      } catch (final ExecutionException e) {
+        throw new ETCP0Exception(e.getCause());
+      } catch (final CancellationException e) {
+        throw new ETCP0Exception(e);
       }
 
-      if (r instanceof final ETCP0ResponseType response) {
-        if (Objects.equals(response.correlationId(), message.messageId())) {
-          this.sent.remove(message.messageId());
-          return response;
+      this.sent.remove(id);
+      this.recordRequest(message, frame, inbound);
+      return inbound.message();
+    } finally {
+      this.waiting.remove(id);
+    }
+  }
+
+  /**
+   * Send a message whose credit has already been acquired, followed by the
+   * given messages.
+   */
+
+  private ETCP0Outbound sendPipelined(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority,
+    final long deadline,
+    final List<ETCP0MessageType> following)
+    throws ETCP0Exception
+  {
+    if (following.isEmpty()) {
+      final var frame = this.sendFrame(message, priority, deadline);
+      this.sent.put(message.messageId(), message);
+      return frame;
+    }
+
+    ETCP0Outbound frame;
+    var queued = 0;
+
+    this.checkOpen();
+    this.connection.holdWriter();
+    try {
+      frame = this.connection.trySendMessage(this, message, priority, deadline);
+      if (frame != null) {
+        this.sent.put(message.messageId(), message);
+        while (queued < following.size()) {
+          final var next = following.get(queued);
+          if (!this.tryAcquireCredit(next)) {
+            break;
+          }
+
+          final var nextFrame =
+            this.connection.trySendMessage(
+              this,
+              next,
+              next.priority(),
+              ETCP0Connection.NO_DEADLINE
+            );
+
+          if (nextFrame == null) {
+            if (!(next instanceof ETCP0ResponseType)) {
+              this.sendCredits.grant(1);
+            }
+            break;
+          }
+          this.sent.put(next.messageId(), next);
+          ++queued;
         }
       }
+    } finally {
+      this.connection.releaseWriter();
+    }
+
+    if (frame == null) {
+      frame = this.sendFrame(message, priority, deadline);
+      this.sent.put(message.messageId(), message);
+    }
+    for (final var next : following.subList(queued, following.size())) {
+      this.send(next);
+    }
+    return frame;
+  }
+
+  private boolean tryAcquireCredit(
+    final ETCP0MessageType message)
+  {
+    if (message instanceof ETCP0ResponseType) {
+      return true;
+    }
+    return this.sendCredits.tryAcquire();
+  }
+
+  private void failWaiting()
+  {
+    for (final var waiter : this.waiting.values()) {
+      waiter.completeExceptionally(new ClosedChannelException());
+    }
+    for (final var stream : this.streams.values()) {
+      stream.fail(new ClosedChannelException());
+    }
+    this.streams.clear();
+  }
+
+  private void recordRequest(
+    final ETCP0MessageType message,
+    final ETCP0Outbound frame,
+    final ETCP0Inbound inbound)
+  {
+    final var timeNow = System.nanoTime();
+    final var inboxTime = timeNow - inbound.decodedAt();
+    final var networkTime = inbound.readAt() - frame.writtenAt();
+
+    this.latencies.record(HBLatencyStage.INBOX, inboxTime);
+    this.latencies.record(HBLatencyStage.NETWORK, networkTime);
+    this.latencies.recordRequest(
+      message.messageId(),
+      new HBStageBreakdown(
+        frame.encodedAt() - frame.startedAt(),
+        frame.dequeuedAt() - frame.encodedAt(),
+        frame.writtenAt() - frame.dequeuedAt(),
+        networkTime,
+        inbound.decodedAt() - inbound.readAt(),
+        inboxTime
+      )
+    );
+  }
+
+  private void captureTraffic(
+    final ETCP0MessageType message)
+  {
+    final var records = this.recorder.capture();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+        "Timed out waiting for a response to {}; recent traffic:",
+        message.messageId()
+      );
+      for (final var record : records) {
+        LOG.debug("  {}", record);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The request is sent with the declared priority of the message, and
+   * the subscriber's demand is passed to the server in the same lane.</p>
+   */
 
-      this.inbox.put(r);
+  @Override
+  public Flow.Publisher<ETCP0MessageType> sendAndStream(
+    final ETCP0MessageType message,
+    final Duration timeout)
+    throws ETCP0Exception, TimeoutException, InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    final var deadline =
+      ETCP0Connection.deadlineAfter(timeout);
+
+    this.connection.checkMessageSize(message);
+    final var priority = message.priority();
+    if (!(message instanceof ETCP0ResponseType)) {
+      final var creditTimeout = ETCP0Connection.remainingUntil(deadline);
+      if (!this.sendCredits.acquire(creditTimeout)) {
+        this.checkOpen();
+        throw new TimeoutException(
+          "No send credit granted in %s".formatted(timeout));
+      }
     }
+
+    final var id = message.messageId();
+    final var stream =
+      HBResponseStream.<ETCP0MessageType>create(
+        n -> {
+          final var count = (int) Math.min(n, Integer.MAX_VALUE);
+          this.connection.grantDemand(this, id, count, priority);
+        },
+        () -> {
+          this.streams.remove(id);
+          this.cancelWith(message, priority);
+        }
+      );
+
+    this.streams.put(id, stream);
+    try {
+      this.checkOpen();
+      this.connection.sendStreamRequest(this, message, priority);
+    } catch (final ETCP0Exception e) {
+      this.streams.remove(id);
+      throw e;
+    }
+    return stream;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The cancel frame travels in the lane of the message's declared
+   * priority. A call waiting for a response to the message fails with an
+   * {@link ETCP0Exception} whose cause is a
+   * {@link CancellationException}.</p>
+   */
+
+  @Override
+  public void cancel(
+    final ETCP0MessageType message)
+  {
+    Objects.requireNonNull(message, "message");
+    this.cancelWith(message, message.priority());
+  }
+
+  private void cancelWith(
+    final ETCP0MessageType message,
+    final HBMessagePriority priority)
+  {
+    final var id = message.messageId();
+    this.sent.remove(id);
+
+    final var waiter = this.waiting.remove(id);
+    if (waiter != null) {
+      waiter.completeExceptionally(
+        new CancellationException("Message %s was cancelled".formatted(id)));
+    }
+
+    this.connection.cancelMessage(this, id, priority);
+  }
+
+  @Override
+  public Optional<HBFlightRecorder<ETCP0MessageType>> flightRecorder()
+  {
+    return Optional.of(this.recorder);
+  }
+
+  @Override
+  public Optional<HBStageLatencies> stageLatencies()
+  {
+    return Optional.of(this.latencies);
   }
 
   @Override
   public void close()
     throws ETCP0Exception
   {
-    this.resources.close();
+    if (this.closed.compareAndSet(false, true)) {
+      this.sendCredits.close();
+      this.failWaiting();
+      this.connection.closeChannel(this);
+      if (this.ownsConnection) {
+        this.connection.close();
+      }
+    }
   }
 
   @Override
   public boolean isClosed()
   {
-    if (!this.socket.isClosed()) {
-      return !this.socket.isConnected();
-    }
-    return this.socket.isClosed();
+    return this.closed.get() || this.connection.isClosed();
   }
 }
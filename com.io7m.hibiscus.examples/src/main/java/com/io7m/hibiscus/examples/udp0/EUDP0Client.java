@@ -19,22 +19,19 @@ package com.io7m.hibiscus.examples.udp0;
 
 import com.io7m.hibiscus.api.HBClientAbstract;
 
-import java.time.Clock;
-
 public final class EUDP0Client
   extends HBClientAbstract<EUDP0MessageType, EUDP0ConnectionParameters, EUDP0Exception>
   implements EUDP0ClientType
 {
-  private EUDP0Client()
+  private EUDP0Client(
+    final EUDP0Configuration configuration)
   {
-    super(new EUDP0ClientHandlerDisconnected(
-      Clock.systemUTC()
-    ));
+    super(new EUDP0ClientHandlerDisconnected(configuration));
   }
 
   public static EUDP0ClientType create(
     final EUDP0Configuration configuration)
   {
-    return new EUDP0Client();
+    return new EUDP0Client(configuration);
   }
 }
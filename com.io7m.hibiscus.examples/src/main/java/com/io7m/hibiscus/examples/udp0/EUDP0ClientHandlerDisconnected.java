@@ -21,6 +21,7 @@ import com.io7m.hibiscus.api.HBConnectionError;
 import com.io7m.hibiscus.api.HBConnectionFailed;
 import com.io7m.hibiscus.api.HBConnectionResultType;
 import com.io7m.hibiscus.api.HBConnectionSucceeded;
+import com.io7m.hibiscus.api.HBFaultInjectingTransport;
 import com.io7m.hibiscus.api.HBTransportClosed;
 import com.io7m.hibiscus.api.HBTransportType;
 import com.io7m.hibiscus.api.HBClientHandlerType;
@@ -30,7 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.DatagramSocket;
-import java.time.Clock;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.TimeoutException;
@@ -42,13 +43,13 @@ public final class EUDP0ClientHandlerDisconnected
     LoggerFactory.getLogger(EHTTP0ClientHandlerDisconnected.class);
 
   private final HBTransportClosed<EUDP0MessageType, EUDP0Exception> transportClosed;
-  private final Clock clock;
+  private final EUDP0Configuration configuration;
 
   EUDP0ClientHandlerDisconnected(
-    final Clock inClock)
+    final EUDP0Configuration inConfiguration)
   {
-    this.clock =
-      Objects.requireNonNull(inClock, "inClock");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "inConfiguration");
     this.transportClosed =
       new HBTransportClosed<>(EUDP0Exception::new);
   }
@@ -62,25 +63,67 @@ public final class EUDP0ClientHandlerDisconnected
   doConnect(
     final EUDP0ConnectionParameters parameters)
     throws InterruptedException
+  {
+    return this.doConnect(parameters, List.of());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The initial messages are sent in datagrams immediately behind the
+   * login datagram.</p>
+   */
+
+  @Override
+  public HBConnectionResultType<
+    EUDP0MessageType,
+    EUDP0ConnectionParameters,
+    HBClientHandlerType<EUDP0MessageType, EUDP0ConnectionParameters, EUDP0Exception>,
+    EUDP0Exception>
+  doConnect(
+    final EUDP0ConnectionParameters parameters,
+    final List<EUDP0MessageType> initial)
+    throws InterruptedException
   {
     Objects.requireNonNull(parameters, "credentials");
+    Objects.requireNonNull(initial, "initial");
 
     try {
+      final var performance =
+        this.configuration.performance();
       final var socket =
         new DatagramSocket();
+
+      final var receiveSize = performance.socketReceiveBufferSize();
+      if (receiveSize.isPresent()) {
+        socket.setReceiveBufferSize(receiveSize.getAsInt());
+      }
+      final var sendSize = performance.socketSendBufferSize();
+      if (sendSize.isPresent()) {
+        socket.setSendBufferSize(sendSize.getAsInt());
+      }
       final var transport =
-        new EUDP0Transport(this.clock, parameters.address(), socket);
+        this.withFaults(
+          new EUDP0Transport(
+            parameters.address(),
+            socket,
+            this.configuration.codec(),
+            this.configuration.bufferPool(),
+            performance
+          )
+        );
 
       boolean keepTransport = false;
 
       try {
         final var response =
-          transport.sendAndWait(
+          transport.sendAndWaitPipelined(
             new EUDP0CommandLogin(
               UUID.randomUUID(),
               parameters.user(),
               parameters.password()
             ),
+            initial,
             parameters.connectTimeout()
           );
 
@@ -123,6 +166,30 @@ public final class EUDP0ClientHandlerDisconnected
     }
   }
 
+  private HBTransportType<EUDP0MessageType, EUDP0Exception> withFaults(
+    final HBTransportType<EUDP0MessageType, EUDP0Exception> transport)
+  {
+    return this.configuration.faults()
+      .<HBTransportType<EUDP0MessageType, EUDP0Exception>>map(
+        faults -> HBFaultInjectingTransport.create(
+          transport,
+          faults,
+          this::encodedSize,
+          EUDP0Exception::new
+        ))
+      .orElse(transport);
+  }
+
+  private int encodedSize(
+    final EUDP0MessageType message)
+  {
+    try {
+      return this.configuration.codec().sizeOf(message);
+    } catch (final EUDP0Exception e) {
+      return 0;
+    }
+  }
+
   @Override
   public HBTransportType<EUDP0MessageType, EUDP0Exception> transport()
   {
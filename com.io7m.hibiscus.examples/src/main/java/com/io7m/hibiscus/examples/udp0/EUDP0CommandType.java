@@ -19,7 +19,8 @@ package com.io7m.hibiscus.examples.udp0;
 
 public sealed interface EUDP0CommandType
   extends EUDP0MessageType
-  permits EUDP0CommandHello,
+  permits EUDP0CommandCancel,
+  EUDP0CommandHello,
   EUDP0CommandLogin
 {
 
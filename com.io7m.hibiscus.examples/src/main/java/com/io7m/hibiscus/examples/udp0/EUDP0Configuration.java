@@ -17,10 +17,37 @@
 
 package com.io7m.hibiscus.examples.udp0;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
 import com.io7m.hibiscus.api.HBConfigurationType;
+import com.io7m.hibiscus.api.HBFaultConfiguration;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 
-public record EUDP0Configuration()
+import java.util.Objects;
+import java.util.Optional;
+
+public record EUDP0Configuration(
+  Optional<HBFaultConfiguration> faults,
+  HBCodecType<EUDP0MessageType, EUDP0Exception> codec,
+  HBBufferPool bufferPool,
+  HBPerformanceConfiguration performance)
   implements HBConfigurationType
 {
+  public EUDP0Configuration
+  {
+    Objects.requireNonNull(faults, "faults");
+    Objects.requireNonNull(codec, "codec");
+    Objects.requireNonNull(bufferPool, "bufferPool");
+    Objects.requireNonNull(performance, "performance");
+  }
 
+  public EUDP0Configuration()
+  {
+    this(
+      Optional.empty(),
+      EUDP0Codec.get(),
+      HBBufferPool.shared(),
+      HBPerformanceConfiguration.defaults()
+    );
+  }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.examples.udp0;
+
+import com.io7m.hibiscus.api.HBMessageIdentityType;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public final class EUDP0MessageIdentity
+  implements HBMessageIdentityType<EUDP0MessageType>
+{
+  private static final EUDP0MessageIdentity INSTANCE =
+    new EUDP0MessageIdentity();
+
+  private EUDP0MessageIdentity()
+  {
+
+  }
+
+  public static EUDP0MessageIdentity get()
+  {
+    return INSTANCE;
+  }
+
+  @Override
+  public UUID messageId(
+    final EUDP0MessageType message)
+  {
+    return message.messageId();
+  }
+
+  @Override
+  public Optional<UUID> correlationId(
+    final EUDP0MessageType message)
+  {
+    if (message instanceof final EUDP0ResponseType response) {
+      return Optional.of(response.correlationId());
+    }
+    return Optional.empty();
+  }
+}
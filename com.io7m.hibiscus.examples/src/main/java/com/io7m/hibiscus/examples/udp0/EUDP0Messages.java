@@ -17,22 +17,8 @@
 
 package com.io7m.hibiscus.examples.udp0;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.util.UUID;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public final class EUDP0Messages
 {
-  private static final int MESSAGE_ID_LOGIN = 0x0;
-  private static final int MESSAGE_ID_HELLO = 0x1;
-  private static final int MESSAGE_ID_RESPONSE_FAILURE = 0x3;
-  private static final int MESSAGE_ID_RESPONSE_OK = 0x2;
-
   private EUDP0Messages()
   {
 
@@ -42,240 +28,13 @@ public final class EUDP0Messages
     final EUDP0MessageType message)
     throws EUDP0Exception
   {
-    try {
-      return switch (message) {
-        case final EUDP0CommandType m -> toBytesCommand(m);
-        case final EUDP0ResponseType m -> toBytesResponse(m);
-      };
-    } catch (final IOException e) {
-      throw new EUDP0Exception(e);
-    }
-  }
-
-  private static byte[] toBytesResponse(
-    final EUDP0ResponseType r)
-    throws IOException
-  {
-    return switch (r) {
-      case final EUDP0ResponseFailure m -> toBytesResponseFailure(m);
-      case final EUDP0ResponseOK m -> toBytesResponseOK(m);
-    };
-  }
-
-  private static byte[] toBytesResponseOK(
-    final EUDP0ResponseOK m)
-    throws IOException
-  {
-    try (var byteArray = new ByteArrayOutputStream()) {
-      try (var out = new DataOutputStream(byteArray)) {
-        out.writeByte(MESSAGE_ID_RESPONSE_OK);
-
-        out.writeLong(m.messageId().getMostSignificantBits());
-        out.writeLong(m.messageId().getLeastSignificantBits());
-
-        out.writeLong(m.correlationId().getMostSignificantBits());
-        out.writeLong(m.correlationId().getLeastSignificantBits());
-
-        out.flush();
-        return byteArray.toByteArray();
-      }
-    }
-  }
-
-  private static byte[] toBytesResponseFailure(
-    final EUDP0ResponseFailure m)
-    throws IOException
-  {
-    try (var byteArray = new ByteArrayOutputStream()) {
-      try (var out = new DataOutputStream(byteArray)) {
-        out.writeByte(MESSAGE_ID_RESPONSE_FAILURE);
-
-        out.writeLong(m.messageId().getMostSignificantBits());
-        out.writeLong(m.messageId().getLeastSignificantBits());
-
-        out.writeLong(m.correlationId().getMostSignificantBits());
-        out.writeLong(m.correlationId().getLeastSignificantBits());
-
-        final var msgBytes = m.message().getBytes(UTF_8);
-        out.writeInt(msgBytes.length);
-        out.write(msgBytes);
-
-        out.flush();
-        return byteArray.toByteArray();
-      }
-    }
-  }
-
-  private static byte[] toBytesCommand(
-    final EUDP0CommandType c)
-    throws IOException
-  {
-    return switch (c) {
-      case final EUDP0CommandHello m -> toBytesCommandHello(m);
-      case final EUDP0CommandLogin m -> toBytesCommandLogin(m);
-    };
-  }
-
-  private static byte[] toBytesCommandLogin(
-    final EUDP0CommandLogin m)
-    throws IOException
-  {
-    try (var byteArray = new ByteArrayOutputStream()) {
-      try (var out = new DataOutputStream(byteArray)) {
-        out.writeByte(MESSAGE_ID_LOGIN);
-
-        out.writeLong(m.messageId().getMostSignificantBits());
-        out.writeLong(m.messageId().getLeastSignificantBits());
-
-        final var userBytes = m.user().getBytes(UTF_8);
-        out.writeInt(userBytes.length);
-        out.write(userBytes);
-
-        final var passBytes = m.password().getBytes(UTF_8);
-        out.writeInt(passBytes.length);
-        out.write(passBytes);
-
-        out.flush();
-        return byteArray.toByteArray();
-      }
-    }
-  }
-
-  private static byte[] toBytesCommandHello(
-    final EUDP0CommandHello m)
-    throws IOException
-  {
-    try (var byteArray = new ByteArrayOutputStream()) {
-      try (var out = new DataOutputStream(byteArray)) {
-        out.writeByte(MESSAGE_ID_HELLO);
-
-        out.writeLong(m.messageId().getMostSignificantBits());
-        out.writeLong(m.messageId().getLeastSignificantBits());
-
-        final var msgBytes = m.message().getBytes(UTF_8);
-        out.writeInt(msgBytes.length);
-        out.write(msgBytes);
-
-        out.flush();
-        return byteArray.toByteArray();
-      }
-    }
+    return EUDP0Codec.get().toBytes(message);
   }
 
   public static EUDP0MessageType fromBytes(
     final byte[] data)
     throws EUDP0Exception
   {
-    try {
-      return switch (data[0]) {
-        case MESSAGE_ID_LOGIN -> {
-          yield fromBytesLogin(data);
-        }
-        case MESSAGE_ID_HELLO -> {
-          yield fromBytesHello(data);
-        }
-        case MESSAGE_ID_RESPONSE_FAILURE -> {
-          yield fromBytesResponseFailure(data);
-        }
-        case MESSAGE_ID_RESPONSE_OK -> {
-          yield fromBytesResponseOK(data);
-        }
-        default -> {
-          throw new EUDP0Exception("Unrecognized message ID: " + data[0]);
-        }
-      };
-    } catch (final IOException e) {
-      throw new EUDP0Exception(e);
-    }
-  }
-
-  private static EUDP0MessageType fromBytesResponseOK(
-    final byte[] data)
-    throws IOException
-  {
-    try (var dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
-      dataInput.readByte();
-
-      final var msgIdH = dataInput.readLong();
-      final var msgIdL = dataInput.readLong();
-      final var corIdH = dataInput.readLong();
-      final var corIdL = dataInput.readLong();
-
-      return new EUDP0ResponseOK(
-        new UUID(msgIdH, msgIdL),
-        new UUID(corIdH, corIdL)
-      );
-    }
-  }
-
-  private static EUDP0MessageType fromBytesResponseFailure(
-    final byte[] data)
-    throws IOException
-  {
-    try (var dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
-      dataInput.readByte();
-
-      final var msgIdH = dataInput.readLong();
-      final var msgIdL = dataInput.readLong();
-      final var corIdH = dataInput.readLong();
-      final var corIdL = dataInput.readLong();
-
-      final var msgLen = dataInput.readInt();
-      final var msgData = dataInput.readNBytes(msgLen);
-      final var msg = new String(msgData, UTF_8);
-
-      return new EUDP0ResponseFailure(
-        new UUID(msgIdH, msgIdL),
-        new UUID(corIdH, corIdL),
-        msg
-      );
-    }
-  }
-
-  private static EUDP0MessageType fromBytesHello(
-    final byte[] data)
-    throws IOException
-  {
-    try (var dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
-      dataInput.readByte();
-
-      final var msgIdH = dataInput.readLong();
-      final var msgIdL = dataInput.readLong();
-
-      final var msgLen = dataInput.readInt();
-      final var msgData = dataInput.readNBytes(msgLen);
-      final var msg = new String(msgData, UTF_8);
-
-      return new EUDP0CommandHello(
-        new UUID(msgIdH, msgIdL),
-        msg
-      );
-    }
-  }
-
-  private static EUDP0MessageType fromBytesLogin(
-    final byte[] data)
-    throws IOException
-  {
-    try (var dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
-      dataInput.readByte();
-
-      final var msgIdH = dataInput.readLong();
-      final var msgIdL = dataInput.readLong();
-
-      final var userLen = dataInput.readInt();
-      final var userData = dataInput.readNBytes(userLen);
-      final var user = new String(userData, UTF_8);
-
-      final var passLen = dataInput.readInt();
-      final var passData = dataInput.readNBytes(passLen);
-      final var pass = new String(passData, UTF_8);
-
-      return new EUDP0CommandLogin(
-        new UUID(msgIdH, msgIdL),
-        user,
-        pass
-      );
-    }
+    return EUDP0Codec.get().fromBytes(data);
   }
 }
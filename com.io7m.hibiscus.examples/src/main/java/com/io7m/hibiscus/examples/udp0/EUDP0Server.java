@@ -27,20 +27,29 @@ import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.time.Instant;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class EUDP0Server implements Closeable
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(EUDP0Server.class);
 
+  private static final Duration CHAT_INTERVAL =
+    Duration.ofMillis(500L);
+  private static final Duration SLOW_WORK =
+    Duration.ofSeconds(1L);
+  private static final Duration SLOW_STEP =
+    Duration.ofMillis(10L);
+
   private final InetSocketAddress address;
   private final ConcurrentHashMap<SocketAddress, ServerClient> clients;
+  private final LongAdder cancelled;
   private DatagramSocket socket;
 
   public EUDP0Server(
@@ -50,6 +59,18 @@ public final class EUDP0Server implements Closeable
       Objects.requireNonNull(inAddress, "address");
     this.clients =
       new ConcurrentHashMap<>();
+    this.cancelled =
+      new LongAdder();
+  }
+
+  /**
+   * @return The number of messages abandoned, or whose responses were
+   * suppressed, because the client cancelled them
+   */
+
+  public long cancelled()
+  {
+    return this.cancelled.sum();
   }
 
   public void start(
@@ -108,10 +129,17 @@ public final class EUDP0Server implements Closeable
     this.socket.close();
   }
 
+  /**
+   * A client. Messages are handled on the server's receive thread, except
+   * for slow requests, which run on their own threads so that the client
+   * can cancel them.
+   */
+
   private static final class ServerClient
   {
     private final EUDP0Server server;
     private final SocketAddress source;
+    private final ConcurrentHashMap<UUID, Boolean> pending;
     private volatile boolean chatting;
     private volatile boolean loggedIn;
 
@@ -127,6 +155,8 @@ public final class EUDP0Server implements Closeable
         false;
       this.chatting =
         false;
+      this.pending =
+        new ConcurrentHashMap<>();
     }
 
     public void onReceive(
@@ -141,6 +171,9 @@ public final class EUDP0Server implements Closeable
             case final EUDP0CommandHello cc -> {
               this.onReceiveCommandHello(cc);
             }
+            case final EUDP0CommandCancel cc -> {
+              this.pending.replace(cc.cancelledId(), Boolean.TRUE);
+            }
             case final EUDP0CommandLogin cc -> {
               this.onReceiveCommandLogin(cc);
             }
@@ -180,6 +213,12 @@ public final class EUDP0Server implements Closeable
         LOG.debug("Chatting: {}", Boolean.valueOf(this.chatting));
       }
 
+      if (Objects.equals(cc.message(), "Slow")) {
+        this.pending.put(cc.messageId(), Boolean.FALSE);
+        Thread.startVirtualThread(() -> this.doSlowWork(cc));
+        return;
+      }
+
       this.server.send(
         new EUDP0ResponseOK(
           UUID.randomUUID(),
@@ -189,6 +228,48 @@ public final class EUDP0Server implements Closeable
       );
     }
 
+    /**
+     * Simulate a long-running request, checking for cancellation as it
+     * goes. A cancellation that arrives after the work is complete still
+     * suppresses the response.
+     */
+
+    private void doSlowWork(
+      final EUDP0CommandHello cc)
+    {
+      final var id = cc.messageId();
+
+      try {
+        final var end = System.nanoTime() + SLOW_WORK.toNanos();
+        while (System.nanoTime() - end < 0L) {
+          if (Boolean.TRUE.equals(this.pending.get(id))) {
+            LOG.debug("Abandoned: {}", cc);
+            this.server.cancelled.increment();
+            return;
+          }
+          Thread.sleep(SLOW_STEP);
+        }
+
+        if (Boolean.TRUE.equals(this.pending.get(id))) {
+          LOG.debug("Suppressed response to cancelled {}", id);
+          this.server.cancelled.increment();
+          return;
+        }
+
+        this.server.send(
+          new EUDP0ResponseOK(
+            UUID.randomUUID(),
+            id
+          ),
+          this.source
+        );
+      } catch (final Exception e) {
+        LOG.debug("Slow work: ", e);
+      } finally {
+        this.pending.remove(id);
+      }
+    }
+
     private void onReceiveCommandLogin(
       final EUDP0CommandLogin cc)
       throws EUDP0Exception
@@ -218,26 +299,24 @@ public final class EUDP0Server implements Closeable
 
     public void doChatTask()
     {
-      var timeNext =
-        Instant.now()
-          .plusMillis(500L);
-
       while (!this.server.socket.isClosed()) {
-        final var timeNow = Instant.now();
-        if (timeNow.isAfter(timeNext)) {
-          timeNext = timeNow.plusMillis(500L);
-          if (this.chatting) {
-            try {
-              this.server.send(
-                new EUDP0CommandHello(
-                  UUID.randomUUID(),
-                  "Hello!"
-                ),
-                this.source
-              );
-            } catch (final Exception e) {
-              // Ignored
-            }
+        try {
+          Thread.sleep(CHAT_INTERVAL);
+        } catch (final InterruptedException e) {
+          return;
+        }
+
+        if (this.chatting) {
+          try {
+            this.server.send(
+              new EUDP0CommandHello(
+                UUID.randomUUID(),
+                "Hello!"
+              ),
+              this.source
+            );
+          } catch (final Exception e) {
+            // Ignored
           }
         }
       }
@@ -17,48 +17,70 @@
 
 package com.io7m.hibiscus.examples.udp0;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBCodecType;
+import com.io7m.hibiscus.api.HBFlightDirection;
+import com.io7m.hibiscus.api.HBFlightRecorder;
+import com.io7m.hibiscus.api.HBMailbox;
+import com.io7m.hibiscus.api.HBOverflowPolicy;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
 import com.io7m.hibiscus.api.HBReadNothing;
 import com.io7m.hibiscus.api.HBReadType;
+import com.io7m.hibiscus.api.HBReceiveHandlerType;
 import com.io7m.hibiscus.api.HBReadReceived;
 import com.io7m.hibiscus.api.HBReadResponse;
 import com.io7m.hibiscus.api.HBTransportType;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
-import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public final class EUDP0Transport
   implements HBTransportType<EUDP0MessageType, EUDP0Exception>
 {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(EUDP0Transport.class);
+
   private final CloseableCollectionType<EUDP0Exception> resources;
   private final DatagramSocket socket;
-  private final LinkedBlockingQueue<EUDP0MessageType> inbox;
+  private final HBMailbox<EUDP0MessageType> mailbox;
   private final Thread readerThread;
-  private final Clock clock;
+  private final HBFlightRecorder<EUDP0MessageType> recorder;
   private final InetSocketAddress remoteAddress;
   private final Map<UUID, EUDP0MessageType> sent;
+  private final Map<UUID, CompletableFuture<EUDP0MessageType>> waiting;
+  private final HBCodecType<EUDP0MessageType, EUDP0Exception> codec;
+  private final HBBufferPool bufferPool;
 
   EUDP0Transport(
-    final Clock inClock,
     final InetSocketAddress inRemoteAddress,
-    final DatagramSocket inSocket)
+    final DatagramSocket inSocket,
+    final HBCodecType<EUDP0MessageType, EUDP0Exception> inCodec,
+    final HBBufferPool inBufferPool,
+    final HBPerformanceConfiguration inPerformance)
   {
-    this.clock =
-      Objects.requireNonNull(inClock, "inClock");
+    this.codec =
+      Objects.requireNonNull(inCodec, "inCodec");
+    this.bufferPool =
+      Objects.requireNonNull(inBufferPool, "inBufferPool");
     this.remoteAddress =
       Objects.requireNonNull(inRemoteAddress, "inRemoteAddress");
     this.resources =
@@ -70,32 +92,60 @@ public final class EUDP0Transport
       this.resources.add(
         Objects.requireNonNull(inSocket, "inCloseable"));
 
-    this.inbox =
-      new LinkedBlockingQueue<>();
+    /*
+     * The reader must never wait for the consumer, as responses arrive on
+     * the same socket as unsolicited messages. UDP has no flow control to
+     * bound the messages that the BLOCK policy would hold back, so under
+     * BLOCK a message that does not fit is dropped, as the socket itself
+     * would drop it.
+     */
+
+    final var unsolicited = inPerformance.unsolicited();
+    final HBPerformanceConfiguration performance;
+    if (unsolicited.overflowPolicy() == HBOverflowPolicy.BLOCK) {
+      performance = inPerformance.withUnsolicited(
+        unsolicited.withOverflowPolicy(HBOverflowPolicy.DROP_NEWEST));
+    } else {
+      performance = inPerformance;
+    }
+
+    this.mailbox =
+      performance.createMailbox(message -> {
+        LOG.debug("Discarded unsolicited message {}", message.messageId());
+      });
     this.sent =
-      new HashMap<>();
+      new ConcurrentHashMap<>();
+    this.waiting =
+      new ConcurrentHashMap<>();
+
+    this.recorder =
+      inPerformance.createFlightRecorder(EUDP0MessageIdentity.get());
 
     this.readerThread =
-      Thread.startVirtualThread(this::readLoop);
+      inPerformance.startReader("com.io7m.hibiscus.udp0.reader", this::readLoop);
   }
 
   private void readLoop()
   {
+    final var data =
+      new byte[512];
+    final var packet =
+      new DatagramPacket(data, data.length);
+
     while (true) {
       try {
-        final var data =
-          new byte[512];
-        final var packet =
-          new DatagramPacket(data, data.length);
-
+        packet.setLength(data.length);
         this.socket.receive(packet);
 
         final var message =
-          EUDP0Messages.fromBytes(
-            Arrays.copyOf(packet.getData(), packet.getLength())
-          );
-
-        this.inbox.add(message);
+          this.codec.decode(ByteBuffer.wrap(data, 0, packet.getLength()));
+
+        this.recorder.record(
+          HBFlightDirection.RECEIVED,
+          message,
+          packet.getLength()
+        );
+        this.deliver(message);
       } catch (final Throwable e) {
         try {
           this.close();
@@ -107,34 +157,99 @@ public final class EUDP0Transport
     }
   }
 
+  /**
+   * Hand a received message to a waiting caller, or place it in the
+   * mailbox.
+   */
+
+  private void deliver(
+    final EUDP0MessageType message)
+    throws EUDP0Exception
+  {
+    if (message instanceof final EUDP0ResponseType response) {
+      final var waiter = this.waiting.remove(response.correlationId());
+      if (waiter != null) {
+        waiter.complete(response);
+      } else {
+        this.mailbox.putResponse(message);
+      }
+      return;
+    }
+
+    if (!this.mailbox.offerUnsolicited(message)) {
+      throw new EUDP0Exception("Unsolicited message queue overflowed.");
+    }
+  }
+
+  /**
+   * @return The number of unsolicited messages discarded under the overflow
+   * policy or because they expired
+   */
+
+  public long unsolicitedDiscarded()
+  {
+    return this.mailbox.dropped() + this.mailbox.expired();
+  }
+
   @Override
   public HBReadType<EUDP0MessageType> receive(
     final Duration timeout)
     throws EUDP0Exception, InterruptedException
   {
-    Objects.requireNonNull(timeout, "timeout");
+    final var m = this.poll(timeout);
+    if (m == null) {
+      return new HBReadNothing<>();
+    }
 
-    if (this.isClosed()) {
-      throw new EUDP0Exception(new ClosedChannelException());
+    final var original = this.originalOf(m);
+    if (original != null) {
+      return new HBReadResponse<>(original, m);
     }
+    return new HBReadReceived<>(m);
+  }
 
-    final var m =
-      this.inbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  @Override
+  public boolean receive(
+    final Duration timeout,
+    final HBReceiveHandlerType<EUDP0MessageType> handler)
+    throws EUDP0Exception, InterruptedException
+  {
+    Objects.requireNonNull(handler, "handler");
 
+    final var m = this.poll(timeout);
     if (m == null) {
-      return new HBReadNothing<>();
+      return false;
     }
 
-    if (m instanceof final EUDP0ResponseType rr) {
-      final var original =
-        this.sent.remove(rr.correlationId());
+    final var original = this.originalOf(m);
+    if (original != null) {
+      handler.onResponse(original, m);
+    } else {
+      handler.onReceived(m);
+    }
+    return true;
+  }
 
-      if (original != null) {
-        return new HBReadResponse<>(original, rr);
-      }
+  private EUDP0MessageType poll(
+    final Duration timeout)
+    throws EUDP0Exception, InterruptedException
+  {
+    Objects.requireNonNull(timeout, "timeout");
+
+    if (this.isClosed()) {
+      throw new EUDP0Exception(new ClosedChannelException());
     }
 
-    return new HBReadReceived<>(m);
+    return this.mailbox.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private EUDP0MessageType originalOf(
+    final EUDP0MessageType m)
+  {
+    if (m instanceof final EUDP0ResponseType rr) {
+      return this.sent.remove(rr.correlationId());
+    }
+    return null;
   }
 
   @Override
@@ -152,12 +267,34 @@ public final class EUDP0Transport
     throws EUDP0Exception
   {
     try {
-      final var msgBytes =
-        EUDP0Messages.toBytes(message);
-      final var packet =
-        new DatagramPacket(msgBytes, msgBytes.length, this.remoteAddress);
+      final var size = this.codec.sizeOf(message);
+      try (var pooled = this.bufferPool.acquire(size)) {
+        final var buffer = pooled.buffer();
+        this.codec.encode(message, buffer);
+        buffer.flip();
+
+        /*
+         * Datagram sockets can only send from arrays, so a direct buffer
+         * has to be copied out.
+         */
+
+        final DatagramPacket packet;
+        if (buffer.hasArray()) {
+          packet = new DatagramPacket(
+            buffer.array(),
+            buffer.arrayOffset(),
+            size,
+            this.remoteAddress
+          );
+        } else {
+          final var bytes = new byte[size];
+          buffer.get(bytes);
+          packet = new DatagramPacket(bytes, size, this.remoteAddress);
+        }
 
-      this.socket.send(packet);
+        this.recorder.record(HBFlightDirection.SENT, message, size);
+        this.socket.send(packet);
+      }
     } catch (final Exception e) {
       this.close();
       throw new EUDP0Exception(e);
@@ -170,40 +307,100 @@ public final class EUDP0Transport
     final Duration timeout)
     throws EUDP0Exception, InterruptedException, TimeoutException
   {
-    this.send(message);
+    return this.sendAndWaitPipelined(message, List.of(), timeout);
+  }
 
-    final var slices =
-      Math.max(1L, (long) this.inbox.size() * 2L);
-    final var timeSlice =
-      timeout.dividedBy(slices);
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Each message is sent in its own datagram, but the following
+   * datagrams are sent immediately behind the first. As with any datagrams,
+   * the network may reorder them.</p>
+   */
 
-    final var timeLater =
-      Instant.now(this.clock)
-        .plus(timeout);
+  @Override
+  public EUDP0MessageType sendAndWaitPipelined(
+    final EUDP0MessageType message,
+    final List<EUDP0MessageType> following,
+    final Duration timeout)
+    throws EUDP0Exception, InterruptedException, TimeoutException
+  {
+    Objects.requireNonNull(following, "following");
 
-    while (true) {
-      final var timeNow = Instant.now(this.clock);
-      if (timeNow.isAfter(timeLater)) {
+    final var id = message.messageId();
+    final var waiter = new CompletableFuture<EUDP0MessageType>();
+    this.waiting.put(id, waiter);
+
+    try {
+      this.send(message);
+      for (final var next : following) {
+        this.send(next);
+      }
+
+      final EUDP0MessageType response;
+      try {
+        response = waiter.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+      } catch (final TimeoutException e) {
+        this.captureTraffic(message);
+        this.cancel(message);
         throw new TimeoutException(
           "No response received in %s".formatted(timeout));
+      } catch (final ExecutionException e) {
+        throw new EUDP0Exception(e.getCause());
       }
 
-      final var r =
-        this.inbox.poll(timeSlice.toNanos(), TimeUnit.NANOSECONDS);
+      this.sent.remove(id);
+      return response;
+    } finally {
+      this.waiting.remove(id);
+    }
+  }
 
-      if (r == null) {
-        continue;
+  private void captureTraffic(
+    final EUDP0MessageType message)
+  {
+    final var records = this.recorder.capture();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+        "Timed out waiting for a response to {}; recent traffic:",
+        message.messageId()
+      );
+      for (final var record : records) {
+        LOG.debug("  {}", record);
       }
+    }
+  }
 
-      if (r instanceof final EUDP0ResponseType response) {
-        if (Objects.equals(response.correlationId(), message.messageId())) {
-          this.sent.remove(message.messageId());
-          return response;
-        }
-      }
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The cancellation is a single datagram and, like any other, may be
+   * lost or overtake the message that it cancels.</p>
+   */
+
+  @Override
+  public void cancel(
+    final EUDP0MessageType message)
+    throws EUDP0Exception
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var id = message.messageId();
+    this.sent.remove(id);
 
-      this.inbox.put(r);
+    final var waiter = this.waiting.remove(id);
+    if (waiter != null) {
+      waiter.completeExceptionally(
+        new CancellationException("Message %s was cancelled".formatted(id)));
     }
+
+    this.sendAndForget(new EUDP0CommandCancel(UUID.randomUUID(), id));
+  }
+
+  @Override
+  public Optional<HBFlightRecorder<EUDP0MessageType>> flightRecorder()
+  {
+    return Optional.of(this.recorder);
   }
 
   @Override
@@ -211,6 +408,17 @@ public final class EUDP0Transport
     throws EUDP0Exception
   {
     this.resources.close();
+
+    for (final var waiter : this.waiting.values()) {
+      waiter.completeExceptionally(new ClosedChannelException());
+    }
+
+    /*
+     * A reader blocked on a full mailbox would otherwise never notice that
+     * the transport has closed.
+     */
+
+    this.readerThread.interrupt();
   }
 
   @Override
@@ -26,6 +26,7 @@ module com.io7m.hibiscus.examples
   requires com.io7m.hibiscus.api;
 
   requires com.io7m.jmulticlose.core;
+  requires io.helidon.http;
   requires io.helidon.webserver;
   requires java.net.http;
   requires org.slf4j;
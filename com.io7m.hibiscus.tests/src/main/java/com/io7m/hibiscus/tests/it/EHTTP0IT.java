@@ -17,21 +17,29 @@
 
 package com.io7m.hibiscus.tests.it;
 
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectConnected;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectFailed;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnected;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnectionFailed;
 import com.io7m.hibiscus.api.HBStateType.HBStateDisconnected;
 import com.io7m.hibiscus.examples.http0.EHTTP0ClientType;
 import com.io7m.hibiscus.examples.http0.EHTTP0Clients;
+import com.io7m.hibiscus.examples.http0.EHTTP0Codec;
 import com.io7m.hibiscus.examples.http0.EHTTP0CommandHello;
+import com.io7m.hibiscus.examples.http0.EHTTP0CommandLogin;
 import com.io7m.hibiscus.examples.http0.EHTTP0Configuration;
 import com.io7m.hibiscus.examples.http0.EHTTP0ConnectionParameters;
 import com.io7m.hibiscus.examples.http0.EHTTP0Exception;
+import com.io7m.hibiscus.examples.http0.EHTTP0Messages;
 import com.io7m.hibiscus.examples.http0.EHTTP0ResponseFailure;
 import com.io7m.hibiscus.examples.http0.EHTTP0ResponseOK;
 import com.io7m.hibiscus.examples.http0.EHTTP0Server;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
 import com.io7m.jmulticlose.core.ClosingResourceFailedException;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -44,16 +52,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Timeout(value = 5_000L, unit = TimeUnit.SECONDS)
 public final class EHTTP0IT
@@ -249,6 +267,135 @@ public final class EHTTP0IT
     );
   }
 
+  @Test
+  public void testCancel()
+    throws Exception
+  {
+    final var parameters =
+      new EHTTP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(1L)
+      );
+
+    this.client.connect(parameters);
+
+    /*
+     * A request that times out is cancelled, so the server abandons it
+     * rather than finishing work that nobody will read.
+     */
+
+    final var cancelledThen = SERVER.cancelled();
+    assertThrows(TimeoutException.class, () -> {
+      this.client.sendAndWait(
+        new EHTTP0CommandHello(UUID.randomUUID(), "Slow"),
+        Duration.ofMillis(100L)
+      );
+    });
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5L), () -> {
+      while (SERVER.cancelled() == cancelledThen) {
+        Thread.sleep(10L);
+      }
+    });
+  }
+
+  /**
+   * A request whose deadline has already passed when the server reads it
+   * is answered with a failure and a 504 status rather than processed.
+   */
+
+  @Test
+  public void testDeadlineExpired()
+    throws Exception
+  {
+    final var expiredThen = SERVER.expired();
+    final var message = new EHTTP0CommandHello(UUID.randomUUID(), "Hello");
+
+    try (var http = HttpClient.newHttpClient()) {
+      final var response =
+        http.send(
+          HttpRequest.newBuilder()
+            .uri(URI.create("http://localhost:%d/".formatted(PORT)))
+            .header("hibiscus-deadline", "0")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(
+              EHTTP0Messages.toBytes(message)))
+            .build(),
+          HttpResponse.BodyHandlers.ofByteArray()
+        );
+
+      assertEquals(504, response.statusCode());
+      final var failure =
+        assertInstanceOf(
+          EHTTP0ResponseFailure.class,
+          EHTTP0Messages.fromBytes(response.body())
+        );
+      assertEquals(message.messageId(), failure.correlationId());
+    }
+
+    assertEquals(expiredThen + 1L, SERVER.expired());
+  }
+
+  /**
+   * A request that times out against a server that has stalled completely,
+   * and so will never answer the cancellation either, still times out
+   * promptly.
+   */
+
+  @Test
+  public void testCancelStalledServer()
+    throws Exception
+  {
+    final var address = new InetSocketAddress("localhost", PORT + 2);
+    final var release = new CountDownLatch(1);
+    final var stalled = HttpServer.create(address, 0);
+    stalled.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    stalled.createContext("/", exchange -> {
+      try (exchange) {
+        final var body = exchange.getRequestBody().readAllBytes();
+        if (body.length > 0
+            && EHTTP0Messages.fromBytes(body)
+            instanceof final EHTTP0CommandLogin login) {
+          final var data =
+            EHTTP0Messages.toBytes(
+              new EHTTP0ResponseOK(UUID.randomUUID(), login.messageId()));
+          exchange.sendResponseHeaders(200, data.length);
+          exchange.getResponseBody().write(data);
+          return;
+        }
+        release.await();
+      } catch (final EHTTP0Exception e) {
+        throw new IOException(e);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    stalled.start();
+
+    try {
+      this.client.connect(
+        new EHTTP0ConnectionParameters(
+          address,
+          "someone",
+          "password",
+          Duration.ofSeconds(5L)
+        ));
+
+      assertTimeoutPreemptively(Duration.ofSeconds(3L), () -> {
+        assertThrows(TimeoutException.class, () -> {
+          this.client.sendAndWait(
+            new EHTTP0CommandHello(UUID.randomUUID(), "Hello"),
+            Duration.ofMillis(200L)
+          );
+        });
+      });
+    } finally {
+      release.countDown();
+      stalled.stop(0);
+    }
+  }
+
   @Test
   public void testConnectFailure0()
     throws Exception
@@ -348,4 +495,93 @@ public final class EHTTP0IT
     this.client.connect(parameters);
     assertInstanceOf(HBStateConnected.class, this.client.stateNow());
   }
+
+  @Test
+  public void testInjectedExecutor()
+    throws Exception
+  {
+    final var tasks =
+      new AtomicInteger();
+    final var executor =
+      this.resources.add(Executors.newVirtualThreadPerTaskExecutor());
+
+    final var configuration =
+      new EHTTP0Configuration(
+        EHTTP0Codec.get(),
+        HBBufferPool.shared(),
+        HBPerformanceConfiguration.defaults()
+          .withInboxCapacity(1)
+          .withExecutor(task -> {
+            tasks.incrementAndGet();
+            executor.execute(task);
+          })
+      );
+
+    final var tuned =
+      this.resources.add(this.clients.create(configuration));
+
+    final var parameters =
+      new EHTTP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(1L)
+      );
+
+    tuned.connect(parameters);
+    assertInstanceOf(HBStateConnected.class, tuned.stateNow());
+
+    final var r =
+      tuned.sendAndWait(
+        new EHTTP0CommandHello(UUID.randomUUID(), "Hello!"),
+        Duration.ofSeconds(1L)
+      );
+
+    assertInstanceOf(EHTTP0ResponseOK.class, r);
+    assertTrue(tasks.get() > 0, "Injected executor must be used");
+  }
+
+  @Test
+  public void testPreconnect()
+    throws Exception
+  {
+    final var good =
+      new EHTTP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(1L)
+      );
+    final var bad =
+      new EHTTP0ConnectionParameters(
+        new InetSocketAddress("localhost", PORT + 1),
+        "someone",
+        "password",
+        Duration.ofSeconds(1L)
+      );
+
+    final var result =
+      this.clients.createAndConnect(
+        new EHTTP0Configuration(),
+        List.of(good, bad, good, good),
+        Duration.ofSeconds(5L)
+      );
+
+    for (final var c : result.clients()) {
+      this.resources.add(c);
+    }
+
+    final var outcomes = result.outcomes();
+    assertEquals(4, outcomes.size());
+    assertInstanceOf(HBPreconnectConnected.class, outcomes.get(0));
+    assertInstanceOf(HBPreconnectFailed.class, outcomes.get(1));
+    assertInstanceOf(HBPreconnectConnected.class, outcomes.get(2));
+    assertInstanceOf(HBPreconnectConnected.class, outcomes.get(3));
+    assertFalse(result.allConnected());
+    assertEquals(3, result.clients().size());
+
+    for (final var c : result.clients()) {
+      assertInstanceOf(HBStateConnected.class, c.stateNow());
+    }
+  }
 }
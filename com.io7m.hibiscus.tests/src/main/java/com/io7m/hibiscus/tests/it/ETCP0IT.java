@@ -17,10 +17,29 @@
 
 package com.io7m.hibiscus.tests.it;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.io7m.hibiscus.api.HBConnectionError;
+import com.io7m.hibiscus.api.HBConnectionFailed;
+import com.io7m.hibiscus.api.HBConnectionSucceeded;
+import com.io7m.hibiscus.api.HBLatencyStage;
+import com.io7m.hibiscus.api.HBOverflowPolicy;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectConnected;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectFailed;
+import com.io7m.hibiscus.api.HBPreconnectOutcomeType.HBPreconnectTimedOut;
+import com.io7m.hibiscus.api.HBReadNothing;
 import com.io7m.hibiscus.api.HBReadReceived;
+import com.io7m.hibiscus.api.HBReadResponse;
+import com.io7m.hibiscus.api.HBSessionToken;
+import com.io7m.hibiscus.api.HBSpan;
+import com.io7m.hibiscus.api.HBStageLatencies;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnected;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnectionFailed;
 import com.io7m.hibiscus.api.HBStateType.HBStateDisconnected;
+import com.io7m.hibiscus.api.HBTracer;
+import com.io7m.hibiscus.api.HBUnsolicitedConfiguration;
 import com.io7m.hibiscus.examples.tcp0.ETCP0ClientType;
 import com.io7m.hibiscus.examples.tcp0.ETCP0Clients;
 import com.io7m.hibiscus.examples.tcp0.ETCP0CommandHello;
@@ -28,7 +47,11 @@ import com.io7m.hibiscus.examples.tcp0.ETCP0Configuration;
 import com.io7m.hibiscus.examples.tcp0.ETCP0ConnectionParameters;
 import com.io7m.hibiscus.examples.tcp0.ETCP0Exception;
 import com.io7m.hibiscus.examples.tcp0.ETCP0MessageType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Multiplexer;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseFailure;
 import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseOK;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseSession;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseType;
 import com.io7m.hibiscus.examples.tcp0.ETCP0Server;
 import com.io7m.jmulticlose.core.CloseableCollection;
 import com.io7m.jmulticlose.core.CloseableCollectionType;
@@ -43,18 +66,35 @@ import org.junit.jupiter.api.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Timeout(value = 5_000L, unit = TimeUnit.SECONDS)
 public final class ETCP0IT
@@ -63,6 +103,8 @@ public final class ETCP0IT
     LoggerFactory.getLogger(ETCP0IT.class);
 
   private static final int PORT = 46000;
+  private static final int IDLE_CLIENTS = 200;
+  private static final long IDLE_FOOTPRINT_LIMIT = 32L * 1024L;
   private static ETCP0Server SERVER;
   private static InetSocketAddress ADDRESS;
 
@@ -365,4 +407,1860 @@ public final class ETCP0IT
     this.client.connect(parameters);
     assertInstanceOf(HBStateConnected.class, this.client.stateNow());
   }
+
+  /**
+   * A reconnecting client resumes its session rather than logging in, and
+   * the session's chatting state survives the reconnect.
+   */
+
+  @Test
+  public void testConnectResume()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var first =
+      assertInstanceOf(
+        HBConnectionSucceeded.class,
+        this.client.connect(parameters)
+      );
+    assertInstanceOf(ETCP0ResponseSession.class, first.message());
+    assertTrue(first.session().isPresent());
+
+    this.client.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+    this.client.disconnect();
+
+    final var logins = SERVER.logins();
+    final var resumptions = SERVER.resumptions();
+
+    final var second =
+      assertInstanceOf(
+        HBConnectionSucceeded.class,
+        this.client.connect(parameters)
+      );
+    assertInstanceOf(ETCP0ResponseSession.class, second.message());
+    assertEquals(
+      ((HBSessionToken) first.session().orElseThrow()).value(),
+      ((HBSessionToken) second.session().orElseThrow()).value()
+    );
+    assertEquals(logins, SERVER.logins());
+    assertEquals(resumptions + 1L, SERVER.resumptions());
+
+    final var r =
+      this.client.receive(Duration.ofSeconds(5L));
+    assertInstanceOf(
+      ETCP0CommandHello.class,
+      ((HBReadReceived<ETCP0MessageType>) r).message()
+    );
+  }
+
+  @Test
+  public void testMultiplexed()
+    throws Exception
+  {
+    final var multiplexer =
+      this.resources.add(
+        ETCP0Multiplexer.create(new ETCP0Configuration(), ADDRESS));
+
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var tenants = new ArrayList<ETCP0ClientType>();
+    for (int index = 0; index < 32; ++index) {
+      final var tenant = this.resources.add(multiplexer.createClient());
+      tenants.add(tenant);
+      assertInstanceOf(
+        HBConnectionSucceeded.class,
+        tenant.connect(parameters)
+      );
+    }
+
+    assertEquals(1L, multiplexer.connections());
+    assertEquals(32, multiplexer.channels());
+
+    /*
+     * A failed login closes only the failing tenant's channel.
+     */
+
+    final var rejected = this.resources.add(multiplexer.createClient());
+    assertInstanceOf(
+      HBConnectionFailed.class,
+      rejected.connect(
+        new ETCP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "wrong!",
+          Duration.ofSeconds(5L)
+        ))
+    );
+
+    for (final var tenant : tenants) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        tenant.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hi"),
+          Duration.ofSeconds(5L)
+        )
+      );
+    }
+
+    /*
+     * Messages sent to one tenant are not seen by the others.
+     */
+
+    final var chatty = tenants.get(0);
+    final var quiet = tenants.get(1);
+
+    chatty.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+
+    final var r = chatty.receive(Duration.ofSeconds(5L));
+    assertInstanceOf(
+      ETCP0CommandHello.class,
+      ((HBReadReceived<ETCP0MessageType>) r).message()
+    );
+    assertInstanceOf(HBReadNothing.class, quiet.receive(Duration.ofSeconds(1L)));
+
+    chatty.disconnect();
+    assertInstanceOf(HBStateDisconnected.class, chatty.stateNow());
+    assertInstanceOf(HBStateConnected.class, quiet.stateNow());
+    assertEquals(31, multiplexer.channels());
+    assertEquals(1L, multiplexer.connections());
+  }
+
+  /**
+   * Tenants that connect at the same time share the one connection that
+   * the first of them opens, and closing the multiplexer never waits for a
+   * connect in progress.
+   */
+
+  @Test
+  public void testMultiplexedConcurrentConnect()
+    throws Exception
+  {
+    final var multiplexer =
+      this.resources.add(
+        ETCP0Multiplexer.create(new ETCP0Configuration(), ADDRESS));
+
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var start = new CountDownLatch(1);
+    final var results = new ArrayList<Future<Object>>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int index = 0; index < 16; ++index) {
+        final var tenant = this.resources.add(multiplexer.createClient());
+        results.add(executor.submit(() -> {
+          start.await();
+          return tenant.connect(parameters);
+        }));
+      }
+      start.countDown();
+
+      for (final var result : results) {
+        assertInstanceOf(HBConnectionSucceeded.class, result.get());
+      }
+    }
+
+    assertEquals(1L, multiplexer.connections());
+    assertEquals(16, multiplexer.channels());
+
+    multiplexer.close();
+    assertEquals(0, multiplexer.channels());
+
+    final var late = this.resources.add(multiplexer.createClient());
+    assertInstanceOf(HBConnectionError.class, late.connect(parameters));
+  }
+
+  @Test
+  public void testConcurrentSenders()
+    throws Exception
+  {
+    final var multiplexer =
+      this.resources.add(
+        ETCP0Multiplexer.create(new ETCP0Configuration(), ADDRESS));
+
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var tenants = new ArrayList<ETCP0ClientType>();
+    for (int index = 0; index < 16; ++index) {
+      final var tenant = this.resources.add(multiplexer.createClient());
+      tenants.add(tenant);
+      assertInstanceOf(
+        HBConnectionSucceeded.class,
+        tenant.connect(parameters)
+      );
+    }
+
+    /*
+     * Every tenant shares the one connection, and so the one writer. Each
+     * request must still receive its own response.
+     */
+
+    final var futures = new ArrayList<Future<?>>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (final var tenant : tenants) {
+        futures.add(executor.submit(() -> {
+          for (int index = 0; index < 100; ++index) {
+            assertInstanceOf(
+              ETCP0ResponseOK.class,
+              tenant.sendAndWait(
+                new ETCP0CommandHello(UUID.randomUUID(), "Hi"),
+                Duration.ofSeconds(5L)
+              )
+            );
+          }
+          return null;
+        }));
+      }
+    }
+
+    for (final var future : futures) {
+      future.get();
+    }
+    assertEquals(1L, multiplexer.connections());
+  }
+
+  @Test
+  public void testFlowControl()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 1);
+    final var server =
+      this.resources.add(new ETCP0Server(address, Duration.ofMillis(1L)));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    this.client.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+
+    /*
+     * The client consumes nothing, so the server must stop sending once it
+     * has used the initial credit.
+     */
+
+    while (server.withheld() < 100L) {
+      Thread.sleep(10L);
+    }
+
+    /*
+     * Consuming messages grants more credit, so the server resumes.
+     */
+
+    for (int index = 0; index < 200; ++index) {
+      final var r = this.client.receive(Duration.ofSeconds(5L));
+      assertInstanceOf(
+        ETCP0CommandHello.class,
+        ((HBReadReceived<ETCP0MessageType>) r).message()
+      );
+    }
+  }
+
+  @Test
+  public void testUnsolicitedOverflow()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 3);
+    final var server =
+      this.resources.add(new ETCP0Server(address, Duration.ofMillis(1L)));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    final var base = new ETCP0Configuration();
+    final var client =
+      this.resources.add(this.clients.create(
+        new ETCP0Configuration(
+          base.faults(),
+          base.slowRequestThreshold(),
+          base.codec(),
+          base.bufferPool(),
+          base.performance()
+            .withUnsolicited(
+              HBUnsolicitedConfiguration.defaults()
+                .withCapacity(4)
+                .withOverflowPolicy(HBOverflowPolicy.DROP_OLDEST)
+            ),
+          base.happyEyeballs(),
+          base.maximumMessageSize()
+        )
+      ));
+
+    client.connect(
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    client.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+
+    /*
+     * The client consumes nothing, but dropped messages return their
+     * credit, so the server keeps chatting and never has to withhold
+     * messages for long. Responses bypass the full unsolicited queue.
+     */
+
+    Thread.sleep(250L);
+
+    for (int index = 0; index < 100; ++index) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        client.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+          Duration.ofSeconds(5L)
+        )
+      );
+    }
+
+    final var r = client.receive(Duration.ofSeconds(5L));
+    assertInstanceOf(
+      ETCP0CommandHello.class,
+      ((HBReadReceived<ETCP0MessageType>) r).message()
+    );
+  }
+
+  /**
+   * The configured inbox capacity bounds the unsolicited queue of a TCP
+   * transport even when the unsolicited configuration allows more.
+   */
+
+  @Test
+  public void testInboxCapacityBounded()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 9);
+    final var server =
+      this.resources.add(new ETCP0Server(address, Duration.ofMillis(1L)));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    final var base = new ETCP0Configuration();
+    final var client =
+      this.resources.add(this.clients.create(
+        new ETCP0Configuration(
+          base.faults(),
+          base.slowRequestThreshold(),
+          base.codec(),
+          base.bufferPool(),
+          base.performance()
+            .withInboxCapacity(4)
+            .withUnsolicited(
+              HBUnsolicitedConfiguration.defaults()
+                .withOverflowPolicy(HBOverflowPolicy.DISCONNECT)
+            ),
+          base.happyEyeballs(),
+          base.maximumMessageSize()
+        )
+      ));
+
+    client.connect(
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    client.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+
+    /*
+     * The server has credit for far more than four messages, so a fifth
+     * unconsumed message overflows the queue, and the disconnect policy
+     * closes the channel.
+     */
+
+    Thread.sleep(250L);
+
+    assertThrows(ETCP0Exception.class, () -> {
+      client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      );
+    });
+  }
+
+  @Test
+  public void testUnsolicitedBlockBounded()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 6);
+    final var server =
+      this.resources.add(new ETCP0Server(address, Duration.ofMillis(1L)));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    final var base = new ETCP0Configuration();
+    final var client =
+      this.resources.add(this.clients.create(
+        new ETCP0Configuration(
+          base.faults(),
+          base.slowRequestThreshold(),
+          base.codec(),
+          base.bufferPool(),
+          base.performance()
+            .withUnsolicited(
+              HBUnsolicitedConfiguration.defaults()
+                .withCapacity(4)
+                .withOverflowPolicy(HBOverflowPolicy.BLOCK)
+            ),
+          base.happyEyeballs(),
+          base.maximumMessageSize()
+        )
+      ));
+
+    client.connect(
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    client.sendAndWait(
+      new ETCP0CommandHello(UUID.randomUUID(), "Chatting"),
+      Duration.ofSeconds(5L)
+    );
+
+    /*
+     * The client consumes nothing, so the unsolicited queue fills long
+     * before the server runs out of credit. The connection's reader must
+     * not wait for the consumer, or the responses below would never be
+     * read.
+     */
+
+    Thread.sleep(250L);
+
+    for (int index = 0; index < 100; ++index) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        client.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+          Duration.ofSeconds(5L)
+        )
+      );
+    }
+
+    /*
+     * Nothing was discarded: every message the server sent while the queue
+     * was full is handed out once the consumer catches up.
+     */
+
+    for (int index = 0; index < 100; ++index) {
+      final var r = client.receive(Duration.ofSeconds(5L));
+      assertInstanceOf(
+        ETCP0CommandHello.class,
+        ((HBReadReceived<ETCP0MessageType>) r).message()
+      );
+    }
+  }
+
+  @Test
+  public void testDeadlineExpired()
+    throws Exception
+  {
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    final var expiredThen = SERVER.expired();
+
+    /*
+     * Every message is past its deadline before it is even written, so the
+     * server discards each one. More messages are sent than the initial
+     * credit allows, so sending only succeeds if discarded messages still
+     * grant credit back.
+     */
+
+    for (int index = 0; index < 100; ++index) {
+      assertThrows(TimeoutException.class, () -> {
+        this.client.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Late"),
+          Duration.ofNanos(1L)
+        );
+      });
+    }
+
+    while (SERVER.expired() - expiredThen < 100L) {
+      Thread.sleep(10L);
+    }
+
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      )
+    );
+  }
+
+  /**
+   * The timeout of a request covers the wait for send credit as well as
+   * the wait for the response.
+   */
+
+  @Test
+  public void testTimeoutIncludesCreditWait()
+    throws Exception
+  {
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    /*
+     * The login and the messages sent here use up the initial credit of 64
+     * messages behind a slow message, so no credit is granted back until the server
+     * has worked on it for a second.
+     */
+
+    this.client.send(new ETCP0CommandHello(UUID.randomUUID(), "Slow"));
+    for (int index = 2; index < 64; ++index) {
+      this.client.send(new ETCP0CommandHello(UUID.randomUUID(), "Hello"));
+    }
+
+    /*
+     * The slow request waits a second for credit, and then another second
+     * for its response. Waiting the full timeout again for the response
+     * would receive it.
+     */
+
+    final var timeout = Duration.ofMillis(1_500L);
+    final var timeThen = System.nanoTime();
+    assertThrows(TimeoutException.class, () -> {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Slow"),
+        timeout
+      );
+    });
+
+    final var timeTaken = Duration.ofNanos(System.nanoTime() - timeThen);
+    assertTrue(
+      timeTaken.compareTo(timeout.plusMillis(400L)) < 0,
+      timeTaken.toString()
+    );
+  }
+
+  /**
+   * A message without a deadline is not starved by messages with distant
+   * deadlines that arrive after it.
+   */
+
+  @Test
+  public void testNoDeadlineNotStarved()
+    throws Exception
+  {
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    /*
+     * The first slow message occupies the server's worker while the rest
+     * queue behind it. Processing the three slow messages with deadlines
+     * ahead of the message without one would delay its response by three
+     * seconds.
+     */
+
+    final var slow = new ArrayList<CompletableFuture<ETCP0MessageType>>();
+    for (int index = 0; index < 4; ++index) {
+      slow.add(this.sendAsync("Slow", Duration.ofSeconds(30L)));
+      if (index == 0) {
+        Thread.sleep(100L);
+        this.client.send(new ETCP0CommandHello(UUID.randomUUID(), "Hello"));
+      }
+    }
+
+    final var timeThen = System.nanoTime();
+    final var r =
+      assertInstanceOf(
+        HBReadResponse.class,
+        this.client.receive(Duration.ofSeconds(10L))
+      );
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+
+    assertInstanceOf(ETCP0ResponseOK.class, r.response());
+    assertTrue(
+      elapsed.compareTo(Duration.ofMillis(2500L)) < 0,
+      "Response took %s".formatted(elapsed)
+    );
+
+    for (final var future : slow) {
+      assertInstanceOf(ETCP0ResponseOK.class, future.get());
+    }
+  }
+
+  private CompletableFuture<ETCP0MessageType> sendAsync(
+    final String text,
+    final Duration timeout)
+  {
+    final var future = new CompletableFuture<ETCP0MessageType>();
+    Thread.startVirtualThread(() -> {
+      try {
+        future.complete(
+          this.client.sendAndWait(
+            new ETCP0CommandHello(UUID.randomUUID(), text),
+            timeout
+          )
+        );
+      } catch (final Throwable e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  @Test
+  public void testTracePropagation()
+    throws Exception
+  {
+    final var serverSpans =
+      new LinkedBlockingQueue<HBSpan>();
+    final var clientSpans =
+      new LinkedBlockingQueue<HBSpan>();
+
+    final var address =
+      new InetSocketAddress("localhost", PORT + 2);
+    final var server =
+      this.resources.add(new ETCP0Server(
+        address,
+        Duration.ofMillis(500L),
+        HBTracer.create(1.0, serverSpans::add)
+      ));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    final var sampled =
+      HBTracer.create(1.0, clientSpans::add);
+
+    try (var span = sampled.startSpan("test")) {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Traced"),
+        Duration.ofSeconds(5L)
+      );
+    }
+
+    final var clientSpan =
+      clientSpans.poll(5L, TimeUnit.SECONDS);
+    final var serverSpan =
+      pollSpan(serverSpans, "tcp0.ETCP0CommandHello");
+
+    assertEquals(clientSpan.context().traceId(), serverSpan.context().traceId());
+    assertEquals(
+      clientSpan.context().spanId(),
+      serverSpan.parentSpanId().orElseThrow()
+    );
+
+    final var unsampled =
+      HBTracer.create(0.0, clientSpans::add);
+
+    try (var span = unsampled.startSpan("test")) {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Untraced"),
+        Duration.ofSeconds(5L)
+      );
+    }
+
+    assertNull(pollSpan(serverSpans, "tcp0.ETCP0CommandHello"));
+    assertTrue(clientSpans.isEmpty());
+  }
+
+  @Test
+  public void testCancel()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    /*
+     * A request that times out is cancelled, so the server abandons it and
+     * its response never arrives.
+     */
+
+    final var cancelledThen = SERVER.cancelled();
+    assertThrows(TimeoutException.class, () -> {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Slow"),
+        Duration.ofMillis(100L)
+      );
+    });
+
+    while (SERVER.cancelled() == cancelledThen) {
+      Thread.sleep(10L);
+    }
+
+    assertInstanceOf(
+      HBReadNothing.class,
+      this.client.receive(Duration.ofMillis(1_500L))
+    );
+
+    /*
+     * An explicitly cancelled request is abandoned in the same way.
+     */
+
+    final var slow = new ETCP0CommandHello(UUID.randomUUID(), "Slow");
+    this.client.send(slow);
+    Thread.sleep(100L);
+    this.client.cancel(slow);
+
+    while (SERVER.cancelled() == cancelledThen + 1L) {
+      Thread.sleep(10L);
+    }
+
+    assertInstanceOf(
+      HBReadNothing.class,
+      this.client.receive(Duration.ofMillis(1_500L))
+    );
+
+    /*
+     * A request cancelled by another thread while a caller waits for its
+     * response fails the caller with a checked exception.
+     */
+
+    final var waited = new ETCP0CommandHello(UUID.randomUUID(), "Slow");
+    final var canceller = Thread.ofVirtual().start(() -> {
+      try {
+        Thread.sleep(100L);
+        this.client.cancel(waited);
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    final var ex = assertThrows(ETCP0Exception.class, () -> {
+      this.client.sendAndWait(waited, Duration.ofSeconds(5L));
+    });
+    assertInstanceOf(CancellationException.class, ex.getCause());
+    canceller.join();
+
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      )
+    );
+  }
+
+  @Test
+  public void testStream()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    final var request =
+      new ETCP0CommandHello(UUID.randomUUID(), "Stream 100");
+    final var collector = new StreamCollector();
+    this.client.sendAndStream(request, Duration.ofSeconds(5L))
+      .subscribe(collector);
+
+    /*
+     * The server sends only the parts that have been asked for.
+     */
+
+    collector.request(1L);
+    assertEquals(request.messageId(), collector.take().correlationId());
+    Thread.sleep(100L);
+    assertTrue(collector.items.isEmpty());
+
+    collector.request(Long.MAX_VALUE);
+    collector.done.get(5L, TimeUnit.SECONDS);
+    assertEquals(99, collector.items.size());
+    for (final var item : collector.items) {
+      assertEquals(request.messageId(), item.correlationId());
+    }
+
+    /*
+     * A message that the server answers with a single response is a stream
+     * of one part.
+     */
+
+    final var single = new StreamCollector();
+    this.client.sendAndStream(
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+      Duration.ofSeconds(5L)
+    ).subscribe(single);
+    single.request(Long.MAX_VALUE);
+    single.done.get(5L, TimeUnit.SECONDS);
+    assertEquals(1, single.items.size());
+
+    assertInstanceOf(
+      HBReadNothing.class,
+      this.client.receive(Duration.ofMillis(100L))
+    );
+  }
+
+  /**
+   * A stream request whose length is not a non-negative number is answered
+   * with a failure, and the connection remains usable.
+   */
+
+  @Test
+  public void testStreamMalformed()
+    throws Exception
+  {
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    for (final var text : List.of("Stream x", "Stream -1", "Stream ")) {
+      final var request = new ETCP0CommandHello(UUID.randomUUID(), text);
+      final var collector = new StreamCollector();
+      this.client.sendAndStream(request, Duration.ofSeconds(5L))
+        .subscribe(collector);
+
+      collector.request(Long.MAX_VALUE);
+      collector.done.get(5L, TimeUnit.SECONDS);
+      assertEquals(1, collector.items.size());
+
+      final var failure =
+        assertInstanceOf(ETCP0ResponseFailure.class, collector.take());
+      assertEquals(request.messageId(), failure.correlationId());
+    }
+
+    assertInstanceOf(HBStateConnected.class, this.client.stateNow());
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      )
+    );
+  }
+
+  @Test
+  public void testStreamCancel()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    final var cancelledThen = SERVER.cancelled();
+    final var collector = new StreamCollector();
+    this.client.sendAndStream(
+      new ETCP0CommandHello(UUID.randomUUID(), "Stream 1000"),
+      Duration.ofSeconds(5L)
+    ).subscribe(collector);
+
+    collector.request(5L);
+    for (int index = 0; index < 5; ++index) {
+      collector.take();
+    }
+    collector.subscription.cancel();
+
+    while (SERVER.cancelled() == cancelledThen) {
+      Thread.sleep(10L);
+    }
+
+    assertTrue(collector.items.isEmpty());
+    assertInstanceOf(
+      HBReadNothing.class,
+      this.client.receive(Duration.ofMillis(100L))
+    );
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      )
+    );
+  }
+
+  /**
+   * A stream whose subscriber stops asking for parts holds up only that
+   * stream, and not other requests on the same connection.
+   */
+
+  @Test
+  public void testStreamStalled()
+    throws Exception
+  {
+    this.client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      ));
+
+    final var collector = new StreamCollector();
+    this.client.sendAndStream(
+      new ETCP0CommandHello(UUID.randomUUID(), "Stream 10"),
+      Duration.ofSeconds(30L)
+    ).subscribe(collector);
+
+    collector.request(1L);
+    collector.take();
+
+    for (int index = 0; index < 10; ++index) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        this.client.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+          Duration.ofSeconds(2L)
+        )
+      );
+    }
+
+    collector.request(9L);
+    for (int index = 0; index < 9; ++index) {
+      collector.take();
+    }
+  }
+
+  /**
+   * Every stage of a request/response exchange over a real connection is
+   * recorded, along with the request as a whole.
+   */
+
+  @Test
+  public void testStageLatencies()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    final var latencies = this.client.stageLatencies().orElseThrow();
+    final var requestsBefore = latencies.requests().count();
+    for (int index = 0; index < 10; ++index) {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      );
+    }
+
+    assertEquals(requestsBefore + 10L, latencies.requests().count());
+    for (final var stage : HBLatencyStage.values()) {
+      final var histogram = latencies.histogram(stage);
+      assertTrue(histogram.count() >= 10L, stage + ": " + histogram);
+    }
+    assertTrue(
+      latencies.histogram(HBLatencyStage.NETWORK).maximumNanos() > 0L
+    );
+
+    /*
+     * On loopback the response can be read before the write that carried
+     * the request returns. The request must still have been stamped as
+     * written by then, or the network time would be measured from zero.
+     */
+
+    for (int index = 0; index < 500; ++index) {
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      );
+    }
+
+    final var network = latencies.histogram(HBLatencyStage.NETWORK);
+    assertTrue(
+      network.maximumNanos() < Duration.ofSeconds(5L).toNanos(),
+      network.toString()
+    );
+  }
+
+  /**
+   * A request whose total latency exceeds the threshold is logged, and a
+   * request below the threshold is not.
+   */
+
+  @Test
+  public void testSlowRequestLog()
+    throws Exception
+  {
+    final var defaults = new ETCP0Configuration();
+    final var slowClient =
+      this.resources.add(this.clients.create(
+        new ETCP0Configuration(
+          defaults.faults(),
+          Duration.ofMillis(500L),
+          defaults.codec(),
+          defaults.bufferPool(),
+          defaults.performance(),
+          defaults.happyEyeballs(),
+          defaults.maximumMessageSize()
+        )
+      ));
+
+    slowClient.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      )
+    );
+
+    final var logger =
+      (ch.qos.logback.classic.Logger)
+        LoggerFactory.getLogger(HBStageLatencies.class);
+    final var appender = new ListAppender<ILoggingEvent>();
+    appender.start();
+    logger.addAppender(appender);
+
+    try {
+      slowClient.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+        Duration.ofSeconds(5L)
+      );
+      assertEquals(List.of(), slowRequests(appender));
+
+      final var slow = new ETCP0CommandHello(UUID.randomUUID(), "Slow");
+      slowClient.sendAndWait(slow, Duration.ofSeconds(5L));
+
+      final var logged = slowRequests(appender);
+      assertEquals(1, logged.size());
+      assertTrue(
+        logged.get(0).getFormattedMessage()
+          .contains(slow.messageId().toString())
+      );
+    } finally {
+      logger.detachAppender(appender);
+    }
+  }
+
+  private static List<ILoggingEvent> slowRequests(
+    final ListAppender<ILoggingEvent> appender)
+  {
+    return appender.list.stream()
+      .filter(e -> e.getLevel() == Level.WARN)
+      .filter(e -> e.getFormattedMessage().startsWith("Slow request"))
+      .toList();
+  }
+
+  @Test
+  public void testLargeMessage()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    /*
+     * The message is sent to the server in chunks, and the server sends it
+     * back in chunks.
+     */
+
+    final var text = "Echo " + "x".repeat(1 << 20);
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      this.client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), text),
+        Duration.ofSeconds(5L)
+      )
+    );
+
+    final var r =
+      assertInstanceOf(
+        HBReadReceived.class,
+        this.client.receive(Duration.ofSeconds(5L))
+      );
+    final var echo = assertInstanceOf(ETCP0CommandHello.class, r.message());
+    assertEquals(text, echo.message());
+  }
+
+  @Test
+  public void testLargeMessageInterleaved()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    /*
+     * The small message is written between the chunks of the large one, so
+     * the server receives, and answers, the small message first.
+     */
+
+    final var large =
+      new ETCP0CommandHello(UUID.randomUUID(), "x".repeat(16 << 20));
+    final var small =
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello");
+
+    this.client.send(large);
+    this.client.send(small);
+
+    final var r0 =
+      assertInstanceOf(
+        HBReadResponse.class,
+        this.client.receive(Duration.ofSeconds(5L))
+      );
+    assertEquals(small, r0.message());
+
+    final var r1 =
+      assertInstanceOf(
+        HBReadResponse.class,
+        this.client.receive(Duration.ofSeconds(5L))
+      );
+    assertEquals(large, r1.message());
+  }
+
+  @Test
+  public void testLargeMessagesConcurrent()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    this.client.connect(parameters);
+
+    /*
+     * The server accepts only a limited number of transfers in progress at
+     * once, so the writer must hold the rest back rather than interleaving
+     * the chunks of every large message.
+     */
+
+    final var sent = new ArrayList<ETCP0CommandHello>();
+    for (int index = 0; index < 32; ++index) {
+      final var message =
+        new ETCP0CommandHello(UUID.randomUUID(), "x".repeat(256 << 10));
+      sent.add(message);
+      this.client.send(message);
+    }
+
+    final var received = new ArrayList<ETCP0MessageType>();
+    for (int index = 0; index < sent.size(); ++index) {
+      final var r =
+        assertInstanceOf(
+          HBReadResponse.class,
+          this.client.receive(Duration.ofSeconds(5L))
+        );
+      received.add((ETCP0MessageType) r.message());
+    }
+    assertEquals(sent.size(), received.size());
+    assertTrue(received.containsAll(sent));
+  }
+
+  @Test
+  public void testMessageTooLarge()
+    throws Exception
+  {
+    final var client =
+      this.resources.add(this.clients.create(
+        new ETCP0Configuration().withMaximumMessageSize(1 << 20)
+      ));
+
+    client.connect(
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      )
+    );
+
+    /*
+     * A message over the limit is refused before it is sent, so only the
+     * caller sees an error, and the connection remains usable.
+     */
+
+    final var large =
+      new ETCP0CommandHello(UUID.randomUUID(), "x".repeat(2 << 20));
+
+    for (int index = 0; index < 100; ++index) {
+      assertThrows(
+        ETCP0Exception.class,
+        () -> client.sendAndWait(large, Duration.ofSeconds(5L))
+      );
+      assertThrows(ETCP0Exception.class, () -> client.send(large));
+    }
+
+    assertInstanceOf(
+      ETCP0ResponseOK.class,
+      client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "x".repeat(512 << 10)),
+        Duration.ofSeconds(5L)
+      )
+    );
+    assertInstanceOf(HBStateConnected.class, client.stateNow());
+  }
+
+  @Test
+  public void testHostileChunkLength()
+    throws Exception
+  {
+    /*
+     * The first chunk of a transfer claims a frame far larger than the
+     * server accepts. The server closes the connection rather than
+     * allocating the claimed length.
+     */
+
+    try (var socket = new Socket()) {
+      socket.connect(ADDRESS);
+      final var output = new DataOutputStream(socket.getOutputStream());
+      writeChunk(output, 0, 1 << 30, new byte[16]);
+      assertClosedByPeer(socket);
+    }
+  }
+
+  @Test
+  public void testHostileTransfers()
+    throws Exception
+  {
+    /*
+     * Each chunk starts a new transfer that is never finished. The server
+     * closes the connection once too many transfers are in progress.
+     */
+
+    try (var socket = new Socket()) {
+      socket.connect(ADDRESS);
+      final var output = new DataOutputStream(socket.getOutputStream());
+      for (int index = 0; index < 17; ++index) {
+        writeChunk(output, index, 1 << 20, new byte[16]);
+      }
+      assertClosedByPeer(socket);
+    }
+  }
+
+  @Test
+  public void testHostileTransfersClient()
+    throws Exception
+  {
+    try (var hostile = new ServerSocket()) {
+      hostile.bind(new InetSocketAddress("localhost", PORT + 10));
+
+      final var closed = new CompletableFuture<Boolean>();
+      Thread.startVirtualThread(() -> {
+        try (var socket = hostile.accept()) {
+          final var output = new DataOutputStream(socket.getOutputStream());
+          for (int index = 0; index < 17; ++index) {
+            writeChunk(output, index, 1 << 20, new byte[16]);
+          }
+          assertClosedByPeer(socket);
+          closed.complete(Boolean.TRUE);
+        } catch (final Throwable e) {
+          closed.completeExceptionally(e);
+        }
+      });
+
+      final var parameters =
+        new ETCP0ConnectionParameters(
+          new InetSocketAddress("localhost", PORT + 10),
+          "someone",
+          "password",
+          Duration.ofSeconds(30L)
+        );
+
+      /*
+       * The client closes the connection as soon as the server starts too
+       * many transfers, rather than waiting for the login to time out.
+       */
+
+      final var timeThen = System.nanoTime();
+      assertInstanceOf(
+        HBConnectionError.class,
+        this.client.connect(parameters)
+      );
+      final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+      assertTrue(
+        elapsed.compareTo(Duration.ofSeconds(5L)) < 0,
+        "Connect took %s".formatted(elapsed)
+      );
+      assertTrue(closed.get(5L, TimeUnit.SECONDS).booleanValue());
+    }
+  }
+
+  private static void writeChunk(
+    final DataOutputStream output,
+    final int transferId,
+    final int total,
+    final byte[] data)
+    throws IOException
+  {
+    output.writeInt(12 + data.length);
+    output.writeByte(0x6);
+    output.writeByte(0);
+    output.writeShort(0);
+    output.writeInt(transferId);
+    output.writeInt(total);
+    output.write(data);
+    output.flush();
+  }
+
+  private static void assertClosedByPeer(
+    final Socket socket)
+    throws IOException
+  {
+    socket.setSoTimeout(10_000);
+    try {
+      final var input = socket.getInputStream();
+      while (input.read() != -1) {
+        // Discard anything written before the close.
+      }
+    } catch (final SocketException e) {
+      // Reset by the peer.
+    }
+  }
+
+  @Test
+  public void testConnectPipelined()
+    throws Exception
+  {
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var initial = hellos(3);
+    assertInstanceOf(
+      HBConnectionSucceeded.class,
+      this.client.connect(parameters, initial)
+    );
+    this.assertResponsesTo(this.client, initial);
+    this.client.disconnect();
+
+    /*
+     * The second connection resumes the session, and the messages are
+     * pipelined behind the resumption instead.
+     */
+
+    final var resumptions = SERVER.resumptions();
+    final var resumed = hellos(3);
+    assertInstanceOf(
+      HBConnectionSucceeded.class,
+      this.client.connect(parameters, resumed)
+    );
+    assertEquals(resumptions + 1L, SERVER.resumptions());
+    this.assertResponsesTo(this.client, resumed);
+  }
+
+  @Test
+  public void testConnectPipelinedResumeRefused()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 5);
+    final var parameters =
+      new ETCP0ConnectionParameters(
+        address,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var server =
+      this.resources.add(new ETCP0Server(address));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    assertInstanceOf(
+      HBConnectionSucceeded.class,
+      this.client.connect(parameters)
+    );
+    this.client.disconnect();
+
+    /*
+     * The server no longer knows the cached session, so the resumption is
+     * refused. The messages pipelined behind it are discarded, and
+     * processed exactly once behind the full login.
+     */
+
+    server.forgetSessions();
+
+    final var initial = hellos(3);
+    assertInstanceOf(
+      HBConnectionSucceeded.class,
+      this.client.connect(parameters, initial)
+    );
+    assertEquals(2L, server.logins());
+    assertEquals(0L, server.resumptions());
+    this.assertResponsesTo(this.client, initial);
+    assertInstanceOf(
+      HBReadNothing.class,
+      this.client.receive(Duration.ofMillis(100L))
+    );
+  }
+
+  private static List<ETCP0MessageType> hellos(
+    final int count)
+  {
+    final var messages = new ArrayList<ETCP0MessageType>(count);
+    for (int index = 0; index < count; ++index) {
+      messages.add(new ETCP0CommandHello(UUID.randomUUID(), "Hello " + index));
+    }
+    return List.copyOf(messages);
+  }
+
+  private void assertResponsesTo(
+    final ETCP0ClientType c,
+    final List<ETCP0MessageType> requests)
+    throws Exception
+  {
+    for (final var request : requests) {
+      final var r =
+        assertInstanceOf(
+          HBReadResponse.class,
+          c.receive(Duration.ofSeconds(5L))
+        );
+      assertEquals(request, r.message());
+      assertInstanceOf(ETCP0ResponseOK.class, r.response());
+    }
+  }
+
+  @Test
+  public void testIdleFootprint()
+    throws Exception
+  {
+    final var address =
+      new InetSocketAddress("localhost", PORT + 4);
+    final var server =
+      this.resources.add(new ETCP0Server(address));
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        server.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+
+    /*
+     * Warm up both configurations so that class loading, the shared buffer
+     * pool, and the server's own structures are not counted.
+     */
+
+    this.retainedPerIdleClient(address, HBPerformanceConfiguration.defaults());
+    this.retainedPerIdleClient(address, HBPerformanceConfiguration.forFootprint());
+
+    final var standard =
+      this.retainedPerIdleClient(address, HBPerformanceConfiguration.defaults());
+    final var footprint =
+      this.retainedPerIdleClient(address, HBPerformanceConfiguration.forFootprint());
+
+    LOG.info("Retained bytes per idle client (default):   {}", standard);
+    LOG.info("Retained bytes per idle client (footprint): {}", footprint);
+
+    assertTrue(
+      footprint < IDLE_FOOTPRINT_LIMIT,
+      "Footprint %d must be < %d".formatted(footprint, IDLE_FOOTPRINT_LIMIT)
+    );
+    assertTrue(
+      footprint < standard,
+      "Footprint %d must be < %d".formatted(footprint, standard)
+    );
+  }
+
+  /**
+   * Connect a batch of clients, exchange one message on each so that every
+   * lazily allocated structure a normal client touches is allocated, and
+   * then measure the heap retained while the clients sit idle. The figure
+   * includes the server's side of each connection.
+   */
+
+  private long retainedPerIdleClient(
+    final InetSocketAddress address,
+    final HBPerformanceConfiguration performance)
+    throws Exception
+  {
+    final var base = new ETCP0Configuration();
+    final var configuration =
+      new ETCP0Configuration(
+        base.faults(),
+        base.slowRequestThreshold(),
+        base.codec(),
+        base.bufferPool(),
+        performance,
+        base.happyEyeballs(),
+        base.maximumMessageSize()
+      );
+
+    final var idle = new ArrayList<ETCP0ClientType>(IDLE_CLIENTS);
+    final var before = retainedHeap();
+
+    try {
+      for (int index = 0; index < IDLE_CLIENTS; ++index) {
+        final var c = this.clients.create(configuration);
+        idle.add(c);
+        c.connect(
+          new ETCP0ConnectionParameters(
+            address,
+            "someone",
+            "password",
+            Duration.ofSeconds(5L)
+          ));
+        c.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+          Duration.ofSeconds(5L)
+        );
+      }
+
+      final var after = retainedHeap();
+      return (after - before) / (long) IDLE_CLIENTS;
+    } finally {
+      for (final var c : idle) {
+        c.close();
+      }
+    }
+  }
+
+  private static long retainedHeap()
+    throws InterruptedException
+  {
+    final var runtime = Runtime.getRuntime();
+    for (int index = 0; index < 4; ++index) {
+      System.gc();
+      Thread.sleep(50L);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static HBSpan pollSpan(
+    final LinkedBlockingQueue<HBSpan> spans,
+    final String name)
+    throws InterruptedException
+  {
+    while (true) {
+      final var span = spans.poll(1L, TimeUnit.SECONDS);
+      if (span == null || Objects.equals(span.name(), name)) {
+        return span;
+      }
+    }
+  }
+
+  private static final class StreamCollector
+    implements Flow.Subscriber<ETCP0MessageType>
+  {
+    private final LinkedBlockingQueue<ETCP0ResponseType> items =
+      new LinkedBlockingQueue<>();
+    private final CompletableFuture<Void> done =
+      new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+
+    StreamCollector()
+    {
+
+    }
+
+    void request(
+      final long n)
+    {
+      this.subscription.request(n);
+    }
+
+    ETCP0ResponseType take()
+      throws InterruptedException
+    {
+      final var item = this.items.poll(5L, TimeUnit.SECONDS);
+      assertNotNull(item);
+      return item;
+    }
+
+    @Override
+    public void onSubscribe(
+      final Flow.Subscription inSubscription)
+    {
+      this.subscription = inSubscription;
+    }
+
+    @Override
+    public void onNext(
+      final ETCP0MessageType item)
+    {
+      this.items.add(assertInstanceOf(ETCP0ResponseType.class, item));
+    }
+
+    @Override
+    public void onError(
+      final Throwable throwable)
+    {
+      this.done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete()
+    {
+      this.done.complete(null);
+    }
+  }
+
+  @Test
+  public void testPreconnect()
+    throws Exception
+  {
+    final var good =
+      new ETCP0ConnectionParameters(
+        ADDRESS,
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+    final var bad =
+      new ETCP0ConnectionParameters(
+        new InetSocketAddress("localhost", PORT + 8),
+        "someone",
+        "password",
+        Duration.ofSeconds(5L)
+      );
+
+    final var result =
+      this.clients.createAndConnect(
+        new ETCP0Configuration(),
+        List.of(good, bad, good),
+        Duration.ofSeconds(10L)
+      );
+
+    for (final var c : result.clients()) {
+      this.resources.add(c);
+    }
+
+    final var outcomes = result.outcomes();
+    assertEquals(3, outcomes.size());
+    assertInstanceOf(HBPreconnectConnected.class, outcomes.get(0));
+    assertInstanceOf(HBPreconnectFailed.class, outcomes.get(1));
+    assertInstanceOf(HBPreconnectConnected.class, outcomes.get(2));
+    assertFalse(result.allConnected());
+    assertEquals(2, result.clients().size());
+
+    for (final var c : result.clients()) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        c.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello"),
+          Duration.ofSeconds(5L)
+        )
+      );
+    }
+  }
+
+  /**
+   * A server that accepts connections but never answers the login would
+   * hold a connect for the whole of its own timeout. The pre-connect
+   * deadline ends the attempt early, and the abandoned connection is
+   * closed rather than left running.
+   */
+
+  @Test
+  public void testPreconnectDeadline()
+    throws Exception
+  {
+    try (var silent = new ServerSocket()) {
+      silent.bind(new InetSocketAddress("localhost", PORT + 7));
+
+      final var closed = new CompletableFuture<Boolean>();
+      Thread.startVirtualThread(() -> {
+        try (var socket = silent.accept()) {
+          final var input = socket.getInputStream();
+          while (input.read() != -1) {
+            // Discard the login.
+          }
+          closed.complete(Boolean.TRUE);
+        } catch (final IOException e) {
+          closed.complete(Boolean.TRUE);
+        }
+      });
+
+      final var good =
+        new ETCP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "password",
+          Duration.ofSeconds(30L)
+        );
+      final var stalled =
+        new ETCP0ConnectionParameters(
+          new InetSocketAddress("localhost", PORT + 7),
+          "someone",
+          "password",
+          Duration.ofSeconds(30L)
+        );
+
+      final var timeThen = System.nanoTime();
+      final var result =
+        this.clients.createAndConnect(
+          new ETCP0Configuration(),
+          List.of(good, stalled),
+          Duration.ofMillis(500L)
+        );
+      final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+
+      for (final var c : result.clients()) {
+        this.resources.add(c);
+      }
+
+      assertTrue(
+        elapsed.compareTo(Duration.ofSeconds(5L)) < 0,
+        "Pre-connect took %s".formatted(elapsed)
+      );
+
+      final var outcomes = result.outcomes();
+      assertInstanceOf(HBPreconnectConnected.class, outcomes.get(0));
+      assertInstanceOf(HBPreconnectTimedOut.class, outcomes.get(1));
+      assertEquals(1, result.clients().size());
+
+      /*
+       * The cancelled attempt closed its connection, so the silent server
+       * sees the end of the stream long before the login would have timed
+       * out.
+       */
+
+      assertTrue(closed.get(5L, TimeUnit.SECONDS).booleanValue());
+    }
+  }
 }
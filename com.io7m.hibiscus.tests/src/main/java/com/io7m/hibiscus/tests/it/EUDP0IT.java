@@ -17,15 +17,23 @@
 
 package com.io7m.hibiscus.tests.it;
 
+import com.io7m.hibiscus.api.HBConnectionSucceeded;
+import com.io7m.hibiscus.api.HBOverflowPolicy;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBReadNothing;
+import com.io7m.hibiscus.api.HBReadReceived;
+import com.io7m.hibiscus.api.HBReadResponse;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnected;
 import com.io7m.hibiscus.api.HBStateType.HBStateConnectionFailed;
 import com.io7m.hibiscus.api.HBStateType.HBStateDisconnected;
+import com.io7m.hibiscus.api.HBUnsolicitedConfiguration;
 import com.io7m.hibiscus.examples.udp0.EUDP0ClientType;
 import com.io7m.hibiscus.examples.udp0.EUDP0Clients;
 import com.io7m.hibiscus.examples.udp0.EUDP0CommandHello;
 import com.io7m.hibiscus.examples.udp0.EUDP0Configuration;
 import com.io7m.hibiscus.examples.udp0.EUDP0ConnectionParameters;
 import com.io7m.hibiscus.examples.udp0.EUDP0Exception;
+import com.io7m.hibiscus.examples.udp0.EUDP0MessageType;
 import com.io7m.hibiscus.examples.udp0.EUDP0ResponseOK;
 import com.io7m.hibiscus.examples.udp0.EUDP0Server;
 import com.io7m.jmulticlose.core.CloseableCollection;
@@ -48,6 +56,7 @@ import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
@@ -190,6 +199,150 @@ public final class EUDP0IT
     });
   }
 
+  @Test
+  public void testUnsolicitedBlockNeverReceived()
+    throws Exception
+  {
+    assertTimeoutPreemptively(TIMEOUT, () -> {
+      final var base = new EUDP0Configuration();
+      final var client =
+        this.resources.add(this.clients.create(
+          new EUDP0Configuration(
+            base.faults(),
+            base.codec(),
+            base.bufferPool(),
+            HBPerformanceConfiguration.defaults()
+              .withUnsolicited(
+                HBUnsolicitedConfiguration.defaults()
+                  .withCapacity(2)
+                  .withOverflowPolicy(HBOverflowPolicy.BLOCK)
+              )
+          )
+        ));
+
+      client.connect(
+        new EUDP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "password",
+          Duration.ofSeconds(1L)
+        )
+      );
+
+      client.sendAndWait(
+        new EUDP0CommandHello(UUID.randomUUID(), "Chatting"),
+        Duration.ofSeconds(1L)
+      );
+
+      /*
+       * The client only ever waits for responses, so the unsolicited queue
+       * fills. The reader must drop what does not fit rather than wait for
+       * the consumer, or the responses below would never be read.
+       */
+
+      Thread.sleep(2_000L);
+
+      for (int index = 0; index < 5; ++index) {
+        assertInstanceOf(
+          EUDP0ResponseOK.class,
+          client.sendAndWait(
+            new EUDP0CommandHello(UUID.randomUUID(), "Hello!"),
+            Duration.ofSeconds(1L)
+          )
+        );
+      }
+
+      client.sendAndWait(
+        new EUDP0CommandHello(UUID.randomUUID(), "Chatting"),
+        Duration.ofSeconds(1L)
+      );
+
+      assertInstanceOf(
+        HBReadReceived.class,
+        client.receive(Duration.ofSeconds(1L))
+      );
+      assertInstanceOf(
+        HBReadReceived.class,
+        client.receive(Duration.ofSeconds(1L))
+      );
+    });
+  }
+
+  @Test
+  public void testConnectPipelined()
+    throws Exception
+  {
+    assertTimeoutPreemptively(TIMEOUT, () -> {
+      final var parameters =
+        new EUDP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "password",
+          Duration.ofSeconds(1L)
+        );
+
+      final List<EUDP0MessageType> initial =
+        List.of(
+          new EUDP0CommandHello(UUID.randomUUID(), "Hello 0"),
+          new EUDP0CommandHello(UUID.randomUUID(), "Hello 1")
+        );
+
+      assertInstanceOf(
+        HBConnectionSucceeded.class,
+        this.client.connect(parameters, initial)
+      );
+
+      for (final var request : initial) {
+        final var r =
+          assertInstanceOf(
+            HBReadResponse.class,
+            this.client.receive(Duration.ofSeconds(1L))
+          );
+        assertEquals(request, r.message());
+        assertInstanceOf(EUDP0ResponseOK.class, r.response());
+      }
+    });
+  }
+
+  @Test
+  public void testCancel()
+    throws Exception
+  {
+    assertTimeoutPreemptively(TIMEOUT, () -> {
+      final var parameters =
+        new EUDP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "password",
+          Duration.ofSeconds(1L)
+        );
+
+      this.client.connect(parameters);
+
+      /*
+       * A request that times out is cancelled, so the server abandons it
+       * and its response never arrives.
+       */
+
+      final var cancelledThen = SERVER.cancelled();
+      assertThrows(TimeoutException.class, () -> {
+        this.client.sendAndWait(
+          new EUDP0CommandHello(UUID.randomUUID(), "Slow"),
+          Duration.ofMillis(100L)
+        );
+      });
+
+      while (SERVER.cancelled() == cancelledThen) {
+        Thread.sleep(10L);
+      }
+
+      assertInstanceOf(
+        HBReadNothing.class,
+        this.client.receive(Duration.ofMillis(1_500L))
+      );
+    });
+  }
+
   @Test
   public void testConnectSend()
     throws Exception
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBBufferPool;
+import com.io7m.hibiscus.api.HBBufferPoolConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBBufferPoolIT
+{
+  /**
+   * Released buffers are handed out again rather than reallocated.
+   */
+
+  @Test
+  public void testReuse()
+  {
+    final var pool =
+      HBBufferPool.create(HBBufferPoolConfiguration.defaults());
+
+    final var b0 = pool.acquire(300);
+    assertEquals(512, b0.capacity());
+    assertEquals(300, b0.buffer().limit());
+    b0.close();
+
+    for (int index = 0; index < 1000; ++index) {
+      try (var b = pool.acquire(400)) {
+        assertSame(b0, b);
+        b.buffer().putInt(index);
+      }
+    }
+
+    assertEquals(1L, pool.allocations());
+  }
+
+  /**
+   * Oversized requests are not pooled.
+   */
+
+  @Test
+  public void testOversized()
+  {
+    final var pool =
+      HBBufferPool.create(HBBufferPoolConfiguration.defaults());
+
+    final var size = 1024 * 1024 * 2;
+    final var b0 = pool.acquire(size);
+    assertEquals(size, b0.capacity());
+    b0.close();
+
+    try (var b1 = pool.acquire(size)) {
+      assertFalse(b0 == b1);
+    }
+    assertEquals(2L, pool.allocations());
+  }
+
+  /**
+   * Buffers cannot be released twice.
+   */
+
+  @Test
+  public void testDoubleRelease()
+  {
+    final var pool =
+      HBBufferPool.create(HBBufferPoolConfiguration.defaults());
+
+    final var b0 = pool.acquire(32);
+    b0.close();
+    assertThrows(IllegalStateException.class, b0::close);
+  }
+
+  /**
+   * Direct pools hand out direct buffers.
+   */
+
+  @Test
+  public void testDirect()
+  {
+    final var pool =
+      HBBufferPool.create(
+        HBBufferPoolConfiguration.defaults()
+          .withDirect(true)
+      );
+
+    try (var b = pool.acquire(32)) {
+      assertTrue(b.buffer().isDirect());
+    }
+  }
+
+  /**
+   * Buffers shared between virtual threads are reused through the shared
+   * free-lists.
+   */
+
+  @Test
+  public void testVirtualThreads()
+    throws Exception
+  {
+    final var pool =
+      HBBufferPool.create(HBBufferPoolConfiguration.defaults());
+
+    final var threads = new Thread[8];
+    for (int index = 0; index < threads.length; ++index) {
+      threads[index] = Thread.startVirtualThread(() -> {
+        for (int count = 0; count < 1000; ++count) {
+          try (var b = pool.acquire(1000)) {
+            b.buffer().putLong(count);
+          }
+        }
+      });
+    }
+    for (final var thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(
+      pool.allocations() <= threads.length,
+      "Allocations %d".formatted(pool.allocations())
+    );
+  }
+
+  /**
+   * Buffers that are never released are reported when leak detection is
+   * enabled.
+   */
+
+  @Test
+  public void testLeakDetection()
+    throws Exception
+  {
+    final var pool =
+      HBBufferPool.create(
+        HBBufferPoolConfiguration.defaults()
+          .withLeakDetection(true)
+      );
+
+    for (int index = 0; index < 100; ++index) {
+      pool.acquire(64);
+    }
+    try (var b = pool.acquire(64)) {
+      b.buffer().putInt(23);
+    }
+
+    for (int attempt = 0; attempt < 100; ++attempt) {
+      if (pool.leaksDetected() == 100L) {
+        break;
+      }
+      System.gc();
+      Thread.sleep(10L);
+    }
+
+    assertEquals(100L, pool.leaksDetected());
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBFaultConfiguration;
+import com.io7m.hibiscus.api.HBFaultDistribution;
+import com.io7m.hibiscus.api.HBFaultInjectingTransport;
+import com.io7m.hibiscus.api.HBLoopbackPair;
+import com.io7m.hibiscus.api.HBLoopbackTransport;
+import com.io7m.hibiscus.api.HBReadNothing;
+import com.io7m.hibiscus.api.HBReadReceived;
+import com.io7m.hibiscus.api.HBReadType;
+import com.io7m.hibiscus.api.HBTransportType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0CommandHello;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Exception;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageIdentity;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseOK;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBFaultInjectingIT
+{
+  private static HBLoopbackPair<ETCP0MessageType, ETCP0Exception> pair()
+  {
+    return HBLoopbackTransport.createPair(
+      ETCP0MessageIdentity.get(),
+      ETCP0Exception::new
+    );
+  }
+
+  private static HBFaultInjectingTransport<ETCP0MessageType, ETCP0Exception>
+  faulty(
+    final HBLoopbackTransport<ETCP0MessageType, ETCP0Exception> transport,
+    final HBFaultConfiguration configuration)
+  {
+    return HBFaultInjectingTransport.create(
+      transport,
+      configuration,
+      m -> 64,
+      ETCP0Exception::new
+    );
+  }
+
+  private static List<String> deliveredWithSeed(
+    final long seed)
+    throws Exception
+  {
+    final var configuration =
+      HBFaultConfiguration.none(seed)
+        .withLatency(
+          Duration.ofMillis(1L),
+          HBFaultDistribution.EXPONENTIAL,
+          Duration.ofMillis(1L))
+        .withLoss(0.3, 0.2)
+        .withReordering(0.2, Duration.ofMillis(5L));
+
+    final var pair = pair();
+    final var received = new ArrayList<String>();
+
+    try (var client = faulty(pair.client(), configuration)) {
+      for (int index = 0; index < 200; ++index) {
+        client.sendAndForget(
+          new ETCP0CommandHello(UUID.randomUUID(), Integer.toString(index))
+        );
+      }
+
+      while (true) {
+        final var r = pair.server().receive(Duration.ofMillis(250L));
+        if (r instanceof final HBReadReceived<ETCP0MessageType> rr) {
+          received.add(((ETCP0CommandHello) rr.message()).message());
+        } else {
+          break;
+        }
+      }
+    }
+
+    Collections.sort(received);
+    return received;
+  }
+
+  @Test
+  public void testDeterministic()
+    throws Exception
+  {
+    final var run0 = deliveredWithSeed(0x5eedL);
+    final var run1 = deliveredWithSeed(0x5eedL);
+    final var run2 = deliveredWithSeed(0x5eedL + 1L);
+
+    assertEquals(run0, run1);
+    assertNotEquals(run0, run2);
+    assertNotEquals(200, run0.size());
+  }
+
+  @Test
+  public void testLatency()
+    throws Exception
+  {
+    final var pair = pair();
+    final var configuration =
+      HBFaultConfiguration.none(0L)
+        .withLatency(
+          Duration.ofMillis(50L),
+          HBFaultDistribution.CONSTANT,
+          Duration.ZERO);
+
+    final var server = Thread.startVirtualThread(() -> {
+      try {
+        final var r = pair.server().receive(Duration.ofSeconds(5L));
+        if (r instanceof final HBReadReceived<ETCP0MessageType> rr) {
+          pair.server().sendAndForget(
+            new ETCP0ResponseOK(UUID.randomUUID(), rr.message().messageId())
+          );
+        }
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    try (var client = faulty(pair.client(), configuration)) {
+      final var command =
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+
+      final var timeThen = System.nanoTime();
+      final var r = client.sendAndWait(command, Duration.ofSeconds(5L));
+      final var timeNow = System.nanoTime();
+
+      assertEquals(
+        command.messageId(),
+        assertInstanceOf(ETCP0ResponseOK.class, r).correlationId()
+      );
+      assertTrue(timeNow - timeThen >= Duration.ofMillis(50L).toNanos());
+    }
+
+    server.join();
+  }
+
+  /**
+   * Messages sent and cancelled from many threads reach the underlying
+   * transport one at a time.
+   */
+
+  @Test
+  public void testSingleWriter()
+    throws Exception
+  {
+    final var checking = new WriterCheckingTransport();
+    final var threads = new ArrayList<Thread>();
+    final var perThread = 50;
+
+    try (var client = HBFaultInjectingTransport.create(
+      checking,
+      HBFaultConfiguration.none(0L),
+      m -> 64,
+      ETCP0Exception::new)) {
+
+      for (int thread = 0; thread < 8; ++thread) {
+        threads.add(Thread.startVirtualThread(() -> {
+          try {
+            for (int index = 0; index < perThread; ++index) {
+              final var message =
+                new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+              client.send(message);
+              client.cancel(message);
+            }
+          } catch (final Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }));
+      }
+      for (final var thread : threads) {
+        thread.join();
+      }
+    }
+
+    assertTrue(checking.writes.get() > 0);
+    assertEquals(1, checking.maximumWriters.get());
+  }
+
+  /**
+   * A transport that records the largest number of threads that were ever
+   * writing to it at once.
+   */
+
+  private static final class WriterCheckingTransport
+    implements HBTransportType<ETCP0MessageType, ETCP0Exception>
+  {
+    private final AtomicInteger writers = new AtomicInteger();
+    private final AtomicInteger maximumWriters = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private void write()
+    {
+      final var now = this.writers.incrementAndGet();
+      this.maximumWriters.accumulateAndGet(now, Math::max);
+      this.writes.incrementAndGet();
+      Thread.onSpinWait();
+      Thread.yield();
+      this.writers.decrementAndGet();
+    }
+
+    @Override
+    public HBReadType<ETCP0MessageType> receive(
+      final Duration timeout)
+    {
+      return new HBReadNothing<>();
+    }
+
+    @Override
+    public void send(
+      final ETCP0MessageType message)
+    {
+      this.write();
+    }
+
+    @Override
+    public void sendAndForget(
+      final ETCP0MessageType message)
+    {
+      this.write();
+    }
+
+    @Override
+    public ETCP0MessageType sendAndWait(
+      final ETCP0MessageType message,
+      final Duration timeout)
+      throws TimeoutException
+    {
+      this.write();
+      throw new TimeoutException();
+    }
+
+    @Override
+    public void cancel(
+      final ETCP0MessageType message)
+    {
+      this.write();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+      return false;
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+  }
+
+  @Test
+  public void testLossTimesOut()
+    throws Exception
+  {
+    final var pair = pair();
+    final var configuration =
+      HBFaultConfiguration.none(0L)
+        .withLoss(1.0, 0.0);
+
+    try (var client = faulty(pair.client(), configuration)) {
+      assertThrows(TimeoutException.class, () -> {
+        client.sendAndWait(
+          new ETCP0CommandHello(UUID.randomUUID(), "Hello!"),
+          Duration.ofMillis(100L)
+        );
+      });
+      assertEquals(0, pair.server().inboxSize());
+    }
+  }
+}
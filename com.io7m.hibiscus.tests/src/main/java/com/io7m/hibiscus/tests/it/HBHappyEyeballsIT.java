@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBHappyEyeballs;
+import com.io7m.hibiscus.api.HBHappyEyeballsConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBHappyEyeballsIT
+{
+  private static final HBHappyEyeballsConfiguration CONFIGURATION =
+    new HBHappyEyeballsConfiguration(
+      Duration.ofMillis(50L),
+      Duration.ofSeconds(30L)
+    );
+
+  private ServerSocket server;
+  private InetSocketAddress address;
+  private List<StallingSocket> stalled;
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.address = (InetSocketAddress) this.server.getLocalSocketAddress();
+    this.stalled = new ArrayList<>();
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    this.server.close();
+  }
+
+  /**
+   * A socket whose connection attempt never completes, as if the address
+   * were blackholed, until the socket is closed.
+   */
+
+  private static final class StallingSocket extends Socket
+  {
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public void connect(
+      final SocketAddress endpoint,
+      final int timeout)
+      throws IOException
+    {
+      try {
+        this.closed.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new SocketException("Socket closed");
+    }
+
+    @Override
+    public synchronized void close()
+      throws IOException
+    {
+      this.closed.countDown();
+      super.close();
+    }
+
+    boolean isClosedByRace()
+    {
+      return this.closed.getCount() == 0L;
+    }
+  }
+
+  private Socket stalling()
+  {
+    final var socket = new StallingSocket();
+    synchronized (this.stalled) {
+      this.stalled.add(socket);
+    }
+    return socket;
+  }
+
+  private static InetSocketAddress refusing()
+    throws IOException
+  {
+    try (var socket =
+           new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+  }
+
+  @Test
+  public void testOrderAlternatesFamilies()
+    throws Exception
+  {
+    final var v4a = InetAddress.getByName("192.0.2.1");
+    final var v4b = InetAddress.getByName("192.0.2.2");
+    final var v6a = InetAddress.getByName("2001:db8::1");
+    final var v6b = InetAddress.getByName("2001:db8::2");
+
+    assertEquals(
+      List.of(v6a, v4a, v6b, v4b),
+      HBHappyEyeballs.order(List.of(v6a, v6b, v4a, v4b))
+    );
+    assertEquals(
+      List.of(v4a, v6a, v4b),
+      HBHappyEyeballs.order(List.of(v4a, v4b, v6a))
+    );
+  }
+
+  @Test
+  public void testStalledAddressIsOvertaken()
+    throws Exception
+  {
+    final var calls = new AtomicInteger();
+
+    final var timeThen = System.nanoTime();
+    try (var socket = HBHappyEyeballs.connect(
+      List.of(this.address, this.address),
+      CONFIGURATION,
+      () -> calls.getAndIncrement() == 0 ? this.stalling() : new Socket(),
+      Duration.ofSeconds(30L)
+    )) {
+      final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+      assertTrue(socket.isConnected());
+      assertTrue(
+        elapsed.compareTo(Duration.ofSeconds(5L)) < 0,
+        "Connected in %s".formatted(elapsed)
+      );
+    }
+
+    assertEquals(1, this.stalled.size());
+    assertTrue(this.stalled.get(0).isClosedByRace());
+  }
+
+  @Test
+  public void testFailureStartsNextAttemptImmediately()
+    throws Exception
+  {
+    final var slow =
+      new HBHappyEyeballsConfiguration(
+        Duration.ofSeconds(30L),
+        Duration.ofSeconds(30L)
+      );
+
+    try (var socket = HBHappyEyeballs.connect(
+      List.of(refusing(), this.address),
+      slow,
+      Socket::new,
+      Duration.ofSeconds(10L)
+    )) {
+      assertTrue(socket.isConnected());
+    }
+  }
+
+  @Test
+  public void testAllRefused()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(ConnectException.class, () -> {
+        HBHappyEyeballs.connect(
+          List.of(refusing(), refusing()),
+          CONFIGURATION,
+          Socket::new,
+          Duration.ofSeconds(10L)
+        );
+      });
+
+    assertEquals(2, ex.getSuppressed().length);
+  }
+
+  @Test
+  public void testAllStalled()
+    throws Exception
+  {
+    assertThrows(SocketTimeoutException.class, () -> {
+      HBHappyEyeballs.connect(
+        List.of(this.address, this.address),
+        CONFIGURATION,
+        this::stalling,
+        Duration.ofMillis(300L)
+      );
+    });
+
+    assertEquals(2, this.stalled.size());
+    for (final var socket : this.stalled) {
+      assertTrue(socket.isClosedByRace());
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBInboxKind;
+import com.io7m.hibiscus.api.HBInboxType;
+import com.io7m.hibiscus.api.HBMailbox;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBUnsolicitedConfiguration;
+import com.io7m.hibiscus.api.HBWaitStrategy;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>Compare the throughput of the queues that transports receive into,
+ * under the many-producer, one-consumer pattern of a transport inbox: a
+ * plain {@link LinkedBlockingQueue}, the {@link HBMailbox} used by the TCP
+ * and UDP transports, and each kind of {@link HBInboxType} used by the
+ * HTTP transport.</p>
+ *
+ * <p>The numbers depend on the machine, and so they are logged rather than
+ * asserted. The class name does not match the integration test pattern,
+ * so the benchmark never runs as part of {@code verify}. Run it with
+ * {@code mvn verify -Dit.test=HBInboxBenchmark}.</p>
+ */
+
+public final class HBInboxBenchmark
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBInboxBenchmark.class);
+
+  private static final int PRODUCERS = 4;
+  private static final int CAPACITY = 1024;
+  private static final int WARMUP = 20_000;
+  private static final int COUNT = 200_000;
+
+  @Test
+  public void testBenchmark()
+    throws Exception
+  {
+    final var candidates = new LinkedHashMap<String, QueueType>();
+    candidates.put("LinkedBlockingQueue", linkedBlockingQueue());
+    candidates.put("HBMailbox", mailbox());
+    candidates.put(
+      "LINKED",
+      inbox(HBInboxKind.LINKED, HBWaitStrategy.BLOCKING));
+    candidates.put(
+      "RING/BLOCKING",
+      inbox(HBInboxKind.RING, HBWaitStrategy.BLOCKING));
+    candidates.put(
+      "RING/YIELDING",
+      inbox(HBInboxKind.RING, HBWaitStrategy.YIELDING));
+
+    /*
+     * A busy-spinning consumer is only measured when it has a core to
+     * itself, as it otherwise competes with the producers it waits for.
+     */
+
+    if (Runtime.getRuntime().availableProcessors() > PRODUCERS) {
+      candidates.put(
+        "RING/BUSY_SPIN",
+        inbox(HBInboxKind.RING, HBWaitStrategy.BUSY_SPIN));
+    }
+
+    for (final var entry : candidates.entrySet()) {
+      final var queue = entry.getValue();
+      transfer(queue, WARMUP);
+
+      final var timeThen = System.nanoTime();
+      transfer(queue, COUNT);
+      final var timeTaken = System.nanoTime() - timeThen;
+
+      LOG.info(
+        "{}: {} messages/s",
+        entry.getKey(),
+        Long.valueOf(((long) COUNT * PRODUCERS * 1_000_000_000L) / timeTaken)
+      );
+    }
+  }
+
+  private interface QueueType
+  {
+    void put(long[] item)
+      throws InterruptedException;
+
+    long[] poll(long timeout, TimeUnit unit)
+      throws InterruptedException;
+  }
+
+  private static QueueType linkedBlockingQueue()
+  {
+    final var queue = new LinkedBlockingQueue<long[]>(CAPACITY);
+    return new QueueType()
+    {
+      @Override
+      public void put(final long[] item)
+        throws InterruptedException
+      {
+        queue.put(item);
+      }
+
+      @Override
+      public long[] poll(final long timeout, final TimeUnit unit)
+        throws InterruptedException
+      {
+        return queue.poll(timeout, unit);
+      }
+    };
+  }
+
+  private static QueueType mailbox()
+  {
+    final var mailbox =
+      new HBMailbox<long[]>(HBUnsolicitedConfiguration.defaults(), x -> { });
+    return new QueueType()
+    {
+      @Override
+      public void put(final long[] item)
+      {
+        mailbox.putResponse(item);
+      }
+
+      @Override
+      public long[] poll(final long timeout, final TimeUnit unit)
+        throws InterruptedException
+      {
+        return mailbox.poll(timeout, unit);
+      }
+    };
+  }
+
+  private static QueueType inbox(
+    final HBInboxKind kind,
+    final HBWaitStrategy waitStrategy)
+  {
+    final HBInboxType<long[]> inbox =
+      HBPerformanceConfiguration.defaults()
+        .withInboxCapacity(CAPACITY)
+        .withInbox(kind, waitStrategy)
+        .createInbox();
+
+    return new QueueType()
+    {
+      @Override
+      public void put(final long[] item)
+        throws InterruptedException
+      {
+        inbox.put(item);
+      }
+
+      @Override
+      public long[] poll(final long timeout, final TimeUnit unit)
+        throws InterruptedException
+      {
+        return inbox.poll(timeout, unit);
+      }
+    };
+  }
+
+  private static void transfer(
+    final QueueType queue,
+    final int count)
+    throws Exception
+  {
+    final var producers = new Thread[PRODUCERS];
+    for (int index = 0; index < producers.length; ++index) {
+      final var producer = index;
+      producers[index] = Thread.ofPlatform().start(() -> {
+        try {
+          for (int sequence = 0; sequence < count; ++sequence) {
+            queue.put(new long[]{producer, sequence});
+          }
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    }
+
+    final var expected = new long[PRODUCERS];
+    for (int received = 0; received < count * PRODUCERS; ++received) {
+      final var item = queue.poll(10L, TimeUnit.SECONDS);
+      assertTrue(item != null, "Element %d arrived".formatted(received));
+
+      final var producer = (int) item[0];
+      assertEquals(expected[producer], item[1]);
+      ++expected[producer];
+    }
+
+    for (final var producer : producers) {
+      producer.join();
+    }
+  }
+}
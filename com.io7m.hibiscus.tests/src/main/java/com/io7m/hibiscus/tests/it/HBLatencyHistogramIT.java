@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBLatencyHistogram;
+import com.io7m.hibiscus.api.HBLatencyStage;
+import com.io7m.hibiscus.api.HBStageLatencies;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBLatencyHistogramIT
+{
+  /**
+   * Bucket 0 counts zero, and bucket i counts [2^(i-1), 2^i).
+   */
+
+  @Test
+  public void testBuckets()
+  {
+    final var histogram = new HBLatencyHistogram();
+    histogram.record(0L);
+    histogram.record(-5L);
+    histogram.record(1L);
+    histogram.record(2L);
+    histogram.record(3L);
+    histogram.record(4L);
+    histogram.record(1023L);
+    histogram.record(1024L);
+
+    final var buckets = histogram.buckets();
+    assertEquals(64, buckets.length);
+    assertEquals(2L, buckets[0]);
+    assertEquals(1L, buckets[1]);
+    assertEquals(2L, buckets[2]);
+    assertEquals(1L, buckets[3]);
+    assertEquals(1L, buckets[10]);
+    assertEquals(1L, buckets[11]);
+
+    assertEquals(8L, histogram.count());
+    assertEquals(2057L, histogram.totalNanos());
+    assertEquals(1024L, histogram.maximumNanos());
+  }
+
+  /**
+   * A percentile is the upper bound of the bucket holding its rank, capped
+   * at the maximum.
+   */
+
+  @Test
+  public void testPercentiles()
+  {
+    final var histogram = new HBLatencyHistogram();
+    for (int index = 0; index < 90; ++index) {
+      histogram.record(100L);
+    }
+    for (int index = 0; index < 10; ++index) {
+      histogram.record(10_000L);
+    }
+
+    assertEquals(1090.0, histogram.meanNanos());
+    assertEquals(127L, histogram.percentileNanos(0.0));
+    assertEquals(127L, histogram.percentileNanos(0.5));
+    assertEquals(127L, histogram.percentileNanos(0.9));
+    assertEquals(10_000L, histogram.percentileNanos(0.91));
+    assertEquals(10_000L, histogram.percentileNanos(0.99));
+    assertEquals(10_000L, histogram.percentileNanos(1.0));
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final var histogram = new HBLatencyHistogram();
+    assertEquals(0L, histogram.count());
+    assertEquals(0.0, histogram.meanNanos());
+    assertEquals(0L, histogram.percentileNanos(0.99));
+  }
+
+  @Test
+  public void testPercentileInvalid()
+  {
+    final var histogram = new HBLatencyHistogram();
+    assertThrows(IllegalArgumentException.class, () -> {
+      histogram.percentileNanos(1.5);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      histogram.percentileNanos(Double.NaN);
+    });
+  }
+
+  /**
+   * Each stage has its own histogram, created once.
+   */
+
+  @Test
+  public void testStages()
+  {
+    final var latencies = new HBStageLatencies(Duration.ofSeconds(1L));
+    latencies.record(HBLatencyStage.ENCODE, 10L);
+    latencies.record(HBLatencyStage.ENCODE, 20L);
+    latencies.record(HBLatencyStage.NETWORK, 30L);
+
+    assertSame(
+      latencies.histogram(HBLatencyStage.ENCODE),
+      latencies.histogram(HBLatencyStage.ENCODE)
+    );
+    assertEquals(2L, latencies.histogram(HBLatencyStage.ENCODE).count());
+    assertEquals(1L, latencies.histogram(HBLatencyStage.NETWORK).count());
+    assertEquals(0L, latencies.histogram(HBLatencyStage.DECODE).count());
+  }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBFlightDirection;
+import com.io7m.hibiscus.api.HBLoopbackPair;
+import com.io7m.hibiscus.api.HBLoopbackTransport;
+import com.io7m.hibiscus.api.HBReadNothing;
+import com.io7m.hibiscus.api.HBReadReceived;
+import com.io7m.hibiscus.api.HBReadResponse;
+import com.io7m.hibiscus.api.HBReceiveHandlerType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Codec;
+import com.io7m.hibiscus.examples.tcp0.ETCP0CommandHello;
+import com.io7m.hibiscus.examples.tcp0.ETCP0CommandLogin;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Exception;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageIdentity;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseFailure;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseOK;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBLoopbackIT
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBLoopbackIT.class);
+
+  private HBLoopbackPair<ETCP0MessageType, ETCP0Exception> pair;
+  private Thread serverThread;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.pair =
+      HBLoopbackTransport.createPair(
+        ETCP0MessageIdentity.get(),
+        ETCP0Exception::new
+      );
+
+    this.serverThread =
+      Thread.startVirtualThread(this::serve);
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.pair.client().close();
+    this.serverThread.join();
+  }
+
+  private void serve()
+  {
+    final var server = this.pair.server();
+    try {
+      while (!server.isClosed()) {
+        final var r = server.receive(Duration.ofMillis(100L));
+        if (r instanceof final HBReadReceived<ETCP0MessageType> rr) {
+          server.sendAndForget(
+            new ETCP0ResponseOK(UUID.randomUUID(), rr.message().messageId())
+          );
+        }
+      }
+    } catch (final Exception e) {
+      LOG.debug("Server: ", e);
+    }
+  }
+
+  @Test
+  public void testSendAndWait()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var count = 100_000;
+
+    final var timeThen = System.nanoTime();
+    for (int index = 0; index < count; ++index) {
+      final var command =
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+      final var r =
+        client.sendAndWait(command, Duration.ofSeconds(5L));
+      assertEquals(
+        command.messageId(),
+        assertInstanceOf(ETCP0ResponseOK.class, r).correlationId()
+      );
+    }
+    final var timeNow = System.nanoTime();
+
+    LOG.info(
+      "Round trip: {} ns/op",
+      Long.valueOf((timeNow - timeThen) / count)
+    );
+  }
+
+  @Test
+  public void testSendReceive()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var command =
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+
+    client.send(command);
+
+    final var r =
+      assertInstanceOf(
+        HBReadResponse.class,
+        client.receive(Duration.ofSeconds(5L))
+      );
+    assertEquals(command, r.message());
+    assertInstanceOf(
+      HBReadNothing.class,
+      client.receive(Duration.ofMillis(10L))
+    );
+  }
+
+  @Test
+  public void testReceiveHandler()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var command =
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+    final var unsolicited =
+      new ETCP0CommandHello(UUID.randomUUID(), "Unsolicited");
+
+    final var received = new ArrayList<ETCP0MessageType>();
+    final var responses = new ArrayList<ETCP0MessageType>();
+    final var handler = new HBReceiveHandlerType<ETCP0MessageType>()
+    {
+      @Override
+      public void onReceived(
+        final ETCP0MessageType message)
+      {
+        received.add(message);
+      }
+
+      @Override
+      public void onResponse(
+        final ETCP0MessageType message,
+        final ETCP0MessageType response)
+      {
+        responses.add(message);
+      }
+    };
+
+    client.send(command);
+    assertTrue(client.receive(Duration.ofSeconds(5L), handler));
+    assertEquals(List.of(command), responses);
+
+    this.pair.server().sendAndForget(unsolicited);
+    assertTrue(client.receive(Duration.ofSeconds(5L), handler));
+    assertEquals(List.of(unsolicited), received);
+
+    assertFalse(client.receive(Duration.ofMillis(10L), handler));
+    assertEquals(1, received.size());
+    assertEquals(1, responses.size());
+  }
+
+  @Test
+  public void testClosed()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    this.pair.server().close();
+
+    assertTrue(client.isClosed());
+    assertThrows(ETCP0Exception.class, () -> {
+      client.sendAndForget(new ETCP0CommandHello(UUID.randomUUID(), "Hello!"));
+    });
+    assertThrows(ETCP0Exception.class, () -> {
+      client.receive(Duration.ZERO);
+    });
+    assertThrows(ETCP0Exception.class, () -> {
+      client.receive(Duration.ZERO, new HBReceiveHandlerType<>()
+      {
+        @Override
+        public void onReceived(
+          final ETCP0MessageType message)
+        {
+
+        }
+
+        @Override
+        public void onResponse(
+          final ETCP0MessageType message,
+          final ETCP0MessageType response)
+        {
+
+        }
+      });
+    });
+  }
+
+  @Test
+  public void testFlightRecorder()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var recorder = client.flightRecorder().orElseThrow();
+
+    UUID lastId = null;
+    for (int index = 0; index < 2000; ++index) {
+      final var command =
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+      client.sendAndWait(command, Duration.ofSeconds(5L));
+      lastId = command.messageId();
+    }
+
+    final var records = recorder.dump();
+    assertEquals(4000L, recorder.recorded());
+    assertEquals(recorder.capacity(), records.size());
+
+    final var last = records.get(records.size() - 1);
+    assertEquals(HBFlightDirection.RECEIVED, last.direction());
+    assertEquals(ETCP0ResponseOK.class, last.messageClass());
+    assertEquals(Optional.of(lastId), last.correlationId());
+
+    for (int index = 1; index < records.size(); ++index) {
+      assertEquals(
+        records.get(index - 1).sequence() + 1L,
+        records.get(index).sequence()
+      );
+    }
+  }
+
+  @Test
+  public void testFlightRecorderCaptureOnTimeout()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var recorder = client.flightRecorder().orElseThrow();
+    this.serverThread.interrupt();
+    this.serverThread.join();
+
+    final var command =
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+
+    assertEquals(List.of(), recorder.lastCapture());
+    assertThrows(TimeoutException.class, () -> {
+      client.sendAndWait(command, Duration.ofMillis(10L));
+    });
+
+    final var captured = recorder.lastCapture();
+    assertEquals(command.messageId(), captured.get(0).messageId());
+    assertEquals(HBFlightDirection.SENT, captured.get(0).direction());
+  }
+
+  @Test
+  public void testCancel()
+    throws Exception
+  {
+    final var client = this.pair.client();
+    final var server = this.pair.server();
+    this.serverThread.interrupt();
+    this.serverThread.join();
+
+    /*
+     * Messages that the server has not yet read are withdrawn, whether
+     * cancelled explicitly or by timing out.
+     */
+
+    final var sent = new ETCP0CommandHello(UUID.randomUUID(), "Hello!");
+    client.send(sent);
+    assertEquals(1, server.inboxSize());
+    client.cancel(sent);
+    assertEquals(0, server.inboxSize());
+
+    assertThrows(TimeoutException.class, () -> {
+      client.sendAndWait(
+        new ETCP0CommandHello(UUID.randomUUID(), "Hello!"),
+        Duration.ofMillis(10L)
+      );
+    });
+    assertEquals(0, server.inboxSize());
+  }
+
+  @Test
+  public void testCodec()
+    throws Exception
+  {
+    final var codecPair =
+      HBLoopbackTransport.createPair(
+        ETCP0MessageIdentity.get(),
+        ETCP0Codec.get(),
+        ETCP0Exception::new
+      );
+
+    final var messages = List.of(
+      new ETCP0CommandLogin(UUID.randomUUID(), "user", "pass\u00e9"),
+      new ETCP0CommandHello(UUID.randomUUID(), "Hello \uD83C\uDF3A!"),
+      new ETCP0CommandHello(UUID.randomUUID(), "Unpaired \uD83C."),
+      new ETCP0ResponseOK(UUID.randomUUID(), UUID.randomUUID()),
+      new ETCP0ResponseFailure(UUID.randomUUID(), UUID.randomUUID(), "\u2603")
+    );
+
+    try {
+      for (final var message : messages) {
+        codecPair.client().sendAndForget(message);
+        final var r =
+          assertInstanceOf(
+            HBReadReceived.class,
+            codecPair.server().receive(Duration.ofSeconds(1L))
+          );
+
+        if (message instanceof final ETCP0CommandHello hello
+            && hello.message().startsWith("Unpaired")) {
+          assertEquals(
+            new ETCP0CommandHello(hello.messageId(), "Unpaired ?."),
+            r.message()
+          );
+        } else {
+          assertEquals(message, r.message());
+        }
+        assertEquals(
+          ETCP0Codec.get().toBytes(message).length,
+          ETCP0Codec.get().sizeOf(message)
+        );
+      }
+    } finally {
+      codecPair.client().close();
+    }
+  }
+}
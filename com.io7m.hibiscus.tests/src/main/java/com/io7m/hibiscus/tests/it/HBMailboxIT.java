@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBMailbox;
+import com.io7m.hibiscus.api.HBOverflowPolicy;
+import com.io7m.hibiscus.api.HBUnsolicitedConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBMailboxIT
+{
+  private static HBMailbox<String> mailbox(
+    final HBOverflowPolicy policy,
+    final List<String> discarded)
+  {
+    return new HBMailbox<>(
+      HBUnsolicitedConfiguration.defaults()
+        .withCapacity(2)
+        .withOverflowPolicy(policy),
+      discarded::add
+    );
+  }
+
+  private static String poll(
+    final HBMailbox<String> mailbox)
+    throws InterruptedException
+  {
+    return mailbox.poll(0L, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Responses are handed out ahead of unsolicited messages, and are never
+   * subject to the bound.
+   */
+
+  @Test
+  public void testResponsesFirst()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.DROP_NEWEST, discarded);
+
+    assertTrue(mailbox.putUnsolicited("u0"));
+    assertTrue(mailbox.putUnsolicited("u1"));
+    for (int index = 0; index < 10; ++index) {
+      mailbox.putResponse("r" + index);
+    }
+
+    for (int index = 0; index < 10; ++index) {
+      assertEquals("r" + index, poll(mailbox));
+    }
+    assertEquals("u0", poll(mailbox));
+    assertEquals("u1", poll(mailbox));
+    assertNull(poll(mailbox));
+    assertEquals(List.of(), discarded);
+  }
+
+  /**
+   * The oldest unsolicited message makes way for the newest.
+   */
+
+  @Test
+  public void testDropOldest()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.DROP_OLDEST, discarded);
+
+    for (int index = 0; index < 5; ++index) {
+      assertTrue(mailbox.putUnsolicited("u" + index));
+    }
+
+    assertEquals(List.of("u0", "u1", "u2"), discarded);
+    assertEquals(3L, mailbox.dropped());
+    assertEquals("u3", poll(mailbox));
+    assertEquals("u4", poll(mailbox));
+    assertNull(poll(mailbox));
+  }
+
+  /**
+   * The newest unsolicited message is discarded when the queue is full.
+   */
+
+  @Test
+  public void testDropNewest()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.DROP_NEWEST, discarded);
+
+    for (int index = 0; index < 5; ++index) {
+      assertTrue(mailbox.putUnsolicited("u" + index));
+    }
+
+    assertEquals(List.of("u2", "u3", "u4"), discarded);
+    assertEquals("u0", poll(mailbox));
+    assertEquals("u1", poll(mailbox));
+    assertNull(poll(mailbox));
+  }
+
+  /**
+   * A full queue under the disconnect policy refuses the message and tells
+   * the caller to disconnect.
+   */
+
+  @Test
+  public void testDisconnect()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.DISCONNECT, discarded);
+
+    assertTrue(mailbox.putUnsolicited("u0"));
+    assertTrue(mailbox.putUnsolicited("u1"));
+    assertFalse(mailbox.putUnsolicited("u2"));
+    assertEquals(List.of("u2"), discarded);
+  }
+
+  /**
+   * A reader blocked on a full queue resumes when the consumer makes space.
+   */
+
+  @Test
+  public void testBlock()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.BLOCK, discarded);
+
+    assertTrue(mailbox.putUnsolicited("u0"));
+    assertTrue(mailbox.putUnsolicited("u1"));
+
+    final var reader = Thread.ofVirtual().start(() -> {
+      try {
+        mailbox.putUnsolicited("u2");
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    Thread.sleep(10L);
+    assertTrue(reader.isAlive());
+    assertEquals("u0", poll(mailbox));
+    reader.join();
+
+    assertEquals("u1", poll(mailbox));
+    assertEquals("u2", poll(mailbox));
+    assertEquals(List.of(), discarded);
+  }
+
+  /**
+   * Offering never blocks under the blocking policy; messages that do not
+   * fit are held, in order, until the consumer makes space.
+   */
+
+  @Test
+  public void testOfferBlockHolds()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.BLOCK, discarded);
+
+    for (int index = 0; index < 5; ++index) {
+      assertTrue(mailbox.offerUnsolicited("u" + index));
+    }
+    assertEquals(5, mailbox.size());
+
+    mailbox.putResponse("r0");
+    assertEquals("r0", poll(mailbox));
+    for (int index = 0; index < 5; ++index) {
+      assertEquals("u" + index, poll(mailbox));
+    }
+    assertNull(poll(mailbox));
+    assertEquals(List.of(), discarded);
+    assertEquals(0L, mailbox.dropped());
+  }
+
+  /**
+   * Offering under the other policies behaves as putting.
+   */
+
+  @Test
+  public void testOfferDropNewest()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox = mailbox(HBOverflowPolicy.DROP_NEWEST, discarded);
+
+    assertTrue(mailbox.offerUnsolicited("u0"));
+    assertTrue(mailbox.offerUnsolicited("u1"));
+    assertTrue(mailbox.offerUnsolicited("u2"));
+
+    assertEquals(List.of("u2"), discarded);
+    assertEquals("u0", poll(mailbox));
+    assertEquals("u1", poll(mailbox));
+    assertNull(poll(mailbox));
+  }
+
+  /**
+   * Unsolicited messages that outlive their time to live are discarded
+   * rather than handed out, and their expiry releases a blocked reader.
+   */
+
+  @Test
+  public void testTimeToLive()
+    throws Exception
+  {
+    final var discarded = new ArrayList<String>();
+    final var mailbox =
+      new HBMailbox<String>(
+        HBUnsolicitedConfiguration.defaults()
+          .withCapacity(2)
+          .withOverflowPolicy(HBOverflowPolicy.BLOCK)
+          .withTimeToLive(Duration.ofMillis(50L)),
+        discarded::add
+      );
+
+    assertTrue(mailbox.putUnsolicited("u0"));
+    assertTrue(mailbox.putUnsolicited("u1"));
+    assertTrue(mailbox.putUnsolicited("u2"));
+    assertTrue(mailbox.putUnsolicited("u3"));
+
+    assertEquals(List.of("u0", "u1"), discarded);
+    assertEquals(2L, mailbox.expired());
+
+    Thread.sleep(100L);
+    assertNull(poll(mailbox));
+    assertEquals(List.of("u0", "u1", "u2", "u3"), discarded);
+    assertEquals(0, mailbox.size());
+  }
+}
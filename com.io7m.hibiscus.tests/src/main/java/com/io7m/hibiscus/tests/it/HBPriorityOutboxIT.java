@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBMessagePriority;
+import com.io7m.hibiscus.api.HBPriorityOutbox;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBPriorityOutboxIT
+{
+  /**
+   * A message queued behind bulk data is written first if its priority is
+   * higher, and each lane is written in the order it was queued.
+   */
+
+  @Test
+  public void testLaneOrder()
+  {
+    final var outbox = new HBPriorityOutbox<String>(100);
+
+    for (int index = 0; index < 10; ++index) {
+      outbox.offer(HBMessagePriority.BULK, "b" + index);
+    }
+    outbox.offer(HBMessagePriority.NORMAL, "n0");
+    outbox.offer(HBMessagePriority.CONTROL, "c0");
+    outbox.offer(HBMessagePriority.NORMAL, "n1");
+
+    assertEquals("c0", outbox.poll());
+    assertEquals("n0", outbox.poll());
+    assertEquals("n1", outbox.poll());
+    for (int index = 0; index < 10; ++index) {
+      assertEquals("b" + index, outbox.poll());
+    }
+    assertNull(outbox.poll());
+    assertTrue(outbox.isEmpty());
+  }
+
+  /**
+   * A lane that is passed over more than the starvation limit allows is
+   * served ahead of the busier, higher priority lane, and then waits its
+   * turn again.
+   */
+
+  @Test
+  public void testStarvationLimit()
+  {
+    final var limit = 3;
+    final var outbox = new HBPriorityOutbox<String>(limit);
+
+    for (int index = 0; index < 20; ++index) {
+      outbox.offer(HBMessagePriority.CONTROL, "c" + index);
+    }
+    outbox.offer(HBMessagePriority.BULK, "b0");
+    outbox.offer(HBMessagePriority.BULK, "b1");
+
+    final var written = new ArrayList<String>();
+    while (true) {
+      final var item = outbox.poll();
+      if (item == null) {
+        break;
+      }
+      written.add(item);
+    }
+
+    assertEquals(22, written.size());
+    assertEquals(limit, written.indexOf("b0"));
+    assertEquals(limit * 2 + 1, written.indexOf("b1"));
+
+    final var control =
+      written.stream()
+        .filter(item -> item.startsWith("c"))
+        .toList();
+    for (int index = 0; index < 20; ++index) {
+      assertEquals("c" + index, control.get(index));
+    }
+  }
+
+  /**
+   * A starvation limit must be positive.
+   */
+
+  @Test
+  public void testInvalidLimit()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new HBPriorityOutbox<String>(0);
+    });
+  }
+}
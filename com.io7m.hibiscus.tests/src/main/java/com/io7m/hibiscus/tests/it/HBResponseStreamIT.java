@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBResponseStream;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseOK;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBResponseStreamIT
+{
+  private static ETCP0ResponseOK part()
+  {
+    return new ETCP0ResponseOK(UUID.randomUUID(), UUID.randomUUID());
+  }
+
+  /**
+   * Parts are delivered only as they are requested, and demand is passed
+   * on to the peer.
+   */
+
+  @Test
+  public void testDemand()
+  {
+    final var demand = new ArrayList<Long>();
+    final var stream =
+      HBResponseStream.<ETCP0MessageType>create(demand::add, () -> { });
+    final var subscriber = new Recorder();
+    stream.subscribe(subscriber);
+
+    final var parts = List.of(part(), part(), part());
+    for (final var p : parts) {
+      stream.offer(p);
+    }
+    assertEquals(List.of(), subscriber.received);
+
+    subscriber.subscription.request(2L);
+    assertEquals(parts.subList(0, 2), subscriber.received);
+
+    subscriber.subscription.request(1L);
+    assertEquals(parts, subscriber.received);
+    assertEquals(List.of(Long.valueOf(2L), Long.valueOf(1L)), demand);
+
+    assertEquals(0, subscriber.completed.get());
+    stream.complete();
+    assertEquals(1, subscriber.completed.get());
+  }
+
+  /**
+   * Cancelling tells the peer to stop, and later parts are discarded.
+   */
+
+  @Test
+  public void testCancel()
+  {
+    final var cancels = new AtomicInteger();
+    final var stream =
+      HBResponseStream.<ETCP0MessageType>create(
+        n -> { },
+        cancels::incrementAndGet
+      );
+    final var subscriber = new Recorder();
+    stream.subscribe(subscriber);
+
+    stream.offer(part());
+    subscriber.subscription.cancel();
+    subscriber.subscription.cancel();
+    stream.offer(part());
+    subscriber.subscription.request(10L);
+
+    assertEquals(1, cancels.get());
+    assertEquals(List.of(), subscriber.received);
+    assertTrue(stream.isDone());
+  }
+
+  /**
+   * A request for a non-positive number of parts is an error that is
+   * signalled at once rather than after the buffered parts, and that
+   * cancels the stream.
+   */
+
+  @Test
+  public void testNonPositiveDemand()
+  {
+    final var cancels = new AtomicInteger();
+    final var stream =
+      HBResponseStream.<ETCP0MessageType>create(
+        n -> { },
+        cancels::incrementAndGet
+      );
+    final var subscriber = new Recorder();
+    stream.subscribe(subscriber);
+
+    stream.offer(part());
+    stream.offer(part());
+    subscriber.subscription.request(0L);
+
+    assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+    assertEquals(List.of(), subscriber.received);
+    assertEquals(1, cancels.get());
+    assertTrue(stream.isDone());
+
+    subscriber.subscription.request(10L);
+    stream.complete();
+    assertEquals(List.of(), subscriber.received);
+    assertEquals(0, subscriber.completed.get());
+  }
+
+  /**
+   * A stream has a single subscriber.
+   */
+
+  @Test
+  public void testSingleSubscriber()
+  {
+    final var stream = HBResponseStream.<ETCP0MessageType>of(part());
+    final var first = new Recorder();
+    final var second = new Recorder();
+    stream.subscribe(first);
+    stream.subscribe(second);
+
+    first.subscription.request(Long.MAX_VALUE);
+    assertEquals(1, first.received.size());
+    assertEquals(1, first.completed.get());
+    assertInstanceOf(IllegalStateException.class, second.error);
+  }
+
+  private static final class Recorder
+    implements Flow.Subscriber<ETCP0MessageType>
+  {
+    private final List<ETCP0MessageType> received = new ArrayList<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private Flow.Subscription subscription;
+    private Throwable error;
+
+    Recorder()
+    {
+
+    }
+
+    @Override
+    public void onSubscribe(
+      final Flow.Subscription inSubscription)
+    {
+      this.subscription = inSubscription;
+    }
+
+    @Override
+    public void onNext(
+      final ETCP0MessageType item)
+    {
+      this.received.add(item);
+    }
+
+    @Override
+    public void onError(
+      final Throwable throwable)
+    {
+      this.error = throwable;
+    }
+
+    @Override
+    public void onComplete()
+    {
+      this.completed.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBInboxKind;
+import com.io7m.hibiscus.api.HBInboxType;
+import com.io7m.hibiscus.api.HBPerformanceConfiguration;
+import com.io7m.hibiscus.api.HBRingBuffer;
+import com.io7m.hibiscus.api.HBWaitStrategy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBRingBufferIT
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBRingBufferIT.class);
+
+  private static final int PRODUCERS = 4;
+
+  /**
+   * Capacities are rounded up to a power of two (of at least two), and a
+   * full buffer refuses further elements.
+   */
+
+  @Test
+  public void testCapacity()
+  {
+    final var ring = new HBRingBuffer<Integer>(5, HBWaitStrategy.BLOCKING);
+    assertEquals(8, ring.capacity());
+
+    for (int index = 0; index < 8; ++index) {
+      assertTrue(ring.offer(Integer.valueOf(index)));
+    }
+    assertFalse(ring.offer(Integer.valueOf(8)));
+    assertEquals(8, ring.size());
+    assertEquals(2, new HBRingBuffer<>(1, HBWaitStrategy.BLOCKING).capacity());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new HBRingBuffer<Integer>(0, HBWaitStrategy.BLOCKING);
+    });
+  }
+
+  /**
+   * Polling an empty buffer times out with every wait strategy.
+   */
+
+  @Test
+  public void testPollTimeout()
+    throws Exception
+  {
+    for (final var strategy : HBWaitStrategy.values()) {
+      final var ring = new HBRingBuffer<Integer>(4, strategy);
+      assertNull(ring.poll(10L, TimeUnit.MILLISECONDS));
+      assertNull(ring.poll(0L, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * A producer waiting for space is released when a consumer takes an
+   * element, with every wait strategy.
+   */
+
+  @Test
+  public void testPutWaitsForSpace()
+    throws Exception
+  {
+    for (final var strategy : HBWaitStrategy.values()) {
+      final var ring = new HBRingBuffer<Integer>(2, strategy);
+      ring.put(Integer.valueOf(0));
+      ring.put(Integer.valueOf(1));
+
+      final var producer = Thread.ofPlatform().start(() -> {
+        try {
+          ring.put(Integer.valueOf(2));
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+
+      Thread.sleep(10L);
+      assertTrue(producer.isAlive());
+      assertEquals(Integer.valueOf(0), ring.poll(1L, TimeUnit.SECONDS));
+      producer.join();
+      assertEquals(Integer.valueOf(1), ring.poll(1L, TimeUnit.SECONDS));
+      assertEquals(Integer.valueOf(2), ring.poll(1L, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Waiting threads can be interrupted, with every wait strategy.
+   */
+
+  @Test
+  public void testInterrupted()
+    throws Exception
+  {
+    for (final var strategy : HBWaitStrategy.values()) {
+      final var ring = new HBRingBuffer<Integer>(1, strategy);
+      final var started = new CountDownLatch(1);
+      final var interrupted = new CountDownLatch(1);
+
+      final var consumer = Thread.ofPlatform().start(() -> {
+        started.countDown();
+        try {
+          ring.poll(1L, TimeUnit.HOURS);
+        } catch (final InterruptedException e) {
+          interrupted.countDown();
+        }
+      });
+
+      started.await();
+      consumer.interrupt();
+      assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+      consumer.join();
+    }
+  }
+
+  /**
+   * Every element from many producers reaches a single consumer, in the
+   * order in which each producer sent it, with every wait strategy. A
+   * busy-spinning consumer is only exercised when it has a core to itself.
+   */
+
+  @Test
+  public void testManyProducers()
+    throws Exception
+  {
+    for (final var strategy : HBWaitStrategy.values()) {
+      if (strategy == HBWaitStrategy.BUSY_SPIN
+          && Runtime.getRuntime().availableProcessors() <= PRODUCERS) {
+        continue;
+      }
+      final var ring = new HBRingBuffer<long[]>(64, strategy);
+      transfer(ring, 20_000);
+    }
+  }
+
+  /**
+   * Under contention from several producers and several consumers, every
+   * kind of inbox delivers every element exactly once, and each consumer
+   * sees any one producer's elements in the order in which they were sent.
+   * A busy-spinning inbox is only exercised when every thread has a core
+   * to itself.
+   */
+
+  @Test
+  public void testManyConsumers()
+    throws Exception
+  {
+    final var base =
+      HBPerformanceConfiguration.defaults()
+        .withInboxCapacity(16);
+
+    final var configurations = new ArrayList<HBPerformanceConfiguration>();
+    configurations.add(
+      base.withInbox(HBInboxKind.LINKED, HBWaitStrategy.BLOCKING));
+    configurations.add(
+      base.withInbox(HBInboxKind.RING, HBWaitStrategy.BLOCKING));
+    configurations.add(
+      base.withInbox(HBInboxKind.RING, HBWaitStrategy.YIELDING));
+
+    if (Runtime.getRuntime().availableProcessors() >= PRODUCERS * 2) {
+      configurations.add(
+        base.withInbox(HBInboxKind.RING, HBWaitStrategy.BUSY_SPIN));
+    }
+
+    for (final var configuration : configurations) {
+      LOG.debug(
+        "{} {}",
+        configuration.inboxKind(),
+        configuration.inboxWaitStrategy()
+      );
+      transferMany(configuration.<long[]>createInbox(), 20_000);
+    }
+  }
+
+  /**
+   * Send {@code count} elements from each of several producers to as many
+   * consumers, and check that no element is lost or duplicated, and that
+   * no consumer sees a producer's elements out of order.
+   */
+
+  private static void transferMany(
+    final HBInboxType<long[]> inbox,
+    final int count)
+    throws Exception
+  {
+    final var total = count * PRODUCERS;
+    final var seen = new AtomicIntegerArray(total);
+    final var remaining = new AtomicInteger(total);
+    final var failures = new ConcurrentLinkedQueue<String>();
+
+    final var consumers = new Thread[PRODUCERS];
+    for (int index = 0; index < consumers.length; ++index) {
+      consumers[index] = Thread.ofPlatform().start(() -> {
+        final var last = new long[PRODUCERS];
+        Arrays.fill(last, -1L);
+
+        try {
+          while (remaining.get() > 0) {
+            final var item = inbox.poll(10L, TimeUnit.MILLISECONDS);
+            if (item == null) {
+              continue;
+            }
+
+            final var producer = (int) item[0];
+            final var sequence = item[1];
+            if (sequence <= last[producer]) {
+              failures.add("Producer %d: %d after %d".formatted(
+                Integer.valueOf(producer),
+                Long.valueOf(sequence),
+                Long.valueOf(last[producer])));
+            }
+            last[producer] = sequence;
+
+            final var slot = producer * count + (int) sequence;
+            if (seen.getAndIncrement(slot) != 0) {
+              failures.add("Duplicate: %d".formatted(Integer.valueOf(slot)));
+            }
+            remaining.decrementAndGet();
+          }
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    }
+
+    final var producers = new Thread[PRODUCERS];
+    for (int index = 0; index < producers.length; ++index) {
+      final var producer = index;
+      producers[index] = Thread.ofPlatform().start(() -> {
+        try {
+          for (int sequence = 0; sequence < count; ++sequence) {
+            inbox.put(new long[]{producer, sequence});
+          }
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    }
+
+    for (final var producer : producers) {
+      producer.join();
+    }
+    for (final var consumer : consumers) {
+      consumer.join(TimeUnit.SECONDS.toMillis(10L));
+      assertFalse(consumer.isAlive(), "Consumer finished");
+    }
+
+    assertEquals(List.of(), List.copyOf(failures));
+    assertEquals(0, remaining.get());
+    for (int slot = 0; slot < total; ++slot) {
+      assertEquals(1, seen.get(slot), "Element %d".formatted(slot));
+    }
+    assertNull(inbox.poll(0L, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Send {@code count} elements from each of several producers and check
+   * that each producer's elements arrive complete and in order.
+   */
+
+  private static void transfer(
+    final HBInboxType<long[]> inbox,
+    final int count)
+    throws Exception
+  {
+    final var producers = new Thread[PRODUCERS];
+    for (int index = 0; index < producers.length; ++index) {
+      final var producer = index;
+      producers[index] = Thread.ofPlatform().start(() -> {
+        try {
+          for (int sequence = 0; sequence < count; ++sequence) {
+            inbox.put(new long[]{producer, sequence});
+          }
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    }
+
+    final var expected = new long[PRODUCERS];
+    for (int received = 0; received < count * PRODUCERS; ++received) {
+      final var item = inbox.poll(10L, TimeUnit.SECONDS);
+      assertTrue(item != null, "Element %d arrived".formatted(received));
+
+      final var producer = (int) item[0];
+      assertEquals(expected[producer], item[1]);
+      ++expected[producer];
+    }
+
+    for (final var producer : producers) {
+      producer.join();
+    }
+    assertNull(inbox.poll(0L, TimeUnit.MILLISECONDS));
+  }
+}
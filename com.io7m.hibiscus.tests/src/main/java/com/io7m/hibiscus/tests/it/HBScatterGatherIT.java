@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.hibiscus.tests.it;
+
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherCancelled;
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherFailed;
+import com.io7m.hibiscus.api.HBGatherOutcomeType.HBGatherSucceeded;
+import com.io7m.hibiscus.api.HBGatherPolicyType.HBGatherAll;
+import com.io7m.hibiscus.api.HBGatherPolicyType.HBGatherAny;
+import com.io7m.hibiscus.api.HBGatherPolicyType.HBGatherQuorum;
+import com.io7m.hibiscus.api.HBGatherPolicyType;
+import com.io7m.hibiscus.api.HBGatherResult;
+import com.io7m.hibiscus.api.HBScatterGather;
+import com.io7m.hibiscus.api.HBStateType.HBStateConnected;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ClientType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Clients;
+import com.io7m.hibiscus.examples.tcp0.ETCP0CommandHello;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Configuration;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ConnectionParameters;
+import com.io7m.hibiscus.examples.tcp0.ETCP0MessageType;
+import com.io7m.hibiscus.examples.tcp0.ETCP0ResponseOK;
+import com.io7m.hibiscus.examples.tcp0.ETCP0Server;
+import com.io7m.jmulticlose.core.CloseableCollection;
+import com.io7m.jmulticlose.core.CloseableCollectionType;
+import com.io7m.jmulticlose.core.ClosingResourceFailedException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(value = 60L, unit = TimeUnit.SECONDS)
+public final class HBScatterGatherIT
+{
+  private static final int PORT = 46100;
+
+  /**
+   * The server takes a second to answer a "Slow" message, so a request
+   * abandoned well within that time was cancelled rather than answered.
+   */
+
+  private static final Duration CANCELLED_WITHIN =
+    Duration.ofMillis(800L);
+
+  private static ETCP0Server SERVER;
+  private static InetSocketAddress ADDRESS;
+
+  private CloseableCollectionType<ClosingResourceFailedException> resources;
+  private List<ETCP0ClientType> clients;
+
+  @BeforeAll
+  public static void setupOnce()
+    throws IOException, InterruptedException
+  {
+    ADDRESS =
+      new InetSocketAddress("localhost", PORT);
+    SERVER =
+      new ETCP0Server(ADDRESS);
+
+    final var latch = new CountDownLatch(1);
+    Thread.startVirtualThread(() -> {
+      try {
+        SERVER.start(latch);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    latch.await(60L, TimeUnit.SECONDS);
+  }
+
+  @AfterAll
+  public static void teardownOnce()
+    throws IOException
+  {
+    SERVER.close();
+  }
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.resources =
+      CloseableCollection.create();
+    this.clients =
+      new ArrayList<>();
+
+    final var factory = new ETCP0Clients();
+    for (int index = 0; index < 3; ++index) {
+      final var client =
+        this.resources.add(factory.create(new ETCP0Configuration()));
+      client.connect(
+        new ETCP0ConnectionParameters(
+          ADDRESS,
+          "someone",
+          "password",
+          Duration.ofSeconds(5L)
+        )
+      );
+      this.clients.add(client);
+    }
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    this.resources.close();
+  }
+
+  private static ETCP0MessageType hello(
+    final String text)
+  {
+    return new ETCP0CommandHello(UUID.randomUUID(), text);
+  }
+
+  /**
+   * Send "Slow" to the clients at the given indices, and "Hello" to the
+   * others.
+   */
+
+  private HBGatherResult<ETCP0ClientType, ETCP0MessageType> gather(
+    final HBGatherPolicyType policy,
+    final Duration deadline,
+    final Set<Integer> slow)
+    throws InterruptedException
+  {
+    return HBScatterGather.sendAndWait(
+      this.clients,
+      client -> {
+        final var index = Integer.valueOf(this.clients.indexOf(client));
+        return hello(slow.contains(index) ? "Slow" : "Hello");
+      },
+      policy,
+      deadline
+    );
+  }
+
+  /**
+   * Every client remains connected and usable after the operation.
+   */
+
+  private void assertClientsUsable()
+    throws Exception
+  {
+    for (final var client : this.clients) {
+      assertInstanceOf(HBStateConnected.class, client.stateNow());
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        client.sendAndWait(hello("Hello"), Duration.ofSeconds(5L))
+      );
+    }
+  }
+
+  @Test
+  public void testAll()
+    throws Exception
+  {
+    final var result =
+      this.gather(new HBGatherAll(), Duration.ofSeconds(5L), Set.of());
+
+    assertTrue(result.satisfied());
+    assertEquals(3, result.responses().size());
+    for (final var outcome : result.outcomes()) {
+      assertInstanceOf(HBGatherSucceeded.class, outcome);
+    }
+  }
+
+  @Test
+  public void testAny()
+    throws Exception
+  {
+    final var timeStart = System.nanoTime();
+    final var result =
+      this.gather(
+        new HBGatherAny(),
+        Duration.ofSeconds(5L),
+        Set.of(Integer.valueOf(1), Integer.valueOf(2))
+      );
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    assertTrue(result.satisfied());
+    assertTrue(elapsed.compareTo(CANCELLED_WITHIN) < 0, elapsed.toString());
+
+    final var outcomes = result.outcomes();
+    assertInstanceOf(HBGatherSucceeded.class, outcomes.get(0));
+    assertInstanceOf(HBGatherCancelled.class, outcomes.get(1));
+    assertInstanceOf(HBGatherCancelled.class, outcomes.get(2));
+    this.assertClientsUsable();
+  }
+
+  @Test
+  public void testQuorum()
+    throws Exception
+  {
+    final var timeStart = System.nanoTime();
+    final var result =
+      this.gather(
+        new HBGatherQuorum(2),
+        Duration.ofSeconds(5L),
+        Set.of(Integer.valueOf(2))
+      );
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    assertTrue(result.satisfied());
+    assertTrue(elapsed.compareTo(CANCELLED_WITHIN) < 0, elapsed.toString());
+    assertEquals(2, result.responses().size());
+    assertInstanceOf(HBGatherCancelled.class, result.outcomes().get(2));
+    this.assertClientsUsable();
+  }
+
+  @Test
+  public void testQuorumMajority()
+  {
+    assertEquals(2, HBGatherQuorum.majorityOf(3).count());
+    assertEquals(3, HBGatherQuorum.majorityOf(4).count());
+    assertEquals(3, new HBGatherQuorum(5).required(3));
+  }
+
+  @Test
+  public void testDeadline()
+    throws Exception
+  {
+    final var timeStart = System.nanoTime();
+    final var result =
+      this.gather(
+        new HBGatherAll(),
+        Duration.ofMillis(200L),
+        Set.of(Integer.valueOf(1))
+      );
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    assertFalse(result.satisfied());
+    assertTrue(elapsed.compareTo(CANCELLED_WITHIN) < 0, elapsed.toString());
+    assertInstanceOf(HBGatherSucceeded.class, result.outcomes().get(0));
+    assertFalse(result.outcomes().get(1) instanceof HBGatherSucceeded);
+    assertInstanceOf(HBGatherSucceeded.class, result.outcomes().get(2));
+    this.assertClientsUsable();
+  }
+
+  /**
+   * A failure that makes the policy impossible to satisfy ends the
+   * operation without waiting for the other clients.
+   */
+
+  @Test
+  public void testImpossible()
+    throws Exception
+  {
+    this.clients.get(0).disconnect();
+
+    final var timeStart = System.nanoTime();
+    final var result =
+      this.gather(
+        new HBGatherAll(),
+        Duration.ofSeconds(5L),
+        Set.of(Integer.valueOf(1), Integer.valueOf(2))
+      );
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    assertFalse(result.satisfied());
+    assertTrue(elapsed.compareTo(CANCELLED_WITHIN) < 0, elapsed.toString());
+    assertInstanceOf(HBGatherFailed.class, result.outcomes().get(0));
+    assertInstanceOf(HBGatherCancelled.class, result.outcomes().get(1));
+    assertInstanceOf(HBGatherCancelled.class, result.outcomes().get(2));
+
+    for (final var client : this.clients.subList(1, 3)) {
+      assertInstanceOf(
+        ETCP0ResponseOK.class,
+        client.sendAndWait(hello("Hello"), Duration.ofSeconds(5L))
+      );
+    }
+  }
+}
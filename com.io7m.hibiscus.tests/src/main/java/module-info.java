@@ -26,6 +26,11 @@ open module com.io7m.hibiscus.tests
   requires transitive org.junit.platform.engine;
 
   requires org.mockito;
+  requires ch.qos.logback.classic;
+  requires ch.qos.logback.core;
+
+  requires java.net.http;
+  requires jdk.httpserver;
 
   requires com.io7m.hibiscus.api;
   requires com.io7m.jmulticlose.core;